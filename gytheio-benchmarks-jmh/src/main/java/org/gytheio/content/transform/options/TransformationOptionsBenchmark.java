@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform.options;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures copying and merging transformation options, both of which
+ * copy fields by reflection via <code>BeanUtils.copyFields</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformationOptionsBenchmark
+{
+    private TransformationOptionsImpl options;
+    private TransformationOptionsImpl overrideOptions;
+    private ImageTransformationOptions imageOptions;
+    private ImageTransformationOptions overrideImageOptions;
+    
+    @Setup
+    public void setup()
+    {
+        options = new TransformationOptionsImpl();
+        populate(options, 1);
+        overrideOptions = new TransformationOptionsImpl();
+        populate(overrideOptions, 2);
+        
+        imageOptions = new ImageTransformationOptions();
+        populate(imageOptions, 1);
+        ImageResizeOptions resizeOptions = new ImageResizeOptions();
+        resizeOptions.setWidth(256);
+        resizeOptions.setHeight(256);
+        imageOptions.setResizeOptions(resizeOptions);
+        imageOptions.setCommandOptions("-strip -quality 85");
+        overrideImageOptions = new ImageTransformationOptions();
+        populate(overrideImageOptions, 2);
+        overrideImageOptions.setAutoOrient(true);
+    }
+    
+    /**
+     * Sets the options typically given with a request, with source options of
+     * their own so that merging merges the source options rather than sharing them
+     */
+    protected void populate(TransformationOptionsImpl options, int page)
+    {
+        options.setTimeoutMs(120000);
+        options.setPageLimit(10);
+        options.setIncludeEmbedded(Boolean.FALSE);
+        PagedSourceOptions pagedSourceOptions = new PagedSourceOptions();
+        pagedSourceOptions.setStartPageNumber(page);
+        pagedSourceOptions.setEndPageNumber(page);
+        options.addSourceOptions(pagedSourceOptions);
+        Map<String, Serializable> additionalOptions = new HashMap<String, Serializable>();
+        additionalOptions.put("quality", "high");
+        options.setAdditionalOptions(additionalOptions);
+    }
+    
+    @Benchmark
+    public TransformationOptionsImpl copy()
+    {
+        return new TransformationOptionsImpl(options);
+    }
+    
+    @Benchmark
+    public TransformationOptionsImpl merge()
+    {
+        options.merge(overrideOptions);
+        return options;
+    }
+    
+    @Benchmark
+    public ImageTransformationOptions copyImageOptions()
+    {
+        return new ImageTransformationOptions(imageOptions);
+    }
+    
+    @Benchmark
+    public ImageTransformationOptions mergeImageOptions()
+    {
+        imageOptions.merge(overrideImageOptions);
+        return imageOptions;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.ContentWorkResult;
+import org.gytheio.content.hash.HashRequest;
+import org.gytheio.content.transform.TransformationReply;
+import org.gytheio.content.transform.TransformationRequest;
+import org.gytheio.content.transform.options.ImageResizeOptions;
+import org.gytheio.content.transform.options.ImageTransformationOptions;
+import org.gytheio.content.transform.options.PagedSourceOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures encoding and decoding of typical requests and replies with the
+ * {@link ObjectMapperFactory} mappers used by the messaging endpoints
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectMapperFactoryBenchmark
+{
+    @Param({ ObjectMapperFactory.CONTENT_TYPE_JSON, ObjectMapperFactory.CONTENT_TYPE_SMILE })
+    public String contentType;
+    
+    private ObjectMapper objectMapper;
+    
+    private TransformationRequest transformationRequest;
+    private TransformationReply transformationReply;
+    private HashRequest hashRequest;
+    
+    private byte[] transformationRequestBytes;
+    private byte[] transformationReplyBytes;
+    private byte[] hashRequestBytes;
+    
+    @Setup
+    public void setup() throws Exception
+    {
+        objectMapper = ObjectMapperFactory.createInstance(contentType);
+        
+        ImageResizeOptions resizeOptions = new ImageResizeOptions();
+        resizeOptions.setWidth(256);
+        resizeOptions.setHeight(256);
+        resizeOptions.setResizeToThumbnail(true);
+        ImageTransformationOptions options = new ImageTransformationOptions();
+        options.setResizeOptions(resizeOptions);
+        options.setAutoOrient(true);
+        options.addSourceOptions(PagedSourceOptions.getPage1Instance());
+        options.setTimeoutMs(120000);
+        
+        ContentReference source = new ContentReference(
+                "file:///mnt/gytheio/content/2b4e4b3e-8f7a-4a43-9c36-d8f2a9f7b6a1.docx",
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document", 524288L);
+        ContentReference target = new ContentReference(
+                "file:///mnt/gytheio/content/6f1c2d0e-3a5b-4c7d-8e9f-0a1b2c3d4e5f.png", "image/png");
+        transformationRequest = new TransformationRequest(
+                Arrays.asList(source), Arrays.asList(target), options);
+        transformationRequest.setTargetMediaType("image/png");
+        
+        transformationReply = new TransformationReply(transformationRequest);
+        transformationReply.setStatus(TransformationReply.STATUS_COMPLETE);
+        transformationReply.setJobId("job-1");
+        transformationReply.setProgress(1.0f);
+        Map<String, Object> details = new HashMap<String, Object>();
+        details.put("width", 256);
+        details.put("height", 181);
+        List<ContentWorkResult> results = new ArrayList<ContentWorkResult>();
+        results.add(new ContentWorkResult(
+                new ContentReference(target.getUri(), target.getMediaType(), 24576L), details));
+        transformationReply.setResults(results);
+        
+        List<ContentReference> hashSources = new ArrayList<ContentReference>();
+        for (int i = 0; i < 3; i++)
+        {
+            hashSources.add(new ContentReference(
+                    "file:///mnt/gytheio/content/hash-source-" + i + ".pdf", "application/pdf", 1048576L));
+        }
+        hashRequest = new HashRequest(hashSources, "SHA-256");
+        
+        transformationRequestBytes = objectMapper.writeValueAsBytes(transformationRequest);
+        transformationReplyBytes = objectMapper.writeValueAsBytes(transformationReply);
+        hashRequestBytes = objectMapper.writeValueAsBytes(hashRequest);
+    }
+    
+    @Benchmark
+    public byte[] encodeTransformationRequest() throws Exception
+    {
+        return objectMapper.writeValueAsBytes(transformationRequest);
+    }
+    
+    @Benchmark
+    public Object decodeTransformationRequest() throws Exception
+    {
+        return objectMapper.readValue(transformationRequestBytes, TransformationRequest.class);
+    }
+    
+    @Benchmark
+    public byte[] encodeTransformationReply() throws Exception
+    {
+        return objectMapper.writeValueAsBytes(transformationReply);
+    }
+    
+    @Benchmark
+    public Object decodeTransformationReply() throws Exception
+    {
+        return objectMapper.readValue(transformationReplyBytes, TransformationReply.class);
+    }
+    
+    @Benchmark
+    public byte[] encodeHashRequest() throws Exception
+    {
+        return objectMapper.writeValueAsBytes(hashRequest);
+    }
+    
+    @Benchmark
+    public Object decodeHashRequest() throws Exception
+    {
+        return objectMapper.readValue(hashRequestBytes, HashRequest.class);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.util.exec;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures tokenizing command options, as done for each <code>SPLIT:</code>
+ * element of a {@link RuntimeExec} command
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecParameterTokenizerBenchmark
+{
+    @Param({
+        "-auto-orient -resize 256x256> -strip -quality 85",
+        "-font Helvetica -pointsize 50 -draw \"circle 100,100 150,150\" -draw 'text 10,10 \"Hello World\"'"
+    })
+    public String parameters;
+    
+    @Benchmark
+    public List<String> getAllTokens()
+    {
+        return new ExecParameterTokenizer(parameters).getAllTokens();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.util.exec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures property substitution of a command configured like the ImageMagick worker's
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuntimeExecBenchmark
+{
+    private RuntimeExec executer;
+    private Map<String, String> properties;
+    
+    @Setup
+    public void setup()
+    {
+        executer = new RuntimeExec();
+        Map<String, String[]> commandsAndArguments = new HashMap<String, String[]>();
+        commandsAndArguments.put(".*", new String[] {
+            "convert",
+            "${source}",
+            "SPLIT:${options}",
+            "${target}"
+        });
+        executer.setCommandsAndArguments(commandsAndArguments);
+        Map<String, String> defaultProperties = new HashMap<String, String>();
+        defaultProperties.put("options", "");
+        executer.setDefaultProperties(defaultProperties);
+        
+        properties = new HashMap<String, String>();
+        properties.put("source", "/tmp/gytheio/source-2b4e4b3e.png[0]");
+        properties.put("options", "-auto-orient -resize 256x256> -strip -quality 85");
+        properties.put("target", "/tmp/gytheio/target-6f1c2d0e.png");
+    }
+    
+    @Benchmark
+    public String[] getCommandDefaultProperties()
+    {
+        return executer.getCommand();
+    }
+    
+    @Benchmark
+    public String[] getCommand()
+    {
+        return executer.getCommand(properties);
+    }
+}
@@ -20,9 +20,16 @@ package org.gytheio.content.hash;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.gytheio.content.AbstractContentWorker;
 import org.gytheio.content.ContentIOException;
@@ -32,11 +39,68 @@ import org.gytheio.content.ContentWorkResult;
 /**
  * Abstract hash node worker which uses a content reference handler to convert the 
  * content reference into a usable input stream for the actual implementation.
+ * <p>
+ * Multiple sources are fetched and hashed by up to {@link #setParallelism(int)} threads
+ * at once, the calling thread and those of an executor service shared by all requests.
+ * A source failing doesn't fail the others, its result carries the
+ * {@link ContentHashWorker#RESULT_DETAIL_ERROR} detail instead, unless all sources fail
+ * in which case the first failure is thrown.
  * 
  * @author Ray Gauss II
  */
 public abstract class AbstractContentHashWorker extends AbstractContentWorker implements ContentHashWorker
 {
+    private static final int DEFAULT_PARALLELISM = 1;
+    
+    protected int parallelism = DEFAULT_PARALLELISM;
+    protected ExecutorService executorService;
+    
+    /**
+     * Sets the maximum number of sources of a request fetched and hashed at once, default 1
+     * 
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Sets the executor service shared by all requests for hashing sources in parallel.
+     * <p>
+     * If not set a fixed thread pool of one less than the parallelism is created,
+     * the calling thread hashes sources as well.
+     * 
+     * @param executorService
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+    
+    protected synchronized ExecutorService getExecutorService()
+    {
+        if (executorService == null)
+        {
+            executorService = Executors.newFixedThreadPool(parallelism - 1, new ThreadFactory()
+            {
+                private final AtomicInteger threadCount = new AtomicInteger();
+                
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, 
+                            AbstractContentHashWorker.class.getSimpleName() + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executorService;
+    }
 
     @Override
     public void initialize()
@@ -53,22 +117,206 @@ public abstract class AbstractContentHashWorker extends AbstractContentWorker im
             List<ContentReference> sources, 
             String hashAlgorithm) throws ContentIOException, InterruptedException, ContentHashException
     {
-        List<ContentWorkResult> results = new ArrayList<ContentWorkResult>();
         if (sources == null || sources.size() == 0)
         {
-            return results;
+            return new ArrayList<ContentWorkResult>();
+        }
+        SourceHasher hasher = new SourceHasher(sources, hashAlgorithm);
+        int threads = Math.min(parallelism, sources.size());
+        if (threads <= 1)
+        {
+            hasher.run();
+        }
+        else
+        {
+            hashInParallel(hasher, threads - 1);
+        }
+        return hasher.getResults();
+    }
+    
+    /**
+     * Runs the hasher on the given number of executor threads as well as the calling thread
+     * 
+     * @param hasher
+     * @param executorThreads
+     * @throws InterruptedException
+     */
+    protected void hashInParallel(SourceHasher hasher, int executorThreads) throws InterruptedException
+    {
+        ExecutorService executor = getExecutorService();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try
+        {
+            for (int i = 0; i < executorThreads; i++)
+            {
+                try
+                {
+                    futures.add(executor.submit(hasher));
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // The calling thread hashes any sources left
+                    break;
+                }
+            }
+            hasher.run();
+            // Don't wait on executor threads which never got to start, all sources may be done
+            hasher.awaitFinished();
+        }
+        finally
+        {
+            for (Future<?> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+    
+    /**
+     * Fetches and hashes the given source
+     * 
+     * @param source
+     * @param hashAlgorithm
+     * @return the result with the hex encoded hash value
+     * @throws ContentIOException
+     * @throws InterruptedException
+     * @throws ContentHashException
+     */
+    protected ContentWorkResult generateHash(ContentReference source, String hashAlgorithm) 
+            throws ContentIOException, InterruptedException, ContentHashException
+    {
+        String value = generateHashInternal(
+                    sourceContentReferenceHandler.getInputStream(source, true),
+                    hashAlgorithm);
+        Map<String, Object> resultDetails = new HashMap<String, Object>();
+        resultDetails.put(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE, value);
+        return new ContentWorkResult(source, resultDetails);
+    }
+    
+    /**
+     * Hashes the sources of a request in order, from as many threads as run it,
+     * keeping the results and failures by source index
+     */
+    protected class SourceHasher implements Runnable
+    {
+        private final List<ContentReference> sources;
+        private final String hashAlgorithm;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private int finishedCount;
+        private final ContentWorkResult[] results;
+        private final Exception[] errors;
+        
+        public SourceHasher(List<ContentReference> sources, String hashAlgorithm)
+        {
+            this.sources = sources;
+            this.hashAlgorithm = hashAlgorithm;
+            this.results = new ContentWorkResult[sources.size()];
+            this.errors = new Exception[sources.size()];
+        }
+        
+        @Override
+        public void run()
+        {
+            int index;
+            while (!Thread.currentThread().isInterrupted() && 
+                    (index = nextIndex.getAndIncrement()) < sources.size())
+            {
+                try
+                {
+                    results[index] = generateHash(sources.get(index), hashAlgorithm);
+                }
+                catch (InterruptedException e)
+                {
+                    errors[index] = e;
+                    Thread.currentThread().interrupt();
+                }
+                catch (Exception e)
+                {
+                    errors[index] = e;
+                }
+                finally
+                {
+                    synchronized (this)
+                    {
+                        finishedCount++;
+                        if (finishedCount == sources.size())
+                        {
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Waits until all sources have been hashed or have failed
+         * 
+         * @throws InterruptedException
+         */
+        public synchronized void awaitFinished() throws InterruptedException
+        {
+            while (finishedCount < sources.size())
+            {
+                wait();
+            }
+        }
+        
+        /**
+         * Gets the results in source order, throwing the first failure if all sources failed
+         * 
+         * @return the results
+         * @throws ContentIOException
+         * @throws InterruptedException
+         * @throws ContentHashException
+         */
+        public synchronized List<ContentWorkResult> getResults() 
+                throws ContentIOException, InterruptedException, ContentHashException
+        {
+            if (Thread.interrupted() || finishedCount < sources.size())
+            {
+                throw new InterruptedException("Interrupted hashing sources");
+            }
+            int failedCount = 0;
+            for (Exception error : errors)
+            {
+                if (error != null)
+                {
+                    failedCount++;
+                }
+            }
+            if (failedCount == sources.size())
+            {
+                throwError(errors[0]);
+            }
+            for (int i = 0; i < results.length; i++)
+            {
+                if (errors[i] != null)
+                {
+                    Map<String, Object> resultDetails = new HashMap<String, Object>();
+                    resultDetails.put(ContentHashWorker.RESULT_DETAIL_ERROR, errors[i].getMessage());
+                    results[i] = new ContentWorkResult(sources.get(i), resultDetails);
+                }
+            }
+            return new ArrayList<ContentWorkResult>(Arrays.asList(results));
         }
-        for (ContentReference source : sources)
+        
+        private void throwError(Exception error) 
+                throws ContentIOException, InterruptedException, ContentHashException
         {
-            String value = generateHashInternal(
-                        sourceContentReferenceHandler.getInputStream(source, true),
-                        hashAlgorithm);
-            Map<String, Object> resultDetails = new HashMap<String, Object>();
-            resultDetails.put(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE, value);
-            ContentWorkResult result = new ContentWorkResult(source, resultDetails);
-            results.add(result);
+            if (error instanceof RuntimeException)
+            {
+                throw (RuntimeException) error;
+            }
+            if (error instanceof InterruptedException)
+            {
+                throw (InterruptedException) error;
+            }
+            if (error instanceof ContentHashException)
+            {
+                throw (ContentHashException) error;
+            }
+            throw new ContentHashException(error);
         }
-        return results;
     }
     
     /**
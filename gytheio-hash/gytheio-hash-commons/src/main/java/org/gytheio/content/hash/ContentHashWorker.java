@@ -37,9 +37,14 @@ public interface ContentHashWorker extends ContentWorker
     public static final String HASH_ALGORITHM_SHA_512 = "SHA-512";
     
     public static final String RESULT_DETAIL_HEX_ENCODED_VALUE = "HEX_ENCODED_VALUE";
+    public static final String RESULT_DETAIL_ERROR = "ERROR";
     
     /**
      * Generates a hash value for the given content reference using the given algorithm
+     * <p>
+     * Results are in the order of the sources.  If some but not all sources fail the
+     * results of those failing have a {@link #RESULT_DETAIL_ERROR} detail instead of
+     * a hash value.
      * 
      * @param sources
      * @param hashAlgorithm
@@ -59,7 +59,7 @@ public class BaseContentHashComponent extends AbstractComponent<ContentHashWorke
             {
                 logger.debug("Sending reply");
             }
-            messageProducer.send(reply, request.getReplyTo());
+            sendReply(reply, request.getReplyTo());
         }
         catch (Exception e)
         {
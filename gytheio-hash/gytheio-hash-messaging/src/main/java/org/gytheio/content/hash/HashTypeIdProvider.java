@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.hash;
+
+import org.gytheio.messaging.jackson.TypeIdProvider;
+import org.gytheio.messaging.jackson.TypeIdRegistry;
+
+/**
+ * Registers type ids for hash messages
+ */
+public class HashTypeIdProvider implements TypeIdProvider
+{
+    @Override
+    public void registerTypeIds(TypeIdRegistry registry)
+    {
+        registry.register("HashRequest", HashRequest.class);
+        registry.register("HashReply", HashReply.class);
+    }
+}
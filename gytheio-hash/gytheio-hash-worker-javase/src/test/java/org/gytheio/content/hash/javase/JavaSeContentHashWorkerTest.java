@@ -20,9 +20,11 @@ package org.gytheio.content.hash.javase;
 
 import static junit.framework.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.gytheio.content.ContentIOException;
 import org.gytheio.content.ContentReference;
 import org.gytheio.content.ContentWorkResult;
 import org.gytheio.content.handler.FileContentReferenceHandlerImpl;
@@ -103,4 +105,53 @@ public class JavaSeContentHashWorkerTest
         testHash(ContentHashWorker.HASH_ALGORITHM_SHA_512, EXPECTED_VALUE_SHA_512);
     }
     
+    @Test
+    public void testParallelHashesKeepOrderAndIsolateFailures() throws Exception
+    {
+        ((JavaSeContentHashWorker) worker).setParallelism(4);
+        ContentReference source = new ContentReference(
+                this.getClass().getResource("/quick/quick.mpg").toURI().toString(), "video/mpeg");
+        ContentReference missing = new ContentReference("file:/missing/quick.mpg", "video/mpeg");
+        List<ContentReference> sources = new ArrayList<ContentReference>();
+        for (int i = 0; i < 10; i++)
+        {
+            sources.add(i == 3 ? missing : source);
+        }
+        
+        List<ContentWorkResult> results = worker.generateHashes(sources, ContentHashWorker.HASH_ALGORITHM_MD5);
+        
+        assertEquals(sources.size(), results.size());
+        for (int i = 0; i < sources.size(); i++)
+        {
+            ContentWorkResult result = results.get(i);
+            assertEquals(sources.get(i), result.getContentReference());
+            if (i == 3)
+            {
+                assertNotNull(result.getDetails().get(ContentHashWorker.RESULT_DETAIL_ERROR));
+                assertNull(result.getDetails().get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE));
+            }
+            else
+            {
+                assertEquals(EXPECTED_VALUE_MD5, 
+                        result.getDetails().get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE));
+            }
+        }
+    }
+    
+    @Test
+    public void testAllSourcesFailing() throws Exception
+    {
+        ((JavaSeContentHashWorker) worker).setParallelism(2);
+        ContentReference missing = new ContentReference("file:/missing/quick.mpg", "video/mpeg");
+        try
+        {
+            worker.generateHashes(Arrays.asList(missing, missing), ContentHashWorker.HASH_ALGORITHM_MD5);
+            fail("Expected failure hashing missing sources");
+        }
+        catch (ContentIOException e)
+        {
+            // expected
+        }
+    }
+    
 }
@@ -28,18 +28,38 @@ import org.apache.qpid.amqp_1_0.jms.TextMessage;
 import org.apache.qpid.amqp_1_0.jms.impl.ConnectionFactoryImpl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.jms.BytesMessage;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.MessageListener;
 
+import org.gytheio.messaging.AbstractRequest;
+import org.gytheio.messaging.AcknowledgingMessageConsumer;
+import org.gytheio.messaging.AsyncMessageProducer;
+import org.gytheio.messaging.MessageAcknowledgement;
+import org.gytheio.messaging.MessageCompressionUtils;
 import org.gytheio.messaging.MessageConsumer;
 import org.gytheio.messaging.MessageProducer;
 import org.gytheio.messaging.MessagingException;
+import org.gytheio.messaging.PausableMessageEndpoint;
 import org.gytheio.messaging.Request;
+import org.gytheio.messaging.jackson.ObjectMapperFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -50,13 +70,26 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * @author Ray Gauss II
  *
  */
-public class AmqpDirectEndpoint implements MessageProducer
+public class AmqpDirectEndpoint implements AsyncMessageProducer, PausableMessageEndpoint
 {
     private static final Log logger = LogFactory.getLog(AmqpDirectEndpoint.class);
 
     private static final int DEFAULT_PORT = 5672;
     private static final String DEFAULT_USERNAME = "guest";
     private static final String DEFAULT_PASSWORD = "password";
+    private static final int DEFAULT_CONSUMERS = 1;
+    private static final int DEFAULT_PRODUCER_CACHE_SIZE = 100;
+    private static final long DEFAULT_PRODUCER_IDLE_TIMEOUT_MS = 60000;
+    private static final int DEFAULT_SENDER_THREADS = 1;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+    private static final long DEFAULT_CLOSE_TIMEOUT_MS = 30000;
+
+    /** Header giving the JMS priority, 0-9, to send a message with */
+    public static final String HEADER_JMS_PRIORITY = "JMSPriority";
+    /** Header giving the JMS correlation id to send a message with */
+    public static final String HEADER_JMS_CORRELATION_ID = "JMSCorrelationID";
+    /** Header giving the JMS type to send a message with */
+    public static final String HEADER_JMS_TYPE = "JMSType";
 
     private static final String ENDPOINT_PREFIX_QUEUE = "queue:";
     private static final String ENDPOINT_PREFIX_TOPIC = "topic:";
@@ -70,87 +103,236 @@ public class AmqpDirectEndpoint implements MessageProducer
     private String password = DEFAULT_PASSWORD;
     private String receiveEndpoint;
     private String sendEndpoint;
+    private int consumers = DEFAULT_CONSUMERS;
+    private int producerCacheSize = DEFAULT_PRODUCER_CACHE_SIZE;
+    private long producerIdleTimeoutMs = DEFAULT_PRODUCER_IDLE_TIMEOUT_MS;
+    private int senderThreads = DEFAULT_SENDER_THREADS;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private Boolean syncPublish;
+    private String messageSelector;
+    private boolean isClientAcknowledge = false;
+    private Integer prefetch;
+    private int maxDeliveries = AmqpSessionAcknowledger.DEFAULT_MAX_DELIVERIES;
+    private String deadLetterEndpoint;
+    private long closeTimeoutMs = DEFAULT_CLOSE_TIMEOUT_MS;
     
     private Connection consumerConnection;
     private Connection producerConnection;
-    private Session consumerSession;
+    private final List<Session> consumerSessions = new ArrayList<Session>();
+    private final Map<Session, AmqpSessionAcknowledger> acknowledgers = 
+            new HashMap<Session, AmqpSessionAcknowledger>();
+    private final List<ExecutorService> acknowledgerExecutorServices = new ArrayList<ExecutorService>();
+    private final List<org.apache.qpid.amqp_1_0.jms.MessageConsumer> receivers = 
+            new ArrayList<org.apache.qpid.amqp_1_0.jms.MessageConsumer>();
+    private boolean isPaused = false;
+    private boolean isClosed = false;
     private Session producerSession;
     private org.apache.qpid.amqp_1_0.jms.MessageProducer defaultMessageProducer;
+    private AmqpProducerCache producerCache;
+    private ExecutorService senderExecutorService;
+    private volatile Semaphore inFlightPermits;
     
     private MessageConsumer messageConsumer;
     private AmqpListener listener;
     private ObjectMapper objectMapper;
+    private ObjectMapper binaryObjectMapper;
+    private String contentType = ObjectMapperFactory.CONTENT_TYPE_JSON;
+    private int compressionThreshold = MessageCompressionUtils.COMPRESSION_DISABLED;
+    private boolean sendJsonAsBytes = false;
     
-    protected class AmqpListener implements Runnable
+    /**
+     * Message listener which unmarshals received messages and passes them
+     * to the {@link MessageConsumer}.
+     * <p>
+     * One instance is registered per consumer session so each runs on
+     * that session's dispatch thread.
+     */
+    protected class AmqpMessageListener implements MessageListener
     {
-        protected boolean isInitialized = false;
+        private final AmqpSessionAcknowledger acknowledger;
         
-        public void run()
+        public AmqpMessageListener()
+        {
+            this(null);
+        }
+        
+        /**
+         * @param acknowledger the acknowledger for client acknowledge sessions, or null
+         */
+        public AmqpMessageListener(AmqpSessionAcknowledger acknowledger)
+        {
+            this.acknowledger = acknowledger;
+        }
+        
+        public void onMessage(final javax.jms.Message message)
+        {
+            try
+            {
+                MessageAcknowledgement acknowledgement = null;
+                if (acknowledger != null)
+                {
+                    acknowledgement = acknowledger.register(message);
+                    AmqpSessionAcknowledger.Disposition disposition = acknowledger.getDisposition(message);
+                    if (disposition == AmqpSessionAcknowledger.Disposition.PROCESSED)
+                    {
+                        logger.debug("Acknowledging redelivered message which was already processed");
+                        acknowledgement.acknowledge();
+                        return;
+                    }
+                    if (disposition == AmqpSessionAcknowledger.Disposition.POISON)
+                    {
+                        deadLetter(message);
+                        acknowledgement.acknowledge();
+                        return;
+                    }
+                }
+                onMessage(message, acknowledgement);
+            }
+            finally
+            {
+                if (acknowledger != null)
+                {
+                    try
+                    {
+                        acknowledger.afterDispatch();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        logger.error("Interrupted waiting for message batch to complete");
+                    }
+                }
+            }
+        }
+        
+        protected void onMessage(final javax.jms.Message message, MessageAcknowledgement acknowledgement)
         {
             try
             {
-                Destination receiveDestination = 
-                        AmqpDirectEndpoint.getDestination(getConsumerSession(), receiveEndpoint);
-                org.apache.qpid.amqp_1_0.jms.MessageConsumer receiver = 
-                        getConsumerSession().createConsumer(receiveDestination);
+                logger.trace("Processing AMQP message");
+                Object pojoMessage = null;
                 
-                isInitialized = true;
+                if (message instanceof TextMessage)
+                {
+                    String stringMessage = ((TextMessage) message).getText();
+                    if (stringMessage != null)
+                    {
+                        pojoMessage = objectMapper.readValue(stringMessage, 
+                                messageConsumer.getConsumingMessageBodyClass());
+                    }
+                }
+                else if (message instanceof BytesMessage)
+                {
+                    String contentType = message.getStringProperty(ObjectMapperFactory.HEADER_CONTENT_TYPE);
+                    ObjectMapper mapper = ObjectMapperFactory.isSmile(contentType) ? 
+                            getBinaryObjectMapper() : objectMapper;
+                    InputStream inputStream = new BytesMessageInputStream((BytesMessage) message);
+                    if (MessageCompressionUtils.isDeflate(
+                            message.getStringProperty(MessageCompressionUtils.HEADER_CONTENT_ENCODING)))
+                    {
+                        inputStream = MessageCompressionUtils.decompress(inputStream);
+                    }
+                    pojoMessage = mapper.readValue(inputStream, messageConsumer.getConsumingMessageBodyClass());
+                }
+                else
+                {
+                    logger.error("No valid message body found in " + message.toString());
+                    acknowledge(acknowledgement);
+                    return;
+                }
+                
+                if (pojoMessage == null)
+                {
+                    logger.error("Request could not be unmarshalled");
+                    acknowledge(acknowledgement);
+                    return;
+                }
+                
+                if (pojoMessage instanceof Request<?>)
+                {
+                    // Check for a reply to queue message header
+                   if (StringUtils.isEmpty(((Request<?>) pojoMessage).getReplyTo()))
+                   {
+                       if (message.getJMSReplyTo() != null)
+                           
+                       {
+                           String replyQueueName = message.getJMSReplyTo().toString();
+                           if (!StringUtils.isEmpty(replyQueueName))
+                           {
+                               ((Request<?>) pojoMessage).setReplyTo(replyQueueName);
+                           }
+                       }
+                   }
+                }
                 
-                logger.info("Waiting for an AMQP message on " + host + ":" + receiveEndpoint);
-                receiver.setMessageListener(new MessageListener()
+                if (pojoMessage instanceof AbstractRequest && 
+                        ((AbstractRequest) pojoMessage).getDeadline() == null &&
+                        message.propertyExists(AbstractRequest.HEADER_DEADLINE))
+                {
+                    // Deadline may be given only as a message header
+                    ((AbstractRequest) pojoMessage).setDeadline(
+                            message.getLongProperty(AbstractRequest.HEADER_DEADLINE));
+                }
+                
+                if (acknowledgement == null)
+                {
+                    messageConsumer.onReceive(pojoMessage);
+                }
+                else if (messageConsumer instanceof AcknowledgingMessageConsumer)
+                {
+                    ((AcknowledgingMessageConsumer) messageConsumer).onReceive(pojoMessage, acknowledgement);
+                }
+                else
+                {
+                    try
+                    {
+                        messageConsumer.onReceive(pojoMessage);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        acknowledgement.reject();
+                        throw e;
+                    }
+                    acknowledgement.acknowledge();
+                }
+            }
+            catch (JMSException | IOException e)
+            {
+                logger.error(e.getMessage(), e);
+                // Unreadable messages would fail again on redelivery
+                acknowledge(acknowledgement);
+            }
+        }
+        
+        private void acknowledge(MessageAcknowledgement acknowledgement)
+        {
+            if (acknowledgement != null)
+            {
+                acknowledgement.acknowledge();
+            }
+        }
+    }
+    
+    protected class AmqpListener implements Runnable
+    {
+        protected volatile boolean isInitialized = false;
+        
+        public void run()
+        {
+            try
+            {
+                synchronized (AmqpDirectEndpoint.this)
                 {
-                    public void onMessage(final javax.jms.Message message)
+                    for (int i = 0; i < consumers; i++)
                     {
-                        try
-                        {
-                            logger.trace("Processing AMQP message");
-                            String stringMessage = null;
-                            
-                            if (message instanceof TextMessage)
-                            {
-                                stringMessage = ((TextMessage) message).getText();
-                            }
-                            if (stringMessage != null)
-                            {
-                                Object pojoMessage = objectMapper.readValue(stringMessage, 
-                                        messageConsumer.getConsumingMessageBodyClass());
-                                if (pojoMessage == null)
-                                {
-                                    logger.error("Request could not be unmarshalled");
-                                }
-                                else
-                                {
-                                    if (pojoMessage instanceof Request<?>)
-                                    {
-                                        // Check for a reply to queue message header
-                                       if (StringUtils.isEmpty(((Request<?>) pojoMessage).getReplyTo()))
-                                       {
-                                           if (message.getJMSReplyTo() != null)
-                                               
-                                           {
-                                               String replyQueueName = message.getJMSReplyTo().toString();
-                                               if (!StringUtils.isEmpty(replyQueueName))
-                                               {
-                                                   ((Request<?>) pojoMessage).setReplyTo(replyQueueName);
-                                               }
-                                           }
-                                       }
-                                    }
-                                    
-                                    messageConsumer.onReceive(pojoMessage);
-                                }
-                            }
-                            else
-                            {
-                                logger.error("No valid message body found in " + message.toString());
-                            }
-                        }
-                        catch (JMSException | IOException e)
-                        {
-                            logger.error(e.getMessage(), e);
-                        }
+                        createReceiver(createConsumerSession());
                     }
-                });
+                }
+                
+                isInitialized = true;
+                
+                logger.info("Waiting for an AMQP message on " + host + ":" + receiveEndpoint + 
+                        " with " + consumers + " consumer(s)");
                 
                 getConsumerConnection().start();
             }
@@ -196,6 +378,195 @@ public class AmqpDirectEndpoint implements MessageProducer
         this.sendEndpoint = sendEndpoint;
     }
 
+    /**
+     * Sets the number of concurrent consumers opened on the receive endpoint.
+     * <p>
+     * Each consumer has its own session and therefore its own dispatch thread,
+     * so the {@link MessageConsumer} must be able to handle concurrent calls
+     * when this is greater than 1.
+     * 
+     * @param consumers
+     */
+    public void setConsumers(int consumers)
+    {
+        if (consumers < 1)
+        {
+            throw new IllegalArgumentException("consumers must be at least 1");
+        }
+        this.consumers = consumers;
+    }
+    
+    public int getConsumers()
+    {
+        return consumers;
+    }
+
+    /**
+     * Sets the maximum number of producers kept open for endpoints other than
+     * the default send endpoint, i.e. request reply to queues, default 100
+     * 
+     * @param producerCacheSize
+     */
+    public void setProducerCacheSize(int producerCacheSize)
+    {
+        this.producerCacheSize = producerCacheSize;
+    }
+
+    /**
+     * Sets the time after which an unused cached producer is closed, default 60 seconds,
+     * -1 to keep producers open until evicted by size
+     * 
+     * @param producerIdleTimeoutMs
+     */
+    public void setProducerIdleTimeoutMs(long producerIdleTimeoutMs)
+    {
+        this.producerIdleTimeoutMs = producerIdleTimeoutMs;
+    }
+
+    /**
+     * Sets the number of threads sending messages given to {@link #sendAsync(Object, String)}, default 1.
+     * <p>
+     * Note that messages are only guaranteed to be sent in order with a single sender thread.
+     * 
+     * @param senderThreads
+     */
+    public void setSenderThreads(int senderThreads)
+    {
+        if (senderThreads < 1)
+        {
+            throw new IllegalArgumentException("senderThreads must be at least 1");
+        }
+        this.senderThreads = senderThreads;
+    }
+
+    /**
+     * Sets the maximum number of messages given to {@link #sendAsync(Object, String)}
+     * which may be waiting to be sent before callers are blocked, default 1000
+     * 
+     * @param maxInFlight
+     */
+    public void setMaxInFlight(int maxInFlight)
+    {
+        if (maxInFlight < 1)
+        {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Sets whether or not sends wait for the broker to settle each message.
+     * <p>
+     * Setting this to false allows the transport to pipeline messages rather than
+     * waiting for a broker round-trip per message.  If not set the Qpid client default is used.
+     * 
+     * @param syncPublish
+     */
+    public void setSyncPublish(Boolean syncPublish)
+    {
+        this.syncPublish = syncPublish;
+    }
+
+    /**
+     * Sets whether or not messages are acknowledged only once processing is complete, default false.
+     * <p>
+     * When the message consumer is an {@link AcknowledgingMessageConsumer} messages are acknowledged
+     * in batches after it has completed processing them, including sending replies, so that messages
+     * in progress are redelivered if the node fails.  At most <code>prefetch</code> messages are
+     * outstanding per consumer session.  Pausing isn't supported in this mode as the window already
+     * limits delivery.
+     * 
+     * @param isClientAcknowledge
+     */
+    public void setClientAcknowledge(boolean isClientAcknowledge)
+    {
+        this.isClientAcknowledge = isClientAcknowledge;
+    }
+    
+    public boolean isClientAcknowledge()
+    {
+        return isClientAcknowledge;
+    }
+    
+    /**
+     * Sets the maximum number of messages the broker sends to each consumer ahead of
+     * processing, which is also the client acknowledge window.  Defaults to the
+     * Qpid client default, or 1 in client acknowledge mode.
+     * 
+     * @param prefetch
+     */
+    public void setPrefetch(int prefetch)
+    {
+        if (prefetch < 1)
+        {
+            throw new IllegalArgumentException("prefetch must be at least 1");
+        }
+        this.prefetch = prefetch;
+    }
+    
+    public Integer getPrefetch()
+    {
+        return prefetch;
+    }
+    
+    /**
+     * Sets the number of deliveries after which a message is no longer processed
+     * in client acknowledge mode but moved to the dead letter endpoint, default 5
+     * 
+     * @param maxDeliveries
+     */
+    public void setMaxDeliveries(int maxDeliveries)
+    {
+        if (maxDeliveries < 1)
+        {
+            throw new IllegalArgumentException("maxDeliveries must be at least 1");
+        }
+        this.maxDeliveries = maxDeliveries;
+    }
+    
+    /**
+     * Sets the endpoint messages exceeding the maximum deliveries are sent to,
+     * if not set they are logged and discarded
+     * 
+     * @param deadLetterEndpoint
+     */
+    public void setDeadLetterEndpoint(String deadLetterEndpoint)
+    {
+        this.deadLetterEndpoint = deadLetterEndpoint;
+    }
+    
+    /**
+     * Sets the maximum time {@link #close()} waits for messages being processed
+     * and sent before closing the connections, default 30 seconds
+     * 
+     * @param closeTimeoutMs
+     */
+    public void setCloseTimeoutMs(long closeTimeoutMs)
+    {
+        this.closeTimeoutMs = closeTimeoutMs;
+    }
+    
+    /**
+     * Gets the acknowledgers of the current consumer sessions in client acknowledge mode
+     * 
+     * @return the session acknowledgers
+     */
+    public synchronized List<AmqpSessionAcknowledger> getAcknowledgers()
+    {
+        return new ArrayList<AmqpSessionAcknowledger>(acknowledgers.values());
+    }
+    
+    /**
+     * Sets the JMS message selector used by the receivers so that only matching
+     * messages are delivered to this endpoint, i.e. <code>sourceMediaType LIKE 'image/%'</code>
+     * 
+     * @param messageSelector
+     */
+    public void setMessageSelector(String messageSelector)
+    {
+        this.messageSelector = messageSelector;
+    }
+    
     public void setMessageConsumer(MessageConsumer messageConsumer)
     {
         this.messageConsumer = messageConsumer;
@@ -206,6 +577,69 @@ public class AmqpDirectEndpoint implements MessageProducer
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * Sets the object mapper used for binary encoded messages, created via
+     * {@link ObjectMapperFactory#createSmileInstance()} if not set
+     * 
+     * @param binaryObjectMapper
+     */
+    public void setBinaryObjectMapper(ObjectMapper binaryObjectMapper)
+    {
+        this.binaryObjectMapper = binaryObjectMapper;
+    }
+
+    /**
+     * Sets the content type used to encode sent messages, default JSON.
+     * <p>
+     * JSON messages are sent as text messages, binary encoded messages are sent as bytes
+     * messages with the content type header set.  Received messages are decoded according
+     * to their content type header regardless of this setting.
+     * 
+     * @param contentType
+     * @see ObjectMapperFactory#CONTENT_TYPE_JSON
+     * @see ObjectMapperFactory#CONTENT_TYPE_SMILE
+     */
+    public void setContentType(String contentType)
+    {
+        this.contentType = contentType;
+    }
+    
+    /**
+     * Sets the body size in bytes above which sent messages are compressed,
+     * default {@link MessageCompressionUtils#COMPRESSION_DISABLED}.
+     * <p>
+     * Compressed messages are always sent as bytes messages.
+     * 
+     * @param compressionThreshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        this.compressionThreshold = compressionThreshold;
+    }
+    
+    /**
+     * Sets whether JSON messages are sent as bytes messages rather than text messages,
+     * default false.
+     * <p>
+     * Bytes messages are parsed by receivers directly from the message body
+     * without first being decoded to a string.
+     * 
+     * @param sendJsonAsBytes
+     */
+    public void setSendJsonAsBytes(boolean sendJsonAsBytes)
+    {
+        this.sendJsonAsBytes = sendJsonAsBytes;
+    }
+    
+    private synchronized ObjectMapper getBinaryObjectMapper()
+    {
+        if (binaryObjectMapper == null)
+        {
+            binaryObjectMapper = ObjectMapperFactory.createSmileInstance();
+        }
+        return binaryObjectMapper;
+    }
+
     private Connection getConsumerConnection() throws JMSException
     {
         if (consumerConnection == null)
@@ -214,13 +648,18 @@ public class AmqpDirectEndpoint implements MessageProducer
                     new ConnectionFactoryImpl(host, port, username, password, null, isSSL);
             
             ((ConnectionFactoryImpl) connectionFactory).setTopicPrefix(CONNECTION_PREFIX_TOPIC);
+            Integer consumerPrefetch = getConsumerPrefetch();
+            if (consumerPrefetch != null)
+            {
+                ((ConnectionFactoryImpl) connectionFactory).setMaxPrefetch(consumerPrefetch);
+            }
             consumerConnection = connectionFactory.createConnection();
             
         }
         return consumerConnection;
     }
     
-    private Connection getProducerConnection() throws JMSException
+    private synchronized Connection getProducerConnection() throws JMSException
     {
         if (producerConnection == null)
         {
@@ -228,22 +667,60 @@ public class AmqpDirectEndpoint implements MessageProducer
                     new ConnectionFactoryImpl(host, port, username, password, null, isSSL);
 
             ((ConnectionFactoryImpl) connectionFactory).setTopicPrefix(CONNECTION_PREFIX_TOPIC);
+            if (syncPublish != null)
+            {
+                ((ConnectionFactoryImpl) connectionFactory).setSyncPublish(syncPublish);
+            }
             producerConnection = connectionFactory.createConnection();
             
         }
         return producerConnection;
     }
     
-    private Session getConsumerSession() throws JMSException
+    private Integer getConsumerPrefetch()
     {
-        if (consumerSession == null)
+        if (prefetch == null && isClientAcknowledge)
         {
-            consumerSession = getConsumerConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+            return 1;
+        }
+        return prefetch;
+    }
+    
+    private Session createConsumerSession() throws JMSException
+    {
+        final Session consumerSession = getConsumerConnection().createSession(false, 
+                isClientAcknowledge ? Session.CLIENT_ACKNOWLEDGE : Session.AUTO_ACKNOWLEDGE);
+        consumerSessions.add(consumerSession);
+        if (isClientAcknowledge)
+        {
+            AmqpSessionAcknowledger acknowledger = new AmqpSessionAcknowledger(getConsumerPrefetch(),
+                    new AmqpSessionAcknowledger.SessionRecovery()
+            {
+                public void recover() throws JMSException
+                {
+                    consumerSession.recover();
+                }
+            });
+            acknowledger.setMaxDeliveries(maxDeliveries);
+            final int sessionNumber = acknowledgerExecutorServices.size() + 1;
+            ExecutorService acknowledgerExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, 
+                            AmqpDirectEndpoint.class.getSimpleName() + "-acknowledger-" + sessionNumber);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            acknowledger.setCompletionExecutor(acknowledgerExecutorService);
+            acknowledgerExecutorServices.add(acknowledgerExecutorService);
+            acknowledgers.put(consumerSession, acknowledger);
         }
         return consumerSession;
     }
     
-    private Session getProducerSession() throws JMSException
+    private synchronized Session getProducerSession() throws JMSException
     {
         if (producerSession == null)
         {
@@ -252,6 +729,16 @@ public class AmqpDirectEndpoint implements MessageProducer
         return producerSession;
     }
     
+    private void createReceiver(Session session) throws JMSException
+    {
+        Destination receiveDestination = getDestination(session, receiveEndpoint);
+        org.apache.qpid.amqp_1_0.jms.MessageConsumer receiver = StringUtils.isEmpty(messageSelector) ?
+                session.createConsumer(receiveDestination) :
+                session.createConsumer(receiveDestination, messageSelector);
+        receiver.setMessageListener(new AmqpMessageListener(acknowledgers.get(session)));
+        receivers.add(receiver);
+    }
+    
     private static Destination getDestination(Session session, String endpoint) throws JMSException
     {
         Destination destination = null;
@@ -270,7 +757,7 @@ public class AmqpDirectEndpoint implements MessageProducer
         return destination;
     }
     
-    private org.apache.qpid.amqp_1_0.jms.MessageProducer getDefaultMessageProducer() throws JMSException
+    private synchronized org.apache.qpid.amqp_1_0.jms.MessageProducer getDefaultMessageProducer() throws JMSException
     {
         if (defaultMessageProducer == null)
         {
@@ -281,15 +768,95 @@ public class AmqpDirectEndpoint implements MessageProducer
         return defaultMessageProducer;
     }
     
+    private synchronized AmqpProducerCache getProducerCache()
+    {
+        if (producerCache == null)
+        {
+            producerCache = new AmqpProducerCache(producerCacheSize, producerIdleTimeoutMs,
+                    new AmqpProducerCache.ProducerFactory()
+            {
+                public org.apache.qpid.amqp_1_0.jms.MessageProducer createProducer(String endpoint) 
+                        throws JMSException
+                {
+                    Destination sendDestination = 
+                            getDestination(getProducerSession(), endpoint);
+                    return getProducerSession().createProducer(sendDestination);
+                }
+            });
+        }
+        return producerCache;
+    }
+    
+    /**
+     * Gets the producer for the given endpoint, which must be released once sent with
+     */
     private org.apache.qpid.amqp_1_0.jms.MessageProducer getMessageProducer(String endpoint) throws JMSException
     {
         if (sendEndpoint.equals(endpoint))
         {
             return getDefaultMessageProducer();
         }
-        Destination sendDestination = 
-                getDestination(getProducerSession(), endpoint);
-        return getProducerSession().createProducer(sendDestination);
+        return getProducerCache().checkout(endpoint);
+    }
+    
+    private void releaseMessageProducer(String endpoint, org.apache.qpid.amqp_1_0.jms.MessageProducer producer)
+    {
+        AmqpProducerCache cache;
+        synchronized (this)
+        {
+            cache = producerCache;
+        }
+        if (!sendEndpoint.equals(endpoint) && cache != null)
+        {
+            cache.release(producer);
+        }
+    }
+    
+    private void sendJmsMessage(javax.jms.Message jmsMessage, String endpoint, Integer priority) throws JMSException
+    {
+        org.apache.qpid.amqp_1_0.jms.MessageProducer producer = getMessageProducer(endpoint);
+        try
+        {
+            if (priority == null)
+            {
+                producer.send(jmsMessage);
+            }
+            else
+            {
+                producer.send(jmsMessage, producer.getDeliveryMode(), priority, producer.getTimeToLive());
+            }
+        }
+        finally
+        {
+            releaseMessageProducer(endpoint, producer);
+        }
+    }
+    
+    /**
+     * Sends a message which exceeded the maximum deliveries to the dead letter endpoint
+     * 
+     * @param message
+     */
+    protected void deadLetter(javax.jms.Message message)
+    {
+        String messageId = AmqpSessionAcknowledger.getMessageId(message);
+        if (StringUtils.isEmpty(deadLetterEndpoint))
+        {
+            logger.error("Discarding message " + messageId + " delivered more than " + 
+                    maxDeliveries + " times");
+            return;
+        }
+        try
+        {
+            sendJmsMessage(message, deadLetterEndpoint, null);
+            logger.warn("Moved message " + messageId + " delivered more than " + 
+                    maxDeliveries + " times to " + deadLetterEndpoint);
+        }
+        catch (JMSException e)
+        {
+            logger.error("Error moving message " + messageId + " to " + deadLetterEndpoint + 
+                    ", discarding: " + e.getMessage(), e);
+        }
     }
     
     public void send(Object message) {
@@ -302,32 +869,86 @@ public class AmqpDirectEndpoint implements MessageProducer
         send(message, sendEndpoint, headers);
     }
     
-    @Override
-    public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+    /**
+     * Sets the given headers on the JMS message.
+     * <p>
+     * The {@link #HEADER_JMS_CORRELATION_ID} and {@link #HEADER_JMS_TYPE} headers set
+     * the corresponding JMS header, {@link #HEADER_JMS_PRIORITY} is returned to be used
+     * when sending.  All others are set as message properties, with values other than
+     * strings, numbers and booleans converted to strings.
+     * 
+     * @param jmsMessage
+     * @param headers
+     * @return the JMS priority or null if not given
+     * @throws JMSException
+     */
+    protected Integer applyHeaders(javax.jms.Message jmsMessage, Map<String, Object> headers) throws JMSException
     {
-        // TODO: Would need to inspect all headers sent in to detect type and/or JMS property key
-        throw new UnsupportedOperationException("Headers not currently supported");
+        if (headers == null)
+        {
+            return null;
+        }
+        Integer priority = null;
+        for (Map.Entry<String, Object> header : headers.entrySet())
+        {
+            String name = header.getKey();
+            Object value = header.getValue();
+            if (value == null)
+            {
+                continue;
+            }
+            if (HEADER_JMS_PRIORITY.equals(name))
+            {
+                priority = (value instanceof Number) ? 
+                        ((Number) value).intValue() : Integer.valueOf(value.toString().trim());
+                if (priority < 0 || priority > 9)
+                {
+                    throw new IllegalArgumentException(HEADER_JMS_PRIORITY + " must be between 0 and 9");
+                }
+            }
+            else if (HEADER_JMS_CORRELATION_ID.equals(name))
+            {
+                jmsMessage.setJMSCorrelationID(value.toString());
+            }
+            else if (HEADER_JMS_TYPE.equals(name))
+            {
+                jmsMessage.setJMSType(value.toString());
+            }
+            else if (value instanceof String || value instanceof Number || value instanceof Boolean)
+            {
+                jmsMessage.setObjectProperty(name, value);
+            }
+            else
+            {
+                jmsMessage.setStringProperty(name, value.toString());
+            }
+        }
+        return priority;
     }
     
-    public void send(Object message, String queueName) {
+    @Override
+    public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+    {
         try
         {
-            Writer strWriter = new StringWriter();
-            objectMapper.writeValue(strWriter, message);
-            String stringMessage = strWriter.toString();
-
             if (StringUtils.isEmpty(queueName))
             {
                 queueName = sendEndpoint;
             }
             
-            TextMessage textMessage = getProducerSession().createTextMessage(stringMessage);
+            javax.jms.Message jmsMessage = createMessage(message);
+            Integer priority = applyHeaders(jmsMessage, headers);
+            Long deadline = AbstractRequest.getDeadline(message);
+            if (deadline != null)
+            {
+                jmsMessage.setLongProperty(AbstractRequest.HEADER_DEADLINE, deadline);
+            }
             
             if (logger.isTraceEnabled())
             {
-                logger.trace("Sending message to " + host + ":" + queueName + ": " + stringMessage);
+                logger.trace("Sending " + contentType + " message to " + host + ":" + queueName);
             }
-            getMessageProducer(queueName).send(textMessage);
+            sendJmsMessage(jmsMessage, queueName, priority);
         }
         catch (Exception e)
         {
@@ -335,6 +956,135 @@ public class AmqpDirectEndpoint implements MessageProducer
         }
     }
     
+    /**
+     * Marshals the given message into a JMS message according to the configured
+     * content type and compression threshold
+     * 
+     * @param message
+     * @return the JMS message
+     * @throws JMSException
+     * @throws IOException
+     */
+    protected javax.jms.Message createMessage(Object message) throws JMSException, IOException
+    {
+        boolean isSmile = ObjectMapperFactory.isSmile(contentType);
+        if (!isSmile && !sendJsonAsBytes
+                && compressionThreshold == MessageCompressionUtils.COMPRESSION_DISABLED)
+        {
+            Writer strWriter = new StringWriter();
+            objectMapper.writeValue(strWriter, message);
+            return getProducerSession().createTextMessage(strWriter.toString());
+        }
+        
+        byte[] bytes = isSmile ? 
+                getBinaryObjectMapper().writeValueAsBytes(message) : objectMapper.writeValueAsBytes(message);
+        boolean isCompressed = MessageCompressionUtils.isCompressionRequired(bytes.length, compressionThreshold);
+        if (!isSmile && !isCompressed && !sendJsonAsBytes)
+        {
+            return getProducerSession().createTextMessage(new String(bytes, StandardCharsets.UTF_8));
+        }
+        
+        BytesMessage bytesMessage = getProducerSession().createBytesMessage();
+        if (isCompressed)
+        {
+            bytes = MessageCompressionUtils.compress(bytes);
+            bytesMessage.setStringProperty(MessageCompressionUtils.HEADER_CONTENT_ENCODING, 
+                    MessageCompressionUtils.CONTENT_ENCODING_DEFLATE);
+        }
+        bytesMessage.writeBytes(bytes);
+        bytesMessage.setStringProperty(ObjectMapperFactory.HEADER_CONTENT_TYPE, contentType);
+        return bytesMessage;
+    }
+    
+    public void send(Object message, String queueName) {
+        send(message, queueName, null);
+    }
+    
+    private synchronized ExecutorService getSenderExecutorService()
+    {
+        if (senderExecutorService == null)
+        {
+            inFlightPermits = new Semaphore(maxInFlight);
+            senderExecutorService = Executors.newFixedThreadPool(senderThreads, new ThreadFactory()
+            {
+                private final AtomicInteger threadCount = new AtomicInteger();
+                
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, 
+                            AmqpDirectEndpoint.class.getSimpleName() + "-sender-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return senderExecutorService;
+    }
+    
+    public CompletableFuture<Void> sendAsync(Object message)
+    {
+        return sendAsync(message, sendEndpoint);
+    }
+    
+    /**
+     * Hands the message off to a sender thread, blocking the caller only
+     * if the maximum number of messages are already in flight.
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(final Object message, final String queueName) throws MessagingException
+    {
+        ExecutorService executorService = getSenderExecutorService();
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try
+        {
+            inFlightPermits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting to send message", e);
+        }
+        try
+        {
+            executorService.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        send(message, queueName);
+                        future.complete(null);
+                    }
+                    catch (Exception e)
+                    {
+                        future.completeExceptionally(e);
+                    }
+                    finally
+                    {
+                        inFlightPermits.release();
+                    }
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            inFlightPermits.release();
+            throw new MessagingException("Error queueing message", e);
+        }
+        return future;
+    }
+    
+    /**
+     * Gets the number of messages given to {@link #sendAsync(Object, String)} not yet sent
+     * 
+     * @return the in flight message count
+     */
+    public int getInFlightCount()
+    {
+        Semaphore permits = inFlightPermits;
+        return permits == null ? 0 : maxInFlight - permits.availablePermits();
+    }
+    
     public void startListener() {
         if (listener == null)
         {
@@ -352,6 +1102,174 @@ public class AmqpDirectEndpoint implements MessageProducer
         return listener;
     }
     
+    /**
+     * Closes the receivers on the receive endpoint so that no further messages
+     * are pulled from the broker, messages prefetched but not yet delivered are
+     * released back to the broker.  The consumer sessions are kept open.
+     * <p>
+     * Not supported in client acknowledge mode, where the acknowledgement
+     * window already limits delivery.
+     */
+    @Override
+    public synchronized void pause() throws MessagingException
+    {
+        if (isClientAcknowledge)
+        {
+            throw new MessagingException("Pausing is not supported in client acknowledge mode, " +
+                    "the acknowledgement window limits delivery");
+        }
+        if (isPaused)
+        {
+            return;
+        }
+        try
+        {
+            for (org.apache.qpid.amqp_1_0.jms.MessageConsumer receiver : receivers)
+            {
+                receiver.close();
+            }
+            receivers.clear();
+            isPaused = true;
+            logger.debug("Paused listener on " + host + ":" + receiveEndpoint);
+        }
+        catch (JMSException e)
+        {
+            throw new MessagingException("Error pausing listener", e);
+        }
+    }
+    
+    /**
+     * Re-creates a receiver on each consumer session
+     */
+    @Override
+    public synchronized void resume() throws MessagingException
+    {
+        if (!isPaused)
+        {
+            return;
+        }
+        try
+        {
+            for (Session session : consumerSessions)
+            {
+                createReceiver(session);
+            }
+            isPaused = false;
+            logger.debug("Resumed listener on " + host + ":" + receiveEndpoint);
+        }
+        catch (JMSException e)
+        {
+            throw new MessagingException("Error resuming listener", e);
+        }
+    }
+    
+    /**
+     * Stops receiving messages, waits up to the close timeout for messages being processed
+     * to be acknowledged and messages given to {@link #sendAsync(Object, String)} to be sent,
+     * then closes the connections.  Messages not acknowledged by then are redelivered.
+     * <p>
+     * The endpoint can't be used once closed.
+     * 
+     * @throws MessagingException
+     * @throws InterruptedException
+     */
+    public void close() throws MessagingException, InterruptedException
+    {
+        Connection connection;
+        List<AmqpSessionAcknowledger> sessionAcknowledgers;
+        ExecutorService executorService;
+        synchronized (this)
+        {
+            if (isClosed)
+            {
+                return;
+            }
+            isClosed = true;
+            connection = consumerConnection;
+            sessionAcknowledgers = new ArrayList<AmqpSessionAcknowledger>(acknowledgers.values());
+            executorService = senderExecutorService;
+        }
+        long end = System.currentTimeMillis() + closeTimeoutMs;
+        try
+        {
+            // Not under the lock as listeners in progress may need it to send replies
+            if (connection != null)
+            {
+                connection.stop();
+            }
+            for (AmqpSessionAcknowledger acknowledger : sessionAcknowledgers)
+            {
+                if (!acknowledger.flush(Math.max(0, end - System.currentTimeMillis())))
+                {
+                    logger.warn("Timed out waiting for messages in progress, they will be redelivered");
+                }
+            }
+            if (executorService != null)
+            {
+                executorService.shutdown();
+                if (!executorService.awaitTermination(
+                        Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+                {
+                    logger.warn("Timed out waiting for " + getInFlightCount() + " message(s) to be sent");
+                }
+            }
+        }
+        catch (JMSException e)
+        {
+            throw new MessagingException("Error stopping listener", e);
+        }
+        finally
+        {
+            closeConnections();
+        }
+        logger.debug("Closed endpoint on " + host + ":" + receiveEndpoint);
+    }
+    
+    private synchronized void closeConnections() throws MessagingException
+    {
+        try
+        {
+            if (producerCache != null)
+            {
+                producerCache.clear();
+            }
+            if (consumerConnection != null)
+            {
+                consumerConnection.close();
+            }
+            if (producerConnection != null)
+            {
+                producerConnection.close();
+            }
+        }
+        catch (JMSException e)
+        {
+            throw new MessagingException("Error closing connections", e);
+        }
+        finally
+        {
+            for (ExecutorService acknowledgerExecutorService : acknowledgerExecutorServices)
+            {
+                acknowledgerExecutorService.shutdown();
+            }
+            acknowledgerExecutorServices.clear();
+            receivers.clear();
+            consumerSessions.clear();
+            acknowledgers.clear();
+            consumerConnection = null;
+            producerConnection = null;
+            producerSession = null;
+            defaultMessageProducer = null;
+            producerCache = null;
+        }
+    }
+    
+    @Override
+    public synchronized boolean isPaused()
+    {
+        return isPaused;
+    }
+    
     public boolean isInitialized()
     {
         return listener != null && listener.isInitialized;
@@ -371,6 +1289,8 @@ public class AmqpDirectEndpoint implements MessageProducer
         builder.append(", ");
         builder.append("receiveEndpoint: " + receiveEndpoint);
         builder.append(", ");
+        builder.append("consumers: " + consumers);
+        builder.append(", ");
         builder.append("isInitialized: " + isInitialized());
         builder.append("]");
         return builder.toString();
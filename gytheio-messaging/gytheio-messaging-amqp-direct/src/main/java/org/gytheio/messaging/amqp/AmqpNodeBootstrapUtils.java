@@ -42,6 +42,18 @@ public class AmqpNodeBootstrapUtils
     public static final String PROP_MESSAGING_BROKER_PASSWORD = "gytheio.messaging.broker.password";
     public static final String PROP_MESSAGING_QUEUE_REQUEST = "gytheio.messaging.queue.request";
     public static final String PROP_MESSAGING_QUEUE_REPLY = "gytheio.messaging.queue.reply";
+    public static final String PROP_MESSAGING_CONSUMERS = "gytheio.messaging.consumers";
+    public static final String PROP_MESSAGING_PRODUCER_MAX_IN_FLIGHT = "gytheio.messaging.producer.maxinflight";
+    public static final String PROP_MESSAGING_PRODUCER_SYNC_PUBLISH = "gytheio.messaging.producer.syncpublish";
+    public static final String PROP_MESSAGING_CONTENT_TYPE = "gytheio.messaging.contenttype";
+    public static final String PROP_MESSAGING_JSON_BYTES = "gytheio.messaging.json.bytes";
+    public static final String PROP_MESSAGING_WRITE_TYPE_IDS = "gytheio.messaging.typeids";
+    public static final String PROP_MESSAGING_COMPRESSION_THRESHOLD = "gytheio.messaging.compression.threshold";
+    public static final String PROP_MESSAGING_SELECTOR = "gytheio.messaging.selector";
+    public static final String PROP_MESSAGING_CLIENT_ACKNOWLEDGE = "gytheio.messaging.ack.client";
+    public static final String PROP_MESSAGING_PREFETCH = "gytheio.messaging.prefetch";
+    public static final String PROP_MESSAGING_MAX_DELIVERIES = "gytheio.messaging.maxdeliveries";
+    public static final String PROP_MESSAGING_QUEUE_DEAD_LETTER = "gytheio.messaging.queue.deadletter";
 
     /**
      * Creates an AMQP endpoint (sender and receiver) from the given arguments
@@ -110,9 +122,74 @@ public class AmqpNodeBootstrapUtils
         String receiveQueueName = properties.getProperty(PROP_MESSAGING_QUEUE_REQUEST);
         String replyQueueName = properties.getProperty(PROP_MESSAGING_QUEUE_REPLY);
         validate(brokerUrl, receiveQueueName, replyQueueName);
-        return createEndpoint(messageConsumer, 
+        AmqpDirectEndpoint endpoint = createEndpoint(messageConsumer, 
                 brokerUrl, brokerUsername, brokerPassword,
                 receiveQueueName, replyQueueName);
+        
+        String consumers = properties.getProperty(PROP_MESSAGING_CONSUMERS);
+        if (!StringUtils.isEmpty(consumers))
+        {
+            endpoint.setConsumers(Integer.parseInt(consumers.trim()));
+        }
+        String maxInFlight = properties.getProperty(PROP_MESSAGING_PRODUCER_MAX_IN_FLIGHT);
+        if (!StringUtils.isEmpty(maxInFlight))
+        {
+            endpoint.setMaxInFlight(Integer.parseInt(maxInFlight.trim()));
+        }
+        String syncPublish = properties.getProperty(PROP_MESSAGING_PRODUCER_SYNC_PUBLISH);
+        if (!StringUtils.isEmpty(syncPublish))
+        {
+            endpoint.setSyncPublish(Boolean.valueOf(syncPublish.trim()));
+        }
+        String contentType = properties.getProperty(PROP_MESSAGING_CONTENT_TYPE);
+        if (!StringUtils.isEmpty(contentType))
+        {
+            endpoint.setContentType(contentType.trim());
+        }
+        String sendJsonAsBytes = properties.getProperty(PROP_MESSAGING_JSON_BYTES);
+        if (!StringUtils.isEmpty(sendJsonAsBytes))
+        {
+            endpoint.setSendJsonAsBytes(Boolean.valueOf(sendJsonAsBytes.trim()));
+        }
+        String compressionThreshold = properties.getProperty(PROP_MESSAGING_COMPRESSION_THRESHOLD);
+        if (!StringUtils.isEmpty(compressionThreshold))
+        {
+            endpoint.setCompressionThreshold(Integer.parseInt(compressionThreshold.trim()));
+        }
+        String messageSelector = properties.getProperty(PROP_MESSAGING_SELECTOR);
+        if (!StringUtils.isEmpty(messageSelector))
+        {
+            endpoint.setMessageSelector(messageSelector.trim());
+        }
+        String clientAcknowledge = properties.getProperty(PROP_MESSAGING_CLIENT_ACKNOWLEDGE);
+        if (!StringUtils.isEmpty(clientAcknowledge))
+        {
+            endpoint.setClientAcknowledge(Boolean.valueOf(clientAcknowledge.trim()));
+        }
+        String prefetch = properties.getProperty(PROP_MESSAGING_PREFETCH);
+        if (!StringUtils.isEmpty(prefetch))
+        {
+            endpoint.setPrefetch(Integer.parseInt(prefetch.trim()));
+        }
+        String maxDeliveries = properties.getProperty(PROP_MESSAGING_MAX_DELIVERIES);
+        if (!StringUtils.isEmpty(maxDeliveries))
+        {
+            endpoint.setMaxDeliveries(Integer.parseInt(maxDeliveries.trim()));
+        }
+        String deadLetterQueueName = properties.getProperty(PROP_MESSAGING_QUEUE_DEAD_LETTER);
+        if (!StringUtils.isEmpty(deadLetterQueueName))
+        {
+            endpoint.setDeadLetterEndpoint(deadLetterQueueName.trim());
+        }
+        String writeTypeIds = properties.getProperty(PROP_MESSAGING_WRITE_TYPE_IDS);
+        if (!StringUtils.isEmpty(writeTypeIds) && Boolean.valueOf(writeTypeIds.trim()))
+        {
+            endpoint.setObjectMapper(ObjectMapperFactory.createInstance(
+                    ObjectMapperFactory.CONTENT_TYPE_JSON, true));
+            endpoint.setBinaryObjectMapper(ObjectMapperFactory.createInstance(
+                    ObjectMapperFactory.CONTENT_TYPE_SMILE, true));
+        }
+        return endpoint;
     }
     
     public static void validate(
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.amqp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.jms.JMSException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.qpid.amqp_1_0.jms.MessageProducer;
+
+/**
+ * A bounded, least recently used cache of AMQP message producers keyed by
+ * endpoint, avoiding a new link attach for every message sent to a
+ * non-default destination, i.e. per-client reply queues.
+ * <p>
+ * Producers are checked out with {@link #checkout(String)} and handed back with
+ * {@link #release(MessageProducer)} once sent with.  They're evicted when the cache
+ * is full or they have not been used within the idle timeout, but only closed once
+ * no longer checked out.  Idle producers are swept on access so no background
+ * thread is needed.
+ * <p>
+ * Producers are created and closed outside the cache lock, so a slow link attach
+ * or detach only holds up senders to that endpoint.  Concurrent checkouts of an
+ * endpoint not yet cached wait for the single producer being created for it.
+ */
+public class AmqpProducerCache
+{
+    private static final Log logger = LogFactory.getLog(AmqpProducerCache.class);
+    
+    /**
+     * Creates producers for endpoints not present in the cache
+     */
+    public interface ProducerFactory
+    {
+        public MessageProducer createProducer(String endpoint) throws JMSException;
+    }
+    
+    private static class CachedProducer
+    {
+        private final CompletableFuture<MessageProducer> producer = new CompletableFuture<MessageProducer>();
+        private long lastUsed;
+        private int useCount;
+        private boolean isEvicted;
+    }
+    
+    private final int maxSize;
+    private final long idleTimeoutMs;
+    private final ProducerFactory producerFactory;
+    private final LinkedHashMap<String, CachedProducer> producers;
+    private final Map<MessageProducer, CachedProducer> checkedOut = 
+            new IdentityHashMap<MessageProducer, CachedProducer>();
+    // Evicted producers to be closed once the lock is released, guarded by this
+    private List<CachedProducer> pendingClose = new ArrayList<CachedProducer>();
+    
+    /**
+     * Constructor
+     * 
+     * @param maxSize the maximum number of open producers
+     * @param idleTimeoutMs the time after which an unused producer is closed, or -1 for no timeout
+     * @param producerFactory the factory used to create missing producers
+     */
+    public AmqpProducerCache(int maxSize, long idleTimeoutMs, ProducerFactory producerFactory)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.producerFactory = producerFactory;
+        this.producers = new LinkedHashMap<String, CachedProducer>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = -2386326585420945567L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedProducer> eldest)
+            {
+                if (size() > AmqpProducerCache.this.maxSize)
+                {
+                    evict(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Checks out the cached producer for the given endpoint, creating it if needed,
+     * which must be released once sent with
+     * 
+     * @param endpoint
+     * @return the message producer
+     * @throws JMSException
+     */
+    public MessageProducer checkout(String endpoint) throws JMSException
+    {
+        CachedProducer cached;
+        boolean isCreator = false;
+        synchronized (this)
+        {
+            long now = System.currentTimeMillis();
+            evictIdle(now);
+            cached = producers.get(endpoint);
+            if (cached == null)
+            {
+                cached = new CachedProducer();
+                producers.put(endpoint, cached);
+                isCreator = true;
+            }
+            cached.lastUsed = now;
+            cached.useCount++;
+        }
+        closePending();
+        if (isCreator)
+        {
+            create(endpoint, cached);
+        }
+        MessageProducer producer = await(endpoint, cached);
+        synchronized (this)
+        {
+            checkedOut.put(producer, cached);
+        }
+        return producer;
+    }
+    
+    private void create(String endpoint, CachedProducer cached) throws JMSException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Creating producer for " + endpoint);
+        }
+        try
+        {
+            cached.producer.complete(producerFactory.createProducer(endpoint));
+        }
+        catch (JMSException | RuntimeException e)
+        {
+            cached.producer.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * Waits for the producer of a checkout to be created, undoing the checkout if it failed
+     */
+    private MessageProducer await(String endpoint, CachedProducer cached) throws JMSException
+    {
+        try
+        {
+            return cached.producer.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            checkoutFailed(endpoint, cached);
+            throw new JMSException("Interrupted waiting for producer for " + endpoint);
+        }
+        catch (ExecutionException e)
+        {
+            checkoutFailed(endpoint, cached);
+            if (e.getCause() instanceof JMSException)
+            {
+                throw (JMSException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            JMSException jmsException = new JMSException("Could not create producer for " + endpoint);
+            jmsException.initCause(e.getCause());
+            throw jmsException;
+        }
+    }
+    
+    private void checkoutFailed(String endpoint, CachedProducer cached)
+    {
+        synchronized (this)
+        {
+            cached.useCount--;
+            if (cached.producer.isCompletedExceptionally())
+            {
+                if (producers.get(endpoint) == cached)
+                {
+                    producers.remove(endpoint);
+                }
+            }
+            else if (cached.useCount == 0 && cached.isEvicted)
+            {
+                pendingClose.add(cached);
+            }
+        }
+        closePending();
+    }
+    
+    /**
+     * Hands back a producer from {@link #checkout(String)}, closing it if
+     * it was evicted while checked out
+     * 
+     * @param producer
+     */
+    public void release(MessageProducer producer)
+    {
+        synchronized (this)
+        {
+            CachedProducer cached = checkedOut.get(producer);
+            if (cached == null)
+            {
+                return;
+            }
+            cached.useCount--;
+            if (cached.useCount == 0)
+            {
+                checkedOut.remove(producer);
+                if (cached.isEvicted)
+                {
+                    pendingClose.add(cached);
+                }
+            }
+        }
+        closePending();
+    }
+    
+    /**
+     * Removes producers which have not been used within the idle timeout,
+     * must hold the lock
+     * 
+     * @param now the current time in milliseconds
+     */
+    protected void evictIdle(long now)
+    {
+        if (idleTimeoutMs < 0)
+        {
+            return;
+        }
+        // Access ordered, so idle producers are at the head
+        Iterator<Map.Entry<String, CachedProducer>> iterator = producers.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<String, CachedProducer> entry = iterator.next();
+            if (now - entry.getValue().lastUsed < idleTimeoutMs)
+            {
+                break;
+            }
+            evict(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * Removes all cached producers, closing those not checked out
+     */
+    public void clear()
+    {
+        synchronized (this)
+        {
+            for (Map.Entry<String, CachedProducer> entry : producers.entrySet())
+            {
+                evict(entry.getKey(), entry.getValue());
+            }
+            producers.clear();
+        }
+        closePending();
+    }
+    
+    public synchronized int size()
+    {
+        return producers.size();
+    }
+    
+    private void evict(String endpoint, CachedProducer cached)
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Evicting producer for " + endpoint);
+        }
+        cached.isEvicted = true;
+        if (cached.useCount == 0)
+        {
+            pendingClose.add(cached);
+        }
+    }
+    
+    private synchronized List<CachedProducer> takePendingClose()
+    {
+        if (pendingClose.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        List<CachedProducer> toClose = pendingClose;
+        pendingClose = new ArrayList<CachedProducer>();
+        return toClose;
+    }
+    
+    /**
+     * Closes the evicted producers no longer checked out, must not hold the lock
+     */
+    private void closePending()
+    {
+        for (CachedProducer cached : takePendingClose())
+        {
+            if (!cached.producer.isDone() || cached.producer.isCompletedExceptionally())
+            {
+                continue;
+            }
+            MessageProducer producer = cached.producer.join();
+            try
+            {
+                producer.close();
+            }
+            catch (JMSException e)
+            {
+                logger.warn("Error closing producer: " + e.getMessage());
+            }
+        }
+    }
+
+}
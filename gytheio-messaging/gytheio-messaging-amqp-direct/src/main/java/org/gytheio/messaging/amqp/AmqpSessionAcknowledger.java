@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.amqp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.gytheio.messaging.MessageAcknowledgement;
+
+/**
+ * Tracks the messages delivered on a client acknowledge session and acknowledges
+ * them in batches.
+ * <p>
+ * JMS client acknowledgement is cumulative, acknowledging one message acknowledges
+ * every message delivered on the session so far, so acknowledging is only safe once
+ * all delivered messages have been processed.  Once <code>window</code> messages are
+ * outstanding no more are dispatched until all of them complete, at which point the
+ * whole batch is acknowledged, or recovered for redelivery if any of them failed.
+ * <p>
+ * Acknowledging and recovering are performed on the completion executor, a single
+ * thread per session, as soon as the last outstanding message completes, so a partial
+ * batch is completed even when no further messages are delivered.  Without a completion
+ * executor they are performed on the session's dispatch thread from {@link #afterDispatch()}.
+ * Messages of a recovered batch which did succeed are remembered so that their
+ * redelivery is acknowledged without processing them again, and messages delivered
+ * more than <code>maxDeliveries</code> times are reported as poison.
+ */
+public class AmqpSessionAcknowledger
+{
+    private static final Log logger = LogFactory.getLog(AmqpSessionAcknowledger.class);
+    
+    public static final String PROPERTY_DELIVERY_COUNT = "JMSXDeliveryCount";
+    public static final int DEFAULT_MAX_DELIVERIES = 5;
+    
+    private static final int MAX_TRACKED_MESSAGES = 10000;
+    
+    /**
+     * The session operations performed when a batch completes
+     */
+    public interface SessionRecovery
+    {
+        void recover() throws JMSException;
+    }
+    
+    /**
+     * What the dispatch thread should do with a registered message
+     */
+    public enum Disposition
+    {
+        /** Process the message */
+        PROCESS,
+        /** Already processed before its batch was recovered, acknowledge only */
+        PROCESSED,
+        /** Delivered too many times, dead letter and acknowledge */
+        POISON
+    }
+    
+    private final int window;
+    private final SessionRecovery sessionRecovery;
+    private int maxDeliveries = DEFAULT_MAX_DELIVERIES;
+    private Executor completionExecutor;
+    
+    private int outstanding = 0;
+    private boolean isCompletionScheduled = false;
+    private boolean isDraining = false;
+    private boolean isRecoverRequired = false;
+    private Message lastMessage;
+    private final List<String> succeededMessageIds = new ArrayList<String>();
+    private final List<String> failedMessageIds = new ArrayList<String>();
+    private final Map<String, Boolean> processedMessageIds = new BoundedMap<Boolean>();
+    private final Map<String, Integer> failedDeliveries = new BoundedMap<Integer>();
+    private long acknowledgedCount = 0;
+    private long recoveredCount = 0;
+    
+    public AmqpSessionAcknowledger(int window, SessionRecovery sessionRecovery)
+    {
+        if (window < 1)
+        {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        this.window = window;
+        this.sessionRecovery = sessionRecovery;
+    }
+    
+    /**
+     * Sets the number of deliveries after which a message is considered poison, default 5
+     * 
+     * @param maxDeliveries
+     */
+    public void setMaxDeliveries(int maxDeliveries)
+    {
+        if (maxDeliveries < 1)
+        {
+            throw new IllegalArgumentException("maxDeliveries must be at least 1");
+        }
+        this.maxDeliveries = maxDeliveries;
+    }
+    
+    /**
+     * Sets the single threaded executor which acknowledges or recovers each batch
+     * once all of its messages complete, default none
+     * 
+     * @param completionExecutor
+     */
+    public synchronized void setCompletionExecutor(Executor completionExecutor)
+    {
+        this.completionExecutor = completionExecutor;
+    }
+    
+    /**
+     * Registers a delivered message, must be called on the dispatch thread
+     * 
+     * @param message
+     * @return the acknowledgement to complete once the message is processed
+     */
+    public synchronized MessageAcknowledgement register(Message message)
+    {
+        outstanding++;
+        lastMessage = message;
+        if (outstanding >= window)
+        {
+            isDraining = true;
+        }
+        return new Acknowledgement(getMessageId(message));
+    }
+    
+    /**
+     * Determines whether a registered message should be processed
+     * 
+     * @param message
+     * @return the disposition of the message
+     */
+    public synchronized Disposition getDisposition(Message message)
+    {
+        String messageId = getMessageId(message);
+        if (messageId != null && processedMessageIds.remove(messageId) != null)
+        {
+            return Disposition.PROCESSED;
+        }
+        if (getDeliveryCount(message) > maxDeliveries)
+        {
+            return Disposition.POISON;
+        }
+        return Disposition.PROCESS;
+    }
+    
+    /**
+     * Called on the dispatch thread once a message has been handed off, waits
+     * for the batch to complete if the window is full, completing it here if
+     * there is no completion executor to do so
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void afterDispatch() throws InterruptedException
+    {
+        while (isDraining && (outstanding > 0 || isCompletionScheduled))
+        {
+            wait();
+        }
+        if (outstanding == 0 && !isCompletionScheduled)
+        {
+            completeBatch();
+        }
+    }
+    
+    /**
+     * Waits up to the given time for outstanding messages then completes the batch,
+     * only to be called once dispatching has stopped, i.e. before closing the session
+     * 
+     * @param timeoutMs
+     * @return true if the batch was completed
+     * @throws InterruptedException
+     */
+    public synchronized boolean flush(long timeoutMs) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + timeoutMs;
+        long remaining = timeoutMs;
+        while ((outstanding > 0 || isCompletionScheduled) && remaining > 0)
+        {
+            wait(remaining);
+            remaining = end - System.currentTimeMillis();
+        }
+        if (outstanding > 0 || isCompletionScheduled)
+        {
+            return false;
+        }
+        completeBatch();
+        return true;
+    }
+    
+    protected synchronized void complete(String messageId, boolean isSuccess)
+    {
+        outstanding--;
+        if (messageId != null)
+        {
+            (isSuccess ? succeededMessageIds : failedMessageIds).add(messageId);
+        }
+        if (!isSuccess)
+        {
+            isRecoverRequired = true;
+        }
+        if (outstanding == 0)
+        {
+            scheduleCompletion();
+            notifyAll();
+        }
+    }
+    
+    private void scheduleCompletion()
+    {
+        if (completionExecutor == null || isCompletionScheduled || lastMessage == null)
+        {
+            return;
+        }
+        isCompletionScheduled = true;
+        try
+        {
+            completionExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    synchronized (AmqpSessionAcknowledger.this)
+                    {
+                        isCompletionScheduled = false;
+                        if (outstanding == 0)
+                        {
+                            completeBatch();
+                        }
+                        AmqpSessionAcknowledger.this.notifyAll();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down, the batch is completed on dispatch or flush instead
+            isCompletionScheduled = false;
+        }
+    }
+    
+    private void completeBatch()
+    {
+        if (lastMessage == null)
+        {
+            return;
+        }
+        try
+        {
+            if (isRecoverRequired)
+            {
+                for (String messageId : succeededMessageIds)
+                {
+                    processedMessageIds.put(messageId, Boolean.TRUE);
+                }
+                for (String messageId : failedMessageIds)
+                {
+                    Integer failures = failedDeliveries.get(messageId);
+                    failedDeliveries.put(messageId, failures == null ? 1 : failures + 1);
+                }
+                recoveredCount++;
+                sessionRecovery.recover();
+            }
+            else
+            {
+                for (String messageId : succeededMessageIds)
+                {
+                    failedDeliveries.remove(messageId);
+                }
+                acknowledgedCount++;
+                lastMessage.acknowledge();
+            }
+        }
+        catch (JMSException e)
+        {
+            logger.error("Error completing message batch: " + e.getMessage(), e);
+        }
+        finally
+        {
+            lastMessage = null;
+            succeededMessageIds.clear();
+            failedMessageIds.clear();
+            isRecoverRequired = false;
+            isDraining = false;
+        }
+    }
+    
+    /**
+     * Gets the number of times the message has been delivered, from the
+     * <code>JMSXDeliveryCount</code> property or AMQP delivery count if present
+     * and from the batches recovered by this session
+     * 
+     * @param message
+     * @return the delivery count, at least 1
+     */
+    protected int getDeliveryCount(Message message)
+    {
+        int deliveryCount = 1;
+        try
+        {
+            if (message.propertyExists(PROPERTY_DELIVERY_COUNT))
+            {
+                deliveryCount = message.getIntProperty(PROPERTY_DELIVERY_COUNT);
+            }
+            else if (message instanceof org.apache.qpid.amqp_1_0.jms.Message)
+            {
+                UnsignedInteger failures = ((org.apache.qpid.amqp_1_0.jms.Message) message).getDeliveryFailures();
+                if (failures != null)
+                {
+                    deliveryCount = failures.intValue() + 1;
+                }
+            }
+        }
+        catch (JMSException e)
+        {
+            logger.warn("Could not read delivery count: " + e.getMessage());
+        }
+        String messageId = getMessageId(message);
+        Integer failures = messageId == null ? null : failedDeliveries.get(messageId);
+        if (failures != null)
+        {
+            deliveryCount = Math.max(deliveryCount, failures + 1);
+        }
+        return deliveryCount;
+    }
+    
+    protected static String getMessageId(Message message)
+    {
+        try
+        {
+            return message.getJMSMessageID();
+        }
+        catch (JMSException e)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * Gets the number of messages delivered but not yet processed
+     * 
+     * @return the outstanding count
+     */
+    public synchronized int getOutstanding()
+    {
+        return outstanding;
+    }
+    
+    /**
+     * Gets the number of batches acknowledged
+     * 
+     * @return the acknowledged batch count
+     */
+    public synchronized long getAcknowledgedCount()
+    {
+        return acknowledgedCount;
+    }
+    
+    /**
+     * Gets the number of batches recovered for redelivery
+     * 
+     * @return the recovered batch count
+     */
+    public synchronized long getRecoveredCount()
+    {
+        return recoveredCount;
+    }
+    
+    /**
+     * Acknowledgement which may only be completed once
+     */
+    protected class Acknowledgement implements MessageAcknowledgement
+    {
+        private final String messageId;
+        private final AtomicBoolean isCompleted = new AtomicBoolean(false);
+        
+        public Acknowledgement(String messageId)
+        {
+            this.messageId = messageId;
+        }
+        
+        @Override
+        public void acknowledge()
+        {
+            if (isCompleted.compareAndSet(false, true))
+            {
+                complete(messageId, true);
+            }
+        }
+
+        @Override
+        public void reject()
+        {
+            if (isCompleted.compareAndSet(false, true))
+            {
+                complete(messageId, false);
+            }
+        }
+    }
+    
+    /**
+     * Keeps only the most recently added message IDs
+     */
+    private static class BoundedMap<V> extends LinkedHashMap<String, V>
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+        {
+            return size() > MAX_TRACKED_MESSAGES;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.amqp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * An input stream reading directly from the body of a {@link BytesMessage} so
+ * that it can be unmarshalled without first being copied into a full array.
+ */
+public class BytesMessageInputStream extends InputStream
+{
+    private final BytesMessage message;
+    private final byte[] singleByte = new byte[1];
+    
+    public BytesMessageInputStream(BytesMessage message)
+    {
+        this.message = message;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int length = read(singleByte, 0, 1);
+        return length < 0 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        try
+        {
+            if (offset == 0)
+            {
+                return message.readBytes(buffer, length);
+            }
+            // BytesMessage can only read to the start of an array
+            byte[] chunk = new byte[length];
+            int read = message.readBytes(chunk, length);
+            if (read > 0)
+            {
+                System.arraycopy(chunk, 0, buffer, offset, read);
+            }
+            return read;
+        }
+        catch (JMSException e)
+        {
+            throw new IOException(e);
+        }
+    }
+}
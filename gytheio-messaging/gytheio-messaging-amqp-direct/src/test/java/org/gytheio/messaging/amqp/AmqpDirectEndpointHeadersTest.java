@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.amqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jms.Message;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the mapping of headers to JMS messages by {@link AmqpDirectEndpoint}
+ */
+public class AmqpDirectEndpointHeadersTest
+{
+    private enum TestEnum { VALUE_1 }
+    
+    private AmqpDirectEndpoint endpoint;
+    private Map<String, Object> calls;
+    private Message message;
+    
+    @Before
+    public void setUp()
+    {
+        endpoint = new AmqpDirectEndpoint();
+        calls = new HashMap<String, Object>();
+        message = (Message) Proxy.newProxyInstance(
+                getClass().getClassLoader(), 
+                new Class<?>[] { Message.class }, 
+                new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().endsWith("Property"))
+                {
+                    calls.put(method.getName() + ":" + args[0], args[1]);
+                }
+                else if (args != null && args.length == 1)
+                {
+                    calls.put(method.getName(), args[0]);
+                }
+                return null;
+            }
+        });
+    }
+    
+    @Test
+    public void testNoHeaders() throws Exception
+    {
+        assertNull(endpoint.applyHeaders(message, null));
+        assertEquals(0, calls.size());
+    }
+    
+    @Test
+    public void testProperties() throws Exception
+    {
+        Map<String, Object> headers = new LinkedHashMap<String, Object>();
+        headers.put("sourceMediaType", "image/png");
+        headers.put("size", 1024L);
+        headers.put("light", Boolean.TRUE);
+        headers.put("enumValue", TestEnum.VALUE_1);
+        headers.put("ignored", null);
+        
+        assertNull(endpoint.applyHeaders(message, headers));
+        assertEquals("image/png", calls.get("setObjectProperty:sourceMediaType"));
+        assertEquals(1024L, calls.get("setObjectProperty:size"));
+        assertEquals(Boolean.TRUE, calls.get("setObjectProperty:light"));
+        assertEquals("VALUE_1", calls.get("setStringProperty:enumValue"));
+        assertEquals(4, calls.size());
+    }
+    
+    @Test
+    public void testJmsHeaders() throws Exception
+    {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put(AmqpDirectEndpoint.HEADER_JMS_PRIORITY, "7");
+        headers.put(AmqpDirectEndpoint.HEADER_JMS_CORRELATION_ID, "correlation1");
+        headers.put(AmqpDirectEndpoint.HEADER_JMS_TYPE, "type1");
+        
+        assertEquals(Integer.valueOf(7), endpoint.applyHeaders(message, headers));
+        assertEquals("correlation1", calls.get("setJMSCorrelationID"));
+        assertEquals("type1", calls.get("setJMSType"));
+        assertEquals(2, calls.size());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPriority() throws Exception
+    {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put(AmqpDirectEndpoint.HEADER_JMS_PRIORITY, 10);
+        endpoint.applyHeaders(message, headers);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.amqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.amqp_1_0.jms.MessageProducer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the checkout and eviction behavior of {@link AmqpProducerCache}
+ */
+public class AmqpProducerCacheTest
+{
+    private static final long TIMEOUT_MS = 5000;
+    
+    private List<String> created;
+    private List<String> closed;
+    private List<Boolean> closedUnderLock;
+    private AmqpProducerCache cache;
+    private CountDownLatch createSlow;
+    private AmqpProducerCache.ProducerFactory factory;
+    
+    @Before
+    public void setUp()
+    {
+        created = Collections.synchronizedList(new ArrayList<String>());
+        closed = Collections.synchronizedList(new ArrayList<String>());
+        closedUnderLock = Collections.synchronizedList(new ArrayList<Boolean>());
+        createSlow = new CountDownLatch(0);
+        factory = new AmqpProducerCache.ProducerFactory()
+        {
+            public MessageProducer createProducer(final String endpoint) throws JMSException
+            {
+                created.add(endpoint);
+                if (endpoint.startsWith("queue:slow"))
+                {
+                    try
+                    {
+                        createSlow.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new JMSException("Interrupted");
+                    }
+                }
+                return (MessageProducer) Proxy.newProxyInstance(
+                        getClass().getClassLoader(), 
+                        new Class<?>[] { MessageProducer.class }, 
+                        new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        if (method.getName().equals("close"))
+                        {
+                            closed.add(endpoint);
+                            closedUnderLock.add(cache != null && Thread.holdsLock(cache));
+                        }
+                        return null;
+                    }
+                });
+            }
+        };
+    }
+    
+    /**
+     * Checks out and releases the producer for the given endpoint
+     */
+    protected MessageProducer get(AmqpProducerCache cache, String endpoint) throws JMSException
+    {
+        MessageProducer producer = cache.checkout(endpoint);
+        cache.release(producer);
+        return producer;
+    }
+    
+    @Test
+    public void testReusesProducer() throws Exception
+    {
+        AmqpProducerCache cache = new AmqpProducerCache(10, -1, factory);
+        MessageProducer producer = get(cache, "queue:a");
+        assertSame(producer, get(cache, "queue:a"));
+        assertEquals(1, created.size());
+    }
+    
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception
+    {
+        AmqpProducerCache cache = new AmqpProducerCache(2, -1, factory);
+        get(cache, "queue:a");
+        get(cache, "queue:b");
+        get(cache, "queue:a");
+        get(cache, "queue:c");
+        
+        assertEquals(2, cache.size());
+        assertEquals(1, closed.size());
+        assertEquals("queue:b", closed.get(0));
+    }
+    
+    @Test
+    public void testEvictsIdle() throws Exception
+    {
+        AmqpProducerCache cache = new AmqpProducerCache(10, 50, factory);
+        MessageProducer producer = get(cache, "queue:a");
+        Thread.sleep(100);
+        assertNotSame(producer, get(cache, "queue:a"));
+        assertEquals(1, closed.size());
+        assertEquals(2, created.size());
+    }
+    
+    @Test
+    public void testClosesEvictedProducerOnRelease() throws Exception
+    {
+        AmqpProducerCache cache = new AmqpProducerCache(1, -1, factory);
+        MessageProducer producer = cache.checkout("queue:a");
+        get(cache, "queue:b");
+        assertEquals(0, closed.size());
+        
+        cache.release(producer);
+        assertEquals(1, closed.size());
+        assertEquals("queue:a", closed.get(0));
+        assertNotSame(producer, get(cache, "queue:a"));
+    }
+    
+    @Test
+    public void testClearDefersCloseWhileCheckedOut() throws Exception
+    {
+        AmqpProducerCache cache = new AmqpProducerCache(10, -1, factory);
+        MessageProducer producer = cache.checkout("queue:a");
+        cache.checkout("queue:a");
+        cache.clear();
+        assertTrue(closed.isEmpty());
+        cache.release(producer);
+        assertTrue(closed.isEmpty());
+        cache.release(producer);
+        assertEquals(1, closed.size());
+    }
+    
+    @Test
+    public void testCreatesOnceOutsideLock() throws Exception
+    {
+        cache = new AmqpProducerCache(10, -1, factory);
+        createSlow = new CountDownLatch(1);
+        final AtomicReference<MessageProducer> first = new AtomicReference<MessageProducer>();
+        final AtomicReference<MessageProducer> second = new AtomicReference<MessageProducer>();
+        Thread thread1 = checkout("queue:slow", first);
+        Thread thread2 = checkout("queue:slow", second);
+        
+        long start = System.currentTimeMillis();
+        while (!created.contains("queue:slow") && System.currentTimeMillis() - start < TIMEOUT_MS)
+        {
+            Thread.sleep(10);
+        }
+        
+        // Another endpoint isn't held up by the attach in progress
+        start = System.currentTimeMillis();
+        get(cache, "queue:fast");
+        assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS / 2);
+        
+        createSlow.countDown();
+        thread1.join(TIMEOUT_MS);
+        thread2.join(TIMEOUT_MS);
+        assertSame(first.get(), second.get());
+        assertEquals(1, Collections.frequency(created, "queue:slow"));
+    }
+    
+    @Test
+    public void testClosesOutsideLock() throws Exception
+    {
+        cache = new AmqpProducerCache(1, -1, factory);
+        MessageProducer producer = cache.checkout("queue:a");
+        get(cache, "queue:b");
+        cache.release(producer);
+        get(cache, "queue:c");
+        cache.clear();
+        
+        assertEquals(3, closed.size());
+        assertFalse(closedUnderLock.contains(Boolean.TRUE));
+    }
+    
+    protected Thread checkout(final String endpoint, final AtomicReference<MessageProducer> producer)
+    {
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    producer.set(cache.checkout(endpoint));
+                    cache.release(producer.get());
+                }
+                catch (JMSException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+    
+    @Test
+    public void testClearClosesAll() throws Exception
+    {
+        AmqpProducerCache cache = new AmqpProducerCache(10, -1, factory);
+        get(cache, "queue:a");
+        get(cache, "queue:b");
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(closed.contains("queue:a"));
+        assertTrue(closed.contains("queue:b"));
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.amqp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.gytheio.messaging.MessageAcknowledgement;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the batching and redelivery behavior of {@link AmqpSessionAcknowledger}
+ */
+public class AmqpSessionAcknowledgerTest
+{
+    private static final long TIMEOUT_MS = 5000;
+    
+    private final AtomicInteger messageCount = new AtomicInteger();
+    private AtomicInteger acknowledgeCount;
+    private AtomicInteger recoverCount;
+    private AmqpSessionAcknowledger acknowledger;
+    
+    @Before
+    public void setUp()
+    {
+        acknowledgeCount = new AtomicInteger();
+        recoverCount = new AtomicInteger();
+        acknowledger = new AmqpSessionAcknowledger(2, new AmqpSessionAcknowledger.SessionRecovery()
+        {
+            public void recover() throws JMSException
+            {
+                recoverCount.incrementAndGet();
+            }
+        });
+    }
+    
+    protected Message createMessage()
+    {
+        return createMessage("ID:" + messageCount.incrementAndGet(), null);
+    }
+    
+    protected Message createMessage(final String messageId, final Integer deliveryCount)
+    {
+        return (Message) Proxy.newProxyInstance(
+                getClass().getClassLoader(), 
+                new Class<?>[] { Message.class }, 
+                new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("acknowledge"))
+                {
+                    acknowledgeCount.incrementAndGet();
+                }
+                else if (method.getName().equals("getJMSMessageID"))
+                {
+                    return messageId;
+                }
+                else if (method.getName().equals("propertyExists"))
+                {
+                    return deliveryCount != null;
+                }
+                else if (method.getName().equals("getIntProperty"))
+                {
+                    return deliveryCount;
+                }
+                return null;
+            }
+        });
+    }
+    
+    @Test
+    public void testAcknowledgesOnlyWhenAllComplete() throws Exception
+    {
+        MessageAcknowledgement first = acknowledger.register(createMessage());
+        MessageAcknowledgement second = acknowledger.register(createMessage());
+        
+        second.acknowledge();
+        assertEquals(0, acknowledgeCount.get());
+        assertEquals(1, acknowledger.getOutstanding());
+        
+        first.acknowledge();
+        acknowledger.afterDispatch();
+        assertEquals(1, acknowledgeCount.get());
+        assertEquals(0, acknowledger.getOutstanding());
+        assertEquals(1, acknowledger.getAcknowledgedCount());
+    }
+    
+    @Test
+    public void testCompletesOnlyOnce() throws Exception
+    {
+        MessageAcknowledgement first = acknowledger.register(createMessage());
+        acknowledger.register(createMessage());
+        first.acknowledge();
+        first.acknowledge();
+        first.reject();
+        assertEquals(1, acknowledger.getOutstanding());
+        assertEquals(0, acknowledgeCount.get());
+    }
+    
+    @Test
+    public void testCompletesOnDispatchThreadOnly() throws Exception
+    {
+        MessageAcknowledgement first = acknowledger.register(createMessage());
+        first.acknowledge();
+        assertEquals(0, acknowledgeCount.get());
+        acknowledger.afterDispatch();
+        assertEquals(1, acknowledgeCount.get());
+    }
+    
+    @Test
+    public void testCompletesPartialBatchWhenIdle() throws Exception
+    {
+        acknowledger = new AmqpSessionAcknowledger(4, new AmqpSessionAcknowledger.SessionRecovery()
+        {
+            public void recover() throws JMSException
+            {
+                recoverCount.incrementAndGet();
+            }
+        });
+        ExecutorService completionExecutor = Executors.newSingleThreadExecutor();
+        acknowledger.setCompletionExecutor(completionExecutor);
+        try
+        {
+            MessageAcknowledgement first = acknowledger.register(createMessage());
+            acknowledger.afterDispatch();
+            assertEquals(0, acknowledgeCount.get());
+            
+            // No further delivery, completing the message alone completes the batch
+            first.acknowledge();
+            long end = System.currentTimeMillis() + TIMEOUT_MS;
+            while (acknowledgeCount.get() == 0 && System.currentTimeMillis() < end)
+            {
+                Thread.sleep(10);
+            }
+            assertEquals(1, acknowledgeCount.get());
+            assertEquals(1, acknowledger.getAcknowledgedCount());
+            assertEquals(0, acknowledger.getOutstanding());
+        }
+        finally
+        {
+            completionExecutor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testRecoversBatchOnFailure() throws Exception
+    {
+        MessageAcknowledgement first = acknowledger.register(createMessage());
+        MessageAcknowledgement second = acknowledger.register(createMessage());
+        first.reject();
+        second.acknowledge();
+        acknowledger.afterDispatch();
+        assertEquals(0, acknowledgeCount.get());
+        assertEquals(1, recoverCount.get());
+        
+        // The next batch is unaffected
+        acknowledger.register(createMessage()).acknowledge();
+        acknowledger.afterDispatch();
+        assertEquals(1, acknowledgeCount.get());
+    }
+    
+    @Test
+    public void testSkipsProcessedMessagesOnRedelivery() throws Exception
+    {
+        Message failed = createMessage("ID:failed", null);
+        Message succeeded = createMessage("ID:succeeded", null);
+        acknowledger.register(failed).reject();
+        acknowledger.register(succeeded).acknowledge();
+        acknowledger.afterDispatch();
+        assertEquals(1, recoverCount.get());
+        
+        acknowledger.register(failed);
+        assertEquals(AmqpSessionAcknowledger.Disposition.PROCESS, acknowledger.getDisposition(failed));
+        acknowledger.register(succeeded);
+        assertEquals(AmqpSessionAcknowledger.Disposition.PROCESSED, acknowledger.getDisposition(succeeded));
+        
+        // Only skipped once
+        assertEquals(AmqpSessionAcknowledger.Disposition.PROCESS, acknowledger.getDisposition(succeeded));
+    }
+    
+    @Test
+    public void testPoisonAfterMaxDeliveries() throws Exception
+    {
+        acknowledger.setMaxDeliveries(2);
+        Message message = createMessage("ID:poison", null);
+        for (int i = 0; i < 2; i++)
+        {
+            MessageAcknowledgement acknowledgement = acknowledger.register(message);
+            assertEquals(AmqpSessionAcknowledger.Disposition.PROCESS, acknowledger.getDisposition(message));
+            acknowledgement.reject();
+            acknowledger.afterDispatch();
+        }
+        acknowledger.register(message);
+        assertEquals(AmqpSessionAcknowledger.Disposition.POISON, acknowledger.getDisposition(message));
+        
+        Message brokerCounted = createMessage("ID:counted", 3);
+        assertEquals(AmqpSessionAcknowledger.Disposition.POISON, acknowledger.getDisposition(brokerCounted));
+    }
+    
+    @Test
+    public void testBlocksWhenWindowFull() throws Exception
+    {
+        final MessageAcknowledgement first = acknowledger.register(createMessage());
+        final MessageAcknowledgement second = acknowledger.register(createMessage());
+        
+        Thread dispatcher = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    acknowledger.afterDispatch();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        dispatcher.start();
+        dispatcher.join(200);
+        assertTrue(dispatcher.isAlive());
+        
+        first.acknowledge();
+        dispatcher.join(200);
+        assertTrue(dispatcher.isAlive());
+        
+        second.acknowledge();
+        dispatcher.join(TIMEOUT_MS);
+        assertTrue(!dispatcher.isAlive());
+        assertEquals(1, acknowledgeCount.get());
+        assertEquals(0, acknowledger.getOutstanding());
+    }
+}
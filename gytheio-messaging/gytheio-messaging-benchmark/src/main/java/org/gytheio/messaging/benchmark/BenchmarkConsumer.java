@@ -18,12 +18,18 @@
  */
 package org.gytheio.messaging.benchmark;
 
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.gytheio.messaging.MessageConsumer;
 
 /**
- * Consumer of {@link BenchmarkMessage}s which maintains a count of messages received.
+ * Consumer of benchmark messages of a {@link BenchmarkMessageType}, {@link BenchmarkMessage}s
+ * by default, which maintains a count of messages received and a histogram of their
+ * end-to-end latency in microseconds.
  * 
  * @author Ray Gauss II
  */
@@ -32,12 +38,24 @@ public class BenchmarkConsumer implements MessageConsumer
     private static final Log logger = LogFactory.getLog(BenchmarkConsumer.class);
     
     protected int logAfterNumMessages = 1000;
-    protected int messageCount = 0;
+    protected BenchmarkMessageType messageType = new BenchmarkMessageType.SimpleMessageType();
+    protected final LongAdder messageCount = new LongAdder();
+    protected final Histogram latencyHistogram = new ConcurrentHistogram(3);
     
     public void setLogAfterNumMessages(int logAfterNumMessages)
     {
         this.logAfterNumMessages = logAfterNumMessages;
     }
+    
+    /**
+     * Sets the type of messages expected
+     * 
+     * @param messageType
+     */
+    public void setMessageType(BenchmarkMessageType messageType)
+    {
+        this.messageType = messageType;
+    }
 
     @Override
     public void onReceive(Object message)
@@ -47,12 +65,17 @@ public class BenchmarkConsumer implements MessageConsumer
             logger.trace("Receiving message, current messageCount=" + messageCount + "...");
         }
         validateMessage(message);
+        Long sentTimeMicros = messageType.getSentTimeMicros(message);
+        if (sentTimeMicros != null)
+        {
+            recordLatency(sentTimeMicros);
+        }
         
-        messageCount++;
+        messageCount.increment();
         
-        if (messageCount > 0 && messageCount % logAfterNumMessages == 0)
+        if (logger.isDebugEnabled() && messageCount.sum() % logAfterNumMessages == 0)
         {
-            logger.debug("Received " + messageCount + " messages...");
+            logger.debug("Received " + messageCount.sum() + " messages...");
         }
         else
         {
@@ -65,21 +88,43 @@ public class BenchmarkConsumer implements MessageConsumer
     
     protected void validateMessage(Object message)
     {
-        if (message == null || ((BenchmarkMessage) message).getValue() == null ||
-                !((BenchmarkMessage) message).getValue().equals(BenchmarkMessage.getDefaultValue()))
+        if (message == null)
         {
             throw new IllegalArgumentException("Could not verify message");
         }
+        messageType.validateMessage(message);
     }
 
+    /**
+     * Records the time since the message was sent
+     * 
+     * @param sentTimeMicros
+     */
+    protected void recordLatency(long sentTimeMicros)
+    {
+        long now = BenchmarkMessage.currentTimeMicros();
+        // Clock skew between hosts could make the latency appear negative
+        latencyHistogram.recordValue(Math.max(0, now - sentTimeMicros));
+    }
+    
     @Override
     public Class<?> getConsumingMessageBodyClass()
     {
-        return BenchmarkMessage.class;
+        return messageType.getMessageClass();
     }
 
     public int getMessageCount()
     {
-        return messageCount;
+        return messageCount.intValue();
+    }
+    
+    /**
+     * Gets the histogram of end-to-end latencies in microseconds
+     * 
+     * @return the latency histogram
+     */
+    public Histogram getLatencyHistogram()
+    {
+        return latencyHistogram;
     }
 }
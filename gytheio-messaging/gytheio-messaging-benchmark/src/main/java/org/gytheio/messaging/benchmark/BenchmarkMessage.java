@@ -18,6 +18,7 @@
  */
 package org.gytheio.messaging.benchmark;
 
+import java.time.Instant;
 import java.util.Date;
 import java.util.UUID;
 
@@ -33,10 +34,14 @@ public class BenchmarkMessage
 {
     private static int NUM_SECTIONS = 100;
     private static String DEFAULT_VALUE;
+    private static final long CLOCK_ANCHOR_NANOS = System.nanoTime();
+    private static final long CLOCK_ANCHOR_MICROS = toMicros(Instant.now());
     
     private String id;
     private Long timestamp;
     private String value;
+    private Long sentTimeMicros;
+    private Boolean warmup;
     
     public String getId()
     {
@@ -68,12 +73,74 @@ public class BenchmarkMessage
         this.value = value;
     }
     
+    /**
+     * Gets the wall clock time the message was sent in microseconds since the epoch,
+     * used to measure end-to-end latency
+     * 
+     * @return the sent time or null if not set
+     */
+    public Long getSentTimeMicros()
+    {
+        return sentTimeMicros;
+    }
+
+    public void setSentTimeMicros(Long sentTimeMicros)
+    {
+        this.sentTimeMicros = sentTimeMicros;
+    }
+    
+    /**
+     * Gets whether the message was sent during a warmup or ramp and should be
+     * excluded from latency statistics
+     * 
+     * @return true for warmup messages, null otherwise
+     */
+    public Boolean getWarmup()
+    {
+        return warmup;
+    }
+
+    public void setWarmup(Boolean warmup)
+    {
+        this.warmup = warmup;
+    }
+    
+    /**
+     * Gets the current time in microseconds since the epoch, comparable across
+     * JVMs on hosts with synchronized clocks.
+     * <p>
+     * The wall clock is read once and advanced by {@link System#nanoTime()} so that
+     * latencies within a JVM aren't skewed by clock adjustments during a run.
+     * 
+     * @return the current time in microseconds
+     */
+    public static long currentTimeMicros()
+    {
+        return CLOCK_ANCHOR_MICROS + (System.nanoTime() - CLOCK_ANCHOR_NANOS) / 1000;
+    }
+    
+    private static long toMicros(Instant instant)
+    {
+        return instant.getEpochSecond() * 1000000L + instant.getNano() / 1000;
+    }
+    
     public static BenchmarkMessage createInstance()
+    {
+        return createInstance(getDefaultValue());
+    }
+    
+    /**
+     * Creates a message with the given value
+     * 
+     * @param value
+     * @return the message
+     */
+    public static BenchmarkMessage createInstance(String value)
     {
         BenchmarkMessage message = new BenchmarkMessage();
         message.setId(UUID.randomUUID().toString());
         message.setTimestamp((new Date()).getTime());
-        message.setValue(getDefaultValue());
+        message.setValue(value);
         return message;
     }
     
@@ -81,23 +148,34 @@ public class BenchmarkMessage
     {
         if (DEFAULT_VALUE == null)
         {
-            String section = "Lorem ipsum dolor sit amet, consectetur adipisicing elit, "
-                    + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. "
-                    + "Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris "
-                    + "nisi ut aliquip ex ea commodo consequat. Duis aute irure dolor in "
-                    + "reprehenderit in voluptate velit esse cillum dolore eu fugiat nulla pariatur. "
-                    + "Excepteur sint occaecat cupidatat non proident, sunt in culpa qui officia "
-                    + "deserunt mollit anim id est laborum.\n\n";
-            StringBuilder value = new StringBuilder();
-            for (int i = 0; i < NUM_SECTIONS; i++)
-            {
-                value.append(section);
-            }
-            DEFAULT_VALUE = value.toString();
+            DEFAULT_VALUE = createValue(NUM_SECTIONS);
         }
         return DEFAULT_VALUE;
     }
     
+    /**
+     * Creates a value of the given number of sections of approximately 446 bytes
+     * 
+     * @param numSections
+     * @return the value
+     */
+    public static String createValue(int numSections)
+    {
+        String section = "Lorem ipsum dolor sit amet, consectetur adipisicing elit, "
+                + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. "
+                + "Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris "
+                + "nisi ut aliquip ex ea commodo consequat. Duis aute irure dolor in "
+                + "reprehenderit in voluptate velit esse cillum dolore eu fugiat nulla pariatur. "
+                + "Excepteur sint occaecat cupidatat non proident, sunt in culpa qui officia "
+                + "deserunt mollit anim id est laborum.\n\n";
+        StringBuilder value = new StringBuilder(section.length() * numSections);
+        for (int i = 0; i < numSections; i++)
+        {
+            value.append(section);
+        }
+        return value.toString();
+    }
+    
     public static void setDefaultNumSections(int numSections)
     {
         // note: optionally call before first call to getDefaultValue
@@ -110,6 +188,8 @@ public class BenchmarkMessage
             append(id).
             append(timestamp).
             append(value).
+            append(sentTimeMicros).
+            append(warmup).
             toHashCode();
     }
     
@@ -133,6 +213,8 @@ public class BenchmarkMessage
             append(id, thatMessage.id).
             append(timestamp, thatMessage.timestamp).
             append(value, thatMessage.value).
+            append(sentTimeMicros, thatMessage.sentTimeMicros).
+            append(warmup, thatMessage.warmup).
             isEquals();
     }
 }
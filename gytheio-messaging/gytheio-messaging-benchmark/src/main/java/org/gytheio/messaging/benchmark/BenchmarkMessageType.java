@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.hash.HashRequest;
+import org.gytheio.content.transform.TransformationRequest;
+import org.gytheio.content.transform.options.ImageResizeOptions;
+import org.gytheio.content.transform.options.ImageTransformationOptions;
+import org.gytheio.messaging.AbstractRequest;
+
+/**
+ * The type of message sent by a benchmark run, responsible for creating messages
+ * whose payload grows with a number of sections, validating them when received
+ * and tracking the time they were sent.
+ */
+public abstract class BenchmarkMessageType
+{
+    public static final String TYPE_SIMPLE = "simple";
+    public static final String TYPE_TRANSFORM = "transform";
+    public static final String TYPE_HASH = "hash";
+    
+    protected int numSections = 100;
+    protected boolean trackSentTimes = true;
+    
+    /**
+     * Gets a new message type for the given name
+     * 
+     * @param name {@link #TYPE_SIMPLE}, {@link #TYPE_TRANSFORM} or {@link #TYPE_HASH}
+     * @param numSections
+     * @return the message type
+     */
+    public static BenchmarkMessageType getInstance(String name, int numSections)
+    {
+        BenchmarkMessageType messageType;
+        if (TYPE_SIMPLE.equals(name))
+        {
+            messageType = new SimpleMessageType();
+        }
+        else if (TYPE_TRANSFORM.equals(name))
+        {
+            messageType = new TransformationRequestMessageType();
+        }
+        else if (TYPE_HASH.equals(name))
+        {
+            messageType = new HashRequestMessageType();
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unsupported message type: " + name);
+        }
+        messageType.setNumSections(numSections);
+        return messageType;
+    }
+    
+    /**
+     * Sets the number of sections determining the payload size, default 100
+     * 
+     * @param numSections
+     */
+    public void setNumSections(int numSections)
+    {
+        this.numSections = numSections;
+    }
+    
+    public int getNumSections()
+    {
+        return numSections;
+    }
+    
+    /**
+     * Sets whether sent times are tracked for latency, disabled when producing
+     * only for message types which track sent times locally
+     * 
+     * @param trackSentTimes
+     */
+    public void setTrackSentTimes(boolean trackSentTimes)
+    {
+        this.trackSentTimes = trackSentTimes;
+    }
+    
+    /**
+     * Gets the name of the type used in options and reports
+     * 
+     * @return the name
+     */
+    public abstract String getName();
+    
+    /**
+     * Gets the class messages of this type are unmarshalled to
+     * 
+     * @return the message class
+     */
+    public abstract Class<?> getMessageClass();
+    
+    /**
+     * Creates a new message
+     * 
+     * @return the message
+     */
+    public abstract Object createMessage();
+    
+    /**
+     * Records the time the given message was sent
+     * 
+     * @param message
+     * @param sentTimeMicros
+     * @param warmup true if the message should be excluded from latency statistics
+     */
+    public abstract void setSentTime(Object message, long sentTimeMicros, boolean warmup);
+    
+    /**
+     * Gets the time the given received message was sent
+     * 
+     * @param message
+     * @return the sent time in microseconds or null if unknown or a warmup message
+     */
+    public abstract Long getSentTimeMicros(Object message);
+    
+    /**
+     * Checks the given received message matches those created
+     * 
+     * @param message
+     * @throws IllegalArgumentException if the message could not be verified
+     */
+    public abstract void validateMessage(Object message);
+    
+    /**
+     * Message type for {@link BenchmarkMessage}s whose text value has the given number
+     * of sections and which carry their sent time
+     */
+    public static class SimpleMessageType extends BenchmarkMessageType
+    {
+        private String value;
+        
+        @Override
+        public void setNumSections(int numSections)
+        {
+            super.setNumSections(numSections);
+            value = null;
+        }
+        
+        protected String getValue()
+        {
+            if (value == null)
+            {
+                value = BenchmarkMessage.createValue(numSections);
+            }
+            return value;
+        }
+        
+        @Override
+        public String getName()
+        {
+            return TYPE_SIMPLE;
+        }
+        
+        @Override
+        public Class<?> getMessageClass()
+        {
+            return BenchmarkMessage.class;
+        }
+        
+        @Override
+        public Object createMessage()
+        {
+            return BenchmarkMessage.createInstance(getValue());
+        }
+        
+        @Override
+        public void setSentTime(Object message, long sentTimeMicros, boolean warmup)
+        {
+            ((BenchmarkMessage) message).setSentTimeMicros(sentTimeMicros);
+            if (warmup)
+            {
+                ((BenchmarkMessage) message).setWarmup(true);
+            }
+        }
+        
+        /**
+         * Gets the message's sent time, falling back to its millisecond creation
+         * timestamp for messages from producers which don't set a sent time
+         */
+        @Override
+        public Long getSentTimeMicros(Object message)
+        {
+            BenchmarkMessage benchmarkMessage = (BenchmarkMessage) message;
+            if (Boolean.TRUE.equals(benchmarkMessage.getWarmup()))
+            {
+                return null;
+            }
+            return benchmarkMessage.getSentTimeMicros() != null ? 
+                    benchmarkMessage.getSentTimeMicros() : benchmarkMessage.getTimestamp() * 1000L;
+        }
+        
+        @Override
+        public void validateMessage(Object message)
+        {
+            if (!(message instanceof BenchmarkMessage) || ((BenchmarkMessage) message).getValue() == null ||
+                    !((BenchmarkMessage) message).getValue().equals(getValue()))
+            {
+                throw new IllegalArgumentException("Could not verify message");
+            }
+        }
+    }
+    
+    /**
+     * Base for realistic Gytheio requests, which can't carry a sent time so
+     * track it by request ID, measuring latency only when the producer and
+     * consumer run in the same JVM
+     */
+    protected abstract static class AbstractRequestMessageType extends BenchmarkMessageType
+    {
+        protected final Map<String, Long> sentTimes = new ConcurrentHashMap<String, Long>();
+        
+        /**
+         * Creates the given number of content references to files in a shared store
+         * 
+         * @param count
+         * @param extension
+         * @param mediaType
+         * @param size
+         * @return the content references
+         */
+        protected List<ContentReference> createContentReferences(
+                int count, String extension, String mediaType, Long size)
+        {
+            List<ContentReference> references = new ArrayList<ContentReference>(count);
+            for (int i = 0; i < count; i++)
+            {
+                references.add(new ContentReference(
+                        "file:///mnt/gytheio/content/" + UUID.randomUUID().toString() + "." + extension,
+                        mediaType, size));
+            }
+            return references;
+        }
+        
+        @Override
+        public void setSentTime(Object message, long sentTimeMicros, boolean warmup)
+        {
+            if (trackSentTimes && !warmup)
+            {
+                sentTimes.put(((AbstractRequest) message).getRequestId(), sentTimeMicros);
+            }
+        }
+        
+        @Override
+        public Long getSentTimeMicros(Object message)
+        {
+            return sentTimes.remove(((AbstractRequest) message).getRequestId());
+        }
+        
+        /**
+         * Checks the given request has an ID and the expected number of content references
+         * 
+         * @param request
+         * @param contentReferences
+         */
+        protected void validateRequest(AbstractRequest request, List<ContentReference> contentReferences)
+        {
+            if (request.getRequestId() == null || contentReferences == null || 
+                    contentReferences.size() != numSections)
+            {
+                throw new IllegalArgumentException("Could not verify message");
+            }
+        }
+    }
+    
+    /**
+     * Message type for {@link TransformationRequest}s of a document to a thumbnail
+     * per page, with a target content reference for each section
+     */
+    public static class TransformationRequestMessageType extends AbstractRequestMessageType
+    {
+        public static final String SOURCE_MEDIA_TYPE = 
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        public static final String TARGET_MEDIA_TYPE = "image/png";
+        
+        @Override
+        public String getName()
+        {
+            return TYPE_TRANSFORM;
+        }
+        
+        @Override
+        public Class<?> getMessageClass()
+        {
+            return TransformationRequest.class;
+        }
+        
+        @Override
+        public Object createMessage()
+        {
+            ImageResizeOptions resizeOptions = new ImageResizeOptions();
+            resizeOptions.setWidth(256);
+            resizeOptions.setHeight(256);
+            resizeOptions.setMaintainAspectRatio(true);
+            resizeOptions.setResizeToThumbnail(true);
+            ImageTransformationOptions options = new ImageTransformationOptions();
+            options.setResizeOptions(resizeOptions);
+            options.setAutoOrient(true);
+            
+            TransformationRequest request = new TransformationRequest(
+                    createContentReferences(1, "docx", SOURCE_MEDIA_TYPE, 524288L),
+                    createContentReferences(numSections, "png", TARGET_MEDIA_TYPE, null),
+                    options);
+            request.setTargetMediaType(TARGET_MEDIA_TYPE);
+            return request;
+        }
+        
+        @Override
+        public void validateMessage(Object message)
+        {
+            if (!(message instanceof TransformationRequest) || 
+                    !(((TransformationRequest) message).getOptions() instanceof ImageTransformationOptions))
+            {
+                throw new IllegalArgumentException("Could not verify message");
+            }
+            validateRequest((TransformationRequest) message, 
+                    ((TransformationRequest) message).getTargetContentReferences());
+        }
+    }
+    
+    /**
+     * Message type for {@link HashRequest}s with a source content reference for each section
+     */
+    public static class HashRequestMessageType extends AbstractRequestMessageType
+    {
+        public static final String HASH_ALGORITHM = "SHA-256";
+        
+        @Override
+        public String getName()
+        {
+            return TYPE_HASH;
+        }
+        
+        @Override
+        public Class<?> getMessageClass()
+        {
+            return HashRequest.class;
+        }
+        
+        @Override
+        public Object createMessage()
+        {
+            return new HashRequest(
+                    createContentReferences(numSections, "pdf", "application/pdf", 1048576L),
+                    HASH_ALGORITHM);
+        }
+        
+        @Override
+        public void validateMessage(Object message)
+        {
+            if (!(message instanceof HashRequest) || 
+                    !HASH_ALGORITHM.equals(((HashRequest) message).getHashAlgorithm()))
+            {
+                throw new IllegalArgumentException("Could not verify message");
+            }
+            validateRequest((HashRequest) message, ((HashRequest) message).getSourceContentReferences());
+        }
+    }
+}
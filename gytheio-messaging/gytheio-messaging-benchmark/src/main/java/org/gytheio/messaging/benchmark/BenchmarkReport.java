@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Collects the {@link BenchmarkResult}s of a sweep with the settings they share and
+ * metadata about the environment, and writes them as JSON and CSV files so that
+ * runs can be compared across commits.
+ * <p>
+ * The commit is taken from the <code>gytheio.benchmark.commit</code> system property,
+ * the <code>GIT_COMMIT</code> environment variable or <code>git rev-parse HEAD</code>
+ * in the working directory, in that order.
+ */
+public class BenchmarkReport
+{
+    private static final Log logger = LogFactory.getLog(BenchmarkReport.class);
+    
+    public static final String PROP_COMMIT = "gytheio.benchmark.commit";
+    public static final String ENV_COMMIT = "GIT_COMMIT";
+    
+    protected static final String FILE_PREFIX = "benchmark-";
+    protected static final String[] CSV_LATENCY_COLUMNS = { "p50", "p90", "p99", "p99.9", "max" };
+    private static final long GIT_TIMEOUT_SECONDS = 5;
+    
+    private final Date startTime = new Date();
+    private final Map<String, Object> environment;
+    private final Map<String, Object> settings = new LinkedHashMap<String, Object>();
+    private final List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+    
+    public BenchmarkReport()
+    {
+        environment = createEnvironment();
+    }
+    
+    /**
+     * Gets a timestamp in UTC suitable for a report or file name
+     * 
+     * @param date
+     * @param pattern
+     * @return the formatted date
+     */
+    protected static String format(Date date, String pattern)
+    {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(pattern);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.format(date);
+    }
+    
+    /**
+     * Gathers metadata about the code and machine the benchmark is running on
+     * 
+     * @return the environment metadata
+     */
+    protected Map<String, Object> createEnvironment()
+    {
+        Map<String, Object> environment = new LinkedHashMap<String, Object>();
+        environment.put("timestamp", format(startTime, "yyyy-MM-dd'T'HH:mm:ss'Z'"));
+        environment.put("commit", getCommit());
+        environment.put("version", BenchmarkReport.class.getPackage().getImplementationVersion());
+        environment.put("host", getHostName());
+        environment.put("osName", System.getProperty("os.name"));
+        environment.put("osVersion", System.getProperty("os.version"));
+        environment.put("osArch", System.getProperty("os.arch"));
+        environment.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        environment.put("maxMemoryBytes", Runtime.getRuntime().maxMemory());
+        environment.put("javaVersion", System.getProperty("java.version"));
+        environment.put("javaVendor", System.getProperty("java.vendor"));
+        environment.put("javaVmName", System.getProperty("java.vm.name"));
+        return environment;
+    }
+    
+    /**
+     * Gets the commit of the code being benchmarked
+     * 
+     * @return the commit or null if unknown
+     */
+    protected String getCommit()
+    {
+        String commit = System.getProperty(PROP_COMMIT);
+        if (StringUtils.isEmpty(commit))
+        {
+            commit = System.getenv(ENV_COMMIT);
+        }
+        if (StringUtils.isEmpty(commit))
+        {
+            try
+            {
+                Process process = new ProcessBuilder("git", "rev-parse", "HEAD").redirectErrorStream(true).start();
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                String line = reader.readLine();
+                if (process.waitFor(GIT_TIMEOUT_SECONDS, TimeUnit.SECONDS) && process.exitValue() == 0)
+                {
+                    commit = line;
+                }
+                else
+                {
+                    process.destroy();
+                }
+            }
+            catch (IOException e)
+            {
+                logger.debug("Could not determine commit: " + e.getMessage());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return StringUtils.trimToNull(commit);
+    }
+    
+    protected String getHostName()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+    
+    public Map<String, Object> getEnvironment()
+    {
+        return environment;
+    }
+    
+    /**
+     * Gets the settings shared by all results such as the number of messages and threads
+     * 
+     * @return the settings
+     */
+    public Map<String, Object> getSettings()
+    {
+        return settings;
+    }
+    
+    public void addSetting(String name, Object value)
+    {
+        settings.put(name, value);
+    }
+    
+    public List<BenchmarkResult> getResults()
+    {
+        return results;
+    }
+    
+    public void addResult(BenchmarkResult result)
+    {
+        results.add(result);
+    }
+    
+    /**
+     * Writes the report as <code>benchmark-&lt;timestamp&gt;.json</code> and
+     * <code>benchmark-&lt;timestamp&gt;.csv</code> in the given directory
+     * 
+     * @param directory
+     * @return the files written
+     * @throws IOException
+     */
+    public List<File> write(File directory) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create report directory " + directory);
+        }
+        String baseName = FILE_PREFIX + format(startTime, "yyyyMMdd-HHmmss");
+        File jsonFile = new File(directory, baseName + ".json");
+        File csvFile = new File(directory, baseName + ".csv");
+        writeJson(jsonFile);
+        writeCsv(csvFile);
+        return Arrays.asList(jsonFile, csvFile);
+    }
+    
+    protected void writeJson(File file) throws IOException
+    {
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("environment", environment);
+        report.put("settings", settings);
+        report.put("results", results);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        objectMapper.writeValue(file, report);
+    }
+    
+    /**
+     * Writes a row per result, each repeating the timestamp and commit so that
+     * the rows of several reports can be concatenated
+     * 
+     * @param file
+     * @throws IOException
+     */
+    protected void writeCsv(File file) throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name()))
+        {
+            List<Object> header = new ArrayList<Object>(Arrays.<Object>asList(
+                    "timestamp", "commit", "transport", "messageType", "sections", "codec", 
+                    "concurrency", "payloadBytes", "messagesSent", "messagesReceived", "sendTimeMs", "receiveTimeMs",
+                    "throughput"));
+            for (String column : CSV_LATENCY_COLUMNS)
+            {
+                header.add("latency" + StringUtils.capitalize(column) + "Micros");
+            }
+            writer.println(toCsvRow(header));
+            for (BenchmarkResult result : results)
+            {
+                List<Object> row = new ArrayList<Object>(Arrays.<Object>asList(
+                        environment.get("timestamp"), environment.get("commit"), 
+                        result.getTransport(), result.getMessageType(), result.getSections(), result.getCodec(),
+                        result.getConcurrency(), result.getPayloadBytes(), result.getMessagesSent(), result.getMessagesReceived(),
+                        result.getSendTimeMs(), result.getReceiveTimeMs(), result.getThroughput()));
+                for (String column : CSV_LATENCY_COLUMNS)
+                {
+                    row.add(result.getLatencyMicros() != null ? result.getLatencyMicros().get(column) : null);
+                }
+                writer.println(toCsvRow(row));
+            }
+        }
+    }
+    
+    protected String toCsvRow(List<Object> values)
+    {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.size(); i++)
+        {
+            if (i > 0)
+            {
+                row.append(',');
+            }
+            String value = values.get(i) != null ? values.get(i).toString() : "";
+            if (StringUtils.containsAny(value, ',', '"', '\n'))
+            {
+                value = "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            row.append(value);
+        }
+        return row.toString();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of a single benchmark run, serialized into a {@link BenchmarkReport}.
+ * <p>
+ * Latencies are in microseconds keyed by percentile, e.g. <code>p99</code>, and <code>max</code>.
+ */
+public class BenchmarkResult
+{
+    private String transport;
+    private String messageType;
+    private int sections;
+    private String codec;
+    private Integer concurrency;
+    private int payloadBytes;
+    private int messagesSent;
+    private int messagesReceived;
+    private long sendTimeMs;
+    private long receiveTimeMs;
+    private long throughput;
+    private Map<String, Long> latencyMicros;
+    private List<Integer> throughputPerSecond;
+    
+    public String getTransport()
+    {
+        return transport;
+    }
+    
+    public void setTransport(String transport)
+    {
+        this.transport = transport;
+    }
+    
+    public String getMessageType()
+    {
+        return messageType;
+    }
+    
+    public void setMessageType(String messageType)
+    {
+        this.messageType = messageType;
+    }
+    
+    public int getSections()
+    {
+        return sections;
+    }
+    
+    public void setSections(int sections)
+    {
+        this.sections = sections;
+    }
+    
+    /**
+     * Gets the content type messages were encoded with, or null if not encoded
+     * 
+     * @return the codec content type
+     */
+    public String getCodec()
+    {
+        return codec;
+    }
+    
+    public void setCodec(String codec)
+    {
+        this.codec = codec;
+    }
+    
+    /**
+     * Gets the number of consumers processing requests in a node benchmark, or null
+     * for messaging benchmarks
+     * 
+     * @return the concurrency
+     */
+    public Integer getConcurrency()
+    {
+        return concurrency;
+    }
+    
+    public void setConcurrency(Integer concurrency)
+    {
+        this.concurrency = concurrency;
+    }
+    
+    /**
+     * Gets the size of a message encoded with the codec, or as JSON if not encoded,
+     * before any compression
+     * 
+     * @return the payload size in bytes
+     */
+    public int getPayloadBytes()
+    {
+        return payloadBytes;
+    }
+    
+    public void setPayloadBytes(int payloadBytes)
+    {
+        this.payloadBytes = payloadBytes;
+    }
+    
+    public int getMessagesSent()
+    {
+        return messagesSent;
+    }
+    
+    public void setMessagesSent(int messagesSent)
+    {
+        this.messagesSent = messagesSent;
+    }
+    
+    public int getMessagesReceived()
+    {
+        return messagesReceived;
+    }
+    
+    public void setMessagesReceived(int messagesReceived)
+    {
+        this.messagesReceived = messagesReceived;
+    }
+    
+    public long getSendTimeMs()
+    {
+        return sendTimeMs;
+    }
+    
+    public void setSendTimeMs(long sendTimeMs)
+    {
+        this.sendTimeMs = sendTimeMs;
+    }
+    
+    public long getReceiveTimeMs()
+    {
+        return receiveTimeMs;
+    }
+    
+    public void setReceiveTimeMs(long receiveTimeMs)
+    {
+        this.receiveTimeMs = receiveTimeMs;
+    }
+    
+    /**
+     * Gets the overall throughput in messages per second
+     * 
+     * @return the throughput
+     */
+    public long getThroughput()
+    {
+        return throughput;
+    }
+    
+    public void setThroughput(long throughput)
+    {
+        this.throughput = throughput;
+    }
+    
+    public Map<String, Long> getLatencyMicros()
+    {
+        return latencyMicros;
+    }
+    
+    public void setLatencyMicros(Map<String, Long> latencyMicros)
+    {
+        this.latencyMicros = latencyMicros;
+    }
+    
+    public List<Integer> getThroughputPerSecond()
+    {
+        return throughputPerSecond;
+    }
+    
+    public void setThroughputPerSecond(List<Integer> throughputPerSecond)
+    {
+        this.throughputPerSecond = throughputPerSecond;
+    }
+}
@@ -22,26 +22,41 @@ import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.camel.CamelContext;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.amqp.AMQPComponent;
-import org.apache.camel.component.jackson.JacksonDataFormat;
 import org.apache.camel.component.jms.JmsComponent;
 import org.apache.camel.impl.DefaultCamelContext;
-import org.apache.camel.spi.DataFormat;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.HdrHistogram.Histogram;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.jms.ConnectionFactory;
 
+import org.gytheio.messaging.MessageCompressionUtils;
 import org.gytheio.messaging.MessageConsumer;
 import org.gytheio.messaging.MessageProducer;
+import org.gytheio.messaging.PausableMessageEndpoint;
 import org.gytheio.messaging.amqp.AmqpDirectEndpoint;
 import org.gytheio.messaging.amqp.AmqpNodeBootstrapUtils;
 import org.gytheio.messaging.camel.CamelMessageProducer;
+import org.gytheio.messaging.camel.dataformat.ContentTypeJacksonDataFormat;
 import org.gytheio.messaging.jackson.ObjectMapperFactory;
+import org.gytheio.messaging.local.LocalEndpoint;
+import org.gytheio.messaging.local.LocalNodeBootstrapUtils;
 
 /**
  * Runner which creates an {@link AmqpDirectEndpoint} or Camel-based endpoint 
@@ -52,7 +67,13 @@ import org.gytheio.messaging.jackson.ObjectMapperFactory;
  * <ul>
  *  <li><code>tcp</code>: creates a Camel-based endpoint using JSON object marshaling/unmarshaling</li>
  *  <li><code>amqp</code>: creates an {@link AmqpDirectEndpoint} without object marshaling</li>
+ *  <li><code>local</code>: creates an in-JVM {@link LocalEndpoint} passing message objects by reference</li>
+ *  <li><code>embedded</code>: starts an {@link EmbeddedBroker} then creates a Camel-based endpoint on its 
+ *  OpenWire connector, or an {@link AmqpDirectEndpoint} on its AMQP connector for <code>embedded://amqp</code></li>
  * </ul>
+ * <p>
+ * {@link #run()} returns a {@link BenchmarkResult} and releases the endpoints so that
+ * several runs can be made in the same JVM, see {@link Bootstrap} sweeps.
  * 
  * @author Ray Gauss II
  * @author janv
@@ -62,9 +83,12 @@ public class BenchmarkRunner
     private static final Log logger = LogFactory.getLog(BenchmarkRunner.class);
 
     protected static final String DEFAULT_ENDPOINT = "queue:gytheio.test.benchmark";
+    protected static final String EMBEDDED_BROKER_URL_PREFIX = "embedded";
     protected static final String LOG_SEPERATOR = "--------------------------------------------------\n";
 
     private static final long CHECK_CONSUMER_COMPLETE_PERIOD_MS = 100;
+    private static final long THROUGHPUT_SAMPLE_PERIOD_MS = 1000;
+    private static final double[] LATENCY_PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
     
     protected int logAfterNumMessages = 1000;
     
@@ -76,6 +100,26 @@ public class BenchmarkRunner
     protected int numMessages;
     protected boolean runProducer;
     protected boolean runConsumer;
+    protected int compressionThreshold = MessageCompressionUtils.COMPRESSION_DISABLED;
+    protected String contentType;
+    protected BenchmarkMessageType messageType = new BenchmarkMessageType.SimpleMessageType();
+    
+    protected int producerThreads = 1;
+    protected int consumerThreads = 1;
+    protected int endpoints = 1;
+    protected double rate = 0;
+    protected int rampSeconds = 0;
+    protected int warmupSeconds = 0;
+    
+    protected long scheduleStartNanos;
+    protected long scheduleStartMicros;
+    
+    protected final LongAdder sentCount = new LongAdder();
+    protected final List<Integer> throughputPerSecond = Collections.synchronizedList(new ArrayList<Integer>());
+    
+    protected EmbeddedBroker embeddedBroker;
+    protected final List<CamelContext> camelContexts = new ArrayList<CamelContext>();
+    protected final List<PausableMessageEndpoint> listeningEndpoints = new ArrayList<PausableMessageEndpoint>();
     
     public BenchmarkRunner(String brokerUrl, String brokerUsername, String brokerPassword, 
                            String endpointSend, String endpointReceive, 
@@ -91,6 +135,106 @@ public class BenchmarkRunner
         this.runConsumer = runConsumer;
     }
     
+    /**
+     * Sets the body size in bytes above which messages are compressed, default
+     * {@link MessageCompressionUtils#COMPRESSION_DISABLED}
+     * 
+     * @param compressionThreshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        this.compressionThreshold = compressionThreshold;
+    }
+    
+    /**
+     * Sets the content type messages are encoded with by brokered transports,
+     * default {@link ObjectMapperFactory#CONTENT_TYPE_JSON}
+     * 
+     * @param contentType
+     */
+    public void setContentType(String contentType)
+    {
+        this.contentType = contentType;
+    }
+    
+    /**
+     * Sets the type of messages sent and expected, default {@link BenchmarkMessage}s
+     * 
+     * @param messageType
+     */
+    public void setMessageType(BenchmarkMessageType messageType)
+    {
+        this.messageType = messageType;
+    }
+    
+    /**
+     * Sets the number of threads sending messages, default 1
+     * 
+     * @param producerThreads
+     */
+    public void setProducerThreads(int producerThreads)
+    {
+        this.producerThreads = producerThreads;
+    }
+    
+    /**
+     * Sets the number of consumer threads or sessions per endpoint, default 1
+     * 
+     * @param consumerThreads
+     */
+    public void setConsumerThreads(int consumerThreads)
+    {
+        this.consumerThreads = consumerThreads;
+    }
+    
+    /**
+     * Sets the number of endpoints, each with its own connection, that producer
+     * threads are spread across and that consume messages, default 1
+     * 
+     * @param endpoints
+     */
+    public void setEndpoints(int endpoints)
+    {
+        this.endpoints = endpoints;
+    }
+    
+    /**
+     * Sets the total rate in messages per second at which messages are offered,
+     * or 0 (the default) to send as fast as possible.
+     * <p>
+     * At a fixed rate sends are scheduled on an intended timeline regardless of how
+     * long previous sends took, and latency is measured from the intended send time
+     * so that stalls aren't hidden (coordinated omission).
+     * 
+     * @param rate
+     */
+    public void setRate(double rate)
+    {
+        this.rate = rate;
+    }
+    
+    /**
+     * Sets the number of seconds over which the rate increases linearly to its
+     * target before the warmup, default 0
+     * 
+     * @param rampSeconds
+     */
+    public void setRampSeconds(int rampSeconds)
+    {
+        this.rampSeconds = rampSeconds;
+    }
+    
+    /**
+     * Sets the number of seconds at the target rate, after any ramp, whose
+     * messages are excluded from latency statistics, default 0
+     * 
+     * @param warmupSeconds
+     */
+    public void setWarmupSeconds(int warmupSeconds)
+    {
+        this.warmupSeconds = warmupSeconds;
+    }
+    
     protected String getDefaultReceiveEndpoint(String endpointSend)
     {
         return endpointSend;
@@ -98,18 +242,53 @@ public class BenchmarkRunner
     
     protected Object getBenchmarkMessage(int i)
     {
-        return BenchmarkMessage.createInstance();
+        return messageType.createMessage();
     }
     
     protected BenchmarkConsumer getBenchmarkConsumer()
     {
         BenchmarkConsumer consumer = new BenchmarkConsumer();
         consumer.setLogAfterNumMessages(logAfterNumMessages);
+        consumer.setMessageType(messageType);
         return consumer;
     }
     
+    /**
+     * Runs the benchmark, logs its results and exits the JVM
+     * 
+     * @throws Exception
+     */
     public void runBenchmark() throws Exception
     {
+        run();
+        System.exit(0);
+    }
+    
+    /**
+     * Runs the benchmark, logs its results and stops the endpoints and any embedded broker
+     * 
+     * @return the results
+     * @throws Exception
+     */
+    public BenchmarkResult run() throws Exception
+    {
+        try
+        {
+            return runEndpoints();
+        }
+        finally
+        {
+            stop();
+        }
+    }
+    
+    protected BenchmarkResult runEndpoints() throws Exception
+    {
+        String transport = brokerUrl;
+        if (brokerUrl.startsWith(EMBEDDED_BROKER_URL_PREFIX))
+        {
+            brokerUrl = startEmbeddedBroker(brokerUrl);
+        }
         if (endpointSend == null)
         {
             endpointSend = DEFAULT_ENDPOINT;
@@ -119,68 +298,42 @@ public class BenchmarkRunner
             endpointReceive = getDefaultReceiveEndpoint(endpointSend);
         }
         BenchmarkConsumer messageConsumer = null;
-        MessageProducer producer = null;
+        List<MessageProducer> producers = new ArrayList<MessageProducer>();
         
+        messageType.setTrackSentTimes(runConsumer);
         if (runConsumer)
         {
             messageConsumer = getBenchmarkConsumer();
         }
         
-        if (brokerUrl.startsWith("tcp") || brokerUrl.startsWith("failover") || brokerUrl.startsWith("ssl"))
-        {
-            logger.debug("Initializing Camel Endpoint: "+brokerUrl+(brokerUsername != null ? " ("+brokerUsername+")": ""));
-            producer = initializeCamelEndpoint(brokerUrl, brokerUsername, brokerPassword,
-                    endpointSend, endpointReceive, messageConsumer);
-        }
-        else if (brokerUrl.startsWith("amqp"))
-        {
-            // note: amqp://, amqps:// or amqp+ssl://
-            logger.debug("Initializing AmqpDirect Endpoint: "+brokerUrl+(brokerUsername != null ? " ("+brokerUsername+")": ""));
-            producer = initializeAmqpDirectEndpoint(brokerUrl, brokerUsername, brokerPassword, 
-                    endpointSend, endpointReceive, messageConsumer);
-        }
-        else
+        for (int i = 0; i < endpoints; i++)
         {
-            throw new IllegalArgumentException("Unsupported transport in " + brokerUrl);
+            producers.add(initializeEndpoint(messageConsumer));
         }
+        MessageProducer producer = producers.get(0);
         
         logStart(numMessages, brokerUrl, endpointSend, endpointReceive, runProducer, runConsumer);
         
         long start = (new Date()).getTime();
         long sendTime = 0;
+        ScheduledExecutorService throughputSampler = startThroughputSampler(messageConsumer);
         
         if (runProducer)
         {
-            // Send the messages
-            for (int i = 0; i < numMessages; i++)
-            {
-                Object message = getBenchmarkMessage(i);
-                producer.send(message);
-
-                if (i > 0 && i % logAfterNumMessages == 0)
-                {
-                    logger.debug("Sent " + (i + 1) + " messages...");
-                }
-                else
-                {
-                    if (logger.isTraceEnabled())
-                    {
-                        logger.trace("Sent " + (i + 1) + " messages...");
-                    }
-                }
-            }
+            sendMessages(producers);
             long endSend = (new Date()).getTime();
             sendTime = endSend - start;
         }
 
         long receiveTime = 0;
+        int expectedMessages = getExpectedMessageCount();
         if (runConsumer)
         {
             int noneConsumedCount = 0;
             int lastMessageCount = messageConsumer.getMessageCount();
             
             // Wait for consumer to dequeue all expected messages (or else timeout)
-            while ((lastMessageCount < numMessages) && (noneConsumedCount < 100))
+            while ((lastMessageCount < expectedMessages) && (noneConsumedCount < 100))
             {
                 try
                 {
@@ -212,6 +365,7 @@ public class BenchmarkRunner
             long end = (new Date()).getTime();
             receiveTime = end - start;
         }
+        stopThroughputSampler(throughputSampler, messageConsumer);
 
         if (producer instanceof AmqpDirectEndpoint)
         {
@@ -222,11 +376,360 @@ public class BenchmarkRunner
             Thread.sleep(delaySecs*1000);
         }
 
+        BenchmarkResult result = createResult((runConsumer ? messageConsumer : null), 
+                getBenchmarkMessage(0), sendTime, receiveTime);
+        result.setTransport(transport);
         logStatistics((runProducer ? producer : null), (runConsumer ? messageConsumer : null), 
-                getBenchmarkMessage(0), numMessages, (runConsumer ? messageConsumer.getMessageCount() : 0), 
-                sendTime, receiveTime);
-        
-        System.exit(0);
+                result, sendTime, receiveTime);
+        return result;
+    }
+    
+    /**
+     * Stops the Camel contexts, listeners and embedded broker started by the run
+     * 
+     * @throws Exception
+     */
+    protected void stop() throws Exception
+    {
+        for (CamelContext context : camelContexts)
+        {
+            context.stop();
+        }
+        camelContexts.clear();
+        for (PausableMessageEndpoint endpoint : listeningEndpoints)
+        {
+            if (endpoint instanceof LocalEndpoint)
+            {
+                ((LocalEndpoint) endpoint).stop();
+            }
+            else
+            {
+                endpoint.pause();
+            }
+        }
+        listeningEndpoints.clear();
+        if (embeddedBroker != null)
+        {
+            embeddedBroker.stop();
+            embeddedBroker = null;
+        }
+    }
+    
+    /**
+     * Gets whether the transport encodes messages, as opposed to passing them by reference
+     * 
+     * @return true if messages are encoded with the content type
+     */
+    protected boolean isEncoding()
+    {
+        return !brokerUrl.startsWith("local");
+    }
+    
+    /**
+     * Gets the size of the given message encoded with the content type, or as JSON
+     * if the transport doesn't encode messages
+     * 
+     * @param message
+     * @return the size in bytes
+     * @throws Exception
+     */
+    protected int getPayloadBytes(Object message) throws Exception
+    {
+        return ObjectMapperFactory.createInstance(isEncoding() ? contentType : null)
+                .writeValueAsBytes(message).length;
+    }
+    
+    /**
+     * Creates the results of the run
+     * 
+     * @param consumer - can be null
+     * @param message an example message
+     * @param sendTime
+     * @param receiveTime
+     * @return the results
+     * @throws Exception
+     */
+    protected BenchmarkResult createResult(BenchmarkConsumer consumer, Object message, 
+            long sendTime, long receiveTime) throws Exception
+    {
+        BenchmarkResult result = new BenchmarkResult();
+        result.setMessageType(messageType.getName());
+        result.setSections(messageType.getNumSections());
+        if (isEncoding())
+        {
+            result.setCodec(contentType != null ? contentType : ObjectMapperFactory.CONTENT_TYPE_JSON);
+        }
+        result.setPayloadBytes(getPayloadBytes(message));
+        result.setMessagesSent(runProducer ? sentCount.intValue() : 0);
+        result.setMessagesReceived(consumer != null ? consumer.getMessageCount() : 0);
+        result.setSendTimeMs(sendTime);
+        result.setReceiveTimeMs(receiveTime);
+        long elapsed = consumer != null ? receiveTime : sendTime;
+        result.setThroughput(elapsed > 0 ? Math.round(numMessages / (elapsed / 1000.0)) : 0);
+        if (consumer != null && consumer.getLatencyHistogram().getTotalCount() > 0)
+        {
+            Histogram histogram = consumer.getLatencyHistogram();
+            DecimalFormat df = new DecimalFormat("0.###");
+            Map<String, Long> latencyMicros = new LinkedHashMap<String, Long>();
+            for (double percentile : LATENCY_PERCENTILES)
+            {
+                latencyMicros.put("p" + df.format(percentile), histogram.getValueAtPercentile(percentile));
+            }
+            latencyMicros.put("max", histogram.getMaxValue());
+            result.setLatencyMicros(latencyMicros);
+        }
+        synchronized (throughputPerSecond)
+        {
+            result.setThroughputPerSecond(new ArrayList<Integer>(throughputPerSecond));
+        }
+        return result;
+    }
+    
+    /**
+     * Starts an in-process broker and gets the URL of the connector selected by the
+     * given <code>embedded://&lt;connector&gt;</code> URL, OpenWire by default
+     * 
+     * @param embeddedBrokerUrl
+     * @return the URL clients should connect to
+     * @throws Exception
+     */
+    protected String startEmbeddedBroker(String embeddedBrokerUrl) throws Exception
+    {
+        String connectorName = StringUtils.removeStart(
+                embeddedBrokerUrl.substring(EMBEDDED_BROKER_URL_PREFIX.length()), "://");
+        if (StringUtils.isEmpty(connectorName))
+        {
+            connectorName = EmbeddedBroker.CONNECTOR_OPENWIRE;
+        }
+        embeddedBroker = new EmbeddedBroker();
+        embeddedBroker.start();
+        return embeddedBroker.getConnectUrl(connectorName);
+    }
+    
+    /**
+     * Gets the number of messages the consumer should expect, each endpoint's
+     * subscription to a topic receives every message
+     * 
+     * @return the expected number of messages received
+     */
+    protected int getExpectedMessageCount()
+    {
+        if (endpointReceive.startsWith("topic"))
+        {
+            return numMessages * endpoints;
+        }
+        return numMessages;
+    }
+    
+    /**
+     * Creates an endpoint, with its own connection, for the transport given by the <code>brokerUrl</code>
+     * 
+     * @param messageConsumer - can be null
+     * @return the Gytheio message producer
+     * @throws Exception
+     */
+    protected MessageProducer initializeEndpoint(BenchmarkConsumer messageConsumer) throws Exception
+    {
+        if (brokerUrl.startsWith("tcp") || brokerUrl.startsWith("failover") || brokerUrl.startsWith("ssl"))
+        {
+            logger.debug("Initializing Camel Endpoint: "+brokerUrl+(brokerUsername != null ? " ("+brokerUsername+")": ""));
+            return initializeCamelEndpoint(brokerUrl, brokerUsername, brokerPassword,
+                    endpointSend, endpointReceive, messageConsumer);
+        }
+        else if (brokerUrl.startsWith("amqp"))
+        {
+            // note: amqp://, amqps:// or amqp+ssl://
+            logger.debug("Initializing AmqpDirect Endpoint: "+brokerUrl+(brokerUsername != null ? " ("+brokerUsername+")": ""));
+            return initializeAmqpDirectEndpoint(brokerUrl, brokerUsername, brokerPassword, 
+                    endpointSend, endpointReceive, messageConsumer);
+        }
+        else if (brokerUrl.startsWith("local"))
+        {
+            logger.debug("Initializing Local Endpoint: "+brokerUrl);
+            return initializeLocalEndpoint(brokerUrl, endpointSend, endpointReceive, messageConsumer);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unsupported transport in " + brokerUrl);
+        }
+    }
+    
+    /**
+     * Sends <code>numMessages</code> split across <code>producerThreads</code> threads,
+     * each sending through one of the given producers in turn, and waits for them to finish
+     * 
+     * @param producers
+     * @throws Exception if any thread failed to send
+     */
+    protected void sendMessages(List<MessageProducer> producers) throws Exception
+    {
+        ExecutorService executorService = Executors.newFixedThreadPool(producerThreads);
+        try
+        {
+            // All threads share the same intended timeline
+            scheduleStartNanos = System.nanoTime();
+            scheduleStartMicros = BenchmarkMessage.currentTimeMicros();
+            List<Future<?>> senders = new ArrayList<Future<?>>();
+            int firstIndex = 0;
+            for (int t = 0; t < producerThreads; t++)
+            {
+                int count = numMessages / producerThreads + (t < numMessages % producerThreads ? 1 : 0);
+                final MessageProducer producer = producers.get(t % producers.size());
+                final int threadFirstIndex = firstIndex;
+                final int threadCount = count;
+                senders.add(executorService.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        sendMessages(producer, threadFirstIndex, threadCount);
+                    }
+                }));
+                firstIndex += count;
+            }
+            for (Future<?> sender : senders)
+            {
+                sender.get();
+            }
+        }
+        finally
+        {
+            executorService.shutdown();
+        }
+    }
+    
+    /**
+     * Sends a contiguous range of benchmark messages from the calling thread
+     * 
+     * @param producer
+     * @param firstIndex
+     * @param count
+     */
+    protected void sendMessages(MessageProducer producer, int firstIndex, int count)
+    {
+        double threadRate = rate / producerThreads;
+        long unmeasuredNanos = TimeUnit.SECONDS.toNanos(rampSeconds + warmupSeconds);
+        for (int i = firstIndex; i < firstIndex + count; i++)
+        {
+            Object message = getBenchmarkMessage(i);
+            long sentTimeMicros;
+            boolean isWarmup = false;
+            if (rate > 0)
+            {
+                long intendedOffsetNanos = getIntendedSendOffsetNanos(i - firstIndex, threadRate);
+                waitUntil(scheduleStartNanos + intendedOffsetNanos);
+                // If running behind, the message is still considered sent when intended
+                sentTimeMicros = scheduleStartMicros + intendedOffsetNanos / 1000;
+                isWarmup = intendedOffsetNanos < unmeasuredNanos;
+            }
+            else
+            {
+                sentTimeMicros = BenchmarkMessage.currentTimeMicros();
+            }
+            messageType.setSentTime(message, sentTimeMicros, isWarmup);
+            producer.send(message);
+            sentCount.increment();
+
+            if (i > 0 && i % logAfterNumMessages == 0)
+            {
+                logger.debug("Sent " + sentCount.sum() + " messages...");
+            }
+            else
+            {
+                if (logger.isTraceEnabled())
+                {
+                    logger.trace("Sent " + sentCount.sum() + " messages...");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets the offset from the start of the schedule at which the given message
+     * of a producer thread is intended to be sent, with the rate increasing linearly
+     * from 0 during the ramp then held at the given rate
+     * 
+     * @param n the thread's message number, from 0
+     * @param threadRate the thread's rate in messages per second
+     * @return the intended offset in nanoseconds
+     */
+    protected long getIntendedSendOffsetNanos(int n, double threadRate)
+    {
+        double rampMessages = threadRate * rampSeconds / 2.0;
+        double seconds;
+        if (n < rampMessages)
+        {
+            // n = rate * t^2 / (2 * ramp)
+            seconds = Math.sqrt(2.0 * n * rampSeconds / threadRate);
+        }
+        else
+        {
+            seconds = rampSeconds + (n - rampMessages) / threadRate;
+        }
+        return (long) (seconds * 1000000000L);
+    }
+    
+    /**
+     * Parks the calling thread until the given {@link System#nanoTime()}
+     * 
+     * @param nanoTime
+     */
+    protected void waitUntil(long nanoTime)
+    {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0)
+        {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+    
+    /**
+     * Starts sampling the number of messages received, or sent if not consuming,
+     * each second into {@link #throughputPerSecond}
+     * 
+     * @param consumer - can be null
+     * @return the sampler to shut down once the benchmark completes
+     */
+    protected ScheduledExecutorService startThroughputSampler(final BenchmarkConsumer consumer)
+    {
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(new Runnable()
+        {
+            private int lastCount = 0;
+            
+            public void run()
+            {
+                int count = consumer != null ? consumer.getMessageCount() : sentCount.intValue();
+                throughputPerSecond.add(count - lastCount);
+                lastCount = count;
+            }
+        }, THROUGHPUT_SAMPLE_PERIOD_MS, THROUGHPUT_SAMPLE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        return sampler;
+    }
+    
+    /**
+     * Stops the sampler, adding any messages counted since its last sample
+     * as a final partial second
+     * 
+     * @param sampler
+     * @param consumer - can be null
+     */
+    protected void stopThroughputSampler(ScheduledExecutorService sampler, 
+            BenchmarkConsumer consumer) throws InterruptedException
+    {
+        sampler.shutdown();
+        sampler.awaitTermination(THROUGHPUT_SAMPLE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        int count = consumer != null ? consumer.getMessageCount() : sentCount.intValue();
+        synchronized (throughputPerSecond)
+        {
+            for (int sample : throughputPerSecond)
+            {
+                count -= sample;
+            }
+            if (count > 0)
+            {
+                throughputPerSecond.add(count);
+            }
+        }
     }
     
     /**
@@ -251,10 +754,16 @@ public class BenchmarkRunner
         
         JmsComponent component = AMQPComponent.jmsComponent();
         component.setConnectionFactory(connectionFactory);
+        component.setConcurrentConsumers(consumerThreads);
         context.addComponent("amqp", component);
         
-        final DataFormat dataFormat = new JacksonDataFormat(
-                ObjectMapperFactory.createInstance(), Object.class);
+        final ContentTypeJacksonDataFormat dataFormat = new ContentTypeJacksonDataFormat();
+        dataFormat.setCompressionThreshold(compressionThreshold);
+        dataFormat.setUnmarshalType(messageType.getMessageClass());
+        if (contentType != null)
+        {
+            dataFormat.setContentType(contentType);
+        }
         
         if (messageConsumer != null)
         {
@@ -276,6 +785,7 @@ public class BenchmarkRunner
         messageProducer.setEndpoint("direct:benchmark.test");
         
         context.start();
+        camelContexts.add(context);
         
         return messageProducer;
     }
@@ -296,6 +806,12 @@ public class BenchmarkRunner
     {
         AmqpDirectEndpoint amqpEndpoint = 
                 AmqpNodeBootstrapUtils.createEndpoint(messageConsumer, brokerUrl, brokerUsername, brokerPassword, endpointSend, endpointReceive);
+        amqpEndpoint.setCompressionThreshold(compressionThreshold);
+        amqpEndpoint.setConsumers(consumerThreads);
+        if (contentType != null)
+        {
+            amqpEndpoint.setContentType(contentType);
+        }
         
         if (messageConsumer != null)
         {
@@ -314,10 +830,36 @@ public class BenchmarkRunner
                 {
                 }
             }
+            listeningEndpoints.add(amqpEndpoint);
         }
         return amqpEndpoint;
     }
     
+    /**
+     * Initializes an in-JVM endpoint with no object marshaling with given
+     * brokerUrl, endpoint, and messageConsumer.
+     * 
+     * @param brokerUrl
+     * @param endpoint
+     * @param messageConsumer - can be null
+     * @return the Gytheio message producer
+     */
+    protected MessageProducer initializeLocalEndpoint(
+            final String brokerUrl, final String endpointSend, final String endpointReceive, 
+            final MessageConsumer messageConsumer)
+    {
+        LocalEndpoint localEndpoint = 
+                LocalNodeBootstrapUtils.createEndpoint(messageConsumer, brokerUrl, endpointReceive, endpointSend);
+        localEndpoint.setConsumers(consumerThreads);
+        if (messageConsumer != null)
+        {
+            // Subscribe before sending so topic messages aren't missed
+            localEndpoint.startListener();
+            listeningEndpoints.add(localEndpoint);
+        }
+        return localEndpoint;
+    }
+    
     /**
      * Logs the start of the benchmark to sys out
      * 
@@ -337,6 +879,16 @@ public class BenchmarkRunner
                 + (runConsumer && !runProducer ? "Receiving..." + "\n\n": "")
                 + "Number of Messages: " + numMessages + "\n"
                 + "Broker URL:         " + brokerUrl + "\n"
+                + "Endpoints:          " + endpoints + "\n"
+                + (runProducer ? "Producer Threads:   " + producerThreads + "\n": "")
+                + (runProducer && rate > 0 ? "Offered Rate:       " + Math.round(rate) + " messages/second"
+                        + (rampSeconds > 0 ? ", " + rampSeconds + "s ramp" : "")
+                        + (warmupSeconds > 0 ? ", " + warmupSeconds + "s warmup" : "") + "\n": "")
+                + (runConsumer ? "Consumer Threads:   " + consumerThreads + " per endpoint\n": "")
+                + "Message Type:       " + messageType.getName() + ", " + messageType.getNumSections() + " sections\n"
+                + (isEncoding() && contentType != null ? "Content Type:       " + contentType + "\n" : "")
+                + (compressionThreshold != MessageCompressionUtils.COMPRESSION_DISABLED ? 
+                        "Compression:        bodies > " + compressionThreshold + " bytes\n" : "")
                 + (runProducer ? "Send Endpoint:      " + endpointSend + "\n": "")
                 + (runConsumer ? "Receive Endpoint:   " + endpointReceive + "\n": "")
                 + LOG_SEPERATOR);
@@ -347,16 +899,15 @@ public class BenchmarkRunner
      * 
      * @param producer
      * @param consumer
-     * @param message
-     * @param numMessagesSent
-     * @param numMessagesReceived
+     * @param result
      * @param sendTime
      * @param receiveTime
      */
     protected void logStatistics(MessageProducer producer, BenchmarkConsumer consumer, 
-            Object message, int numMessagesSent, int numMessagesReceived, long sendTime, long receiveTime)
+            BenchmarkResult result, long sendTime, long receiveTime)
     {
-        double messagesPerSecond = numMessagesSent / ((consumer != null ? receiveTime : sendTime) / 1000.0);
+        int numMessagesSent = numMessages;
+        int numMessagesReceived = result.getMessagesReceived();
         
         System.out.println("\n"
                 + LOG_SEPERATOR
@@ -364,11 +915,15 @@ public class BenchmarkRunner
                 + LOG_SEPERATOR
                 + (producer != null ? "MessageProducer: " + producer.getClass().getSimpleName() + "\n": "")
                 + (consumer != null ? "MessageConsumer: " + consumer.getClass().getSimpleName() + "\n": "")
-                + "Message Type:    " + message.getClass().getSimpleName() + "\n"
+                + "Message Type:    " + messageType.getMessageClass().getSimpleName() + "\n"
+                + "Payload:         " + result.getPayloadBytes() + " bytes" 
+                    + (result.getCodec() != null ? " (" + result.getCodec() + ")" : "") + "\n"
                 + (producer != null ? "Sent:            " + numMessagesSent + " messages in " + formatMillis(sendTime) + "\n": "")
                 + (consumer != null ? "Received:        " + numMessagesReceived + " messages in " + formatMillis(receiveTime) 
                     + (numMessagesReceived != numMessagesSent ? " (*)" : "") + "\n" : "")
-                + "Throughput:      " + Math.round(messagesPerSecond) + " messages/second\n"
+                + "Throughput:      " + result.getThroughput() + " messages/second\n"
+                + (consumer != null ? formatLatency(consumer.getLatencyHistogram()) : "")
+                + formatThroughputPerSecond(consumer != null ? "received" : "sent")
                 + LOG_SEPERATOR + "\n"
                 + "Note that results include time taken for factors\n"
                 + "like marshalling/unmarshalling of messages, network\n"
@@ -376,6 +931,53 @@ public class BenchmarkRunner
                 + "broker's performance.\n");
     }
     
+    /**
+     * Formats the latency percentiles of the given histogram of microsecond values
+     * 
+     * @param histogram
+     * @return the latency summary lines
+     */
+    protected String formatLatency(Histogram histogram)
+    {
+        if (histogram.getTotalCount() == 0)
+        {
+            return "";
+        }
+        DecimalFormat df = new DecimalFormat("0.###");
+        StringBuilder latency = new StringBuilder("Latency (ms):   ");
+        for (double percentile : LATENCY_PERCENTILES)
+        {
+            latency.append(" p" + df.format(percentile) + "=" + 
+                    df.format(histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        latency.append(" max=" + df.format(histogram.getMaxValue() / 1000.0) + "\n");
+        return latency.toString();
+    }
+    
+    /**
+     * Formats the sampled messages per second as a time series
+     * 
+     * @param action the description of what was counted
+     * @return the time series lines
+     */
+    protected String formatThroughputPerSecond(String action)
+    {
+        StringBuilder series = new StringBuilder();
+        synchronized (throughputPerSecond)
+        {
+            if (throughputPerSecond.isEmpty())
+            {
+                return "";
+            }
+            series.append("Per Second (" + action + "):\n");
+            for (int i = 0; i < throughputPerSecond.size(); i++)
+            {
+                series.append(String.format("  %4ds  %d\n", i + 1, throughputPerSecond.get(i)));
+            }
+        }
+        return series.toString();
+    }
+    
     /**
      * Formats a millisecond value for rounded seconds if sufficiently large
      * 
@@ -18,11 +18,18 @@
  */
 package org.gytheio.messaging.benchmark;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.gytheio.messaging.jackson.ObjectMapperFactory;
 
 /**
- * Boostrap which creates and runs a {@link BenchmarkRunner}
+ * Boostrap which creates and runs a {@link BenchmarkRunner}, or a sweep of runners over
+ * each combination of the broker URLs, message types, sections and codecs given,
+ * optionally writing a {@link BenchmarkReport}
  * 
  * @author Ray Gauss II
  */
@@ -31,9 +38,12 @@ public class Bootstrap
     private static final Log logger = LogFactory.getLog(Bootstrap.class);
 
     protected static final String USAGE_MESSAGE = 
-            "\n\nUSAGE: brokerUrl numMessages [un=<username>] [pw=<password>] "
-            + "[endpointSend] [endpointReceive] [consume-only] [produce-only] [sections=<n>]\n\n"
-            + "\tbrokerUrl\tThe broker URL, examples: tcp://localhost:61616, amqp://my.host.test:5672, ampqs://my.host.test:5671, amqp+ssl://my.host.test:5671\n"
+            "\n\nUSAGE: brokerUrl[;brokerUrl...] numMessages [un=<username>] [pw=<password>] "
+            + "[endpointSend] [endpointReceive] [consume-only] [produce-only] [sections=<n>[,<n>...]] "
+            + "[type=<type>[,<type>...]] [codec=<codec>[,<codec>...]] [report=<directory>] [compress=<bytes>] "
+            + "[producers=<n>] [consumers=<n>] [endpoints=<n>] [rate=<msgs/s>] [ramp=<seconds>] [warmup=<seconds>]\n\n"
+            + "\tbrokerUrl\tThe broker URL, examples: tcp://localhost:61616, amqp://my.host.test:5672, ampqs://my.host.test:5671, amqp+ssl://my.host.test:5671, local://, embedded://openwire, embedded://amqp\n"
+            + "\t\t\tSeparate several broker URLs with ';' to sweep over transports\n"
             + "\tun=<username>\tThe broker username, example: un=admin\n"
             + "\tpw=<password>\tThe broker password, example: pw=mysecretpassword\n"                   
             + "\tnumMessages\tThe number of messages to send and/or expect\n"
@@ -41,26 +51,67 @@ public class Bootstrap
             + "\tendpointReceive\tThe endpoint to consumer messages from, default: queue:gytheio.test.benchmark\n"
             + "\tconsume-only\tConsume only, do not produce messages\n"
             + "\tproduce-only\tProduce only, do not consumer messages\n"
-            + "\tsections=<n>\tNumber of sections (x approx 446 bytes) on default message (default = 100)\n";
+            + "\tsections=<n>\tNumber of sections (x approx 446 bytes) on default message, or content references on requests (default = 100)\n"
+            + "\ttype=<type>\tMessage type: simple, transform (TransformationRequest) or hash (HashRequest) (default = simple)\n"
+            + "\tcodec=<codec>\tEncoding of messages for brokered transports: json or smile (default = json)\n"
+            + "\treport=<directory>\tWrite the results with environment metadata as JSON and CSV files to the given directory\n"
+            + "\t\t\tSeparate several sections, types or codecs with ',' to sweep over them\n"
+            + "\tcompress=<bytes>\tCompress message bodies larger than the given number of bytes (default = no compression)\n"
+            + "\tproducers=<n>\tNumber of threads sending messages (default = 1)\n"
+            + "\tconsumers=<n>\tNumber of consumer threads or sessions per endpoint (default = 1)\n"
+            + "\tendpoints=<n>\tNumber of endpoints, each with its own connection (default = 1)\n"
+            + "\trate=<msgs/s>\tOffer messages at a fixed total rate, measuring latency from intended send times (default = as fast as possible)\n"
+            + "\tramp=<seconds>\tIncrease the rate linearly to its target over the given seconds (default = 0)\n"
+            + "\twarmup=<seconds>\tExclude messages sent in the given seconds after any ramp from latency statistics (default = 0)\n";
 
     public static void main(String[] args)
     {
         BootstrapArguments argsObject = parse(args);
         try
         {
-            // future alternative: option for explicit size (in bytes) or test message body
-            BenchmarkMessage.setDefaultNumSections(argsObject.numSections);
-
-            BenchmarkRunner runner = new BenchmarkRunner(
-                    argsObject.brokerUrl, 
-                    argsObject.brokerUsername,
-                    argsObject.brokerPassword,
-                    argsObject.endpointSend, 
-                    argsObject.endpointReceive, 
-                    argsObject.numMessages, 
-                    argsObject.runProducer, 
-                    argsObject.runConsumer);
-            runner.runBenchmark();
+            BenchmarkMessage.setDefaultNumSections(argsObject.numSections.get(0));
+            
+            List<String> contentTypes = argsObject.contentTypes.isEmpty() ? 
+                    Collections.<String>singletonList(null) : argsObject.contentTypes;
+            int numRuns = argsObject.brokerUrls.size() * argsObject.messageTypes.size() 
+                    * argsObject.numSections.size() * contentTypes.size();
+            if (numRuns == 1 && argsObject.reportDirectory == null)
+            {
+                createRunner(argsObject, argsObject.brokerUrl, argsObject.messageTypes.get(0), 
+                        argsObject.numSections.get(0), contentTypes.get(0), 0).runBenchmark();
+                return;
+            }
+            
+            BenchmarkReport report = createReport(argsObject);
+            int runIndex = 0;
+            for (String brokerUrl : argsObject.brokerUrls)
+            {
+                for (String messageType : argsObject.messageTypes)
+                {
+                    for (int numSections : argsObject.numSections)
+                    {
+                        for (int c = 0; c < contentTypes.size(); c++)
+                        {
+                            BenchmarkRunner runner = createRunner(argsObject, brokerUrl, 
+                                    messageType, numSections, contentTypes.get(c), runIndex++);
+                            if (c > 0 && !runner.isEncoding())
+                            {
+                                // Messages aren't encoded so only run the first codec
+                                continue;
+                            }
+                            report.addResult(runner.run());
+                        }
+                    }
+                }
+            }
+            if (argsObject.reportDirectory != null)
+            {
+                for (File file : report.write(new File(argsObject.reportDirectory)))
+                {
+                    System.out.println("Wrote " + file.getAbsolutePath());
+                }
+            }
+            System.exit(0);
         }
         catch (Exception e)
         {
@@ -69,6 +120,71 @@ public class Bootstrap
         }
     }
     
+    /**
+     * Creates a runner for one combination of a sweep, using a queue or topic per
+     * run unless the endpoints were given so that runs don't consume each other's messages
+     * 
+     * @param argsObject
+     * @param brokerUrl
+     * @param messageType
+     * @param numSections
+     * @param contentType - can be null for the default
+     * @param runIndex
+     * @return the runner
+     */
+    protected static BenchmarkRunner createRunner(BootstrapArguments argsObject, String brokerUrl, 
+            String messageType, int numSections, String contentType, int runIndex)
+    {
+        String endpointSend = argsObject.endpointSend;
+        if (endpointSend == null && runIndex > 0)
+        {
+            endpointSend = BenchmarkRunner.DEFAULT_ENDPOINT + "." + runIndex;
+        }
+        BenchmarkRunner runner = new BenchmarkRunner(
+                brokerUrl, 
+                argsObject.brokerUsername,
+                argsObject.brokerPassword,
+                endpointSend, 
+                argsObject.endpointReceive, 
+                argsObject.numMessages, 
+                argsObject.runProducer, 
+                argsObject.runConsumer);
+        runner.setMessageType(BenchmarkMessageType.getInstance(messageType, numSections));
+        runner.setContentType(contentType);
+        runner.setCompressionThreshold(argsObject.compressionThreshold);
+        runner.setProducerThreads(argsObject.producerThreads);
+        runner.setConsumerThreads(argsObject.consumerThreads);
+        runner.setEndpoints(argsObject.endpoints);
+        runner.setRate(argsObject.rate);
+        runner.setRampSeconds(argsObject.rampSeconds);
+        runner.setWarmupSeconds(argsObject.warmupSeconds);
+        return runner;
+    }
+    
+    /**
+     * Creates a report with the settings shared by all runs
+     * 
+     * @param argsObject
+     * @return the report
+     */
+    protected static BenchmarkReport createReport(BootstrapArguments argsObject)
+    {
+        BenchmarkReport report = new BenchmarkReport();
+        report.addSetting("numMessages", argsObject.numMessages);
+        report.addSetting("runProducer", argsObject.runProducer);
+        report.addSetting("runConsumer", argsObject.runConsumer);
+        report.addSetting("endpointSend", argsObject.endpointSend);
+        report.addSetting("endpointReceive", argsObject.endpointReceive);
+        report.addSetting("compressionThreshold", argsObject.compressionThreshold);
+        report.addSetting("producers", argsObject.producerThreads);
+        report.addSetting("consumers", argsObject.consumerThreads);
+        report.addSetting("endpoints", argsObject.endpoints);
+        report.addSetting("rate", argsObject.rate);
+        report.addSetting("rampSeconds", argsObject.rampSeconds);
+        report.addSetting("warmupSeconds", argsObject.warmupSeconds);
+        return report;
+    }
+    
     public static BootstrapArguments parse(String args[])
     {
         if (args.length < 2)
@@ -79,10 +195,18 @@ public class Bootstrap
         BootstrapArguments argsObject = new BootstrapArguments();
         
         argsObject.brokerUrl = args[0];
+        for (String brokerUrl : args[0].split(";"))
+        {
+            if (!brokerUrl.trim().isEmpty())
+            {
+                argsObject.brokerUrls.add(brokerUrl.trim());
+            }
+        }
+        argsObject.brokerUrl = argsObject.brokerUrls.get(0);
         
         argsObject.numMessages = Integer.valueOf(args[1]);
         
-        for (int i = 2; i < 8; i++)
+        for (int i = 2; i < args.length; i++)
         {
             if (args.length > i)
             {
@@ -102,12 +226,97 @@ public class Bootstrap
                         argsObject.brokerPassword = split[1];
                     }
                 }
-                else if (args[i].startsWith("numSections="))
+                else if (args[i].startsWith("sections=") || args[i].startsWith("numSections="))
+                {
+                    for (String numSections : args[i].substring(args[i].indexOf('=') + 1).split(","))
+                    {
+                        argsObject.numSections.add(Integer.valueOf(numSections.trim()));
+                    }
+                }
+                else if (args[i].startsWith("type="))
+                {
+                    String[] split = args[i].split("type=");
+                    if (split.length == 2)
+                    {
+                        for (String messageType : split[1].split(","))
+                        {
+                            argsObject.messageTypes.add(messageType.trim());
+                        }
+                    }
+                }
+                else if (args[i].startsWith("codec="))
+                {
+                    String[] split = args[i].split("codec=");
+                    if (split.length == 2)
+                    {
+                        for (String codec : split[1].split(","))
+                        {
+                            argsObject.contentTypes.add(getContentType(codec.trim()));
+                        }
+                    }
+                }
+                else if (args[i].startsWith("report="))
+                {
+                    String[] split = args[i].split("report=");
+                    if (split.length == 2)
+                    {
+                        argsObject.reportDirectory = split[1];
+                    }
+                }
+                else if (args[i].startsWith("compress="))
+                {
+                    String[] split = args[i].split("compress=");
+                    if (split.length == 2)
+                    {
+                        argsObject.compressionThreshold = Integer.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("producers="))
+                {
+                    String[] split = args[i].split("producers=");
+                    if (split.length == 2)
+                    {
+                        argsObject.producerThreads = Integer.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("consumers="))
+                {
+                    String[] split = args[i].split("consumers=");
+                    if (split.length == 2)
+                    {
+                        argsObject.consumerThreads = Integer.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("endpoints="))
+                {
+                    String[] split = args[i].split("endpoints=");
+                    if (split.length == 2)
+                    {
+                        argsObject.endpoints = Integer.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("rate="))
                 {
-                    String[] split = args[i].split("numSections=");
+                    String[] split = args[i].split("rate=");
                     if (split.length == 2)
                     {
-                        argsObject.numSections = Integer.valueOf(split[1]);
+                        argsObject.rate = Double.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("ramp="))
+                {
+                    String[] split = args[i].split("ramp=");
+                    if (split.length == 2)
+                    {
+                        argsObject.rampSeconds = Integer.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("warmup="))
+                {
+                    String[] split = args[i].split("warmup=");
+                    if (split.length == 2)
+                    {
+                        argsObject.warmupSeconds = Integer.valueOf(split[1]);
                     }
                 }
                 else if (args[i].equals("consume-only"))
@@ -128,10 +337,37 @@ public class Bootstrap
                 }
             }
         }
+        if (argsObject.numSections.isEmpty())
+        {
+            argsObject.numSections.add(100);
+        }
+        if (argsObject.messageTypes.isEmpty())
+        {
+            argsObject.messageTypes.add(BenchmarkMessageType.TYPE_SIMPLE);
+        }
         
         return argsObject;
     }
     
+    /**
+     * Gets the content type for a codec option value
+     * 
+     * @param codec <code>json</code>, <code>smile</code> or a content type
+     * @return the content type
+     */
+    protected static String getContentType(String codec)
+    {
+        if ("json".equalsIgnoreCase(codec))
+        {
+            return ObjectMapperFactory.CONTENT_TYPE_JSON;
+        }
+        if ("smile".equalsIgnoreCase(codec))
+        {
+            return ObjectMapperFactory.CONTENT_TYPE_SMILE;
+        }
+        return codec;
+    }
+    
     protected static boolean isSupportedEndpoint(String endpoint)
     {
         return endpoint != null && (endpoint.startsWith("queue") || endpoint.startsWith("topic"));
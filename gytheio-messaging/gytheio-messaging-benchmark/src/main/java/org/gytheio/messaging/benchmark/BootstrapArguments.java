@@ -18,9 +18,13 @@
  */
 package org.gytheio.messaging.benchmark;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class BootstrapArguments
 {
     public String brokerUrl;
+    public List<String> brokerUrls = new ArrayList<String>();
     public String brokerUsername;
     public String brokerPassword;
     public int numMessages;
@@ -28,5 +32,16 @@ public class BootstrapArguments
     public String endpointReceive;
     public boolean runProducer = true;
     public boolean runConsumer = true;
-    public int numSections = 100; // see also BenchmarkMessage
+    // lists with more than one value are swept
+    public List<Integer> numSections = new ArrayList<Integer>(); // see also BenchmarkMessage
+    public List<String> messageTypes = new ArrayList<String>(); // see also BenchmarkMessageType
+    public List<String> contentTypes = new ArrayList<String>(); // see also ObjectMapperFactory
+    public String reportDirectory;
+    public int compressionThreshold = -1; // see also MessageCompressionUtils
+    public int producerThreads = 1;
+    public int consumerThreads = 1;
+    public int endpoints = 1;
+    public double rate = 0; // as fast as possible
+    public int rampSeconds = 0;
+    public int warmupSeconds = 0;
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.broker.region.policy.ConstantPendingMessageLimitStrategy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.usage.SystemUsage;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * An in-process ActiveMQ broker configured from the <code>activemq.xml</code> of
+ * the <code>messaging-broker-activemq</code> project so that benchmarks can run
+ * without any network setup.
+ * <p>
+ * The broker's destination policies, system usage limits and transport connectors
+ * are read from the configuration, with each connector bound to an ephemeral port
+ * on the loopback interface.  The broker is not persistent and the web console,
+ * JMX connector and data sources of the standalone configuration are not started.
+ */
+public class EmbeddedBroker
+{
+    private static final Log logger = LogFactory.getLog(EmbeddedBroker.class);
+    
+    public static final String CONFIG_RESOURCE = "activemq/activemq.xml";
+    public static final String CONNECTOR_OPENWIRE = "openwire";
+    public static final String CONNECTOR_AMQP = "amqp";
+    
+    protected static final String ACTIVEMQ_NAMESPACE = "http://activemq.apache.org/schema/core";
+    
+    private BrokerService brokerService;
+    private final Map<String, String> connectUrls = new HashMap<String, String>();
+    
+    /**
+     * Starts the broker from the configuration on the classpath
+     * 
+     * @throws Exception
+     */
+    public void start() throws Exception
+    {
+        InputStream config = getClass().getClassLoader().getResourceAsStream(CONFIG_RESOURCE);
+        if (config == null)
+        {
+            throw new IllegalStateException("Could not find " + CONFIG_RESOURCE + " on the classpath");
+        }
+        Element brokerElement;
+        try
+        {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            Document document = factory.newDocumentBuilder().parse(config);
+            brokerElement = (Element) document.getElementsByTagNameNS(ACTIVEMQ_NAMESPACE, "broker").item(0);
+        }
+        finally
+        {
+            config.close();
+        }
+        
+        brokerService = new BrokerService();
+        brokerService.setBrokerName("embedded-" + StringUtils.defaultIfEmpty(
+                brokerElement.getAttribute("brokerName"), "localhost"));
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.setUseShutdownHook(true);
+        brokerService.setDestinationPolicy(createPolicyMap(brokerElement));
+        applySystemUsage(brokerElement, brokerService.getSystemUsage());
+        
+        List<TransportConnector> connectors = new ArrayList<TransportConnector>();
+        for (Element connectorElement : getElements(brokerElement, "transportConnector"))
+        {
+            TransportConnector connector = brokerService.addConnector(
+                    toEphemeralUri(connectorElement.getAttribute("uri")));
+            connector.setName(connectorElement.getAttribute("name"));
+            connectors.add(connector);
+        }
+        
+        brokerService.start();
+        brokerService.waitUntilStarted();
+        
+        for (TransportConnector connector : connectors)
+        {
+            URI connectUri = connector.getConnectUri();
+            String url = connectUri.getScheme() + "://localhost:" + connectUri.getPort();
+            connectUrls.put(connector.getName(), url);
+            logger.info("Embedded broker " + connector.getName() + " connector listening on " + url);
+        }
+    }
+    
+    /**
+     * Stops the broker
+     * 
+     * @throws Exception
+     */
+    public void stop() throws Exception
+    {
+        if (brokerService != null)
+        {
+            brokerService.stop();
+            brokerService.waitUntilStopped();
+        }
+    }
+    
+    /**
+     * Gets the URL clients should connect to for the named connector
+     * 
+     * @param connectorName for example {@link #CONNECTOR_AMQP}
+     * @return the URL
+     */
+    public String getConnectUrl(String connectorName)
+    {
+        String url = connectUrls.get(connectorName);
+        if (url == null)
+        {
+            throw new IllegalArgumentException("No '" + connectorName + "' connector in " + CONFIG_RESOURCE);
+        }
+        return url;
+    }
+    
+    /**
+     * Rewrites a connector URI from the configuration to listen on an ephemeral
+     * loopback port, keeping its options
+     * 
+     * @param configuredUri
+     * @return the ephemeral URI
+     */
+    protected static String toEphemeralUri(String configuredUri) throws Exception
+    {
+        URI uri = new URI(configuredUri);
+        return uri.getScheme() + "://127.0.0.1:0" + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+    }
+    
+    protected PolicyMap createPolicyMap(Element brokerElement)
+    {
+        PolicyMap policyMap = new PolicyMap();
+        List<PolicyEntry> policyEntries = new ArrayList<PolicyEntry>();
+        for (Element entryElement : getElements(brokerElement, "policyEntry"))
+        {
+            PolicyEntry entry = new PolicyEntry();
+            if (entryElement.hasAttribute("queue"))
+            {
+                entry.setQueue(entryElement.getAttribute("queue"));
+            }
+            if (entryElement.hasAttribute("topic"))
+            {
+                entry.setTopic(entryElement.getAttribute("topic"));
+            }
+            if (entryElement.hasAttribute("producerFlowControl"))
+            {
+                entry.setProducerFlowControl(Boolean.parseBoolean(entryElement.getAttribute("producerFlowControl")));
+            }
+            if (entryElement.hasAttribute("memoryLimit"))
+            {
+                entry.setMemoryLimit(parseBytes(entryElement.getAttribute("memoryLimit")));
+            }
+            List<Element> limitElements = getElements(entryElement, "constantPendingMessageLimitStrategy");
+            if (!limitElements.isEmpty())
+            {
+                ConstantPendingMessageLimitStrategy strategy = new ConstantPendingMessageLimitStrategy();
+                strategy.setLimit(Integer.parseInt(limitElements.get(0).getAttribute("limit")));
+                entry.setPendingMessageLimitStrategy(strategy);
+            }
+            policyEntries.add(entry);
+        }
+        policyMap.setPolicyEntries(policyEntries);
+        return policyMap;
+    }
+    
+    protected void applySystemUsage(Element brokerElement, SystemUsage systemUsage)
+    {
+        for (Element usageElement : getElements(brokerElement, "memoryUsage"))
+        {
+            if (usageElement.hasAttribute("limit"))
+            {
+                systemUsage.getMemoryUsage().setLimit(parseBytes(usageElement.getAttribute("limit")));
+            }
+        }
+        for (Element usageElement : getElements(brokerElement, "tempUsage"))
+        {
+            if (usageElement.hasAttribute("limit"))
+            {
+                systemUsage.getTempUsage().setLimit(parseBytes(usageElement.getAttribute("limit")));
+            }
+        }
+    }
+    
+    /**
+     * Parses ActiveMQ style sizes such as <code>20 mb</code> or <code>1gb</code>
+     * 
+     * @param size
+     * @return the number of bytes
+     */
+    protected static long parseBytes(String size)
+    {
+        String value = size.trim().toLowerCase(Locale.ENGLISH).replace(" ", "");
+        long multiplier = 1;
+        if (value.endsWith("kb"))
+        {
+            multiplier = 1024L;
+        }
+        else if (value.endsWith("mb"))
+        {
+            multiplier = 1024L * 1024L;
+        }
+        else if (value.endsWith("gb"))
+        {
+            multiplier = 1024L * 1024L * 1024L;
+        }
+        if (multiplier > 1)
+        {
+            value = value.substring(0, value.length() - 2);
+        }
+        return Long.parseLong(value) * multiplier;
+    }
+    
+    protected static List<Element> getElements(Element parent, String localName)
+    {
+        List<Element> elements = new ArrayList<Element>();
+        NodeList nodes = parent.getElementsByTagNameNS(ACTIVEMQ_NAMESPACE, localName);
+        for (int i = 0; i < nodes.getLength(); i++)
+        {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark.node;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gytheio.content.transform.TransformationReply;
+import org.gytheio.messaging.MessageConsumer;
+import org.gytheio.messaging.ProgressReply;
+import org.gytheio.messaging.Reply;
+import org.gytheio.messaging.benchmark.BenchmarkMessage;
+
+/**
+ * Consumer of a component's replies which records the latency from each request
+ * being sent to its final reply and releases a permit for another request.
+ * <p>
+ * Replies are final unless they're a {@link ProgressReply} that says otherwise.
+ */
+public class NodeBenchmarkConsumer implements MessageConsumer
+{
+    private static final Log logger = LogFactory.getLog(NodeBenchmarkConsumer.class);
+    
+    protected final Class<?> replyClass;
+    protected final Semaphore inFlightPermits;
+    protected final Map<String, Long> sentTimes = new ConcurrentHashMap<String, Long>();
+    protected final LongAdder completedCount = new LongAdder();
+    protected final LongAdder errorCount = new LongAdder();
+    protected final Histogram latencyHistogram = new ConcurrentHistogram(3);
+    protected volatile long lastReplyMillis = System.currentTimeMillis();
+    
+    /**
+     * @param replyClass the class of replies sent by the component
+     * @param inFlightPermits permits released as requests complete
+     */
+    public NodeBenchmarkConsumer(Class<?> replyClass, Semaphore inFlightPermits)
+    {
+        this.replyClass = replyClass;
+        this.inFlightPermits = inFlightPermits;
+    }
+    
+    /**
+     * Records that a request has been sent, must be called before it's sent
+     * 
+     * @param requestId
+     */
+    public void onSend(String requestId)
+    {
+        sentTimes.put(requestId, BenchmarkMessage.currentTimeMicros());
+    }
+    
+    @Override
+    public void onReceive(Object message)
+    {
+        lastReplyMillis = System.currentTimeMillis();
+        if (message instanceof ProgressReply && !((ProgressReply) message).isFinalReply())
+        {
+            return;
+        }
+        Long sentTimeMicros = sentTimes.remove(((Reply) message).getRequestId());
+        if (sentTimeMicros == null)
+        {
+            logger.warn("Final reply for unknown requestId=" + ((Reply) message).getRequestId());
+            return;
+        }
+        if (isError(message))
+        {
+            errorCount.increment();
+        }
+        else
+        {
+            completedCount.increment();
+            latencyHistogram.recordValue(
+                    Math.max(0, BenchmarkMessage.currentTimeMicros() - sentTimeMicros));
+        }
+        inFlightPermits.release();
+    }
+    
+    /**
+     * Determines whether the given final reply reports an error
+     * 
+     * @param reply
+     * @return true if the request failed
+     */
+    protected boolean isError(Object reply)
+    {
+        return reply instanceof TransformationReply && TransformationReply.STATUS_ERROR.equals(
+                ((TransformationReply) reply).getStatus());
+    }
+    
+    @Override
+    public Class<?> getConsumingMessageBodyClass()
+    {
+        return replyClass;
+    }
+    
+    public int getCompletedCount()
+    {
+        return completedCount.intValue();
+    }
+    
+    public int getErrorCount()
+    {
+        return errorCount.intValue();
+    }
+    
+    /**
+     * Gets the number of requests sent which haven't had a final reply
+     * 
+     * @return the outstanding request count
+     */
+    public int getOutstandingCount()
+    {
+        return sentTimes.size();
+    }
+    
+    public long getLastReplyMillis()
+    {
+        return lastReplyMillis;
+    }
+    
+    /**
+     * Gets the histogram of request to final reply latencies, in microseconds,
+     * of requests completed successfully
+     * 
+     * @return the latency histogram
+     */
+    public Histogram getLatencyHistogram()
+    {
+        return latencyHistogram;
+    }
+}
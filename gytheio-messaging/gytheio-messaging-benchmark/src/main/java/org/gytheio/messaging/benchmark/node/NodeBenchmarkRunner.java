@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark.node;
+
+import java.io.File;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+
+import org.HdrHistogram.Histogram;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.handler.FileContentReferenceHandlerImpl;
+import org.gytheio.content.hash.HashReply;
+import org.gytheio.content.hash.HashRequest;
+import org.gytheio.content.hash.javase.JavaSeContentHashWorker;
+import org.gytheio.content.node.AbstractComponentBootstrapFromProperties;
+import org.gytheio.content.node.HashComponentBootstrapFromProperties;
+import org.gytheio.content.node.TransformerComponentBootstrapFromProperties;
+import org.gytheio.content.transform.TransformationReply;
+import org.gytheio.content.transform.TransformationRequest;
+import org.gytheio.content.transform.options.ImageTransformationOptions;
+import org.gytheio.messaging.MessageProducer;
+import org.gytheio.messaging.Request;
+import org.gytheio.messaging.amqp.AmqpDirectEndpoint;
+import org.gytheio.messaging.amqp.AmqpNodeBootstrapUtils;
+import org.gytheio.messaging.benchmark.BenchmarkResult;
+import org.gytheio.messaging.local.LocalEndpoint;
+import org.gytheio.messaging.local.LocalMessageBroker;
+import org.gytheio.messaging.local.LocalNodeBootstrapUtils;
+
+/**
+ * Runs a single end-to-end node benchmark: boots a transformer or hash component
+ * through the node-simple bootstrap classes with file content reference handlers on
+ * local disk, sends it requests from a client endpoint with a bounded number in flight,
+ * and measures the latency from each request being sent to its final reply.
+ */
+public class NodeBenchmarkRunner
+{
+    private static final Log logger = LogFactory.getLog(NodeBenchmarkRunner.class);
+    
+    public static final String COMPONENT_TRANSFORM = "transform";
+    public static final String COMPONENT_HASH = "hash";
+    
+    protected static final String SOURCE_MEDIA_TYPE = "application/pdf";
+    protected static final String TARGET_MEDIA_TYPE = "image/png";
+    protected static final String HASH_ALGORITHM = "SHA-256";
+    protected static final String QUEUE_PREFIX = "gytheio.test.node.";
+    protected static final double[] LATENCY_PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+    protected static final String LOG_SEPERATOR = "------------------------------------------------\n";
+    
+    private String brokerUrl;
+    private String brokerUsername;
+    private String brokerPassword;
+    private String component = COMPONENT_TRANSFORM;
+    private int numRequests;
+    private int consumers = 1;
+    private int maxInFlight;
+    private long cpuMicros;
+    private long sleepMs;
+    private long outputBytes = 1024;
+    private long sourceBytes = 64*1024;
+    private File directory;
+    private String runId = "0";
+    private long timeoutMs = 30000;
+    
+    public void setBrokerUrl(String brokerUrl)
+    {
+        this.brokerUrl = brokerUrl;
+    }
+    
+    public void setBrokerUsername(String brokerUsername)
+    {
+        this.brokerUsername = brokerUsername;
+    }
+    
+    public void setBrokerPassword(String brokerPassword)
+    {
+        this.brokerPassword = brokerPassword;
+    }
+    
+    /**
+     * Sets the component to benchmark, {@link #COMPONENT_TRANSFORM} or {@link #COMPONENT_HASH}
+     * 
+     * @param component
+     */
+    public void setComponent(String component)
+    {
+        this.component = component;
+    }
+    
+    public void setNumRequests(int numRequests)
+    {
+        this.numRequests = numRequests;
+    }
+    
+    /**
+     * Sets the number of consumers the component's endpoint processes requests with
+     * 
+     * @param consumers
+     */
+    public void setConsumers(int consumers)
+    {
+        this.consumers = consumers;
+    }
+    
+    /**
+     * Sets the maximum number of requests sent without a final reply,
+     * twice the number of consumers by default
+     * 
+     * @param maxInFlight
+     */
+    public void setMaxInFlight(int maxInFlight)
+    {
+        this.maxInFlight = maxInFlight;
+    }
+    
+    public void setCpuMicros(long cpuMicros)
+    {
+        this.cpuMicros = cpuMicros;
+    }
+    
+    public void setSleepMs(long sleepMs)
+    {
+        this.sleepMs = sleepMs;
+    }
+    
+    public void setOutputBytes(long outputBytes)
+    {
+        this.outputBytes = outputBytes;
+    }
+    
+    public void setSourceBytes(long sourceBytes)
+    {
+        this.sourceBytes = sourceBytes;
+    }
+    
+    /**
+     * Sets the directory under which source and target files are written
+     * 
+     * @param directory
+     */
+    public void setDirectory(File directory)
+    {
+        this.directory = directory;
+    }
+    
+    /**
+     * Sets the id used to name this run's queues and files so that runs
+     * don't see each other's messages
+     * 
+     * @param runId
+     */
+    public void setRunId(String runId)
+    {
+        this.runId = runId;
+    }
+    
+    /**
+     * Sets how long to wait without any reply before giving up on outstanding requests
+     * 
+     * @param timeoutMs
+     */
+    public void setTimeoutMs(long timeoutMs)
+    {
+        this.timeoutMs = timeoutMs;
+    }
+    
+    protected boolean isTransform()
+    {
+        return COMPONENT_TRANSFORM.equals(component);
+    }
+    
+    protected int getMaxInFlight()
+    {
+        return maxInFlight > 0 ? maxInFlight : 2 * consumers;
+    }
+    
+    /**
+     * Runs the benchmark, removing its files afterwards
+     * 
+     * @return the result
+     * @throws Exception
+     */
+    public BenchmarkResult run() throws Exception
+    {
+        File runDirectory = new File(directory, "run-" + runId);
+        File sourceDirectory = new File(runDirectory, "source");
+        File targetDirectory = new File(runDirectory, "target");
+        sourceDirectory.mkdirs();
+        targetDirectory.mkdirs();
+        
+        String requestQueue = QUEUE_PREFIX + component + ".request." + runId;
+        String replyQueue = QUEUE_PREFIX + component + ".reply." + runId;
+        
+        AbstractComponentBootstrapFromProperties<?> bootstrap = createComponentBootstrap(
+                createProperties(requestQueue, replyQueue, sourceDirectory, targetDirectory));
+        Semaphore inFlightPermits = new Semaphore(getMaxInFlight());
+        NodeBenchmarkConsumer consumer = new NodeBenchmarkConsumer(
+                isTransform() ? TransformationReply.class : HashReply.class, inFlightPermits);
+        MessageProducer client = null;
+        try
+        {
+            bootstrap.run();
+            client = createClientEndpoint(consumer, requestQueue, replyQueue);
+            
+            ContentReference source = createSource(sourceDirectory);
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < numRequests; i++)
+            {
+                inFlightPermits.acquire();
+                Request<?> request = isTransform() ? 
+                        createTransformationRequest(source, targetDirectory, i) : createHashRequest(source);
+                consumer.onSend(request.getRequestId());
+                client.send(request);
+            }
+            long sendTime = System.currentTimeMillis() - startTime;
+            awaitReplies(consumer);
+            long receiveTime = System.currentTimeMillis() - startTime;
+            
+            BenchmarkResult result = createResult(consumer, sendTime, receiveTime);
+            logStatistics(result, consumer);
+            return result;
+        }
+        finally
+        {
+            try
+            {
+                bootstrap.stop();
+            }
+            finally
+            {
+                stopClientEndpoint(client);
+                FileUtils.deleteQuietly(runDirectory);
+            }
+        }
+    }
+    
+    /**
+     * Creates the node-simple properties for the component
+     * 
+     * @param requestQueue
+     * @param replyQueue
+     * @param sourceDirectory
+     * @param targetDirectory
+     * @return the properties
+     */
+    protected Properties createProperties(String requestQueue, String replyQueue, 
+            File sourceDirectory, File targetDirectory)
+    {
+        Properties properties = new Properties();
+        properties.setProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_BROKER_URL, brokerUrl);
+        if (brokerUsername != null)
+        {
+            properties.setProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_BROKER_USERNAME, brokerUsername);
+        }
+        if (brokerPassword != null)
+        {
+            properties.setProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_BROKER_PASSWORD, brokerPassword);
+        }
+        properties.setProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_QUEUE_REQUEST, requestQueue);
+        properties.setProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_QUEUE_REPLY, replyQueue);
+        properties.setProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_CONSUMERS, Integer.toString(consumers));
+        setContentReferenceHandlerProperties(properties, 
+                AbstractComponentBootstrapFromProperties.PROP_WORKER_CONTENT_REF_HANDLER_SOURCE_PREFIX, 
+                sourceDirectory);
+        if (isTransform())
+        {
+            setContentReferenceHandlerProperties(properties, 
+                    TransformerComponentBootstrapFromProperties.PROP_WORKER_CONTENT_REF_HANDLER_TARGET_PREFIX, 
+                    targetDirectory);
+        }
+        return properties;
+    }
+    
+    protected void setContentReferenceHandlerProperties(Properties properties, String prefix, File directory)
+    {
+        properties.setProperty(
+                prefix + AbstractComponentBootstrapFromProperties.PROP_WORKER_CONTENT_REF_HANDLER_CLASS_SUFFIX, 
+                FileContentReferenceHandlerImpl.class.getName());
+        properties.setProperty(
+                prefix + AbstractComponentBootstrapFromProperties.PROP_WORKER_CONTENT_REF_HANDLER_FILE_DIR_SUFFIX, 
+                directory.getAbsolutePath());
+    }
+    
+    protected AbstractComponentBootstrapFromProperties<?> createComponentBootstrap(Properties properties)
+    {
+        if (isTransform())
+        {
+            SyntheticContentTransformerWorker worker = new SyntheticContentTransformerWorker();
+            worker.setCpuMicros(cpuMicros);
+            worker.setSleepMs(sleepMs);
+            worker.setOutputBytes(outputBytes);
+            return new TransformerComponentBootstrapFromProperties<SyntheticContentTransformerWorker>(
+                    properties, worker);
+        }
+        else if (COMPONENT_HASH.equals(component))
+        {
+            return new HashComponentBootstrapFromProperties<JavaSeContentHashWorker>(
+                    properties, new JavaSeContentHashWorker());
+        }
+        throw new IllegalArgumentException("Unsupported component: " + component);
+    }
+    
+    /**
+     * Creates the client endpoint which sends requests to the component and
+     * receives its replies, and starts listening
+     * 
+     * @param consumer
+     * @param requestQueue
+     * @param replyQueue
+     * @return the client endpoint
+     */
+    protected MessageProducer createClientEndpoint(NodeBenchmarkConsumer consumer, 
+            String requestQueue, String replyQueue)
+    {
+        if (LocalMessageBroker.isLocal(brokerUrl))
+        {
+            LocalEndpoint endpoint = LocalNodeBootstrapUtils.createEndpoint(
+                    consumer, brokerUrl, replyQueue, requestQueue);
+            endpoint.startListener();
+            return endpoint;
+        }
+        else if (brokerUrl.startsWith("amqp"))
+        {
+            AmqpDirectEndpoint endpoint = AmqpNodeBootstrapUtils.createEndpoint(
+                    consumer, brokerUrl, brokerUsername, brokerPassword, replyQueue, requestQueue);
+            endpoint.startListener();
+            if (!endpoint.isInitialized())
+            {
+                throw new IllegalStateException("Could not start listening on " + replyQueue);
+            }
+            return endpoint;
+        }
+        throw new IllegalArgumentException("Unsupported transport in " + brokerUrl + 
+                ", node components support local:// and amqp brokers");
+    }
+    
+    protected void stopClientEndpoint(MessageProducer client) throws InterruptedException
+    {
+        if (client instanceof LocalEndpoint)
+        {
+            ((LocalEndpoint) client).stop();
+        }
+        else if (client instanceof AmqpDirectEndpoint)
+        {
+            ((AmqpDirectEndpoint) client).close();
+        }
+    }
+    
+    /**
+     * Writes the source file all requests refer to
+     * 
+     * @param sourceDirectory
+     * @return the source content reference
+     * @throws Exception
+     */
+    protected ContentReference createSource(File sourceDirectory) throws Exception
+    {
+        File sourceFile = new File(sourceDirectory, "source.pdf");
+        SyntheticContentTransformerWorker.writeRandomBytes(sourceFile, sourceBytes);
+        return new ContentReference(sourceFile.toURI().toString(), SOURCE_MEDIA_TYPE, sourceFile.length());
+    }
+    
+    protected TransformationRequest createTransformationRequest(ContentReference source, 
+            File targetDirectory, int index)
+    {
+        File targetFile = new File(targetDirectory, "target-" + index + ".png");
+        ContentReference target = new ContentReference(targetFile.toURI().toString(), TARGET_MEDIA_TYPE);
+        return new TransformationRequest(Arrays.asList(source), Arrays.asList(target), 
+                new ImageTransformationOptions());
+    }
+    
+    protected HashRequest createHashRequest(ContentReference source)
+    {
+        return new HashRequest(Arrays.asList(source), HASH_ALGORITHM);
+    }
+    
+    /**
+     * Waits until every request has had a final reply or no reply has been received
+     * within the timeout
+     * 
+     * @param consumer
+     * @throws InterruptedException
+     */
+    protected void awaitReplies(NodeBenchmarkConsumer consumer) throws InterruptedException
+    {
+        while (consumer.getOutstandingCount() > 0)
+        {
+            if (System.currentTimeMillis() - consumer.getLastReplyMillis() > timeoutMs)
+            {
+                logger.warn("Timed out waiting for " + consumer.getOutstandingCount() + " replies");
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+    
+    protected BenchmarkResult createResult(NodeBenchmarkConsumer consumer, long sendTime, long receiveTime)
+    {
+        BenchmarkResult result = new BenchmarkResult();
+        result.setTransport(brokerUrl);
+        result.setMessageType(component);
+        result.setSections(1);
+        result.setConcurrency(consumers);
+        result.setPayloadBytes((int) (isTransform() ? outputBytes : sourceBytes));
+        result.setMessagesSent(numRequests);
+        result.setMessagesReceived(consumer.getCompletedCount());
+        result.setSendTimeMs(sendTime);
+        result.setReceiveTimeMs(receiveTime);
+        result.setThroughput(receiveTime > 0 ? 
+                Math.round(consumer.getCompletedCount() / (receiveTime / 1000.0)) : 0);
+        Histogram histogram = consumer.getLatencyHistogram();
+        if (histogram.getTotalCount() > 0)
+        {
+            DecimalFormat df = new DecimalFormat("0.###");
+            Map<String, Long> latencyMicros = new LinkedHashMap<String, Long>();
+            for (double percentile : LATENCY_PERCENTILES)
+            {
+                latencyMicros.put("p" + df.format(percentile), histogram.getValueAtPercentile(percentile));
+            }
+            latencyMicros.put("max", histogram.getMaxValue());
+            result.setLatencyMicros(latencyMicros);
+        }
+        return result;
+    }
+    
+    protected void logStatistics(BenchmarkResult result, NodeBenchmarkConsumer consumer)
+    {
+        DecimalFormat df = new DecimalFormat("0.###");
+        List<String> latency = new ArrayList<String>();
+        if (result.getLatencyMicros() != null)
+        {
+            for (Map.Entry<String, Long> entry : result.getLatencyMicros().entrySet())
+            {
+                latency.add(entry.getKey() + "=" + df.format(entry.getValue() / 1000.0));
+            }
+        }
+        System.out.println("\n"
+                + LOG_SEPERATOR
+                + "Gytheio Node Benchmark Results\n"
+                + LOG_SEPERATOR
+                + "Broker:          " + brokerUrl + "\n"
+                + "Component:       " + component + " (" + consumers + " consumers, " 
+                    + getMaxInFlight() + " in flight)\n"
+                + (isTransform() ? "Worker cost:     " + cpuMicros + "us CPU, " + sleepMs + "ms sleep, " 
+                    + outputBytes + " bytes output\n" : "")
+                + "Source:          " + sourceBytes + " bytes\n"
+                + "Completed:       " + consumer.getCompletedCount() + " of " + numRequests + " requests in " 
+                    + result.getReceiveTimeMs() + "ms"
+                    + (consumer.getErrorCount() > 0 ? " (" + consumer.getErrorCount() + " errors)" : "") + "\n"
+                + "Throughput:      " + result.getThroughput() + " requests/second\n"
+                + "Latency (ms):    " + String.join(" ", latency) + "\n"
+                + LOG_SEPERATOR);
+    }
+}
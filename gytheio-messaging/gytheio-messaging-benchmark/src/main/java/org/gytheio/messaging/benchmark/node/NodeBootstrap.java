@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark.node;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gytheio.messaging.benchmark.BenchmarkReport;
+import org.gytheio.messaging.benchmark.EmbeddedBroker;
+
+/**
+ * Bootstrap which runs a {@link NodeBenchmarkRunner} for each combination of the
+ * components and consumer counts given, optionally writing a {@link BenchmarkReport}
+ */
+public class NodeBootstrap
+{
+    protected static final String LOG_CONFIGURATION_PROPERTY = "log4j.configurationFile";
+    protected static final String LOG_CONFIGURATION = "log4j2-node-benchmark.xml";
+    
+    static
+    {
+        // Must be set before the first logger is created
+        if (System.getProperty(LOG_CONFIGURATION_PROPERTY) == null)
+        {
+            System.setProperty(LOG_CONFIGURATION_PROPERTY, LOG_CONFIGURATION);
+        }
+    }
+    
+    private static final Log logger = LogFactory.getLog(NodeBootstrap.class);
+    
+    protected static final String EMBEDDED_BROKER_URL_PREFIX = "embedded";
+
+    protected static final String USAGE_MESSAGE = 
+            "\n\nUSAGE: brokerUrl numRequests [un=<username>] [pw=<password>] "
+            + "[component=<component>[,<component>...]] [consumers=<n>[,<n>...]] [inflight=<n>] "
+            + "[cpu=<micros>] [sleep=<ms>] [output=<bytes>] [source=<bytes>] [dir=<directory>] "
+            + "[timeout=<ms>] [report=<directory>]\n\n"
+            + "\tbrokerUrl\tThe broker URL, examples: local://, amqp://my.host.test:5672, embedded://amqp\n"
+            + "\tnumRequests\tThe number of requests to send in each run\n"
+            + "\tun=<username>\tThe broker username, example: un=admin\n"
+            + "\tpw=<password>\tThe broker password, example: pw=mysecretpassword\n"
+            + "\tcomponent=<component>\tComponent to run: transform (synthetic worker) or hash (Java SE worker) (default = transform)\n"
+            + "\tconsumers=<n>\tNumber of consumers processing requests in the component (default = 1)\n"
+            + "\t\t\tSeparate several components or consumer counts with ',' to sweep over them\n"
+            + "\tinflight=<n>\tMaximum requests sent without a final reply (default = 2 x consumers)\n"
+            + "\tcpu=<micros>\tCPU time the synthetic transformer spends per request (default = 0)\n"
+            + "\tsleep=<ms>\tTime the synthetic transformer sleeps per request (default = 0)\n"
+            + "\toutput=<bytes>\tSize of the target the synthetic transformer writes (default = 1024)\n"
+            + "\tsource=<bytes>\tSize of the source content (default = 65536)\n"
+            + "\tdir=<directory>\tDirectory for source and target files (default = java.io.tmpdir)\n"
+            + "\ttimeout=<ms>\tGive up on outstanding requests after no reply for the given time (default = 30000)\n"
+            + "\treport=<directory>\tWrite the results with environment metadata as JSON and CSV files to the given directory\n";
+    
+    public static void main(String[] args)
+    {
+        if (args.length < 2)
+        {
+            System.err.println(USAGE_MESSAGE);
+            System.exit(1);
+        }
+        EmbeddedBroker embeddedBroker = null;
+        try
+        {
+            String brokerUrl = args[0];
+            int numRequests = Integer.parseInt(args[1]);
+            String brokerUsername = getArgument(args, "un", null);
+            String brokerPassword = getArgument(args, "pw", null);
+            List<String> components = Arrays.asList(
+                    getArgument(args, "component", NodeBenchmarkRunner.COMPONENT_TRANSFORM).split(","));
+            List<Integer> consumerCounts = new ArrayList<Integer>();
+            for (String consumers : getArgument(args, "consumers", "1").split(","))
+            {
+                consumerCounts.add(Integer.valueOf(consumers.trim()));
+            }
+            String reportDirectory = getArgument(args, "report", null);
+            
+            if (brokerUrl.startsWith(EMBEDDED_BROKER_URL_PREFIX))
+            {
+                // Node components use AmqpDirect so only the AMQP connector applies
+                embeddedBroker = new EmbeddedBroker();
+                embeddedBroker.start();
+                brokerUrl = embeddedBroker.getConnectUrl(EmbeddedBroker.CONNECTOR_AMQP);
+            }
+            
+            BenchmarkReport report = new BenchmarkReport();
+            report.addSetting("numRequests", numRequests);
+            for (String setting : Arrays.asList("inflight", "cpu", "sleep", "output", "source"))
+            {
+                report.addSetting(setting, getArgument(args, setting, null));
+            }
+            
+            int runIndex = 0;
+            for (String component : components)
+            {
+                for (int consumers : consumerCounts)
+                {
+                    NodeBenchmarkRunner runner = new NodeBenchmarkRunner();
+                    runner.setBrokerUrl(brokerUrl);
+                    runner.setBrokerUsername(brokerUsername);
+                    runner.setBrokerPassword(brokerPassword);
+                    runner.setNumRequests(numRequests);
+                    runner.setComponent(component.trim());
+                    runner.setConsumers(consumers);
+                    runner.setMaxInFlight(Integer.parseInt(getArgument(args, "inflight", "0")));
+                    runner.setCpuMicros(Long.parseLong(getArgument(args, "cpu", "0")));
+                    runner.setSleepMs(Long.parseLong(getArgument(args, "sleep", "0")));
+                    runner.setOutputBytes(Long.parseLong(getArgument(args, "output", "1024")));
+                    runner.setSourceBytes(Long.parseLong(getArgument(args, "source", "65536")));
+                    runner.setTimeoutMs(Long.parseLong(getArgument(args, "timeout", "30000")));
+                    runner.setDirectory(new File(getArgument(args, "dir", System.getProperty("java.io.tmpdir")),
+                            "gytheio-node-benchmark"));
+                    runner.setRunId(System.currentTimeMillis() + "-" + runIndex++);
+                    report.addResult(runner.run());
+                }
+            }
+            if (reportDirectory != null)
+            {
+                for (File file : report.write(new File(reportDirectory)))
+                {
+                    System.out.println("Wrote " + file.getAbsolutePath());
+                }
+            }
+            if (embeddedBroker != null)
+            {
+                embeddedBroker.stop();
+            }
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            logger.error(e.getMessage(), e);
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Gets the value of the <code>name=value</code> argument with the given name
+     * 
+     * @param args
+     * @param name
+     * @param defaultValue
+     * @return the value or the default if not given
+     */
+    protected static String getArgument(String[] args, String name, String defaultValue)
+    {
+        for (int i = 2; i < args.length; i++)
+        {
+            if (args[i].startsWith(name + "="))
+            {
+                String value = StringUtils.substringAfter(args[i], "=");
+                return value.isEmpty() ? defaultValue : value;
+            }
+        }
+        return defaultValue;
+    }
+}
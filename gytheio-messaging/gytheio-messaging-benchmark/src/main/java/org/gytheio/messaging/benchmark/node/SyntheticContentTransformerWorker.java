@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.benchmark.node;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.gytheio.content.transform.AbstractFileContentTransformerWorker;
+import org.gytheio.content.transform.ContentTransformerWorkerProgressReporter;
+import org.gytheio.content.transform.options.TransformationOptions;
+
+/**
+ * A transformer worker with a fixed cost per request for benchmarking nodes without
+ * external transformation tools: it busies the CPU for the configured time, then sleeps,
+ * then writes the configured number of random bytes to each target.
+ */
+public class SyntheticContentTransformerWorker extends AbstractFileContentTransformerWorker
+{
+    private static final int BUFFER_SIZE = 8*1024;
+    
+    // Sink for the CPU burning loop's result so it can't be optimized away
+    private static volatile long cpuSink;
+    
+    private long cpuMicros;
+    private long sleepMs;
+    private long outputBytes = 1024;
+    
+    /**
+     * Sets the CPU time spent on each request
+     * 
+     * @param cpuMicros
+     */
+    public void setCpuMicros(long cpuMicros)
+    {
+        this.cpuMicros = cpuMicros;
+    }
+    
+    /**
+     * Sets the time slept on each request after any CPU time, simulating waiting on I/O
+     * or an external process
+     * 
+     * @param sleepMs
+     */
+    public void setSleepMs(long sleepMs)
+    {
+        this.sleepMs = sleepMs;
+    }
+    
+    /**
+     * Sets the size of each target written
+     * 
+     * @param outputBytes
+     */
+    public void setOutputBytes(long outputBytes)
+    {
+        this.outputBytes = outputBytes;
+    }
+
+    @Override
+    public boolean isTransformable(List<String> sourceMediaTypes, String targetMediaType,
+            TransformationOptions options)
+    {
+        return true;
+    }
+
+    @Override
+    protected List<File> transformInternal(List<FileContentReferencePair> sources,
+            List<FileContentReferencePair> targets, TransformationOptions options,
+            ContentTransformerWorkerProgressReporter progressReporter) throws Exception
+    {
+        burnCpu(cpuMicros);
+        if (sleepMs > 0)
+        {
+            Thread.sleep(sleepMs);
+        }
+        
+        List<File> results = new ArrayList<File>(targets.size());
+        for (FileContentReferencePair target : targets)
+        {
+            writeRandomBytes(target.getFile(), outputBytes);
+            results.add(target.getFile());
+        }
+        return results;
+    }
+    
+    /**
+     * Spins until the current thread has used the given CPU time, or the same
+     * wall clock time if thread CPU time isn't supported
+     * 
+     * @param micros
+     */
+    protected static void burnCpu(long micros)
+    {
+        if (micros <= 0)
+        {
+            return;
+        }
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = threadMXBean.isCurrentThreadCpuTimeSupported();
+        long start = cpuTime ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime();
+        long end = start + micros * 1000;
+        long value = 0;
+        while ((cpuTime ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime()) < end)
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                value = value * 31 + i;
+            }
+        }
+        cpuSink = value;
+    }
+    
+    protected static void writeRandomBytes(File file, long numBytes) throws Exception
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file)))
+        {
+            long remaining = numBytes;
+            while (remaining > 0)
+            {
+                int length = (int) Math.min(buffer.length, remaining);
+                ThreadLocalRandom.current().nextBytes(buffer);
+                outputStream.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+}
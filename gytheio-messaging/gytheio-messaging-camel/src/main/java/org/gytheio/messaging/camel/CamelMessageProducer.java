@@ -18,13 +18,17 @@
  */
 package org.gytheio.messaging.camel;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.camel.ProducerTemplate;
 import org.apache.commons.lang3.StringUtils;
+import org.gytheio.messaging.AbstractRequest;
+import org.gytheio.messaging.MessageCompressionUtils;
 import org.gytheio.messaging.MessageProducer;
 import org.gytheio.messaging.MessagingException;
+import org.gytheio.messaging.jackson.ObjectMapperFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -42,6 +46,7 @@ public class CamelMessageProducer implements MessageProducer
     protected ProducerTemplate producer;
     protected String endpoint;
     protected ObjectMapper objectMapper;
+    protected int compressionThreshold = MessageCompressionUtils.COMPRESSION_DISABLED;
 
     /**
      * The Camel producer template
@@ -75,6 +80,20 @@ public class CamelMessageProducer implements MessageProducer
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * Sets the body size in bytes above which messages marshalled by this producer
+     * are compressed, default {@link MessageCompressionUtils#COMPRESSION_DISABLED}.
+     * <p>
+     * Messages sent to the default endpoint are marshalled by its route, see
+     * {@link org.gytheio.messaging.camel.dataformat.ContentTypeJacksonDataFormat}.
+     * 
+     * @param compressionThreshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     /**
      * Checks that the given endpoint is valid
      * 
@@ -99,11 +118,88 @@ public class CamelMessageProducer implements MessageProducer
         return origHeaders;
     }
     
+    /**
+     * Adds the standard headers along with the {@link AbstractRequest#HEADER_DEADLINE}
+     * header if the given message is a request with a deadline
+     * 
+     * @param message the unmarshalled message
+     * @param origHeaders
+     * @return the headers
+     */
+    protected Map<String, Object> addHeaders(Object message, Map<String, Object> origHeaders)
+    {
+        Map<String, Object> headers = addHeaders(origHeaders);
+        Long deadline = AbstractRequest.getDeadline(message);
+        if (deadline != null)
+        {
+            headers.put(AbstractRequest.HEADER_DEADLINE, deadline);
+        }
+        return headers;
+    }
+    
+    /**
+     * Marshals the given message using the object mapper, as bytes for binary
+     * encodings or compressed bodies, or as a string for uncompressed JSON.
+     * <p>
+     * The content type header is added for binary encodings so that receivers can
+     * select the matching object mapper, and the content encoding header for
+     * compressed bodies.
+     * 
+     * @param message
+     * @param headers the mutable headers to add to
+     * @return the marshalled message
+     * @throws Exception
+     */
+    protected Object marshal(Object message, Map<String, Object> headers) throws Exception
+    {
+        String contentType = ObjectMapperFactory.getContentType(objectMapper);
+        boolean isSmile = ObjectMapperFactory.isSmile(contentType);
+        if (!isSmile && compressionThreshold == MessageCompressionUtils.COMPRESSION_DISABLED)
+        {
+            return objectMapper.writeValueAsString(message);
+        }
+        byte[] bytes = objectMapper.writeValueAsBytes(message);
+        boolean isCompressed = MessageCompressionUtils.isCompressionRequired(bytes.length, compressionThreshold);
+        if (isSmile)
+        {
+            headers.put(ObjectMapperFactory.HEADER_CONTENT_TYPE, contentType);
+        }
+        if (isCompressed)
+        {
+            headers.put(MessageCompressionUtils.HEADER_CONTENT_ENCODING, 
+                    MessageCompressionUtils.CONTENT_ENCODING_DEFLATE);
+            return MessageCompressionUtils.compress(bytes);
+        }
+        if (!isSmile)
+        {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+    
+    /**
+     * Marshals the given message if an object mapper has been set and the
+     * message isn't already a string
+     * 
+     * @param message
+     * @param headers the mutable headers to add to
+     * @return the marshalled message
+     * @throws Exception
+     */
+    protected Object marshalIfRequired(Object message, Map<String, Object> headers) throws Exception
+    {
+        if (objectMapper != null && !(message instanceof String))
+        {
+            return marshal(message, headers);
+        }
+        return message;
+    }
+    
     public void send(Object message)
     {
         try
         {
-            producer.sendBodyAndHeaders(endpoint, message, addHeaders(null));
+            producer.sendBodyAndHeaders(endpoint, message, addHeaders(message, null));
         }
         catch (Exception e)
         {
@@ -115,7 +211,7 @@ public class CamelMessageProducer implements MessageProducer
     {
         try
         {
-            producer.sendBodyAndHeaders(endpoint, message, addHeaders(headers));
+            producer.sendBodyAndHeaders(endpoint, message, addHeaders(message, headers));
         }
         catch (Exception e)
         {
@@ -127,18 +223,18 @@ public class CamelMessageProducer implements MessageProducer
     {
         try
         {
+            Map<String, Object> headers = null;
+            Object body = message;
             if (StringUtils.isEmpty(queueName))
             {
                 queueName = endpoint;
             }
             else
             {
-                if (objectMapper != null && !(message instanceof String))
-                {
-                    message = objectMapper.writeValueAsString(message);
-                }
+                headers = new HashMap<String, Object>();
+                body = marshalIfRequired(message, headers);
             }
-            producer.sendBodyAndHeaders(queueName, message, addHeaders(null));
+            producer.sendBodyAndHeaders(queueName, body, addHeaders(message, headers));
         }
         catch (Exception e)
         {
@@ -150,18 +246,17 @@ public class CamelMessageProducer implements MessageProducer
     {
         try
         {
+            Object body = message;
             if (StringUtils.isEmpty(queueName))
             {
                 queueName = endpoint;
             }
             else
             {
-                if (objectMapper != null && !(message instanceof String))
-                {
-                    message = objectMapper.writeValueAsString(message);
-                }
+                headers = (headers == null ? new HashMap<String, Object>() : new HashMap<String, Object>(headers));
+                body = marshalIfRequired(message, headers);
             }
-            producer.sendBodyAndHeaders(queueName, message, addHeaders(headers));
+            producer.sendBodyAndHeaders(queueName, body, addHeaders(message, headers));
         }
         catch (Exception e)
         {
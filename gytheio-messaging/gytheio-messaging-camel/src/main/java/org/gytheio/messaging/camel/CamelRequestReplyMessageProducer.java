@@ -21,25 +21,34 @@ package org.gytheio.messaging.camel;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 import org.gytheio.content.ContentIOException;
+import org.gytheio.messaging.MessagingException;
+import org.gytheio.messaging.ProgressReply;
 import org.gytheio.messaging.Reply;
+import org.gytheio.messaging.ReplyPublisher;
 import org.gytheio.messaging.Request;
-import org.gytheio.messaging.RequestReplyMessageProducer;
+import org.gytheio.messaging.StreamingRequestReplyMessageProducer;
 
 /**
  * An Apache Camel implementation of a request-reply message producer.
  * <p>
- * A pending requests map is maintained and the {@link ReplyCallable} periodically polls
- * that map to determine if a correlated reply has been received.
+ * A concurrent map of pending request publishers is maintained and {@link #onReceive(Object)}
+ * pushes each reply directly to the correlated publisher as it arrives, completing it on the
+ * final reply (see {@link ProgressReply}).  Timeouts are handled by a single scheduler shared
+ * by all producers rather than a thread per request.
  * <p>
  * Note that the built-in Camel asynchronous processing was not used for a few reasons:
  * <ul>
@@ -55,33 +64,56 @@ import org.gytheio.messaging.RequestReplyMessageProducer;
  */
 public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends Reply> 
         extends CamelMessageProducer 
-        implements RequestReplyMessageProducer<RQ, RP> 
+        implements StreamingRequestReplyMessageProducer<RQ, RP> 
 {
     private static final Log logger = LogFactory.getLog(CamelRequestReplyMessageProducer.class);
 
-    private static final long DEFAULT_PENDING_REQUEST_POLLING_INTERVAL_MS = 500;
     private static final long DEFAULT_PENDING_REQUEST_TIMEOUT_MS = 20000;
     
+    private static final ScheduledExecutorService SHARED_TIMEOUT_SCHEDULER = createTimeoutScheduler();
+    
     // TODO: In a clustered env this would have to be distributed (Hazelcast) or persisted
-    protected Map<String, RP> pendingRequests = new HashMap<String, RP>();
+    protected Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
     
-    protected long pollingIntervalMs = DEFAULT_PENDING_REQUEST_POLLING_INTERVAL_MS;
     protected long timeoutMs = DEFAULT_PENDING_REQUEST_TIMEOUT_MS;
     
-    protected ExecutorService executorService;
+    protected ScheduledExecutorService timeoutScheduler = SHARED_TIMEOUT_SCHEDULER;
     
     /**
-     * The pending request polling interval in milliseconds
+     * Creates the daemon scheduler shared by all producers for request timeouts,
+     * removing cancelled timeouts immediately so completed requests aren't retained.
+     * 
+     * @return the timeout scheduler
+     */
+    private static ScheduledExecutorService createTimeoutScheduler()
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "gytheio-request-timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+    
+    /**
+     * No longer used, replies complete pending requests as they're received
      * 
      * @param pollingIntervalMs
+     * @deprecated replies are no longer polled for
      */
+    @Deprecated
     public void setPollingIntervalMs(long pollingIntervalMs)
     {
-        this.pollingIntervalMs = pollingIntervalMs;
     }
 
     /**
-     * The pending request timeout in milliseconds
+     * The pending request timeout in milliseconds since the request or its last
+     * progress reply, or -1 to wait indefinitely
      * 
      * @param timeoutMs
      */
@@ -91,32 +123,76 @@ public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends
     }
 
     /**
-     * The executor service to be used for executing the polling callable
+     * No longer used, pending requests no longer require a thread each
      * 
      * @param executorService
+     * @deprecated see {@link #setTimeoutScheduler(ScheduledExecutorService)}
      */
+    @Deprecated
     public void setExecutorService(ExecutorService executorService)
     {
-        this.executorService = executorService;
+    }
+    
+    /**
+     * The scheduler used to time out pending requests, defaults to a single
+     * daemon thread shared by all producers
+     * 
+     * @param timeoutScheduler
+     */
+    public void setTimeoutScheduler(ScheduledExecutorService timeoutScheduler)
+    {
+        this.timeoutScheduler = timeoutScheduler;
     }
     
     public void init()
     {
-        if (executorService == null)
+    }
+    
+    /**
+     * Gets the number of requests still awaiting a reply
+     * 
+     * @return the pending request count
+     */
+    public int getPendingRequestCount()
+    {
+        return pendingRequests.size();
+    }
+    
+    @Override
+    public Flow.Publisher<RP> streamRequest(RQ request)
+    {
+        PendingRequest pendingRequest = new PendingRequest(request.getRequestId());
+        
+        // Register before sending so a fast reply can't arrive before we're ready for it
+        pendingRequests.put(pendingRequest.requestId, pendingRequest);
+        try
         {
-            executorService = Executors.newCachedThreadPool();
+            send(request);
         }
+        catch (MessagingException e)
+        {
+            pendingRequests.remove(pendingRequest.requestId, pendingRequest);
+            throw e;
+        }
+        pendingRequest.scheduleTimeout();
+        return pendingRequest;
     }
     
     @Override
-    public Future<RP> asyncRequest(RQ request)
+    public CompletableFuture<RP> asyncRequest(RQ request)
     {
-        send(request);
-        pendingRequests.put(request.getRequestId(), null);
+        final FinalReplySubscriber subscriber = new FinalReplySubscriber();
+        streamRequest(request).subscribe(subscriber);
         
-        FutureTask<RP> future = new FutureTask<>(new ReplyCallable(request.getRequestId()));
-        executorService.execute(future);
-        return future;
+        // Cancelling the future releases the pending request
+        subscriber.future.whenComplete(new BiConsumer<RP, Throwable>()
+        {
+            public void accept(RP reply, Throwable error)
+            {
+                subscriber.subscription.cancel();
+            }
+        });
+        return subscriber.future;
     }
     
     @SuppressWarnings("unchecked")
@@ -130,69 +206,132 @@ public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends
             logger.debug("Received reply for request " + reply.getRequestId());
         }
         
-        if (!pendingRequests.containsKey(reply.getRequestId()))
+        PendingRequest pendingRequest = pendingRequests.get(reply.getRequestId());
+        if (pendingRequest == null)
         {
-         // TODO Need to better handle errors here, send an error message?
+            // TODO Need to better handle errors here, send an error message?
             logger.error("Unknown pending request: " + 
                     reply.getRequestId());
             return;
         }
         
-        pendingRequests.put(reply.getRequestId(), reply);
+        boolean isFinal = !(reply instanceof ProgressReply) || ((ProgressReply) reply).isFinalReply();
+        if (isFinal)
+        {
+            pendingRequest.release();
+        }
+        else
+        {
+            pendingRequest.scheduleTimeout();
+        }
+        pendingRequest.offer(reply, isFinal);
     }
     
     /**
-     * Class which polls the pending requests map to determine if a 
-     * correlated reply has been received.
+     * Publisher of a request's replies which also tracks its timeout
      */
-    public class ReplyCallable implements Callable<RP>
+    protected class PendingRequest extends ReplyPublisher<RP>
     {
-        private String requestId;
+        private final String requestId;
+        private final AtomicReference<ScheduledFuture<?>> timeout = new AtomicReference<ScheduledFuture<?>>();
+        private volatile boolean isReleased = false;
         
-        /**
-         * Constructor which takes a correlating request ID
-         * 
-         * @param requestId
-         */
-        public ReplyCallable(String requestId)
+        public PendingRequest(String requestId)
         {
             this.requestId = requestId;
         }
-
-        @Override
-        public RP call() throws Exception
+        
+        /**
+         * Schedules, or reschedules, the timeout for the next reply
+         */
+        protected void scheduleTimeout()
         {
-            long startTime = (new Date()).getTime();
-            try {
-                while (((new Date()).getTime() - startTime <= timeoutMs) || timeoutMs == -1)
+            if (timeoutMs < 0 || isReleased || isTerminated())
+            {
+                cancelTimeout();
+                return;
+            }
+            ScheduledFuture<?> next = timeoutScheduler.schedule(new Runnable()
+            {
+                public void run()
                 {
-                    if (logger.isDebugEnabled())
-                    {
-                        logger.debug("Polling for pending request " + requestId +
-                                " completion in " + pollingIntervalMs + "ms...");
-                    }
-                    Thread.sleep(pollingIntervalMs);
-                    RP reply = pendingRequests.get(
-                            requestId);
-                    
-                    if (reply == null)
+                    if (pendingRequests.remove(requestId, PendingRequest.this))
                     {
-                        // reply hasn't come back yet
-                        continue;
+                        fail(new ContentIOException("Timeout while waiting for reply"));
                     }
-                    
-                    pendingRequests.remove(requestId);
-                    return reply;
                 }
-                // We must have timed out
-                throw new ContentIOException("Timeout while waiting for reply");
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            ScheduledFuture<?> previous = timeout.getAndSet(next);
+            if (previous != null)
+            {
+                previous.cancel(false);
             }
-            catch (InterruptedException e)
+            if (isReleased || isTerminated())
             {
-                // We were asked to stop
-                return null;
+                // Final reply arrived while scheduling
+                cancelTimeout();
             }
         }
+        
+        protected void cancelTimeout()
+        {
+            ScheduledFuture<?> current = timeout.getAndSet(null);
+            if (current != null)
+            {
+                current.cancel(false);
+            }
+        }
+        
+        /**
+         * Stops tracking the request, no further replies will be accepted
+         */
+        protected void release()
+        {
+            isReleased = true;
+            pendingRequests.remove(requestId, this);
+            cancelTimeout();
+        }
+        
+        @Override
+        protected void onCancel()
+        {
+            release();
+        }
+    }
+    
+    /**
+     * Subscriber which completes a future with the final reply for a request
+     */
+    protected class FinalReplySubscriber implements Flow.Subscriber<RP>
+    {
+        private final CompletableFuture<RP> future = new CompletableFuture<RP>();
+        private Flow.Subscription subscription;
+        private RP lastReply;
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(RP reply)
+        {
+            lastReply = reply;
+        }
+
+        @Override
+        public void onError(Throwable error)
+        {
+            future.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            future.complete(lastReply);
+        }
     }
 
 }
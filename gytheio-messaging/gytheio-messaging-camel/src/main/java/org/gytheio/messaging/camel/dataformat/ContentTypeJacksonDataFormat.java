@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.camel.dataformat;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+import org.apache.camel.support.service.ServiceSupport;
+import org.gytheio.messaging.MessageCompressionUtils;
+import org.gytheio.messaging.jackson.ObjectMapperFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A Jackson Camel data format which marshals using the configured content type,
+ * JSON or Smile, and unmarshals according to the content type header of the
+ * incoming message, falling back to JSON when the header is absent.
+ * <p>
+ * Marshalled messages have the {@link ObjectMapperFactory#HEADER_CONTENT_TYPE}
+ * header set.  Bodies larger than the compression threshold, if set, are compressed
+ * and marked with the {@link MessageCompressionUtils#HEADER_CONTENT_ENCODING} header.
+ */
+public class ContentTypeJacksonDataFormat extends ServiceSupport implements DataFormat
+{
+    private ObjectMapper jsonObjectMapper;
+    private ObjectMapper smileObjectMapper;
+    private String contentType = ObjectMapperFactory.CONTENT_TYPE_JSON;
+    private Class<?> unmarshalType = Object.class;
+    private int compressionThreshold = MessageCompressionUtils.COMPRESSION_DISABLED;
+    
+    public ContentTypeJacksonDataFormat()
+    {
+        this(ObjectMapperFactory.createInstance(), ObjectMapperFactory.createSmileInstance());
+    }
+    
+    public ContentTypeJacksonDataFormat(ObjectMapper jsonObjectMapper, ObjectMapper smileObjectMapper)
+    {
+        this.jsonObjectMapper = jsonObjectMapper;
+        this.smileObjectMapper = smileObjectMapper;
+    }
+
+    /**
+     * Sets the content type used when marshalling, default JSON
+     * 
+     * @param contentType
+     */
+    public void setContentType(String contentType)
+    {
+        this.contentType = contentType;
+    }
+
+    public String getContentType()
+    {
+        return contentType;
+    }
+
+    /**
+     * Sets the type to unmarshal to, default <code>Object</code> relying
+     * on the type information in the message
+     * 
+     * @param unmarshalType
+     */
+    public void setUnmarshalType(Class<?> unmarshalType)
+    {
+        this.unmarshalType = unmarshalType;
+    }
+    
+    /**
+     * Sets the body size in bytes above which marshalled bodies are compressed,
+     * default {@link MessageCompressionUtils#COMPRESSION_DISABLED}
+     * 
+     * @param compressionThreshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        this.compressionThreshold = compressionThreshold;
+    }
+    
+    protected ObjectMapper getObjectMapper(String contentType)
+    {
+        return ObjectMapperFactory.isSmile(contentType) ? smileObjectMapper : jsonObjectMapper;
+    }
+
+    @Override
+    public void marshal(Exchange exchange, Object graph, OutputStream stream) throws Exception
+    {
+        boolean isCompressed = false;
+        if (compressionThreshold == MessageCompressionUtils.COMPRESSION_DISABLED)
+        {
+            getObjectMapper(contentType).writeValue(stream, graph);
+        }
+        else
+        {
+            byte[] bytes = getObjectMapper(contentType).writeValueAsBytes(graph);
+            isCompressed = MessageCompressionUtils.isCompressionRequired(bytes.length, compressionThreshold);
+            stream.write(isCompressed ? MessageCompressionUtils.compress(bytes) : bytes);
+        }
+        if (exchange != null)
+        {
+            exchange.getMessage().setHeader(ObjectMapperFactory.HEADER_CONTENT_TYPE, contentType);
+            if (isCompressed)
+            {
+                exchange.getMessage().setHeader(MessageCompressionUtils.HEADER_CONTENT_ENCODING, 
+                        MessageCompressionUtils.CONTENT_ENCODING_DEFLATE);
+            }
+        }
+    }
+
+    @Override
+    public Object unmarshal(Exchange exchange, InputStream stream) throws Exception
+    {
+        String messageContentType = null;
+        if (exchange != null)
+        {
+            messageContentType = exchange.getIn().getHeader(
+                    ObjectMapperFactory.HEADER_CONTENT_TYPE, String.class);
+            if (MessageCompressionUtils.isDeflate(
+                    exchange.getIn().getHeader(MessageCompressionUtils.HEADER_CONTENT_ENCODING)))
+            {
+                stream = MessageCompressionUtils.decompress(stream);
+            }
+        }
+        return getObjectMapper(messageContentType).readValue(stream, unmarshalType);
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+    }
+
+}
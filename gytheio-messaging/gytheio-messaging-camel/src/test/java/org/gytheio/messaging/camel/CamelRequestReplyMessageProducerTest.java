@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.camel;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.gytheio.content.ContentIOException;
+import org.gytheio.messaging.AbstractReply;
+import org.gytheio.messaging.AbstractRequest;
+import org.gytheio.messaging.ProgressReply;
+import org.gytheio.messaging.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reply correlation, streaming and timeouts of {@link CamelRequestReplyMessageProducer}
+ */
+public class CamelRequestReplyMessageProducerTest
+{
+    private static final long TIMEOUT_MS = 5000;
+    
+    private TestProducer producer;
+    
+    @Before
+    public void setUp()
+    {
+        producer = new TestProducer();
+        producer.setTimeoutMs(TIMEOUT_MS);
+        producer.init();
+    }
+    
+    @Test
+    public void testReplyCompletesRequest() throws Exception
+    {
+        TestRequest request = new TestRequest();
+        CompletableFuture<TestReply> future = producer.asyncRequest(request);
+        assertEquals(1, producer.sent.size());
+        assertEquals(1, producer.getPendingRequestCount());
+        assertFalse(future.isDone());
+        
+        TestReply reply = new TestReply(request);
+        producer.onReceive(reply);
+        
+        assertTrue(future.isDone());
+        assertSame(reply, future.get());
+        assertEquals(0, producer.getPendingRequestCount());
+    }
+    
+    @Test
+    public void testUnknownReplyIgnored() throws Exception
+    {
+        CompletableFuture<TestReply> future = producer.asyncRequest(new TestRequest());
+        producer.onReceive(new TestReply(new TestRequest()));
+        assertFalse(future.isDone());
+        assertEquals(1, producer.getPendingRequestCount());
+    }
+    
+    @Test
+    public void testTimeout() throws Exception
+    {
+        producer.setTimeoutMs(50);
+        CompletableFuture<TestReply> future = producer.asyncRequest(new TestRequest());
+        try
+        {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Request should have timed out");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof ContentIOException);
+        }
+        assertEquals(0, producer.getPendingRequestCount());
+    }
+    
+    @Test
+    public void testConcurrentProgressRepliesKeepRequestAlive() throws Exception
+    {
+        producer.setTimeoutMs(200);
+        final TestRequest request = new TestRequest();
+        CompletableFuture<TestReply> future = producer.asyncRequest(request);
+        List<Thread> repliers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++)
+        {
+            Thread replier = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < 30; j++)
+                    {
+                        producer.onReceive(new TestReply(request, false));
+                        try
+                        {
+                            Thread.sleep(20);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+                }
+            });
+            repliers.add(replier);
+            replier.start();
+        }
+        for (Thread replier : repliers)
+        {
+            replier.join(TIMEOUT_MS);
+        }
+        // Every superseded timeout was cancelled, so none fired while replies kept arriving
+        assertFalse(future.isDone());
+        
+        TestReply reply = new TestReply(request, true);
+        producer.onReceive(reply);
+        assertSame(reply, future.get());
+    }
+    
+    @Test
+    public void testCancelRemovesPendingRequest() throws Exception
+    {
+        CompletableFuture<TestReply> future = producer.asyncRequest(new TestRequest());
+        future.cancel(false);
+        assertEquals(0, producer.getPendingRequestCount());
+    }
+    
+    @Test
+    public void testFutureWaitsForFinalReply() throws Exception
+    {
+        TestRequest request = new TestRequest();
+        CompletableFuture<TestReply> future = producer.asyncRequest(request);
+        producer.onReceive(new TestReply(request, false));
+        assertFalse(future.isDone());
+        
+        TestReply reply = new TestReply(request, true);
+        producer.onReceive(reply);
+        assertSame(reply, future.get());
+        assertEquals(0, producer.getPendingRequestCount());
+    }
+    
+    @Test
+    public void testStreamsProgressReplies() throws Exception
+    {
+        TestRequest request = new TestRequest();
+        Flow.Publisher<TestReply> publisher = producer.streamRequest(request);
+        
+        // Replies before subscribing are buffered
+        producer.onReceive(new TestReply(request, false));
+        
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+        assertEquals(0, subscriber.replies.size());
+        
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.replies.size());
+        
+        producer.onReceive(new TestReply(request, false));
+        producer.onReceive(new TestReply(request, true));
+        assertEquals(1, subscriber.replies.size());
+        assertEquals(0, producer.getPendingRequestCount());
+        
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(3, subscriber.replies.size());
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+    
+    @Test
+    public void testStreamCancelRemovesPendingRequest() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber();
+        producer.streamRequest(new TestRequest()).subscribe(subscriber);
+        assertEquals(1, producer.getPendingRequestCount());
+        subscriber.subscription.cancel();
+        assertEquals(0, producer.getPendingRequestCount());
+    }
+    
+    public static class TestSubscriber implements Flow.Subscriber<TestReply>
+    {
+        private final List<TestReply> replies = new ArrayList<TestReply>();
+        private Flow.Subscription subscription;
+        private boolean completed;
+        private Throwable error;
+        
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+        }
+
+        public void onNext(TestReply reply)
+        {
+            replies.add(reply);
+        }
+
+        public void onError(Throwable error)
+        {
+            this.error = error;
+        }
+
+        public void onComplete()
+        {
+            completed = true;
+        }
+    }
+    
+    public static class TestProducer extends CamelRequestReplyMessageProducer<TestRequest, TestReply>
+    {
+        private final List<Object> sent = new ArrayList<Object>();
+        
+        @Override
+        public void send(Object message)
+        {
+            sent.add(message);
+        }
+    }
+    
+    public static class TestRequest extends AbstractRequest implements Request<TestReply>
+    {
+        public Class<TestReply> getReplyClass()
+        {
+            return TestReply.class;
+        }
+    }
+    
+    public static class TestReply extends AbstractReply implements ProgressReply
+    {
+        private final boolean isFinal;
+        
+        public TestReply(TestRequest request)
+        {
+            this(request, true);
+        }
+        
+        public TestReply(TestRequest request, boolean isFinal)
+        {
+            super(request);
+            this.isFinal = isFinal;
+        }
+
+        public boolean isFinalReply()
+        {
+            return isFinal;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.camel.dataformat;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.gytheio.messaging.camel.dataformat.SimplePojo.EnumValue;
+import org.gytheio.messaging.MessageCompressionUtils;
+import org.gytheio.messaging.jackson.ObjectMapperFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ContentTypeJacksonDataFormat}
+ */
+public class ContentTypeJacksonDataFormatTest
+{
+    private static final String EXPECTED_FIELD1_VALUE = "value1";
+    private static final Integer EXPECTED_FIELD2_VALUE = Integer.valueOf(2);
+    private static final EnumValue EXPECTED_FIELD3_VALUE = EnumValue.VALUE_1;
+    
+    private ContentTypeJacksonDataFormat dataFormat;
+    private DefaultCamelContext camelContext;
+    
+    @Before
+    public void init()
+    {
+        dataFormat = new ContentTypeJacksonDataFormat();
+        camelContext = new DefaultCamelContext();
+    }
+    
+    protected SimplePojo createPojo()
+    {
+        return new SimplePojo(EXPECTED_FIELD1_VALUE, EXPECTED_FIELD2_VALUE, EXPECTED_FIELD3_VALUE);
+    }
+    
+    protected SimplePojo roundTrip(boolean copyHeader) throws Exception
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Exchange marshalExchange = new DefaultExchange(camelContext);
+        dataFormat.marshal(marshalExchange, createPojo(), os);
+        
+        Exchange unmarshalExchange = new DefaultExchange(camelContext);
+        if (copyHeader)
+        {
+            unmarshalExchange.getIn().setHeaders(marshalExchange.getMessage().getHeaders());
+        }
+        return (SimplePojo) dataFormat.unmarshal(
+                unmarshalExchange, new ByteArrayInputStream(os.toByteArray()));
+    }
+    
+    protected void assertPojo(SimplePojo simplePojo)
+    {
+        assertEquals(EXPECTED_FIELD1_VALUE, simplePojo.getField1());
+        assertEquals(EXPECTED_FIELD2_VALUE, simplePojo.getField2());
+        assertEquals(EXPECTED_FIELD3_VALUE, simplePojo.getField3());
+    }
+    
+    @Test
+    public void testJsonRoundTrip() throws Exception
+    {
+        assertPojo(roundTrip(true));
+    }
+    
+    @Test
+    public void testSmileRoundTrip() throws Exception
+    {
+        dataFormat.setContentType(ObjectMapperFactory.CONTENT_TYPE_SMILE);
+        assertPojo(roundTrip(true));
+    }
+    
+    @Test
+    public void testMarshalSetsContentTypeHeader() throws Exception
+    {
+        dataFormat.setContentType(ObjectMapperFactory.CONTENT_TYPE_SMILE);
+        Exchange exchange = new DefaultExchange(camelContext);
+        dataFormat.marshal(exchange, createPojo(), new ByteArrayOutputStream());
+        assertEquals(ObjectMapperFactory.CONTENT_TYPE_SMILE, 
+                exchange.getMessage().getHeader(ObjectMapperFactory.HEADER_CONTENT_TYPE));
+    }
+    
+    @Test
+    public void testMissingHeaderDefaultsToJson() throws Exception
+    {
+        assertPojo(roundTrip(false));
+    }
+    
+    @Test
+    public void testCompressedRoundTrip() throws Exception
+    {
+        dataFormat.setCompressionThreshold(0);
+        assertPojo(roundTrip(true));
+        
+        dataFormat.setContentType(ObjectMapperFactory.CONTENT_TYPE_SMILE);
+        assertPojo(roundTrip(true));
+    }
+    
+    @Test
+    public void testCompressionThreshold() throws Exception
+    {
+        dataFormat.setCompressionThreshold(Integer.MAX_VALUE);
+        Exchange exchange = new DefaultExchange(camelContext);
+        dataFormat.marshal(exchange, createPojo(), new ByteArrayOutputStream());
+        assertNull(exchange.getMessage().getHeader(MessageCompressionUtils.HEADER_CONTENT_ENCODING));
+        
+        dataFormat.setCompressionThreshold(0);
+        dataFormat.marshal(exchange, createPojo(), new ByteArrayOutputStream());
+        assertEquals(MessageCompressionUtils.CONTENT_ENCODING_DEFLATE, 
+                exchange.getMessage().getHeader(MessageCompressionUtils.HEADER_CONTENT_ENCODING));
+    }
+
+}
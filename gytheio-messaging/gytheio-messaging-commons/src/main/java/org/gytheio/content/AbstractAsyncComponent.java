@@ -21,10 +21,15 @@ package org.gytheio.content;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.gytheio.messaging.MessageAcknowledgement;
+import org.gytheio.messaging.MessagingException;
+import org.gytheio.messaging.PausableMessageEndpoint;
 import org.gytheio.messaging.Reply;
 import org.gytheio.messaging.Request;
 
@@ -32,6 +37,18 @@ import org.gytheio.messaging.Request;
  * Base component which pulls a message off the queue before performing the work, useful
  * when progress reporting is needed as some messaging endpoints will lock the session
  * until the message consumption is complete and progress replies can not be sent.
+ * <p>
+ * Received requests are placed on a bounded local queue which is drained by a pool of
+ * {@link #setWorkerThreads(int) worker threads}.  When the local queue is full and a
+ * {@link PausableMessageEndpoint} has been set the endpoint is paused so that no further
+ * messages are pulled from the broker, and resumed once the local queue has drained.
+ * Pausing is handed off to a separate thread as the full queue is usually detected
+ * on the endpoint's own delivery thread.
+ * <p>
+ * The local queue is a {@link RequestScheduler}, by default a single lane handing out
+ * requests in arrival order.  With a {@link #setCostEstimator(RequestCostEstimator) cost
+ * estimator} set light and heavy requests wait in separate lanes so workers can pick
+ * light requests ahead of queued heavy ones.
  *
  * @param <W>
  * @param <RQ>
@@ -44,13 +61,29 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
      */
     private static final Log logger = LogFactory.getLog(AbstractAsyncComponent.class);
     
+    private static final int DEFAULT_WORKER_THREADS = 1;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1;
+    
     protected ExecutorService executorService;
+    protected PausableMessageEndpoint pausableEndpoint;
+    
+    private int workerThreads = DEFAULT_WORKER_THREADS;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
     
-    private final BlockingQueue<RQ> localQueue =  new SynchronousQueue<RQ>();
+    private RequestScheduler<Object> localQueue;
+    private RequestCostEstimator costEstimator;
+    private final AtomicInteger activeWorkerCount = new AtomicInteger();
+    private final Object endpointLock = new Object();
+    private boolean isEndpointPaused = false;
+    private final AtomicBoolean isPausePending = new AtomicBoolean(false);
+    private ExecutorService endpointControlExecutor;
     
     /**
      * Sets the executor service components may optionally need for running
      * separate threads.
+     * <p>
+     * The executor service must be able to run at least {@link #setWorkerThreads(int)}
+     * tasks concurrently.  If not set a fixed thread pool of that size is created.
      * 
      * @param executorService
      */
@@ -58,20 +91,240 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
     {
         this.executorService = executorService;
     }
+    
+    /**
+     * Sets the endpoint which should be paused when the local queue is full
+     * 
+     * @param pausableEndpoint
+     */
+    public void setPausableEndpoint(PausableMessageEndpoint pausableEndpoint)
+    {
+        this.pausableEndpoint = pausableEndpoint;
+    }
+    
+    /**
+     * Sets the scheduler used as the local queue, its capacity is set to the
+     * {@link #setQueueCapacity(int) queue capacity}
+     * 
+     * @param scheduler
+     */
+    public void setScheduler(RequestScheduler<Object> scheduler)
+    {
+        this.localQueue = scheduler;
+    }
+    
+    /**
+     * Sets the estimator of request costs used to pick the scheduler lane
+     * 
+     * @param costEstimator
+     */
+    public void setCostEstimator(RequestCostEstimator costEstimator)
+    {
+        this.costEstimator = costEstimator;
+    }
+    
+    /**
+     * Sets the number of threads processing requests from the local queue, default 1
+     * 
+     * @param workerThreads
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        if (workerThreads < 1)
+        {
+            throw new IllegalArgumentException("workerThreads must be at least 1");
+        }
+        this.workerThreads = workerThreads;
+    }
+    
+    /**
+     * Sets the maximum number of requests waiting in each lane of the local queue
+     * for a free worker thread, default 1
+     * 
+     * @param queueCapacity
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        if (queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+    
+    public int getWorkerThreads()
+    {
+        return workerThreads;
+    }
+    
+    /**
+     * Gets the number of requests waiting in the local queue
+     * 
+     * @return the local queue depth
+     */
+    public int getQueueDepth()
+    {
+        return localQueue == null ? 0 : localQueue.size();
+    }
+    
+    /**
+     * Gets the number of worker threads currently processing a request
+     * 
+     * @return the active worker count
+     */
+    public int getActiveWorkerCount()
+    {
+        return activeWorkerCount.get();
+    }
 
     @SuppressWarnings("unchecked")
     protected void onReceiveImpl(Object message)
     {
-        RQ request = (RQ) message;
+        queueRequest(new QueuedRequest((RQ) message, null));
+    }
+    
+    /**
+     * Queues the request, acknowledging it once it has been processed by a worker thread
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public void onReceive(final Object message, MessageAcknowledgement acknowledgement)
+    {
+        if (isExpired(message))
+        {
+            processAndAcknowledge(new Runnable()
+            {
+                public void run()
+                {
+                    onExpired(message);
+                }
+            }, acknowledgement);
+            return;
+        }
+        if (!queueRequest(new QueuedRequest((RQ) message, acknowledgement)))
+        {
+            acknowledgement.reject();
+        }
+    }
+    
+    /**
+     * Places the request on the local queue, pausing the endpoint if the queue is full
+     * 
+     * @param queuedRequest
+     * @return true if queued, false if interrupted
+     */
+    protected boolean queueRequest(QueuedRequest queuedRequest)
+    {
         try
         {
-            localQueue.put(request);
+            long cost = estimateCost(queuedRequest.request);
+            if (!localQueue.offer(queuedRequest, cost))
+            {
+                // Stop pulling from the broker, we only wait for the request we already hold
+                pauseEndpoint();
+                localQueue.put(queuedRequest, cost);
+            }
+            return true;
         }
         catch (InterruptedException e)
         {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while queueing requestId=" + queuedRequest.request.getRequestId());
+            return false;
         }
     }
     
+    /**
+     * Requests that the endpoint be paused, the pause itself is performed on the
+     * endpoint control thread
+     */
+    protected void pauseEndpoint()
+    {
+        if (pausableEndpoint != null && isPausePending.compareAndSet(false, true))
+        {
+            endpointControlExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    isPausePending.set(false);
+                    pauseEndpointImpl();
+                }
+            });
+        }
+    }
+    
+    protected void pauseEndpointImpl()
+    {
+        synchronized (endpointLock)
+        {
+            if (!isEndpointPaused)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Local queue full, pausing endpoint");
+                }
+                try
+                {
+                    pausableEndpoint.pause();
+                    isEndpointPaused = true;
+                }
+                catch (MessagingException e)
+                {
+                    logger.error(e.getMessage(), e);
+                    return;
+                }
+            }
+            // The workers may have drained the queue before the pause took effect
+            if (localQueue.remainingCapacity() > 0)
+            {
+                resumeEndpoint();
+            }
+        }
+    }
+    
+    protected void resumeEndpoint()
+    {
+        if (pausableEndpoint == null)
+        {
+            return;
+        }
+        synchronized (endpointLock)
+        {
+            if (!isEndpointPaused)
+            {
+                return;
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Local queue drained, resuming endpoint");
+            }
+            try
+            {
+                pausableEndpoint.resume();
+                isEndpointPaused = false;
+            }
+            catch (MessagingException e)
+            {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+    
+    /**
+     * Estimates the cost of processing the given request
+     * 
+     * @param request
+     * @return the estimated cost, 0 if there's no cost estimator
+     */
+    protected long estimateCost(RQ request)
+    {
+        if (costEstimator == null)
+        {
+            return 0;
+        }
+        return costEstimator.estimateCost(request);
+    }
+    
     /**
      * Performs the actual work for the request.
      * 
@@ -79,43 +332,152 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
      */
     protected abstract void processRequest(RQ request);
     
+    /**
+     * Processes the request taken from the local queue unless its deadline
+     * passed while it was waiting for a worker thread
+     * 
+     * @param request
+     */
+    protected void processQueuedRequest(RQ request)
+    {
+        if (isExpired(request))
+        {
+            onExpired(request);
+            return;
+        }
+        processRequest(request);
+    }
+    
+    /**
+     * A request on the local queue with its optional acknowledgement
+     */
+    protected class QueuedRequest
+    {
+        protected final RQ request;
+        protected final MessageAcknowledgement acknowledgement;
+        
+        public QueuedRequest(RQ request, MessageAcknowledgement acknowledgement)
+        {
+            this.request = request;
+            this.acknowledgement = acknowledgement;
+        }
+    }
+    
     /**
      * Takes from the local concurrent queue and hands them off to be processed
      *
      */
     protected class LocalQueueProcessor implements Runnable
     {
-        private final BlockingQueue<RQ> localProcessorQueue;
+        private final RequestScheduler<Object> localProcessorQueue;
         
-        public LocalQueueProcessor(BlockingQueue<RQ> localProcessorQueue)
+        public LocalQueueProcessor(RequestScheduler<Object> localProcessorQueue)
         {
             this.localProcessorQueue = localProcessorQueue;
         }
         
+        @SuppressWarnings("unchecked")
         @Override
         public void run()
         {
             logger.debug("Starting local queue processing");
-            while(true)
+            while (!Thread.currentThread().isInterrupted())
             {
                 try
                 {
-                    RQ request = localProcessorQueue.take();
-                    logger.debug("Processing local queue message");
-                    processRequest(request);
-                    logger.debug("Processing local queue message complete");
+                    RequestScheduler.Ticket<Object> ticket = localProcessorQueue.take();
+                    final QueuedRequest queuedRequest = (QueuedRequest) ticket.getItem();
+                    if (localProcessorQueue.isEmpty())
+                    {
+                        resumeEndpoint();
+                    }
+                    activeWorkerCount.incrementAndGet();
+                    try
+                    {
+                        logger.debug("Processing local queue message");
+                        if (queuedRequest.acknowledgement == null)
+                        {
+                            processQueuedRequest(queuedRequest.request);
+                        }
+                        else
+                        {
+                            processAndAcknowledge(new Runnable()
+                            {
+                                public void run()
+                                {
+                                    processQueuedRequest(queuedRequest.request);
+                                }
+                            }, queuedRequest.acknowledgement);
+                        }
+                        logger.debug("Processing local queue message complete");
+                    }
+                    finally
+                    {
+                        activeWorkerCount.decrementAndGet();
+                        localProcessorQueue.release(ticket);
+                    }
                 }
                 catch (InterruptedException e)
                 {
+                    Thread.currentThread().interrupt();
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error(e.getMessage(), e);
                 }
             }
+            logger.debug("Stopped local queue processing");
         }
     }
     
     public void init()
     {
         super.init();
-        executorService.execute(new LocalQueueProcessor(localQueue));
+        if (localQueue == null)
+        {
+            localQueue = new RequestScheduler<Object>();
+        }
+        localQueue.setCapacity(queueCapacity);
+        if (localQueue.getMaxConcurrent() == null)
+        {
+            localQueue.setMaxConcurrent(workerThreads);
+        }
+        if (executorService == null)
+        {
+            executorService = Executors.newFixedThreadPool(workerThreads);
+        }
+        for (int i = 0; i < workerThreads; i++)
+        {
+            executorService.execute(new LocalQueueProcessor(localQueue));
+        }
+        if (pausableEndpoint != null && endpointControlExecutor == null)
+        {
+            endpointControlExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "gytheio-endpoint-control");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Stops the worker threads, interrupting any requests in progress,
+     * once the component will receive no further requests
+     */
+    public void destroy()
+    {
+        if (executorService != null)
+        {
+            executorService.shutdownNow();
+        }
+        if (endpointControlExecutor != null)
+        {
+            endpointControlExecutor.shutdownNow();
+        }
     }
 
 }
@@ -18,6 +18,16 @@
  */
 package org.gytheio.content;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gytheio.messaging.AbstractRequest;
+import org.gytheio.messaging.AcknowledgingMessageConsumer;
+import org.gytheio.messaging.AsyncMessageProducer;
+import org.gytheio.messaging.MessageAcknowledgement;
 import org.gytheio.messaging.MessageProducer;
 
 /**
@@ -27,11 +37,21 @@ import org.gytheio.messaging.MessageProducer;
  *
  * @param <W>
  */
-public abstract class AbstractComponent<W extends ContentWorker> implements Component
+public abstract class AbstractComponent<W extends ContentWorker> implements Component, AcknowledgingMessageConsumer
 {
+    private static final Log logger = LogFactory.getLog(AbstractComponent.class);
+    
     protected String name;
     protected W worker;
     protected MessageProducer messageProducer;
+    protected boolean isAsyncReplies = false;
+    
+    /**
+     * The last reply sent by the current thread while processing an acknowledged message,
+     * shared so that replies sent by a component delegated to are tracked too
+     */
+    private static final ThreadLocal<AtomicReference<CompletableFuture<Void>>> lastReply = 
+            new ThreadLocal<AtomicReference<CompletableFuture<Void>>>();
     
     public String getName()
     {
@@ -73,17 +93,231 @@ public abstract class AbstractComponent<W extends ContentWorker> implements Comp
     }
     
 
+    /**
+     * Sets whether or not replies should be handed off to be sent on a separate thread
+     * when the message producer is an {@link AsyncMessageProducer}, default false
+     * 
+     * @param isAsyncReplies
+     */
+    public void setAsyncReplies(boolean isAsyncReplies)
+    {
+        this.isAsyncReplies = isAsyncReplies;
+    }
+
     public void init()
     {
     }
     
+    /**
+     * Sends the given reply using the message producer, asynchronously if
+     * configured to do so and supported by the producer.
+     * 
+     * @param reply
+     * @param replyTo the optional overriding queue name
+     * @return a future completed once the reply is sent
+     */
+    protected CompletableFuture<Void> sendReply(Object reply, String replyTo)
+    {
+        if (isAsyncReplies && messageProducer instanceof AsyncMessageProducer)
+        {
+            CompletableFuture<Void> future = 
+                    ((AsyncMessageProducer) messageProducer).sendAsync(reply, replyTo);
+            future.whenComplete(new BiConsumer<Void, Throwable>()
+            {
+                public void accept(Void result, Throwable error)
+                {
+                    if (error != null)
+                    {
+                        logger.error("Error sending reply: " + error.getMessage(), error);
+                    }
+                }
+            });
+            trackReply(future);
+            return future;
+        }
+        messageProducer.send(reply, replyTo);
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        trackReply(future);
+        return future;
+    }
+    
+    private void trackReply(CompletableFuture<Void> future)
+    {
+        AtomicReference<CompletableFuture<Void>> currentLastReply = lastReply.get();
+        if (currentLastReply != null)
+        {
+            currentLastReply.set(future);
+        }
+    }
+    
+    /**
+     * Tracks a reply to the message being processed which is sent later, usually by another
+     * thread, so that the message is only acknowledged once the given future is completed
+     * 
+     * @param deferredReply
+     */
+    protected void trackDeferredReply(CompletableFuture<Void> deferredReply)
+    {
+        trackReply(deferredReply);
+    }
+    
+    /**
+     * Runs the given processing for a message whose reply was deferred, completing the
+     * deferred reply once the last reply sent during processing has been sent
+     * 
+     * @param processing
+     * @param deferredReply
+     */
+    protected void processDeferred(Runnable processing, final CompletableFuture<Void> deferredReply)
+    {
+        AtomicReference<CompletableFuture<Void>> previousLastReply = lastReply.get();
+        AtomicReference<CompletableFuture<Void>> currentLastReply = new AtomicReference<CompletableFuture<Void>>();
+        lastReply.set(currentLastReply);
+        try
+        {
+            processing.run();
+        }
+        catch (RuntimeException e)
+        {
+            deferredReply.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            if (previousLastReply == null)
+            {
+                lastReply.remove();
+            }
+            else
+            {
+                lastReply.set(previousLastReply);
+            }
+        }
+        CompletableFuture<Void> future = currentLastReply.get();
+        if (future == null)
+        {
+            deferredReply.complete(null);
+            return;
+        }
+        future.whenComplete(new BiConsumer<Void, Throwable>()
+        {
+            public void accept(Void result, Throwable error)
+            {
+                if (error != null)
+                {
+                    deferredReply.completeExceptionally(error);
+                }
+                else
+                {
+                    deferredReply.complete(null);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Runs the given processing then completes the acknowledgement once the last reply
+     * sent during processing has been sent, or rejects it if processing or sending failed.
+     * 
+     * @param processing
+     * @param acknowledgement
+     */
+    protected void processAndAcknowledge(Runnable processing, final MessageAcknowledgement acknowledgement)
+    {
+        AtomicReference<CompletableFuture<Void>> currentLastReply = new AtomicReference<CompletableFuture<Void>>();
+        lastReply.set(currentLastReply);
+        try
+        {
+            processing.run();
+        }
+        catch (RuntimeException e)
+        {
+            acknowledgement.reject();
+            throw e;
+        }
+        finally
+        {
+            lastReply.remove();
+        }
+        CompletableFuture<Void> future = currentLastReply.get();
+        if (future == null)
+        {
+            acknowledgement.acknowledge();
+            return;
+        }
+        future.whenComplete(new BiConsumer<Void, Throwable>()
+        {
+            public void accept(Void result, Throwable error)
+            {
+                if (error != null)
+                {
+                    acknowledgement.reject();
+                }
+                else
+                {
+                    acknowledgement.acknowledge();
+                }
+            }
+        });
+    }
+    
     public void onReceive(Object message)
     {
+        if (isExpired(message))
+        {
+            onExpired(message);
+            return;
+        }
         onReceiveImpl(message);
     }
     
+    public void onReceive(final Object message, MessageAcknowledgement acknowledgement)
+    {
+        processAndAcknowledge(new Runnable()
+        {
+            public void run()
+            {
+                if (isExpired(message))
+                {
+                    onExpired(message);
+                    return;
+                }
+                onReceiveImpl(message);
+            }
+        }, acknowledgement);
+    }
+    
     protected abstract void onReceiveImpl(Object message);
     
+    /**
+     * Determines whether the given message is a request whose deadline has passed
+     * 
+     * @param message
+     * @return true if the message should not be worked on
+     */
+    protected boolean isExpired(Object message)
+    {
+        return AbstractRequest.isExpired(message);
+    }
+    
+    /**
+     * Called instead of doing the work for a request whose deadline has passed,
+     * by default the request is logged and dropped.  Implementations with a reply
+     * type should override to send a fast error reply.
+     * 
+     * @param message
+     */
+    protected void onExpired(Object message)
+    {
+        if (logger.isWarnEnabled())
+        {
+            String requestId = message instanceof AbstractRequest ? 
+                    ((AbstractRequest) message).getRequestId() : String.valueOf(message);
+            logger.warn("Dropping expired requestId=" + requestId + 
+                    ", deadline=" + AbstractRequest.getDeadline(message));
+        }
+    }
+    
     @Override
     public boolean isWorkerAvailable()
     {
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the cost of a content request as the sum of its source sizes, each
+ * multiplied by the weight of its media type.
+ * <p>
+ * Media type weights are looked up by exact media type then by top-level type
+ * wildcard, i.e. <code>video/*</code>, and default to 1.  By default video sources
+ * weigh 8 and audio sources 2.
+ */
+public class ContentRequestCostEstimator implements RequestCostEstimator
+{
+    public static final long DEFAULT_SOURCE_SIZE = 1024 * 1024;
+    
+    protected long defaultSourceSize = DEFAULT_SOURCE_SIZE;
+    protected Map<String, Double> mediaTypeWeights;
+    
+    public ContentRequestCostEstimator()
+    {
+        mediaTypeWeights = new HashMap<String, Double>();
+        mediaTypeWeights.put("video/*", 8.0);
+        mediaTypeWeights.put("audio/*", 2.0);
+    }
+    
+    /**
+     * Sets the size assumed for sources of unknown size, default 1MB
+     * 
+     * @param defaultSourceSize
+     */
+    public void setDefaultSourceSize(long defaultSourceSize)
+    {
+        this.defaultSourceSize = defaultSourceSize;
+    }
+    
+    /**
+     * Sets the cost multipliers keyed by media type or top-level type wildcard,
+     * replacing the defaults
+     * 
+     * @param mediaTypeWeights
+     */
+    public void setMediaTypeWeights(Map<String, Double> mediaTypeWeights)
+    {
+        this.mediaTypeWeights = new HashMap<String, Double>(mediaTypeWeights);
+    }
+    
+    @Override
+    public long estimateCost(Object request)
+    {
+        if (!(request instanceof AbstractContentRequest))
+        {
+            return 0;
+        }
+        List<ContentReference> sources = ((AbstractContentRequest) request).getSourceContentReferences();
+        if (sources == null)
+        {
+            return 0;
+        }
+        double cost = 0;
+        for (ContentReference source : sources)
+        {
+            cost += getSourceCost(source, request);
+        }
+        return (long) Math.min(cost, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Gets the cost of the given source of the request
+     * 
+     * @param source
+     * @param request
+     * @return the source cost
+     */
+    protected double getSourceCost(ContentReference source, Object request)
+    {
+        Long size = source.getSize();
+        if (size == null || size < 0)
+        {
+            size = defaultSourceSize;
+        }
+        return size * getMediaTypeWeight(source.getMediaType());
+    }
+    
+    /**
+     * Gets the cost multiplier for the given media type
+     * 
+     * @param mediaType
+     * @return the weight, 1 if none is configured
+     */
+    protected double getMediaTypeWeight(String mediaType)
+    {
+        if (mediaType == null)
+        {
+            return 1.0;
+        }
+        Double weight = mediaTypeWeights.get(mediaType);
+        if (weight == null)
+        {
+            int separator = mediaType.indexOf('/');
+            if (separator > 0)
+            {
+                weight = mediaTypeWeights.get(mediaType.substring(0, separator) + "/*");
+            }
+        }
+        return weight == null ? 1.0 : weight;
+    }
+
+}
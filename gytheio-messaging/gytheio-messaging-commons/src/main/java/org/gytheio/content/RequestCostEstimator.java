@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content;
+
+/**
+ * Estimates the relative cost of doing the work for a request, used by the
+ * {@link RequestScheduler} to keep heavy requests from delaying light ones.
+ */
+public interface RequestCostEstimator
+{
+    
+    /**
+     * Estimates the cost of the given request, roughly the number of bytes processed
+     * 
+     * @param request
+     * @return the estimated cost, 0 if unknown
+     */
+    public long estimateCost(Object request);
+
+}
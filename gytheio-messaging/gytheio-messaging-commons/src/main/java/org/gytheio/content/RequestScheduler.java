@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A bounded local queue which hands requests to worker threads according to their
+ * estimated cost rather than strictly in arrival order.
+ * <p>
+ * Requests estimated at or above the {@link #setHeavyCostThreshold(long) heavy cost threshold}
+ * wait in the heavy lane and all others in the light lane.  While both lanes have waiting
+ * requests workers take from them by weighted round robin, so a large video transcode
+ * doesn't hold up many thumbnails queued behind it yet heavy requests aren't starved.
+ * At most {@link #setMaxHeavyConcurrent(int)} heavy requests run at once.
+ * <p>
+ * Each lane has its own {@link #setCapacity(int) capacity} so a backlog of heavy requests
+ * waiting on the heavy cap can't keep light requests from being queued for idle workers.
+ * <p>
+ * Workers {@link #take()} a request and must {@link #release(Ticket)} it once done.
+ *
+ * @param <E> the queued item
+ */
+public class RequestScheduler<E>
+{
+    public enum Lane
+    {
+        LIGHT, HEAVY
+    }
+    
+    public static final long DEFAULT_HEAVY_COST_THRESHOLD = 64L * 1024 * 1024;
+    private static final int DEFAULT_CAPACITY = 1;
+    private static final int DEFAULT_MAX_HEAVY_CONCURRENT = 1;
+    private static final int DEFAULT_LIGHT_WEIGHT = 4;
+    private static final int DEFAULT_HEAVY_WEIGHT = 1;
+    
+    private int capacity = DEFAULT_CAPACITY;
+    private Integer maxConcurrent;
+    private int maxHeavyConcurrent = DEFAULT_MAX_HEAVY_CONCURRENT;
+    private long heavyCostThreshold = DEFAULT_HEAVY_COST_THRESHOLD;
+    private int lightWeight = DEFAULT_LIGHT_WEIGHT;
+    private int heavyWeight = DEFAULT_HEAVY_WEIGHT;
+    
+    private final Deque<E> lightWaiting = new ArrayDeque<E>();
+    private final Deque<E> heavyWaiting = new ArrayDeque<E>();
+    private int runningCount;
+    private int heavyRunningCount;
+    private int lightCredit;
+    private int heavyCredit;
+    
+    /**
+     * Sets the maximum number of requests waiting in each lane, default 1
+     * 
+     * @param capacity
+     */
+    public void setCapacity(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Sets the maximum number of requests running at once across both lanes,
+     * defaults to the number of worker threads taking from the queue
+     * 
+     * @param maxConcurrent
+     */
+    public void setMaxConcurrent(int maxConcurrent)
+    {
+        if (maxConcurrent < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+    }
+    
+    /**
+     * Gets the maximum number of requests running at once, null if not set
+     * 
+     * @return the maximum concurrent requests
+     */
+    public Integer getMaxConcurrent()
+    {
+        return maxConcurrent;
+    }
+    
+    /**
+     * Sets the maximum number of heavy requests running at once, default 1
+     * 
+     * @param maxHeavyConcurrent
+     */
+    public void setMaxHeavyConcurrent(int maxHeavyConcurrent)
+    {
+        if (maxHeavyConcurrent < 1)
+        {
+            throw new IllegalArgumentException("maxHeavyConcurrent must be at least 1");
+        }
+        this.maxHeavyConcurrent = maxHeavyConcurrent;
+    }
+    
+    /**
+     * Sets the estimated cost at or above which requests are heavy, default 64MB
+     * 
+     * @param heavyCostThreshold
+     */
+    public void setHeavyCostThreshold(long heavyCostThreshold)
+    {
+        this.heavyCostThreshold = heavyCostThreshold;
+    }
+    
+    /**
+     * Sets the share of contended takes given to the light lane, default 4
+     * 
+     * @param lightWeight
+     */
+    public void setLightWeight(int lightWeight)
+    {
+        if (lightWeight < 1)
+        {
+            throw new IllegalArgumentException("lightWeight must be at least 1");
+        }
+        this.lightWeight = lightWeight;
+    }
+    
+    /**
+     * Sets the share of contended takes given to the heavy lane, default 1
+     * 
+     * @param heavyWeight
+     */
+    public void setHeavyWeight(int heavyWeight)
+    {
+        if (heavyWeight < 1)
+        {
+            throw new IllegalArgumentException("heavyWeight must be at least 1");
+        }
+        this.heavyWeight = heavyWeight;
+    }
+    
+    /**
+     * Gets the lane requests of the given estimated cost are scheduled in
+     * 
+     * @param cost
+     * @return the lane
+     */
+    public Lane getLane(long cost)
+    {
+        return cost >= heavyCostThreshold ? Lane.HEAVY : Lane.LIGHT;
+    }
+    
+    /**
+     * Queues the item if there's room in its lane
+     * 
+     * @param item
+     * @param cost the estimated cost of the item
+     * @return true if queued, false if the item's lane is full
+     */
+    public synchronized boolean offer(E item, long cost)
+    {
+        Deque<E> waiting = getWaiting(getLane(cost));
+        if (waiting.size() >= capacity)
+        {
+            return false;
+        }
+        waiting.add(item);
+        notifyAll();
+        return true;
+    }
+    
+    /**
+     * Queues the item, waiting for room if its lane is full
+     * 
+     * @param item
+     * @param cost the estimated cost of the item
+     * @throws InterruptedException
+     */
+    public synchronized void put(E item, long cost) throws InterruptedException
+    {
+        while (!offer(item, cost))
+        {
+            wait();
+        }
+    }
+    
+    /**
+     * Waits for an item which may run now, picking between the lanes by weight
+     * 
+     * @return the ticket for the item, to be released once done
+     * @throws InterruptedException
+     */
+    public synchronized Ticket<E> take() throws InterruptedException
+    {
+        Lane lane;
+        while ((lane = nextLane()) == null)
+        {
+            wait();
+        }
+        E item = getWaiting(lane).poll();
+        runningCount++;
+        if (lane == Lane.HEAVY)
+        {
+            heavyRunningCount++;
+        }
+        // Wakes producers waiting for room
+        notifyAll();
+        return new Ticket<E>(item, lane);
+    }
+    
+    /**
+     * Releases the running slot of a taken item
+     * 
+     * @param ticket
+     */
+    public synchronized void release(Ticket<E> ticket)
+    {
+        runningCount--;
+        if (ticket.lane == Lane.HEAVY)
+        {
+            heavyRunningCount--;
+        }
+        notifyAll();
+    }
+    
+    /**
+     * Gets the number of items waiting in both lanes
+     * 
+     * @return the waiting count
+     */
+    public synchronized int size()
+    {
+        return lightWaiting.size() + heavyWaiting.size();
+    }
+    
+    public synchronized boolean isEmpty()
+    {
+        return size() == 0;
+    }
+    
+    /**
+     * Gets the room left in the fuller lane, i.e. the number of requests
+     * which can be queued whichever lane they're in
+     * 
+     * @return the remaining capacity
+     */
+    public synchronized int remainingCapacity()
+    {
+        return capacity - Math.max(lightWaiting.size(), heavyWaiting.size());
+    }
+    
+    public synchronized int getRunningCount()
+    {
+        return runningCount;
+    }
+    
+    public synchronized int getHeavyRunningCount()
+    {
+        return heavyRunningCount;
+    }
+    
+    /**
+     * Gets the number of items waiting in the given lane
+     * 
+     * @param lane
+     * @return the waiting count
+     */
+    public synchronized int getWaitingCount(Lane lane)
+    {
+        return getWaiting(lane).size();
+    }
+    
+    private Deque<E> getWaiting(Lane lane)
+    {
+        return lane == Lane.HEAVY ? heavyWaiting : lightWaiting;
+    }
+    
+    /**
+     * Picks the lane to take from next, or null if none may run, must hold the lock
+     */
+    private Lane nextLane()
+    {
+        if (maxConcurrent != null && runningCount >= maxConcurrent)
+        {
+            return null;
+        }
+        boolean isLightReady = !lightWaiting.isEmpty();
+        boolean isHeavyReady = !heavyWaiting.isEmpty() && heavyRunningCount < maxHeavyConcurrent;
+        if (isLightReady && isHeavyReady)
+        {
+            return nextContendedLane();
+        }
+        if (isLightReady)
+        {
+            return Lane.LIGHT;
+        }
+        if (isHeavyReady)
+        {
+            return Lane.HEAVY;
+        }
+        return null;
+    }
+    
+    /**
+     * Picks the lane both lanes are contending for by smooth weighted round robin
+     */
+    private Lane nextContendedLane()
+    {
+        lightCredit += lightWeight;
+        heavyCredit += heavyWeight;
+        if (heavyCredit > lightCredit)
+        {
+            heavyCredit -= lightWeight + heavyWeight;
+            return Lane.HEAVY;
+        }
+        lightCredit -= lightWeight + heavyWeight;
+        return Lane.LIGHT;
+    }
+    
+    /**
+     * An item taken from the queue and the lane it ran in
+     */
+    public static class Ticket<E>
+    {
+        private final E item;
+        private final Lane lane;
+        
+        private Ticket(E item, Lane lane)
+        {
+            this.item = item;
+            this.lane = lane;
+        }
+        
+        public E getItem()
+        {
+            return item;
+        }
+        
+        public Lane getLane()
+        {
+            return lane;
+        }
+    }
+
+}
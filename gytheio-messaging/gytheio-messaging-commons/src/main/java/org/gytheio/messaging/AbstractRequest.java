@@ -22,13 +22,21 @@ import java.util.UUID;
 
 /**
  * Represents a generic messaging request
+ * <p>
+ * Clients may set an absolute {@link #setDeadline(Long) deadline} after which the
+ * request is no longer of use to them.  Endpoints also send the deadline as the
+ * {@link #HEADER_DEADLINE} message header and components drop expired requests
+ * rather than working on them.
  * 
  * @author Ray Gauss II
  */
 public abstract class AbstractRequest
 {
+    public static final String HEADER_DEADLINE = "gytheioDeadline";
+    
     private final String requestId;
     private String replyQueueName;
+    private Long deadline;
     
     public AbstractRequest()
     {
@@ -66,4 +74,53 @@ public abstract class AbstractRequest
         this.replyQueueName = replyQueueName;
     }
 
+    /**
+     * Gets the optional time, in milliseconds since the epoch, after which the
+     * request should no longer be worked on
+     * 
+     * @return the deadline or null if none
+     */
+    public Long getDeadline()
+    {
+        return deadline;
+    }
+
+    /**
+     * Sets the optional time, in milliseconds since the epoch, after which the
+     * request should no longer be worked on
+     * 
+     * @param deadline
+     */
+    public void setDeadline(Long deadline)
+    {
+        this.deadline = deadline;
+    }
+    
+    /**
+     * Gets the deadline of the given message if it's a request with one set
+     * 
+     * @param message
+     * @return the deadline or null
+     */
+    public static Long getDeadline(Object message)
+    {
+        if (message instanceof AbstractRequest)
+        {
+            return ((AbstractRequest) message).getDeadline();
+        }
+        return null;
+    }
+    
+    /**
+     * Determines whether the given message is a request whose deadline has passed
+     * 
+     * @param message
+     * @return true if expired
+     */
+    public static boolean isExpired(Object message)
+    {
+        Long deadline = getDeadline(message);
+        return deadline != null && System.currentTimeMillis() > deadline;
+    }
+
 }
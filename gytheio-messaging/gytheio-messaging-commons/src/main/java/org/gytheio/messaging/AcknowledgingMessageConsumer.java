@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+/**
+ * A {@link MessageConsumer} which can signal when it has finished processing a message,
+ * allowing endpoints to acknowledge the message to the broker only at that point.
+ */
+public interface AcknowledgingMessageConsumer extends MessageConsumer
+{
+    /**
+     * Performs any processing required upon receiving the given POJO message, completing
+     * the given acknowledgement once processing, including sending any replies, is done.
+     * <p>
+     * Processing may continue on another thread after this method returns.
+     * 
+     * @param message
+     * @param acknowledgement
+     */
+    public void onReceive(Object message, MessageAcknowledgement acknowledgement);
+    
+}
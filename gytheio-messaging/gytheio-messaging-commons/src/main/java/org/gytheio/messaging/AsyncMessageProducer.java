@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Defines a {@link MessageProducer} which can hand messages off to be sent
+ * on a separate thread so that the caller need not wait on the broker.
+ * <p>
+ * Implementations should send messages in the order they were given.
+ */
+public interface AsyncMessageProducer extends MessageProducer
+{
+
+    /**
+     * Queues the given POJO message to be sent to the given queue, or the
+     * default queue if null, returning a future which completes once sent.
+     * <p>
+     * Implementations may block the caller if too many messages are in flight.
+     * 
+     * @param message
+     * @param queueName
+     * @return a future completed once the message is sent or exceptionally on error
+     * @throws MessagingException if the message could not be queued
+     */
+    public CompletableFuture<Void> sendAsync(Object message, String queueName) throws MessagingException;
+    
+}
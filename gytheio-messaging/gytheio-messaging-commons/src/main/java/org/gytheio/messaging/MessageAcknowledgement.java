@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+/**
+ * Handle given with a received message which must be completed exactly once,
+ * when processing of the message has finished.
+ */
+public interface MessageAcknowledgement
+{
+    /**
+     * Indicates the message has been fully processed and can be removed from the broker
+     */
+    public void acknowledge();
+    
+    /**
+     * Indicates processing of the message failed and it should be redelivered
+     */
+    public void reject();
+}
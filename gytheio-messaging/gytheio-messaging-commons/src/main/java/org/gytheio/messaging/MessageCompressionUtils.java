@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Utility methods for compressing message bodies.
+ * <p>
+ * Compressed bodies are marked with the {@link #HEADER_CONTENT_ENCODING} header,
+ * bodies without it are uncompressed.
+ */
+public class MessageCompressionUtils
+{
+    public static final String HEADER_CONTENT_ENCODING = "gytheioContentEncoding";
+    public static final String CONTENT_ENCODING_DEFLATE = "deflate";
+    
+    /** Compression threshold value which disables compression */
+    public static final int COMPRESSION_DISABLED = -1;
+    
+    /**
+     * Determines whether or not a body of the given length should be compressed
+     * 
+     * @param length the body length in bytes
+     * @param compressionThreshold the threshold in bytes or {@link #COMPRESSION_DISABLED}
+     * @return true if the body should be compressed
+     */
+    public static boolean isCompressionRequired(int length, int compressionThreshold)
+    {
+        return compressionThreshold >= 0 && length > compressionThreshold;
+    }
+    
+    /**
+     * Determines whether or not the given content encoding header value is supported
+     * 
+     * @param contentEncoding
+     * @return true if deflate
+     */
+    public static boolean isDeflate(Object contentEncoding)
+    {
+        return CONTENT_ENCODING_DEFLATE.equals(contentEncoding);
+    }
+    
+    /**
+     * Compresses the given bytes using deflate
+     * 
+     * @param bytes
+     * @return the compressed bytes
+     */
+    public static byte[] compress(byte[] bytes)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater))
+        {
+            deflaterOut.write(bytes);
+        }
+        catch (IOException e)
+        {
+            // Not thrown by byte array streams
+            throw new MessagingException("Could not compress message", e);
+        }
+        finally
+        {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Wraps the given stream of compressed bytes with a decompressing stream
+     * 
+     * @param inputStream
+     * @return the decompressing stream
+     */
+    public static InputStream decompress(InputStream inputStream)
+    {
+        return new InflaterInputStream(inputStream);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+/**
+ * Defines a messaging endpoint whose listener can be temporarily stopped from
+ * pulling messages off the broker, allowing consumers to apply backpressure
+ * rather than blocking the transport's delivery thread indefinitely.
+ */
+public interface PausableMessageEndpoint
+{
+
+    /**
+     * Stops the endpoint from receiving further messages from the broker
+     * until {@link #resume()} is called.
+     * <p>
+     * Messages already handed to the consumer are not affected.
+     * 
+     * @throws MessagingException
+     */
+    public void pause() throws MessagingException;
+    
+    /**
+     * Resumes receiving messages from the broker after a call to {@link #pause()}.
+     * 
+     * @throws MessagingException
+     */
+    public void resume() throws MessagingException;
+    
+    /**
+     * Determines whether or not the endpoint is currently paused
+     * 
+     * @return true if paused
+     */
+    public boolean isPaused();
+    
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+/**
+ * Defines a {@link Reply} which may be one of several sent for the same
+ * request, such as progress updates followed by a final result.
+ * <p>
+ * Replies not implementing this interface are always considered final.
+ */
+public interface ProgressReply extends Reply
+{
+
+    /**
+     * Determines whether this is the last reply to be sent for the request
+     * 
+     * @return true if no further replies will follow
+     */
+    public boolean isFinalReply();
+    
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single-subscriber {@link Flow.Publisher} of the replies for one request.
+ * <p>
+ * Replies are pushed in by the transport as they arrive and delivered to the
+ * subscriber on whichever thread offered them or requested more, so no thread
+ * is held per request.  Replies offered before the subscriber has demand are
+ * buffered.
+ *
+ * @param <RP> the reply type
+ */
+public class ReplyPublisher<RP extends Reply> implements Flow.Publisher<RP>
+{
+    private final Queue<RP> replies = new ConcurrentLinkedQueue<RP>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicReference<Flow.Subscriber<? super RP>> subscriber = 
+            new AtomicReference<Flow.Subscriber<? super RP>>();
+    
+    private volatile boolean terminated;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private boolean done;
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super RP> newSubscriber)
+    {
+        if (!subscriber.compareAndSet(null, newSubscriber))
+        {
+            newSubscriber.onSubscribe(new Flow.Subscription()
+            {
+                public void request(long n) { }
+                public void cancel() { }
+            });
+            newSubscriber.onError(new IllegalStateException("Replies already subscribed to"));
+            return;
+        }
+        newSubscriber.onSubscribe(new ReplySubscription());
+        drain();
+    }
+    
+    /**
+     * Offers a reply to the subscriber
+     * 
+     * @param reply
+     * @param isFinal whether no further replies will be offered
+     * @return false if the publisher has already terminated or been cancelled
+     */
+    public boolean offer(RP reply, boolean isFinal)
+    {
+        if (terminated || cancelled)
+        {
+            return false;
+        }
+        replies.offer(reply);
+        if (isFinal)
+        {
+            terminated = true;
+        }
+        drain();
+        return true;
+    }
+    
+    /**
+     * Terminates the publisher with the given error once any buffered replies
+     * have been delivered
+     * 
+     * @param cause
+     * @return false if the publisher has already terminated or been cancelled
+     */
+    public boolean fail(Throwable cause)
+    {
+        if (terminated || cancelled)
+        {
+            return false;
+        }
+        error = cause;
+        terminated = true;
+        drain();
+        return true;
+    }
+    
+    /**
+     * Determines whether the final reply or an error has been offered, or the
+     * subscriber has cancelled
+     * 
+     * @return true if no further replies will be accepted
+     */
+    public boolean isTerminated()
+    {
+        return terminated || cancelled;
+    }
+    
+    /**
+     * Called once when the subscriber cancels its subscription, subclasses may
+     * override to release any resources held for the request
+     */
+    protected void onCancel()
+    {
+    }
+    
+    /**
+     * Delivers as many buffered replies as there is demand for, then any terminal
+     * signal.  Only one thread drains at a time, others register their work via
+     * {@link #wip} for the draining thread to pick up.
+     */
+    protected void drain()
+    {
+        if (wip.getAndIncrement() != 0)
+        {
+            return;
+        }
+        int missed = 1;
+        do
+        {
+            Flow.Subscriber<? super RP> current = subscriber.get();
+            if (current != null && !done)
+            {
+                while (!cancelled && demand.get() > 0)
+                {
+                    RP reply = replies.poll();
+                    if (reply == null)
+                    {
+                        break;
+                    }
+                    if (demand.get() != Long.MAX_VALUE)
+                    {
+                        demand.decrementAndGet();
+                    }
+                    current.onNext(reply);
+                }
+                if (!cancelled && terminated && replies.isEmpty())
+                {
+                    done = true;
+                    if (error != null)
+                    {
+                        current.onError(error);
+                    }
+                    else
+                    {
+                        current.onComplete();
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        }
+        while (missed != 0);
+    }
+    
+    /**
+     * Subscription handed to the single subscriber
+     */
+    protected class ReplySubscription implements Flow.Subscription
+    {
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                cancel();
+                subscriber.get().onError(new IllegalArgumentException(
+                        "Requested replies must be positive: " + n));
+                return;
+            }
+            long current;
+            long updated;
+            do
+            {
+                current = demand.get();
+                updated = current + n;
+                if (updated < 0)
+                {
+                    updated = Long.MAX_VALUE;
+                }
+            }
+            while (!demand.compareAndSet(current, updated));
+            drain();
+        }
+
+        @Override
+        public void cancel()
+        {
+            if (cancelled)
+            {
+                return;
+            }
+            cancelled = true;
+            replies.clear();
+            onCancel();
+        }
+    }
+}
@@ -18,7 +18,7 @@
  */
 package org.gytheio.messaging;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Defines an asynchronous request-reply message producer
@@ -33,12 +33,13 @@ public interface RequestReplyMessageProducer<RQ extends Request<RP>, RP extends
     
     /**
      * Sends the given request message to the configured queue and waits for its reply,
-     * returning a {@link Future} object that will contain that reply once available.
+     * returning a {@link CompletableFuture} which will be completed with that reply once
+     * available, or exceptionally if no reply is received in time.
      * 
      * @param request
-     * @return an executing future object which will contain the reply once available
+     * @return a future which will contain the reply once available
      * @throws MessagingException
      */
-    public Future<RP> asyncRequest(RQ request) throws MessagingException;
+    public CompletableFuture<RP> asyncRequest(RQ request) throws MessagingException;
 
 }
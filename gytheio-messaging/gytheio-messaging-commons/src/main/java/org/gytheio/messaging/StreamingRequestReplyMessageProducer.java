@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Defines a request-reply message producer which can stream every reply
+ * for a request, including progress updates, rather than only the final one.
+ * 
+ * @param <RQ> the request type
+ * @param <RP> the reply type
+ */
+public interface StreamingRequestReplyMessageProducer<RQ extends Request<RP>, RP extends Reply> 
+        extends RequestReplyMessageProducer<RQ, RP>
+{
+
+    /**
+     * Sends the given request message to the configured queue and returns a publisher
+     * of its replies.
+     * <p>
+     * Replies received before a subscriber requests them are buffered.  The subscriber
+     * is completed after the final reply (see {@link ProgressReply}) or receives an error
+     * if no reply is received in time.
+     * 
+     * @param request
+     * @return a single-subscriber publisher of the request's replies
+     * @throws MessagingException
+     */
+    public Flow.Publisher<RP> streamRequest(RQ request) throws MessagingException;
+    
+}
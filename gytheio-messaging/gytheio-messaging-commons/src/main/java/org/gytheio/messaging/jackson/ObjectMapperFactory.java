@@ -23,22 +23,120 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
+/**
+ * Creates object mappers for marshalling messages.
+ * <p>
+ * JSON text remains the default encoding.  The binary Smile encoding may be used instead, in
+ * which case senders should set the {@link #HEADER_CONTENT_TYPE} message header so that
+ * receivers can pick the matching mapper via {@link #createInstance(String)}, messages
+ * without the header are assumed to be JSON.
+ * <p>
+ * Polymorphic types are identified by class name unless a short id has been registered
+ * with the {@link TypeIdRegistry}, see {@link #createInstance(String, boolean)}.
+ */
 public class ObjectMapperFactory
 {
+    public static final String HEADER_CONTENT_TYPE = "gytheioContentType";
+    public static final String CONTENT_TYPE_JSON = "application/json";
+    public static final String CONTENT_TYPE_SMILE = "application/x-jackson-smile";
 
     public static ObjectMapper createInstance()
     {
-        
-        QpidJsonBodyCleanerObjectMapper mapper = new QpidJsonBodyCleanerObjectMapper();
+        return createInstance(CONTENT_TYPE_JSON, false);
+    }
+    
+    /**
+     * Creates an object mapper using the binary Smile encoding
+     * 
+     * @return the Smile object mapper
+     */
+    public static ObjectMapper createSmileInstance()
+    {
+        return createInstance(CONTENT_TYPE_SMILE, false);
+    }
+    
+    /**
+     * Creates an object mapper for the given content type, defaulting to JSON
+     * if the content type is null or unknown
+     * 
+     * @param contentType
+     * @return the object mapper
+     */
+    public static ObjectMapper createInstance(String contentType)
+    {
+        return createInstance(contentType, false);
+    }
+    
+    /**
+     * Creates an object mapper for the given content type, defaulting to JSON
+     * if the content type is null or unknown.
+     * <p>
+     * Classes registered in the default {@link TypeIdRegistry} are always read by
+     * either short type id or class name, they're written with their short type id
+     * only if <code>writeTypeIds</code> is true.
+     * 
+     * @param contentType
+     * @param writeTypeIds
+     * @return the object mapper
+     */
+    public static ObjectMapper createInstance(String contentType, boolean writeTypeIds)
+    {
+        ObjectMapper mapper = null;
+        if (isSmile(contentType))
+        {
+            mapper = new ObjectMapper(new SmileFactory());
+        }
+        else
+        {
+            mapper = new QpidJsonBodyCleanerObjectMapper();
+        }
+        configure(mapper, writeTypeIds);
+        return mapper;
+    }
+    
+    /**
+     * Gets the content type produced by the given object mapper
+     * 
+     * @param mapper
+     * @return the content type
+     */
+    public static String getContentType(ObjectMapper mapper)
+    {
+        if (mapper != null && mapper.getFactory() instanceof SmileFactory)
+        {
+            return CONTENT_TYPE_SMILE;
+        }
+        return CONTENT_TYPE_JSON;
+    }
+    
+    /**
+     * Determines whether or not the given content type is the binary Smile encoding
+     * 
+     * @param contentType
+     * @return true if Smile
+     */
+    public static boolean isSmile(String contentType)
+    {
+        return CONTENT_TYPE_SMILE.equals(contentType);
+    }
+    
+    protected static void configure(ObjectMapper mapper, boolean writeTypeIds)
+    {
         mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        TypeIdRegistry registry = TypeIdRegistry.getDefaultInstance();
+        mapper.setDefaultTyping(new RegisteredTypeResolverBuilder(ObjectMapper.DefaultTyping.NON_FINAL,
+                mapper.getPolymorphicTypeValidator(), registry, writeTypeIds));
         SimpleModule module = new SimpleModule("GytheioJackson", 
                 new Version(0, 1, 0, "SNAPSHOT", "org.gytheio", "gytheio-messaging-commons"));
+        module.addKeyDeserializer(Class.class, new RegisteredClassKeyDeserializer(registry));
+        if (writeTypeIds)
+        {
+            module.addKeySerializer(Class.class, new RegisteredClassKeySerializer(registry));
+        }
         mapper.registerModule(module);
-        return mapper;
     }
 
 }
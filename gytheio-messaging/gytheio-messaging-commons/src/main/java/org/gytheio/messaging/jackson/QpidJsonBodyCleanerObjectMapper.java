@@ -20,50 +20,163 @@ package org.gytheio.messaging.jackson;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
-
-import org.apache.commons.io.IOUtils;
+import java.io.PushbackInputStream;
+import java.io.StringReader;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * Extension of ObjectMapper which cleans erroneous characters apparently
  * added by the Qpid library before the start of a JSON object.
+ * <p>
+ * Content is scanned forward once: if the first character other than whitespace
+ * can start a JSON value it's parsed from there, otherwise anything before the
+ * first <code>{</code> is skipped as such a prefix.  Content is parsed in place,
+ * never copied or parsed twice.
  */
 public class QpidJsonBodyCleanerObjectMapper extends ObjectMapper
 {
     private static final long serialVersionUID = 2568701685293341501L;
     
-    private static final String DEFAULT_ENCODING = "utf8";
+    private static final char OBJECT_START = '{';
     
-    public <T> T readValue(InputStream inputStream, Class<T> valueType) throws JsonParseException, JsonMappingException, IOException
+    /**
+     * Determines whether or not the given character can start a JSON value
+     * 
+     * @param c
+     * @return true if a JSON object, array, string, number or literal start
+     */
+    protected static boolean isJsonStart(int c)
     {
-        try
+        return c == OBJECT_START || c == '[' || c == '"' || c == '-' || (c >= '0' && c <= '9') || 
+                c == 't' || c == 'f' || c == 'n';
+    }
+    
+    protected static boolean isWhitespace(int c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+    
+    /**
+     * Gets the offset at which JSON content starts in the given string, skipping
+     * leading whitespace and any prefix before the first <code>{</code>
+     * 
+     * @param content
+     * @return the start offset, 0 if no content start is found
+     */
+    protected static int getContentStart(String content)
+    {
+        int length = content.length();
+        for (int i = 0; i < length; i++)
         {
-            // Try to unmarshal normally
-            if (inputStream.markSupported())
+            char c = content.charAt(i);
+            if (isWhitespace(c))
             {
-                inputStream.mark(1024 * 512);
+                continue;
             }
-            return super.readValue(inputStream, valueType);
+            if (isJsonStart(c))
+            {
+                return i;
+            }
+            int objectStart = content.indexOf(OBJECT_START, i);
+            return objectStart < 0 ? 0 : objectStart;
+        }
+        return 0;
+    }
+    
+    /**
+     * Gets the offset at which JSON content starts in the given bytes
+     * 
+     * @see #getContentStart(String)
+     */
+    protected static int getContentStart(byte[] content, int offset, int length)
+    {
+        int end = offset + length;
+        for (int i = offset; i < end; i++)
+        {
+            int c = content[i];
+            if (isWhitespace(c))
+            {
+                continue;
+            }
+            if (isJsonStart(c))
+            {
+                return i;
+            }
+            for (int j = i; j < end; j++)
+            {
+                if (content[j] == OBJECT_START)
+                {
+                    return j;
+                }
+            }
+            return offset;
+        }
+        return offset;
+    }
+    
+    @Override
+    public <T> T readValue(String content, Class<T> valueType) throws JsonProcessingException, JsonMappingException
+    {
+        int start = getContentStart(content);
+        if (start == 0)
+        {
+            return super.readValue(content, valueType);
+        }
+        try
+        {
+            StringReader reader = new StringReader(content);
+            reader.skip(start);
+            return super.readValue(reader, valueType);
+        }
+        catch (JsonProcessingException e)
+        {
+            throw e;
         }
-        catch (JsonParseException e)
+        catch (IOException e)
         {
-            if (!inputStream.markSupported())
+            throw JsonMappingException.fromUnexpectedIOE(e);
+        }
+    }
+    
+    @Override
+    public <T> T readValue(byte[] content, Class<T> valueType) throws IOException
+    {
+        return readValue(content, 0, content.length, valueType);
+    }
+    
+    @Override
+    public <T> T readValue(byte[] content, int offset, int length, Class<T> valueType) throws IOException
+    {
+        int start = getContentStart(content, offset, length);
+        return super.readValue(content, start, length - (start - offset), valueType);
+    }
+    
+    /**
+     * Reads past whitespace and any prefix one byte at a time, pushing back the
+     * byte the content starts with, then parses the rest of the stream
+     */
+    @Override
+    public <T> T readValue(InputStream inputStream, Class<T> valueType) throws JsonParseException, JsonMappingException, IOException
+    {
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, 1);
+        boolean isPrefixed = false;
+        int c;
+        while ((c = pushbackInputStream.read()) >= 0)
+        {
+            if (c == OBJECT_START || (!isPrefixed && isJsonStart(c)))
+            {
+                pushbackInputStream.unread(c);
+                break;
+            }
+            if (!isWhitespace(c))
             {
-                // We can't reset this stream, bail out
-                throw e;
+                isPrefixed = true;
             }
-            // Reset the stream
-            inputStream.reset();
         }
-        // Clean the message body and try again
-        StringWriter writer = new StringWriter();
-        IOUtils.copy(inputStream, writer, DEFAULT_ENCODING);
-        String content = writer.toString();
-        content = content.substring(content.indexOf("{"), content.length());
-        return readValue(content, valueType);
+        return super.readValue(pushbackInputStream, valueType);
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+
+/**
+ * Deserializes <code>Class</code> map keys written either as a {@link TypeIdRegistry}
+ * id or as a class name
+ */
+public class RegisteredClassKeyDeserializer extends KeyDeserializer
+{
+    private final TypeIdRegistry registry;
+    
+    public RegisteredClassKeyDeserializer(TypeIdRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object deserializeKey(String key, DeserializationContext ctxt) throws IOException
+    {
+        Class<?> registeredClass = registry.getType(key);
+        if (registeredClass != null)
+        {
+            return registeredClass;
+        }
+        try
+        {
+            return ctxt.findClass(key);
+        }
+        catch (Exception e)
+        {
+            return ctxt.handleWeirdKey(Class.class, key, "unable to find class or type id");
+        }
+    }
+}
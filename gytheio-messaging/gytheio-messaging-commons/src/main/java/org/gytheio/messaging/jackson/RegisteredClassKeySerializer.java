@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Serializes <code>Class</code> map keys, such as the source options of transformation
+ * options, as their {@link TypeIdRegistry} id if registered or their name otherwise
+ */
+public class RegisteredClassKeySerializer extends StdSerializer<Object>
+{
+    private static final long serialVersionUID = 4402718745123369571L;
+    
+    private final TypeIdRegistry registry;
+    
+    public RegisteredClassKeySerializer(TypeIdRegistry registry)
+    {
+        super(Object.class);
+        this.registry = registry;
+    }
+
+    @Override
+    public void serialize(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException
+    {
+        Class<?> clazz = (Class<?>) value;
+        String id = registry.getId(clazz);
+        gen.writeFieldName(id != null ? id : clazz.getName());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * Type id resolver which uses the short ids of a {@link TypeIdRegistry} for
+ * registered classes and falls back to class names for everything else.
+ * <p>
+ * Both forms are always accepted when reading, short ids are only written
+ * if <code>writeTypeIds</code> is set so older readers can still be supported.
+ */
+public class RegisteredTypeIdResolver extends ClassNameIdResolver
+{
+    private static final long serialVersionUID = 6870446612932316237L;
+    
+    private final TypeIdRegistry registry;
+    private final boolean writeTypeIds;
+
+    public RegisteredTypeIdResolver(JavaType baseType, TypeFactory typeFactory,
+            PolymorphicTypeValidator subTypeValidator, TypeIdRegistry registry, boolean writeTypeIds)
+    {
+        super(baseType, typeFactory, subTypeValidator);
+        this.registry = registry;
+        this.writeTypeIds = writeTypeIds;
+    }
+
+    @Override
+    protected String _idFrom(Object value, Class<?> cls, TypeFactory typeFactory)
+    {
+        if (writeTypeIds)
+        {
+            String id = registry.getId(cls);
+            if (id != null)
+            {
+                return id;
+            }
+        }
+        return super._idFrom(value, cls, typeFactory);
+    }
+
+    @Override
+    protected JavaType _typeFromId(String id, DatabindContext ctxt) throws IOException
+    {
+        Class<?> registeredClass = registry.getType(id);
+        if (registeredClass != null)
+        {
+            return ctxt.getTypeFactory().constructSpecializedType(_baseType, registeredClass);
+        }
+        return super._typeFromId(id, ctxt);
+    }
+}
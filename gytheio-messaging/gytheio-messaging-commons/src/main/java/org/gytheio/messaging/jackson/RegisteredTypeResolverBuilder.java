@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import java.util.Collection;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+
+/**
+ * Default typing builder which applies to the same types as
+ * {@link ObjectMapper.DefaultTyping} but resolves ids via a {@link RegisteredTypeIdResolver}.
+ */
+public class RegisteredTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder
+{
+    private static final long serialVersionUID = -2269934620813283911L;
+    
+    private final TypeIdRegistry registry;
+    private final boolean writeTypeIds;
+
+    public RegisteredTypeResolverBuilder(ObjectMapper.DefaultTyping typing, 
+            PolymorphicTypeValidator subTypeValidator, TypeIdRegistry registry, boolean writeTypeIds)
+    {
+        super(typing, subTypeValidator);
+        this.registry = registry;
+        this.writeTypeIds = writeTypeIds;
+        init(JsonTypeInfo.Id.CLASS, null);
+        inclusion(JsonTypeInfo.As.PROPERTY);
+    }
+
+    @Override
+    protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType,
+            PolymorphicTypeValidator subtypeValidator, Collection<NamedType> subtypes, 
+            boolean forSer, boolean forDeser)
+    {
+        return new RegisteredTypeIdResolver(baseType, config.getTypeFactory(), 
+                subtypeValidator, registry, writeTypeIds);
+    }
+}
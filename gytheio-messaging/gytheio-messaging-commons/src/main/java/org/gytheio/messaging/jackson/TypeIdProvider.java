@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+/**
+ * Registers short type ids for message classes with a {@link TypeIdRegistry}.
+ * <p>
+ * Implementations are discovered via <code>META-INF/services</code> when the
+ * default registry is first used.
+ */
+public interface TypeIdProvider
+{
+    /**
+     * Registers type ids with the given registry
+     * 
+     * @param registry
+     */
+    void registerTypeIds(TypeIdRegistry registry);
+}
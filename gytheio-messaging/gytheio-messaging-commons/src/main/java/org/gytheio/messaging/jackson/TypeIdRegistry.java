@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of short, stable type ids for polymorphic message classes used
+ * in place of fully qualified class names.
+ * <p>
+ * Ids may not contain a <code>.</code> so they can never be mistaken for a
+ * class name, which allows messages carrying either form to be read.
+ */
+public class TypeIdRegistry implements Serializable
+{
+    private static final long serialVersionUID = -3046598424419581247L;
+    
+    private static final TypeIdRegistry DEFAULT_INSTANCE = createDefaultInstance();
+    
+    private final Map<String, Class<?>> classesById = new ConcurrentHashMap<String, Class<?>>();
+    private final Map<Class<?>, String> idsByClass = new ConcurrentHashMap<Class<?>, String>();
+    
+    /**
+     * Gets the registry populated by all {@link TypeIdProvider}s on the classpath
+     * 
+     * @return the default registry
+     */
+    public static TypeIdRegistry getDefaultInstance()
+    {
+        return DEFAULT_INSTANCE;
+    }
+    
+    private static TypeIdRegistry createDefaultInstance()
+    {
+        TypeIdRegistry registry = new TypeIdRegistry();
+        for (TypeIdProvider provider : ServiceLoader.load(
+                TypeIdProvider.class, TypeIdRegistry.class.getClassLoader()))
+        {
+            provider.registerTypeIds(registry);
+        }
+        return registry;
+    }
+    
+    /**
+     * Registers the given type id for the given class
+     * 
+     * @param id
+     * @param clazz
+     * @throws IllegalArgumentException if the id is invalid or either the id or class
+     * is already registered differently
+     */
+    public synchronized void register(String id, Class<?> clazz)
+    {
+        if (id == null || id.isEmpty() || id.contains("."))
+        {
+            throw new IllegalArgumentException("Invalid type id: " + id);
+        }
+        Class<?> existingClass = classesById.get(id);
+        String existingId = idsByClass.get(clazz);
+        if (clazz.equals(existingClass) && id.equals(existingId))
+        {
+            return;
+        }
+        if (existingClass != null || existingId != null)
+        {
+            throw new IllegalArgumentException(
+                    "Type id " + id + " conflicts with existing registration for " + clazz.getName());
+        }
+        classesById.put(id, clazz);
+        idsByClass.put(clazz, id);
+    }
+    
+    /**
+     * Gets the type id registered for the given class
+     * 
+     * @param clazz
+     * @return the type id or null
+     */
+    public String getId(Class<?> clazz)
+    {
+        return idsByClass.get(clazz);
+    }
+    
+    /**
+     * Gets the class registered for the given type id
+     * 
+     * @param id
+     * @return the class or null
+     */
+    public Class<?> getType(String id)
+    {
+        return classesById.get(id);
+    }
+    
+    /**
+     * Gets the number of registered types
+     * 
+     * @return the size
+     */
+    public int size()
+    {
+        return classesById.size();
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gytheio.messaging.AbstractReply;
+import org.gytheio.messaging.AbstractRequest;
+import org.gytheio.messaging.MessageAcknowledgement;
+import org.gytheio.messaging.PausableMessageEndpoint;
+import org.gytheio.messaging.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the worker pool, backpressure, acknowledgement and deadline handling of {@link AbstractAsyncComponent}
+ */
+public class AbstractAsyncComponentTest
+{
+    private static final long TIMEOUT_MS = 5000;
+    
+    private TestComponent component;
+    private TestEndpoint endpoint;
+    
+    @Before
+    public void setUp()
+    {
+        endpoint = new TestEndpoint();
+        component = new TestComponent();
+        component.setWorkerThreads(2);
+        component.setQueueCapacity(1);
+        component.setPausableEndpoint(endpoint);
+        component.init();
+    }
+    
+    @Test
+    public void testPausesWhenQueueFullAndResumesWhenDrained() throws Exception
+    {
+        // Two requests occupy the workers, one waits in the queue
+        component.onReceive(new TestRequest());
+        waitForActiveWorkers(1);
+        component.onReceive(new TestRequest());
+        waitForActiveWorkers(2);
+        assertTrue(component.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        component.onReceive(new TestRequest());
+        assertEquals(1, component.getQueueDepth());
+        assertFalse(endpoint.isPaused());
+        
+        // The next request can't be queued so the endpoint should be paused
+        Thread receiver = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                component.onReceive(new TestRequest());
+            }
+        });
+        receiver.start();
+        long start = System.currentTimeMillis();
+        while (!endpoint.isPaused() && System.currentTimeMillis() - start < TIMEOUT_MS)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(endpoint.isPaused());
+        
+        component.release.countDown();
+        receiver.join(TIMEOUT_MS);
+        start = System.currentTimeMillis();
+        while (component.processed.get() < 4 && System.currentTimeMillis() - start < TIMEOUT_MS)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(4, component.processed.get());
+        assertFalse(endpoint.isPaused());
+        assertEquals(1, endpoint.pauseCount.get());
+        assertEquals(1, endpoint.resumeCount.get());
+        assertEquals(0, component.getQueueDepth());
+    }
+    
+    @Test
+    public void testResumesWhenQueueDrainedBeforePause() throws Exception
+    {
+        // The workers emptied the queue before the pause request was handled
+        component.pauseEndpoint();
+        long start = System.currentTimeMillis();
+        while (endpoint.resumeCount.get() < 1 && System.currentTimeMillis() - start < TIMEOUT_MS)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(1, endpoint.pauseCount.get());
+        assertEquals(1, endpoint.resumeCount.get());
+        assertFalse(endpoint.isPaused());
+    }
+    
+    @Test
+    public void testLightRequestsOvertakeQueuedHeavyRequests() throws Exception
+    {
+        component = new TestComponent();
+        component.setWorkerThreads(1);
+        component.setQueueCapacity(3);
+        RequestScheduler<Object> scheduler = new RequestScheduler<Object>();
+        scheduler.setHeavyCostThreshold(1);
+        component.setScheduler(scheduler);
+        component.setCostEstimator(new RequestCostEstimator()
+        {
+            public long estimateCost(Object request)
+            {
+                return ((TestRequest) request).label.startsWith("heavy") ? 1 : 0;
+            }
+        });
+        component.init();
+        
+        component.onReceive(new TestRequest("running"));
+        waitForActiveWorkers(1);
+        component.onReceive(new TestRequest("heavy1"));
+        component.onReceive(new TestRequest("heavy2"));
+        component.onReceive(new TestRequest("light"));
+        component.release.countDown();
+        
+        long start = System.currentTimeMillis();
+        while (component.processed.get() < 4 && System.currentTimeMillis() - start < TIMEOUT_MS)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList("running", "light", "heavy1", "heavy2"), component.order);
+    }
+    
+    @Test
+    public void testHeavyBacklogDoesNotBlockLightRequests() throws Exception
+    {
+        component = new TestComponent();
+        component.setWorkerThreads(4);
+        component.setQueueCapacity(8);
+        component.setPausableEndpoint(endpoint);
+        RequestScheduler<Object> scheduler = new RequestScheduler<Object>();
+        scheduler.setHeavyCostThreshold(1);
+        scheduler.setMaxHeavyConcurrent(1);
+        component.setScheduler(scheduler);
+        component.setCostEstimator(new RequestCostEstimator()
+        {
+            public long estimateCost(Object request)
+            {
+                return ((TestRequest) request).label.startsWith("heavy") ? 1 : 0;
+            }
+        });
+        component.init();
+        
+        // One heavy request runs and eight wait on the heavy cap
+        component.onReceive(new TestRequest("heavy0"));
+        waitForActiveWorkers(1);
+        final int thumbnails = 3;
+        Thread receiver = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                for (int i = 1; i < 9; i++)
+                {
+                    component.onReceive(new TestRequest("heavy" + i));
+                }
+                for (int i = 0; i < thumbnails; i++)
+                {
+                    component.onReceive(new TestRequest("thumbnail" + i));
+                }
+            }
+        });
+        receiver.start();
+        receiver.join(TIMEOUT_MS);
+        assertFalse(receiver.isAlive());
+        
+        // The thumbnails run on the idle workers while the heavy requests wait
+        long start = System.currentTimeMillis();
+        while (component.processed.get() < thumbnails && System.currentTimeMillis() - start < TIMEOUT_MS)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(thumbnails, component.processed.get());
+        assertFalse(endpoint.isPaused());
+        assertEquals(8, scheduler.getWaitingCount(RequestScheduler.Lane.HEAVY));
+        component.release.countDown();
+    }
+    
+    @Test
+    public void testAcknowledgesAfterProcessing() throws Exception
+    {
+        component.release.countDown();
+        TestAcknowledgement acknowledgement = new TestAcknowledgement();
+        component.onReceive(new TestRequest(), acknowledgement);
+        assertTrue(acknowledgement.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, component.processed.get());
+        assertEquals(1, acknowledgement.acknowledgeCount.get());
+        assertEquals(0, acknowledgement.rejectCount.get());
+    }
+    
+    @Test
+    public void testRejectsOnFailure() throws Exception
+    {
+        component.release.countDown();
+        component.isFailing = true;
+        TestAcknowledgement acknowledgement = new TestAcknowledgement();
+        component.onReceive(new TestRequest(), acknowledgement);
+        assertTrue(acknowledgement.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(0, acknowledgement.acknowledgeCount.get());
+        assertEquals(1, acknowledgement.rejectCount.get());
+    }
+    
+    @Test
+    public void testDestroyStopsWorkers() throws Exception
+    {
+        component.destroy();
+        assertTrue(component.executorService.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+    
+    @Test
+    public void testDropsExpiredRequestOnReceive() throws Exception
+    {
+        component.release.countDown();
+        TestRequest request = new TestRequest();
+        request.setDeadline(System.currentTimeMillis() - 1);
+        TestAcknowledgement acknowledgement = new TestAcknowledgement();
+        component.onReceive(request, acknowledgement);
+        assertTrue(acknowledgement.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, acknowledgement.acknowledgeCount.get());
+        assertEquals(1, component.expired.get());
+        assertEquals(0, component.processed.get());
+    }
+    
+    @Test
+    public void testDropsRequestExpiredWhileQueued() throws Exception
+    {
+        component.onReceive(new TestRequest());
+        component.onReceive(new TestRequest());
+        waitForActiveWorkers(2);
+        TestRequest request = new TestRequest();
+        request.setDeadline(System.currentTimeMillis() + 100);
+        TestAcknowledgement acknowledgement = new TestAcknowledgement();
+        component.onReceive(request, acknowledgement);
+        assertEquals(1, component.getQueueDepth());
+        
+        Thread.sleep(200);
+        component.release.countDown();
+        assertTrue(acknowledgement.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, acknowledgement.acknowledgeCount.get());
+        assertEquals(1, component.expired.get());
+    }
+    
+    protected void waitForActiveWorkers(int expected) throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        while (component.getActiveWorkerCount() < expected && System.currentTimeMillis() - start < TIMEOUT_MS)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, component.getActiveWorkerCount());
+    }
+    
+    public static class TestReply extends AbstractReply
+    {
+    }
+    
+    public static class TestRequest extends AbstractRequest implements Request<TestReply>
+    {
+        private final String label;
+        
+        public TestRequest()
+        {
+            this("");
+        }
+        
+        public TestRequest(String label)
+        {
+            this.label = label;
+        }
+        
+        public Class<TestReply> getReplyClass()
+        {
+            return TestReply.class;
+        }
+    }
+    
+    public static class TestComponent extends AbstractAsyncComponent<ContentWorker, TestRequest, TestReply>
+    {
+        private final CountDownLatch started = new CountDownLatch(2);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger expired = new AtomicInteger();
+        private final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        private volatile boolean isFailing = false;
+        
+        @Override
+        protected void onExpired(Object message)
+        {
+            expired.incrementAndGet();
+        }
+        
+        @Override
+        protected void processRequest(TestRequest request)
+        {
+            if (isFailing)
+            {
+                throw new IllegalStateException("Test failure");
+            }
+            order.add(request.label);
+            started.countDown();
+            try
+            {
+                if (!request.label.startsWith("thumbnail"))
+                {
+                    release.await();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            processed.incrementAndGet();
+        }
+
+        public Class<?> getConsumingMessageBodyClass()
+        {
+            return TestRequest.class;
+        }
+    }
+    
+    public static class TestAcknowledgement implements MessageAcknowledgement
+    {
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final AtomicInteger acknowledgeCount = new AtomicInteger();
+        private final AtomicInteger rejectCount = new AtomicInteger();
+        
+        public void acknowledge()
+        {
+            acknowledgeCount.incrementAndGet();
+            completed.countDown();
+        }
+
+        public void reject()
+        {
+            rejectCount.incrementAndGet();
+            completed.countDown();
+        }
+    }
+    
+    public static class TestEndpoint implements PausableMessageEndpoint
+    {
+        private volatile boolean isPaused = false;
+        private final AtomicInteger pauseCount = new AtomicInteger();
+        private final AtomicInteger resumeCount = new AtomicInteger();
+        
+        public void pause()
+        {
+            pauseCount.incrementAndGet();
+            isPaused = true;
+        }
+
+        public void resume()
+        {
+            resumeCount.incrementAndGet();
+            isPaused = false;
+        }
+
+        public boolean isPaused()
+        {
+            return isPaused;
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.gytheio.content.RequestScheduler.Lane;
+import org.gytheio.content.RequestScheduler.Ticket;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the capacity, heavy request cap and weighted lanes of {@link RequestScheduler}
+ */
+public class RequestSchedulerTest
+{
+    private static final long TIMEOUT_MS = 5000;
+    private static final long HEAVY_COST = 1000;
+    
+    private RequestScheduler<String> scheduler;
+    
+    @Before
+    public void setUp()
+    {
+        scheduler = new RequestScheduler<String>();
+        scheduler.setHeavyCostThreshold(HEAVY_COST);
+        scheduler.setCapacity(10);
+    }
+    
+    @Test
+    public void testLanes()
+    {
+        assertEquals(Lane.LIGHT, scheduler.getLane(0));
+        assertEquals(Lane.LIGHT, scheduler.getLane(HEAVY_COST - 1));
+        assertEquals(Lane.HEAVY, scheduler.getLane(HEAVY_COST));
+    }
+    
+    @Test
+    public void testBlocksWhenFull() throws Exception
+    {
+        scheduler.setCapacity(1);
+        assertTrue(scheduler.offer("first", 0));
+        assertFalse(scheduler.offer("second", 0));
+        assertEquals(0, scheduler.remainingCapacity());
+        
+        Thread producer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    scheduler.put("second", 0);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        
+        assertEquals("first", scheduler.take().getItem());
+        producer.join(TIMEOUT_MS);
+        assertFalse(producer.isAlive());
+        assertEquals("second", scheduler.take().getItem());
+    }
+    
+    @Test
+    public void testLanesHaveSeparateCapacity() throws Exception
+    {
+        scheduler.setCapacity(2);
+        assertTrue(scheduler.offer("heavy1", HEAVY_COST));
+        assertTrue(scheduler.offer("heavy2", HEAVY_COST));
+        assertFalse(scheduler.offer("heavy3", HEAVY_COST));
+        assertEquals(0, scheduler.remainingCapacity());
+        
+        // Light requests are still admitted while the heavy lane is full
+        assertTrue(scheduler.offer("light1", 1));
+        assertTrue(scheduler.offer("light2", 1));
+        assertFalse(scheduler.offer("light3", 1));
+        assertEquals(4, scheduler.size());
+    }
+    
+    @Test
+    public void testCapsHeavyRequests() throws Exception
+    {
+        scheduler.offer("heavy1", HEAVY_COST);
+        scheduler.offer("heavy2", HEAVY_COST);
+        Ticket<String> heavy = scheduler.take();
+        assertEquals("heavy1", heavy.getItem());
+        assertEquals(Lane.HEAVY, heavy.getLane());
+        
+        // Light requests overtake the waiting heavy request
+        scheduler.offer("light", 1);
+        assertEquals("light", scheduler.take().getItem());
+        
+        final List<String> taken = Collections.synchronizedList(new ArrayList<String>());
+        Thread worker = take(taken);
+        worker.join(200);
+        assertTrue(taken.isEmpty());
+        
+        scheduler.release(heavy);
+        worker.join(TIMEOUT_MS);
+        assertEquals(Collections.singletonList("heavy2"), taken);
+        assertEquals(1, scheduler.getHeavyRunningCount());
+    }
+    
+    @Test
+    public void testCapsConcurrentRequests() throws Exception
+    {
+        scheduler.setMaxConcurrent(1);
+        scheduler.offer("first", 0);
+        scheduler.offer("second", 0);
+        Ticket<String> first = scheduler.take();
+        
+        final List<String> taken = Collections.synchronizedList(new ArrayList<String>());
+        Thread worker = take(taken);
+        worker.join(200);
+        assertTrue(taken.isEmpty());
+        
+        scheduler.release(first);
+        worker.join(TIMEOUT_MS);
+        assertEquals(Collections.singletonList("second"), taken);
+    }
+    
+    @Test
+    public void testSharesTakesByWeight() throws Exception
+    {
+        scheduler.setMaxHeavyConcurrent(2);
+        scheduler.setLightWeight(4);
+        scheduler.setHeavyWeight(1);
+        for (int i = 0; i < 2; i++)
+        {
+            scheduler.offer("heavy", HEAVY_COST);
+        }
+        for (int i = 0; i < 8; i++)
+        {
+            scheduler.offer("light", 1);
+        }
+        
+        List<Lane> lanes = new ArrayList<Lane>();
+        for (int i = 0; i < 10; i++)
+        {
+            Ticket<String> ticket = scheduler.take();
+            lanes.add(ticket.getLane());
+            scheduler.release(ticket);
+        }
+        assertEquals(1, Collections.frequency(lanes.subList(0, 5), Lane.HEAVY));
+        assertEquals(1, Collections.frequency(lanes.subList(5, 10), Lane.HEAVY));
+        assertEquals(0, scheduler.size());
+        assertEquals(0, scheduler.getRunningCount());
+    }
+    
+    protected Thread take(final List<String> taken)
+    {
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    taken.add(scheduler.take().getItem());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for {@link QpidJsonBodyCleanerObjectMapper}
+ */
+public class QpidJsonBodyCleanerObjectMapperTest
+{
+    private static final String QPID_PREFIX = "sfjh09434";
+    private static final String KEY = "key1";
+    private static final String VALUE = "value1";
+    
+    private ObjectMapper objectMapper;
+    private String json;
+    
+    @Before
+    public void init() throws Exception
+    {
+        objectMapper = ObjectMapperFactory.createInstance();
+        Map<String, String> map = new HashMap<String, String>();
+        map.put(KEY, VALUE);
+        json = objectMapper.writeValueAsString(map);
+    }
+    
+    protected void assertMap(Object value)
+    {
+        assertTrue(value instanceof Map);
+        assertEquals(VALUE, ((Map<?, ?>) value).get(KEY));
+    }
+    
+    protected InputStream createUnmarkableStream(String content)
+    {
+        return new FilterInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)))
+        {
+            @Override
+            public boolean markSupported()
+            {
+                return false;
+            }
+        };
+    }
+    
+    @Test
+    public void testReadString() throws Exception
+    {
+        assertMap(objectMapper.readValue(json, Object.class));
+        assertMap(objectMapper.readValue(QPID_PREFIX + json, Object.class));
+    }
+    
+    @Test
+    public void testReadBytes() throws Exception
+    {
+        assertMap(objectMapper.readValue(json.getBytes(StandardCharsets.UTF_8), Object.class));
+        assertMap(objectMapper.readValue((QPID_PREFIX + json).getBytes(StandardCharsets.UTF_8), Object.class));
+    }
+    
+    @Test
+    public void testReadBytesWithOffset() throws Exception
+    {
+        byte[] bytes = ("xx" + QPID_PREFIX + json + "yy").getBytes(StandardCharsets.UTF_8);
+        int length = QPID_PREFIX.length() + json.length();
+        assertMap(objectMapper.readValue(bytes, 2, length, Object.class));
+    }
+    
+    @Test
+    public void testReadStream() throws Exception
+    {
+        assertMap(objectMapper.readValue(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), Object.class));
+        assertMap(objectMapper.readValue(
+                new ByteArrayInputStream((QPID_PREFIX + json).getBytes(StandardCharsets.UTF_8)), Object.class));
+    }
+    
+    @Test
+    public void testReadUnmarkableStream() throws Exception
+    {
+        assertMap(objectMapper.readValue(createUnmarkableStream(json), Object.class));
+        assertMap(objectMapper.readValue(createUnmarkableStream(" " + QPID_PREFIX + json), Object.class));
+    }
+    
+    @Test
+    public void testReadScalars() throws Exception
+    {
+        for (String scalar : new String[] { "123", " 123", "true", "null" })
+        {
+            Object expected = scalar.trim().equals("null") ? null : 
+                (scalar.trim().equals("true") ? Boolean.TRUE : Integer.valueOf(123));
+            byte[] bytes = scalar.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected, objectMapper.readValue(scalar, Object.class));
+            assertEquals(expected, objectMapper.readValue(bytes, Object.class));
+            assertEquals(expected, objectMapper.readValue(new ByteArrayInputStream(bytes), Object.class));
+        }
+    }
+    
+    @Test
+    public void testReadPrefixedObject() throws Exception
+    {
+        for (String prefix : new String[] { QPID_PREFIX, " " + QPID_PREFIX, "\u0000Sw" })
+        {
+            byte[] bytes = (prefix + json).getBytes(StandardCharsets.UTF_8);
+            assertMap(objectMapper.readValue(prefix + json, Object.class));
+            assertMap(objectMapper.readValue(bytes, Object.class));
+            assertMap(objectMapper.readValue(new ByteArrayInputStream(bytes), Object.class));
+        }
+    }
+    
+    @Test(expected = JsonProcessingException.class)
+    public void testInvalidContentFails() throws Exception
+    {
+        objectMapper.readValue(QPID_PREFIX, Object.class);
+    }
+    
+    @Test
+    public void testReadNonObjectValue() throws Exception
+    {
+        String stringJson = objectMapper.writeValueAsString(VALUE);
+        assertEquals(VALUE, objectMapper.readValue(stringJson, String.class));
+        assertEquals(VALUE, objectMapper.readValue(
+                new ByteArrayInputStream(stringJson.getBytes(StandardCharsets.UTF_8)), String.class));
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.jackson;
+
+import static org.junit.Assert.*;
+
+import org.gytheio.content.ContentReference;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TypeIdRegistry}
+ */
+public class TypeIdRegistryTest
+{
+    @Test
+    public void testDefaultInstanceLoadsProviders()
+    {
+        TypeIdRegistry registry = TypeIdRegistry.getDefaultInstance();
+        assertEquals(ContentReference.class, registry.getType("ContentReference"));
+        assertEquals("ContentReference", registry.getId(ContentReference.class));
+    }
+    
+    @Test
+    public void testRegisterSameMappingTwice()
+    {
+        TypeIdRegistry registry = new TypeIdRegistry();
+        registry.register("String", String.class);
+        registry.register("String", String.class);
+        assertEquals(1, registry.size());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testConflictingId()
+    {
+        TypeIdRegistry registry = new TypeIdRegistry();
+        registry.register("Value", String.class);
+        registry.register("Value", Integer.class);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testConflictingClass()
+    {
+        TypeIdRegistry registry = new TypeIdRegistry();
+        registry.register("Value1", String.class);
+        registry.register("Value2", String.class);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testClassNameLikeId()
+    {
+        new TypeIdRegistry().register("java.lang.String", String.class);
+    }
+    
+    @Test
+    public void testReadClassNameAndTypeId() throws Exception
+    {
+        ContentReference reference = new ContentReference("file:///tmp/test.txt", "text/plain");
+        String classNameJson = ObjectMapperFactory.createInstance().writeValueAsString(reference);
+        String typeIdJson = ObjectMapperFactory.createInstance(
+                ObjectMapperFactory.CONTENT_TYPE_JSON, true).writeValueAsString(reference);
+        
+        assertTrue(classNameJson.contains(ContentReference.class.getName()));
+        assertTrue(typeIdJson.contains("\"ContentReference\""));
+        
+        for (String json : new String[] { classNameJson, typeIdJson })
+        {
+            ContentReference read = (ContentReference) 
+                    ObjectMapperFactory.createInstance().readValue(json, Object.class);
+            assertEquals(reference.getUri(), read.getUri());
+        }
+    }
+}
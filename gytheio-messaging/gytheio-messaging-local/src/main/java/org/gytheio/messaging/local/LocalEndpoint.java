@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.local;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gytheio.messaging.MessageConsumer;
+import org.gytheio.messaging.MessageProducer;
+import org.gytheio.messaging.MessagingException;
+import org.gytheio.messaging.PausableMessageEndpoint;
+
+/**
+ * An in-JVM endpoint which sends to and receives from a {@link LocalMessageBroker},
+ * passing message objects by reference with no marshaling.
+ * <p>
+ * Since messages are not copied, neither the sender nor the consumer should
+ * modify a message once sent.  Headers are not carried.
+ */
+public class LocalEndpoint implements MessageProducer, PausableMessageEndpoint
+{
+    private static final Log logger = LogFactory.getLog(LocalEndpoint.class);
+    
+    private static final long PAUSED_PARK_NANOS = 1000000;
+    private static final long IDLE_POLL_MS = 100;
+    
+    private LocalMessageBroker broker;
+    private String receiveEndpoint;
+    private String sendEndpoint;
+    private int consumers = 1;
+    private MessageConsumer messageConsumer;
+    
+    private volatile boolean isRunning = false;
+    private volatile boolean isPaused = false;
+    private LocalRingBuffer<Object> receiveBuffer;
+    private final List<Thread> dispatchers = new ArrayList<Thread>();
+    
+    public void setBroker(LocalMessageBroker broker)
+    {
+        this.broker = broker;
+    }
+    
+    public LocalMessageBroker getBroker()
+    {
+        return broker;
+    }
+
+    public void setReceiveEndpoint(String receiveEndpoint)
+    {
+        this.receiveEndpoint = receiveEndpoint;
+    }
+
+    public void setSendEndpoint(String sendEndpoint)
+    {
+        this.sendEndpoint = sendEndpoint;
+    }
+    
+    /**
+     * Sets the number of threads dispatching received messages to the consumer, default 1
+     * 
+     * @param consumers
+     */
+    public void setConsumers(int consumers)
+    {
+        if (consumers < 1)
+        {
+            throw new IllegalArgumentException("consumers must be at least 1");
+        }
+        this.consumers = consumers;
+    }
+    
+    public int getConsumers()
+    {
+        return consumers;
+    }
+
+    public void setMessageConsumer(MessageConsumer messageConsumer)
+    {
+        this.messageConsumer = messageConsumer;
+    }
+    
+    @Override
+    public void send(Object message) throws MessagingException
+    {
+        send(message, (String) null);
+    }
+
+    @Override
+    public void send(Object message, Map<String, Object> headers) throws MessagingException
+    {
+        send(message, (String) null);
+    }
+
+    @Override
+    public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+    {
+        send(message, queueName);
+    }
+    
+    @Override
+    public void send(Object message, String queueName) throws MessagingException
+    {
+        if (StringUtils.isEmpty(queueName))
+        {
+            queueName = sendEndpoint;
+        }
+        try
+        {
+            broker.send(queueName, message);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted sending to " + queueName, e);
+        }
+    }
+    
+    /**
+     * Starts the dispatcher threads delivering messages from the receive endpoint
+     * to the message consumer
+     */
+    public synchronized void startListener()
+    {
+        if (isRunning)
+        {
+            return;
+        }
+        receiveBuffer = broker.subscribe(receiveEndpoint);
+        isRunning = true;
+        for (int i = 0; i < consumers; i++)
+        {
+            Thread dispatcher = new Thread(new LocalDispatcher(), 
+                    "gytheio-local-" + receiveEndpoint + "-" + i);
+            dispatchers.add(dispatcher);
+            dispatcher.start();
+        }
+        logger.info("Waiting for a local message on " + broker.getName() + ":" + receiveEndpoint + 
+                " with " + consumers + " consumer(s)");
+    }
+    
+    /**
+     * Stops the dispatcher threads, messages still queued remain on the broker
+     * unless this was the last endpoint receiving from an empty queue
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void stop() throws InterruptedException
+    {
+        if (!isRunning)
+        {
+            return;
+        }
+        isRunning = false;
+        for (Thread dispatcher : dispatchers)
+        {
+            dispatcher.join();
+        }
+        dispatchers.clear();
+        broker.unsubscribe(receiveEndpoint, receiveBuffer);
+        receiveBuffer = null;
+    }
+    
+    public boolean isInitialized()
+    {
+        return isRunning;
+    }
+
+    @Override
+    public void pause() throws MessagingException
+    {
+        isPaused = true;
+    }
+
+    @Override
+    public void resume() throws MessagingException
+    {
+        isPaused = false;
+    }
+
+    @Override
+    public boolean isPaused()
+    {
+        return isPaused;
+    }
+    
+    /**
+     * Polls the receive buffer, parking while it is empty or the endpoint is paused
+     */
+    protected class LocalDispatcher implements Runnable
+    {
+        public void run()
+        {
+            LocalRingBuffer<Object> buffer = receiveBuffer;
+            while (isRunning)
+            {
+                if (isPaused)
+                {
+                    LockSupport.parkNanos(PAUSED_PARK_NANOS);
+                    continue;
+                }
+                try
+                {
+                    if (!buffer.awaitElement(IDLE_POLL_MS, TimeUnit.MILLISECONDS))
+                    {
+                        continue;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (isPaused)
+                {
+                    continue;
+                }
+                Object message = buffer.poll();
+                if (message == null)
+                {
+                    continue;
+                }
+                try
+                {
+                    messageConsumer.onReceive(message);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Error processing local message", e);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder(this.getClass().getSimpleName() + "[");
+        builder.append("broker: " + (broker != null ? broker.getName() : null));
+        builder.append(", ");
+        builder.append("receiveEndpoint: " + receiveEndpoint);
+        builder.append(", ");
+        builder.append("sendEndpoint: " + sendEndpoint);
+        builder.append("]");
+        return builder.toString();
+    }
+}
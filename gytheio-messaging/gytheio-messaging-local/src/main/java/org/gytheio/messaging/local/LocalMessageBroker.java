@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.local;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gytheio.messaging.MessagingException;
+
+/**
+ * An in-JVM broker holding a {@link LocalRingBuffer} per queue and per topic
+ * subscription.  Message objects are passed by reference, never serialized.
+ * <p>
+ * Endpoint names are resolved as they are by the AMQP direct endpoint:
+ * a <code>topic:</code> prefix denotes a topic, a <code>queue:</code> prefix
+ * or no prefix denotes a queue.  Consumers of a queue compete for its messages
+ * while every subscription to a topic receives each message.
+ * <p>
+ * A queue is created when first sent to or subscribed to, and removed when its
+ * last consumer unsubscribes if it's empty.
+ * <p>
+ * Sending to a full buffer waits up to the {@link #setSendTimeoutMs(long) send timeout}
+ * for a consumer to make room, then fails with a {@link MessagingException}.
+ */
+public class LocalMessageBroker
+{
+    public static final String BROKER_URL_PREFIX = "local://";
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long DEFAULT_SEND_TIMEOUT_MS = 30000;
+    
+    private static final String ENDPOINT_PREFIX_QUEUE = "queue:";
+    private static final String ENDPOINT_PREFIX_TOPIC = "topic:";
+    private static final String DEFAULT_BROKER_NAME = "default";
+    
+    private static final ConcurrentMap<String, LocalMessageBroker> brokers = 
+            new ConcurrentHashMap<String, LocalMessageBroker>();
+    
+    private final String name;
+    private final int capacity;
+    private volatile long sendTimeoutMs = DEFAULT_SEND_TIMEOUT_MS;
+    private final ConcurrentMap<String, LocalRingBuffer<Object>> queues = 
+            new ConcurrentHashMap<String, LocalRingBuffer<Object>>();
+    private final ConcurrentMap<String, List<LocalRingBuffer<Object>>> topicSubscriptions = 
+            new ConcurrentHashMap<String, List<LocalRingBuffer<Object>>>();
+    // Guarded by this
+    private final Map<String, Integer> queueConsumerCounts = new HashMap<String, Integer>();
+    
+    public LocalMessageBroker(String name, int capacity)
+    {
+        this.name = name;
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Sets how long sending waits for room in a full queue or subscription before
+     * failing, default 30 seconds
+     * 
+     * @param sendTimeoutMs
+     */
+    public void setSendTimeoutMs(long sendTimeoutMs)
+    {
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+    
+    /**
+     * Gets the shared broker for the given <code>local://name</code> URL, creating
+     * it if need be.  <code>local://</code> alone refers to the default broker.
+     * 
+     * @param brokerUrl
+     * @return the broker
+     */
+    public static LocalMessageBroker getInstance(String brokerUrl)
+    {
+        String brokerName = getBrokerName(brokerUrl);
+        LocalMessageBroker broker = brokers.get(brokerName);
+        if (broker == null)
+        {
+            LocalMessageBroker newBroker = new LocalMessageBroker(brokerName, DEFAULT_CAPACITY);
+            broker = brokers.putIfAbsent(brokerName, newBroker);
+            if (broker == null)
+            {
+                broker = newBroker;
+            }
+        }
+        return broker;
+    }
+    
+    /**
+     * Determines whether the given broker URL refers to a local broker
+     * 
+     * @param brokerUrl
+     * @return true for <code>local://</code> URLs
+     */
+    public static boolean isLocal(String brokerUrl)
+    {
+        return brokerUrl != null && brokerUrl.startsWith(BROKER_URL_PREFIX);
+    }
+    
+    protected static String getBrokerName(String brokerUrl)
+    {
+        if (!isLocal(brokerUrl))
+        {
+            throw new IllegalArgumentException("Not a local broker URL: " + brokerUrl);
+        }
+        String brokerName = StringUtils.removeEnd(
+                brokerUrl.substring(BROKER_URL_PREFIX.length()), "/");
+        return StringUtils.isEmpty(brokerName) ? DEFAULT_BROKER_NAME : brokerName;
+    }
+    
+    public String getName()
+    {
+        return name;
+    }
+    
+    protected static boolean isTopic(String endpoint)
+    {
+        return endpoint.startsWith(ENDPOINT_PREFIX_TOPIC);
+    }
+    
+    protected static String getDestinationName(String endpoint)
+    {
+        if (endpoint.startsWith(ENDPOINT_PREFIX_QUEUE))
+        {
+            return endpoint.substring(ENDPOINT_PREFIX_QUEUE.length());
+        }
+        if (endpoint.startsWith(ENDPOINT_PREFIX_TOPIC))
+        {
+            return endpoint.substring(ENDPOINT_PREFIX_TOPIC.length());
+        }
+        return endpoint;
+    }
+    
+    protected LocalRingBuffer<Object> getQueue(String queueName)
+    {
+        LocalRingBuffer<Object> queue = queues.get(queueName);
+        if (queue == null)
+        {
+            LocalRingBuffer<Object> newQueue = new LocalRingBuffer<Object>(capacity);
+            queue = queues.putIfAbsent(queueName, newQueue);
+            if (queue == null)
+            {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+    
+    protected List<LocalRingBuffer<Object>> getSubscriptions(String topicName)
+    {
+        List<LocalRingBuffer<Object>> subscriptions = topicSubscriptions.get(topicName);
+        if (subscriptions == null)
+        {
+            List<LocalRingBuffer<Object>> newSubscriptions = new CopyOnWriteArrayList<LocalRingBuffer<Object>>();
+            subscriptions = topicSubscriptions.putIfAbsent(topicName, newSubscriptions);
+            if (subscriptions == null)
+            {
+                subscriptions = newSubscriptions;
+            }
+        }
+        return subscriptions;
+    }
+    
+    /**
+     * Gets the buffer a consumer of the given endpoint should poll: the shared
+     * buffer for a queue or a new subscription buffer for a topic
+     * 
+     * @param endpoint
+     * @return the buffer to poll
+     */
+    public synchronized LocalRingBuffer<Object> subscribe(String endpoint)
+    {
+        String destinationName = getDestinationName(endpoint);
+        if (isTopic(endpoint))
+        {
+            LocalRingBuffer<Object> subscription = new LocalRingBuffer<Object>(capacity);
+            getSubscriptions(destinationName).add(subscription);
+            return subscription;
+        }
+        Integer count = queueConsumerCounts.get(destinationName);
+        queueConsumerCounts.put(destinationName, count == null ? 1 : count + 1);
+        return getQueue(destinationName);
+    }
+    
+    /**
+     * Removes a subscription returned by {@link #subscribe(String)}, removing a
+     * topic with no other subscriptions or an empty queue with no other consumers
+     * 
+     * @param endpoint
+     * @param subscription
+     */
+    public synchronized void unsubscribe(String endpoint, LocalRingBuffer<Object> subscription)
+    {
+        String destinationName = getDestinationName(endpoint);
+        if (isTopic(endpoint))
+        {
+            List<LocalRingBuffer<Object>> subscriptions = topicSubscriptions.get(destinationName);
+            if (subscriptions != null && subscriptions.remove(subscription) && subscriptions.isEmpty())
+            {
+                topicSubscriptions.remove(destinationName, subscriptions);
+            }
+            return;
+        }
+        Integer count = queueConsumerCounts.get(destinationName);
+        if (count == null)
+        {
+            return;
+        }
+        if (count > 1)
+        {
+            queueConsumerCounts.put(destinationName, count - 1);
+            return;
+        }
+        queueConsumerCounts.remove(destinationName);
+        if (subscription.size() == 0 && queues.remove(destinationName, subscription))
+        {
+            // Keep anything sent while removing
+            requeue(destinationName, subscription);
+        }
+    }
+    
+    /**
+     * Moves any messages left in a removed queue buffer to the queue now in use
+     * 
+     * @param queueName
+     * @param removed
+     */
+    protected void requeue(String queueName, LocalRingBuffer<Object> removed)
+    {
+        Object message;
+        while ((message = removed.poll()) != null)
+        {
+            if (!getQueue(queueName).offer(message))
+            {
+                throw new IllegalStateException("Queue " + queueName + " full while requeueing");
+            }
+        }
+    }
+    
+    /**
+     * Delivers the message to the given endpoint, waiting up to the send timeout
+     * while a destination buffer is full
+     * 
+     * @param endpoint
+     * @param message
+     * @throws InterruptedException
+     * @throws MessagingException if a destination buffer stayed full, topic subscriptions
+     * before it will already have received the message
+     */
+    public void send(String endpoint, Object message) throws InterruptedException
+    {
+        String destinationName = getDestinationName(endpoint);
+        if (isTopic(endpoint))
+        {
+            List<LocalRingBuffer<Object>> subscriptions = topicSubscriptions.get(destinationName);
+            if (subscriptions == null)
+            {
+                return;
+            }
+            for (LocalRingBuffer<Object> subscription : subscriptions)
+            {
+                put(subscription, endpoint, message);
+            }
+        }
+        else
+        {
+            LocalRingBuffer<Object> queue = getQueue(destinationName);
+            put(queue, endpoint, message);
+            if (queues.get(destinationName) != queue)
+            {
+                // The queue was removed as empty while sending
+                requeue(destinationName, queue);
+            }
+        }
+    }
+    
+    private void put(LocalRingBuffer<Object> buffer, String endpoint, Object message) 
+            throws InterruptedException
+    {
+        if (!buffer.offer(message, sendTimeoutMs, TimeUnit.MILLISECONDS))
+        {
+            throw new MessagingException("Timed out after " + sendTimeoutMs + 
+                    "ms waiting for room to send to " + endpoint);
+        }
+    }
+    
+    /**
+     * Gets the number of messages waiting on the given queue
+     * 
+     * @param endpoint
+     * @return the queue depth
+     */
+    public int getQueueDepth(String endpoint)
+    {
+        LocalRingBuffer<Object> queue = queues.get(getDestinationName(endpoint));
+        return queue == null ? 0 : queue.size();
+    }
+    
+    /**
+     * Determines whether the given queue currently exists
+     * 
+     * @param endpoint
+     * @return true if the queue exists
+     */
+    public boolean isQueueExists(String endpoint)
+    {
+        return queues.containsKey(getDestinationName(endpoint));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.local;
+
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gytheio.messaging.MessageConsumer;
+
+/**
+ * A utility class for helping to bootstrap nodes on a <code>local://</code> broker,
+ * using the same property names as the AMQP bootstrap
+ */
+public class LocalNodeBootstrapUtils
+{
+    public static final String PROP_MESSAGING_BROKER_URL = "gytheio.messaging.broker.url";
+    public static final String PROP_MESSAGING_QUEUE_REQUEST = "gytheio.messaging.queue.request";
+    public static final String PROP_MESSAGING_QUEUE_REPLY = "gytheio.messaging.queue.reply";
+    public static final String PROP_MESSAGING_CONSUMERS = "gytheio.messaging.consumers";
+    public static final String PROP_MESSAGING_SEND_TIMEOUT_MS = "gytheio.messaging.local.send.timeout.ms";
+    
+    /**
+     * Creates a local endpoint (sender and receiver) on the broker named by the given URL
+     * 
+     * @param messageConsumer the processor received messages are sent to
+     * @param brokerUrl a <code>local://</code> URL
+     * @param requestEndpoint the endpoint to receive from
+     * @param replyEndpoint the endpoint to send to
+     * @return the endpoint
+     */
+    public static LocalEndpoint createEndpoint(MessageConsumer messageConsumer,
+            String brokerUrl, String requestEndpoint, String replyEndpoint)
+    {
+        if (!LocalMessageBroker.isLocal(brokerUrl) ||
+                StringUtils.isEmpty(requestEndpoint) || StringUtils.isEmpty(replyEndpoint))
+        {
+            throw new IllegalArgumentException(
+                    "local brokerUrl, requestQueueName, and replyQueueName must not be empty");
+        }
+        LocalEndpoint endpoint = new LocalEndpoint();
+        endpoint.setBroker(LocalMessageBroker.getInstance(brokerUrl));
+        endpoint.setReceiveEndpoint(requestEndpoint);
+        endpoint.setSendEndpoint(replyEndpoint);
+        endpoint.setMessageConsumer(messageConsumer);
+        return endpoint;
+    }
+    
+    public static LocalEndpoint createEndpoint(MessageConsumer messageConsumer, Properties properties)
+    {
+        LocalEndpoint endpoint = createEndpoint(messageConsumer, 
+                properties.getProperty(PROP_MESSAGING_BROKER_URL),
+                properties.getProperty(PROP_MESSAGING_QUEUE_REQUEST),
+                properties.getProperty(PROP_MESSAGING_QUEUE_REPLY));
+        String consumers = properties.getProperty(PROP_MESSAGING_CONSUMERS);
+        if (!StringUtils.isEmpty(consumers))
+        {
+            endpoint.setConsumers(Integer.parseInt(consumers.trim()));
+        }
+        String sendTimeoutMs = properties.getProperty(PROP_MESSAGING_SEND_TIMEOUT_MS);
+        if (!StringUtils.isEmpty(sendTimeoutMs))
+        {
+            // Brokers are shared by name so this applies to every endpoint on the broker
+            endpoint.getBroker().setSendTimeoutMs(Long.parseLong(sendTimeoutMs.trim()));
+        }
+        return endpoint;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.local;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer ring buffer.
+ * <p>
+ * Each slot carries a sequence number which tells producers and consumers
+ * whether the slot is free for the current lap of the buffer, so claiming a
+ * slot is a single compare-and-set on the head or tail position.  Consumers
+ * waiting in {@link #poll(long, TimeUnit)} park until an element is offered.
+ *
+ * @param <E> the element type
+ */
+public class LocalRingBuffer<E>
+{
+    private static final int SPIN_ATTEMPTS = 100;
+    private static final int YIELD_ATTEMPTS = 200;
+    private static final long PARK_NANOS = 50000;
+    
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final ConcurrentLinkedQueue<Thread> waitingConsumers = new ConcurrentLinkedQueue<Thread>();
+    
+    /**
+     * Constructor
+     * 
+     * @param capacity the minimum capacity, rounded up to a power of two of at least 2
+     */
+    public LocalRingBuffer(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        // A single slot can't tell a full buffer from an empty one by its sequence
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity)
+        {
+            size <<= 1;
+        }
+        mask = size - 1;
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            sequences.set(i, i);
+        }
+    }
+    
+    /**
+     * Adds the element if there is space
+     * 
+     * @param element
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element)
+    {
+        if (element == null)
+        {
+            throw new NullPointerException();
+        }
+        while (true)
+        {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    signalConsumer();
+                    return true;
+                }
+            }
+            else if (difference < 0)
+            {
+                // Slot still holds an element from the previous lap
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Adds the element, backing off while the buffer is full
+     * 
+     * @param element
+     * @throws InterruptedException
+     */
+    public void put(E element) throws InterruptedException
+    {
+        int attempts = 0;
+        while (!offer(element))
+        {
+            backoff(attempts++);
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+    }
+    
+    /**
+     * Adds the element, backing off while the buffer is full for up to the given time
+     * 
+     * @param element
+     * @param timeout
+     * @param unit
+     * @return false if the buffer was still full after the given time
+     * @throws InterruptedException
+     */
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempts = 0;
+        while (!offer(element))
+        {
+            if (System.nanoTime() - deadline >= 0)
+            {
+                return false;
+            }
+            backoff(attempts++);
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Removes the next element if there is one
+     * 
+     * @return the element or null if the buffer is empty
+     */
+    public E poll()
+    {
+        while (true)
+        {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0)
+            {
+                if (head.compareAndSet(position, position + 1))
+                {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            }
+            else if (difference < 0)
+            {
+                // Slot not yet published for this lap
+                return null;
+            }
+        }
+    }
+    
+    /**
+     * Removes the next element, waiting up to the given time for one
+     * 
+     * @param timeout
+     * @param unit
+     * @return the element or null if none was offered in time
+     * @throws InterruptedException
+     * @see #awaitElement(long, TimeUnit)
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true)
+        {
+            E element = poll();
+            if (element != null)
+            {
+                return element;
+            }
+            if (!awaitElement(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+            {
+                return null;
+            }
+        }
+    }
+    
+    /**
+     * Waits up to the given time for the buffer to hold an element, without removing it,
+     * by spinning briefly then parking until an element is offered
+     * 
+     * @param timeout
+     * @param unit
+     * @return true if not empty
+     * @throws InterruptedException
+     */
+    public boolean awaitElement(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempts = 0;
+        while (true)
+        {
+            if (!isEmpty())
+            {
+                return true;
+            }
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                return false;
+            }
+            if (attempts < YIELD_ATTEMPTS)
+            {
+                backoff(attempts++);
+                continue;
+            }
+            Thread current = Thread.currentThread();
+            waitingConsumers.add(current);
+            // Check again once visible to producers so an offer can't be missed
+            if (isEmpty())
+            {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waitingConsumers.remove(current);
+        }
+    }
+    
+    /**
+     * Determines whether there is no element published at the head of the buffer
+     * 
+     * @return true if empty
+     */
+    public boolean isEmpty()
+    {
+        long position = head.get();
+        return sequences.get((int) position & mask) - (position + 1) < 0;
+    }
+    
+    private void signalConsumer()
+    {
+        if (!waitingConsumers.isEmpty())
+        {
+            Thread consumer = waitingConsumers.poll();
+            if (consumer != null)
+            {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+    
+    /**
+     * Gets the approximate number of elements in the buffer
+     * 
+     * @return the size
+     */
+    public int size()
+    {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+    
+    public int capacity()
+    {
+        return mask + 1;
+    }
+    
+    /**
+     * Waits progressively longer the more consecutive attempts have found
+     * nothing to do: spinning briefly, then yielding, then parking.
+     * 
+     * @param attempts the number of consecutive unsuccessful attempts
+     */
+    public static void backoff(int attempts)
+    {
+        if (attempts < SPIN_ATTEMPTS)
+        {
+            Thread.onSpinWait();
+        }
+        else if (attempts < YIELD_ATTEMPTS)
+        {
+            Thread.yield();
+        }
+        else
+        {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.local;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.gytheio.messaging.MessageConsumer;
+import org.gytheio.messaging.MessagingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests sending and receiving through a {@link LocalEndpoint}
+ */
+public class LocalEndpointTest
+{
+    private static final long TIMEOUT_MS = 5000;
+    
+    private LocalMessageBroker broker;
+    private LocalEndpoint sender;
+    private LocalEndpoint receiver;
+    private TestConsumer consumer;
+    
+    @Before
+    public void setUp()
+    {
+        broker = new LocalMessageBroker("test", 16);
+        consumer = new TestConsumer();
+        sender = createEndpoint(null, "queue:test.out", null);
+        receiver = createEndpoint(consumer, null, "test.out");
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        receiver.stop();
+    }
+    
+    protected LocalEndpoint createEndpoint(MessageConsumer messageConsumer, 
+            String sendEndpoint, String receiveEndpoint)
+    {
+        LocalEndpoint endpoint = new LocalEndpoint();
+        endpoint.setBroker(broker);
+        endpoint.setMessageConsumer(messageConsumer);
+        endpoint.setSendEndpoint(sendEndpoint);
+        endpoint.setReceiveEndpoint(receiveEndpoint);
+        return endpoint;
+    }
+    
+    @Test
+    public void testQueueDeliversReference() throws Exception
+    {
+        receiver.startListener();
+        Object message = new Object();
+        sender.send(message);
+        assertSame(message, consumer.received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+    
+    @Test
+    public void testTopicFansOut() throws Exception
+    {
+        TestConsumer otherConsumer = new TestConsumer();
+        LocalEndpoint otherReceiver = createEndpoint(otherConsumer, null, "topic:test.topic");
+        LocalEndpoint topicReceiver = createEndpoint(consumer, null, "topic:test.topic");
+        topicReceiver.startListener();
+        otherReceiver.startListener();
+        try
+        {
+            Object message = new Object();
+            sender.send(message, "topic:test.topic");
+            assertSame(message, consumer.received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertSame(message, otherConsumer.received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        finally
+        {
+            topicReceiver.stop();
+            otherReceiver.stop();
+        }
+    }
+    
+    @Test
+    public void testPauseHoldsMessages() throws Exception
+    {
+        receiver.startListener();
+        receiver.pause();
+        sender.send("paused");
+        assertNull(consumer.received.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, broker.getQueueDepth("test.out"));
+        
+        receiver.resume();
+        assertEquals("paused", consumer.received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+    
+    @Test
+    public void testQueueRemovedWhenLastEndpointStops() throws Exception
+    {
+        LocalEndpoint otherReceiver = createEndpoint(consumer, null, "test.out");
+        receiver.startListener();
+        otherReceiver.startListener();
+        assertTrue(broker.isQueueExists("test.out"));
+        
+        otherReceiver.stop();
+        assertTrue(broker.isQueueExists("test.out"));
+        receiver.stop();
+        assertFalse(broker.isQueueExists("test.out"));
+        
+        // Messages left on a queue are kept for later consumers
+        sender.send("kept");
+        // Paused before starting so the dispatchers can't take the message first
+        receiver.pause();
+        receiver.startListener();
+        receiver.stop();
+        assertEquals(1, broker.getQueueDepth("test.out"));
+    }
+    
+    @Test
+    public void testSendFailsWhenQueueStaysFull() throws Exception
+    {
+        broker.setSendTimeoutMs(50);
+        for (int i = 0; i < 16; i++)
+        {
+            sender.send(i);
+        }
+        try
+        {
+            sender.send("overflow");
+            fail("Expected send to a full queue to time out");
+        }
+        catch (MessagingException e)
+        {
+            // expected
+        }
+        assertEquals(16, broker.getQueueDepth("test.out"));
+    }
+    
+    @Test
+    public void testBrokerUrls()
+    {
+        assertTrue(LocalMessageBroker.isLocal("local://"));
+        assertFalse(LocalMessageBroker.isLocal("amqp://localhost:5672"));
+        assertSame(LocalMessageBroker.getInstance("local://"), LocalMessageBroker.getInstance("local://default"));
+        assertNotSame(LocalMessageBroker.getInstance("local://"), LocalMessageBroker.getInstance("local://other"));
+    }
+    
+    public static class TestConsumer implements MessageConsumer
+    {
+        private final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+        
+        public void onReceive(Object message)
+        {
+            received.add(message);
+        }
+
+        public Class<?> getConsumingMessageBodyClass()
+        {
+            return Object.class;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.messaging.local;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link LocalRingBuffer}
+ */
+public class LocalRingBufferTest
+{
+    @Test
+    public void testCapacityRoundedToPowerOfTwo()
+    {
+        assertEquals(8, new LocalRingBuffer<Object>(5).capacity());
+        assertEquals(8, new LocalRingBuffer<Object>(8).capacity());
+        assertEquals(2, new LocalRingBuffer<Object>(1).capacity());
+    }
+    
+    @Test
+    public void testFifoAndFull()
+    {
+        LocalRingBuffer<Integer> buffer = new LocalRingBuffer<Integer>(4);
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+        
+        for (int i = 0; i < 4; i++)
+        {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        
+        // Wraps around
+        assertTrue(buffer.offer(5));
+        assertEquals(Integer.valueOf(5), buffer.poll());
+    }
+    
+    @Test
+    public void testTimedOfferFailsWhenFull() throws Exception
+    {
+        LocalRingBuffer<Integer> buffer = new LocalRingBuffer<Integer>(1);
+        assertTrue(buffer.offer(0, 50, TimeUnit.MILLISECONDS));
+        assertTrue(buffer.offer(1, 50, TimeUnit.MILLISECONDS));
+        long start = System.nanoTime();
+        assertFalse(buffer.offer(2, 50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(2, 50, TimeUnit.MILLISECONDS));
+    }
+    
+    @Test
+    public void testPollWaitsForOffer() throws Exception
+    {
+        final LocalRingBuffer<Integer> buffer = new LocalRingBuffer<Integer>(4);
+        assertNull(buffer.poll(10, TimeUnit.MILLISECONDS));
+        
+        final AtomicReference<Integer> received = new AtomicReference<Integer>();
+        Thread consumer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    received.set(buffer.poll(5, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        consumer.start();
+        // Let the consumer park
+        Thread.sleep(200);
+        long start = System.currentTimeMillis();
+        assertTrue(buffer.offer(7));
+        consumer.join(5000);
+        assertEquals(Integer.valueOf(7), received.get());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+    
+    @Test
+    public void testConcurrentProducersAndConsumers() throws Exception
+    {
+        final int producers = 4;
+        final int consumers = 2;
+        final int perProducer = 50000;
+        final int total = producers * perProducer;
+        final LocalRingBuffer<Integer> buffer = new LocalRingBuffer<Integer>(64);
+        final AtomicIntegerArray received = new AtomicIntegerArray(total);
+        final CountDownLatch done = new CountDownLatch(total);
+        
+        for (int c = 0; c < consumers; c++)
+        {
+            Thread consumer = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    int idleAttempts = 0;
+                    while (done.getCount() > 0)
+                    {
+                        Integer value = buffer.poll();
+                        if (value == null)
+                        {
+                            LocalRingBuffer.backoff(idleAttempts++);
+                            continue;
+                        }
+                        idleAttempts = 0;
+                        received.incrementAndGet(value);
+                        done.countDown();
+                    }
+                }
+            });
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+        for (int p = 0; p < producers; p++)
+        {
+            final int offset = p * perProducer;
+            Thread producer = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < perProducer; i++)
+                        {
+                            buffer.put(offset + i);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            producer.setDaemon(true);
+            producer.start();
+        }
+        
+        done.await();
+        for (int i = 0; i < total; i++)
+        {
+            assertEquals("Message " + i + " should be received exactly once", 1, received.get(i));
+        }
+    }
+}
@@ -24,16 +24,24 @@ import org.apache.commons.logging.LogFactory;
 import java.util.Properties;
 import java.util.concurrent.Executors;
 
+import org.apache.commons.lang3.StringUtils;
 import org.gytheio.content.AbstractAsyncComponent;
 import org.gytheio.content.AbstractComponent;
+import org.gytheio.content.ContentRequestCostEstimator;
 import org.gytheio.content.ContentWorker;
+import org.gytheio.content.RequestCostEstimator;
+import org.gytheio.content.RequestScheduler;
 import org.gytheio.content.file.FileProviderImpl;
 import org.gytheio.content.handler.ContentReferenceHandler;
 import org.gytheio.content.handler.FileContentReferenceHandlerImpl;
 import org.gytheio.content.handler.webdav.WebDavContentReferenceHandlerImpl;
 import org.gytheio.error.GytheioRuntimeException;
+import org.gytheio.messaging.PausableMessageEndpoint;
 import org.gytheio.messaging.amqp.AmqpDirectEndpoint;
 import org.gytheio.messaging.amqp.AmqpNodeBootstrapUtils;
+import org.gytheio.messaging.local.LocalEndpoint;
+import org.gytheio.messaging.local.LocalMessageBroker;
+import org.gytheio.messaging.local.LocalNodeBootstrapUtils;
 
 /**
  * Base bootstrap which creates a component, configures it with a worker, and creates
@@ -54,9 +62,21 @@ public abstract class AbstractComponentBootstrapFromProperties<W extends Content
     public static final String PROP_WORKER_CONTENT_REF_HANDLER_WEBDAV_URL_SUFFIX = ".webdav.url";
     public static final String PROP_WORKER_CONTENT_REF_HANDLER_WEBDAV_USERNAME_SUFFIX = ".webdav.username";
     public static final String PROP_WORKER_CONTENT_REF_HANDLER_WEBDAV_PASSWORD_SUFFIX = ".webdav.password";
+    public static final String PROP_COMPONENT_WORKER_THREADS = "gytheio.component.workers";
+    public static final String PROP_COMPONENT_QUEUE_CAPACITY = "gytheio.component.queue.capacity";
+    public static final String PROP_COMPONENT_REPLIES_ASYNC = "gytheio.component.replies.async";
+    public static final String PROP_COMPONENT_SCHEDULER = "gytheio.component.scheduler";
+    public static final String PROP_COMPONENT_SCHEDULER_CONCURRENCY = "gytheio.component.scheduler.concurrency";
+    public static final String PROP_COMPONENT_SCHEDULER_HEAVY_CONCURRENCY = 
+            "gytheio.component.scheduler.heavy.concurrency";
+    public static final String PROP_COMPONENT_SCHEDULER_HEAVY_COST = "gytheio.component.scheduler.heavy.cost";
+    public static final String PROP_COMPONENT_SCHEDULER_LIGHT_WEIGHT = "gytheio.component.scheduler.light.weight";
+    public static final String PROP_COMPONENT_SCHEDULER_HEAVY_WEIGHT = "gytheio.component.scheduler.heavy.weight";
     
     protected Properties properties;
     protected W worker;
+    protected PausableMessageEndpoint endpoint;
+    protected AbstractComponent<W> component;
     
     public AbstractComponentBootstrapFromProperties(Properties properties, W worker)
     {
@@ -140,19 +160,32 @@ public abstract class AbstractComponentBootstrapFromProperties<W extends Content
 
     protected abstract AbstractComponent<W> createComponent();
     
+    /**
+     * Creates the estimator of request costs used when scheduling is enabled
+     * 
+     * @return the cost estimator
+     */
+    protected RequestCostEstimator createCostEstimator()
+    {
+        return new ContentRequestCostEstimator();
+    }
+    
     protected abstract void initWorker();
     
-    protected void run()
+    /**
+     * Initializes the worker and component and starts listening for requests
+     */
+    public void run()
     {
         initWorker();
         
         AbstractComponent<W> component = createComponent();
         component.setWorker(worker);
-        // TODO allow more config
-        if (component instanceof AbstractAsyncComponent<?,?,?>)
+        
+        if (LocalMessageBroker.isLocal(properties.getProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_BROKER_URL)))
         {
-            ((AbstractAsyncComponent<?,?,?>) component).setExecutorService(
-                    Executors.newCachedThreadPool());
+            runLocal(component);
+            return;
         }
         
         AmqpDirectEndpoint endpoint = 
@@ -162,12 +195,165 @@ public abstract class AbstractComponentBootstrapFromProperties<W extends Content
             throw new GytheioRuntimeException("Could not create AMQP endpoint");
         }
         
+        AbstractAsyncComponent<?,?,?> asyncComponent = configureComponent(component, endpoint);
+        if (asyncComponent != null && endpoint.isClientAcknowledge() && endpoint.getPrefetch() == null)
+        {
+            // Size the unacknowledged window so each worker can have a request in progress
+            int workers = asyncComponent.getWorkerThreads();
+            endpoint.setPrefetch(Math.max(1, 
+                    (workers + endpoint.getConsumers() - 1) / endpoint.getConsumers()));
+        }
+        
         component.setMessageProducer(endpoint);
         component.init();
         
         logger.debug("Initialized component " + component.toString());
         
         endpoint.startListener();
+        this.endpoint = endpoint;
+        this.component = component;
+    }
+    
+    /**
+     * Runs the component on an in-JVM <code>local://</code> broker, for nodes
+     * embedded in the same JVM as their clients
+     * 
+     * @param component
+     */
+    protected void runLocal(AbstractComponent<W> component)
+    {
+        LocalEndpoint endpoint = LocalNodeBootstrapUtils.createEndpoint(component, properties);
+        configureComponent(component, endpoint);
+        
+        component.setMessageProducer(endpoint);
+        component.init();
+        
+        logger.debug("Initialized component " + component.toString());
+        
+        endpoint.startListener();
+        this.endpoint = endpoint;
+        this.component = component;
+    }
+    
+    /**
+     * Stops receiving requests, closes the endpoint and stops the component's
+     * worker threads, for components run in the same JVM as their clients
+     * 
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException
+    {
+        if (endpoint instanceof LocalEndpoint)
+        {
+            ((LocalEndpoint) endpoint).stop();
+        }
+        else if (endpoint instanceof AmqpDirectEndpoint)
+        {
+            ((AmqpDirectEndpoint) endpoint).close();
+        }
+        if (component instanceof AbstractAsyncComponent<?,?,?>)
+        {
+            ((AbstractAsyncComponent<?,?,?>) component).destroy();
+        }
+        endpoint = null;
+        component = null;
+    }
+    
+    /**
+     * Applies the component properties, including worker pool settings for
+     * asynchronous components
+     * 
+     * @param component
+     * @param endpoint the endpoint to pause when the component is saturated
+     * @return the component if asynchronous, null otherwise
+     */
+    protected AbstractAsyncComponent<?,?,?> configureComponent(
+            AbstractComponent<W> component, PausableMessageEndpoint endpoint)
+    {
+        component.setAsyncReplies(Boolean.parseBoolean(
+                properties.getProperty(PROP_COMPONENT_REPLIES_ASYNC, "false").trim()));
+        
+        boolean isScheduled = Boolean.parseBoolean(
+                properties.getProperty(PROP_COMPONENT_SCHEDULER, "false").trim());
+        if (!(component instanceof AbstractAsyncComponent<?,?,?>))
+        {
+            if (isScheduled)
+            {
+                logger.warn("Scheduling requires a local queue, ignoring " + PROP_COMPONENT_SCHEDULER + 
+                        " for " + component.getClass().getSimpleName());
+            }
+            return null;
+        }
+        AbstractAsyncComponent<?,?,?> asyncComponent = (AbstractAsyncComponent<?,?,?>) component;
+        String workerThreads = properties.getProperty(PROP_COMPONENT_WORKER_THREADS);
+        if (StringUtils.isNotEmpty(workerThreads))
+        {
+            asyncComponent.setWorkerThreads(Integer.parseInt(workerThreads.trim()));
+        }
+        String queueCapacity = properties.getProperty(PROP_COMPONENT_QUEUE_CAPACITY);
+        if (StringUtils.isNotEmpty(queueCapacity))
+        {
+            asyncComponent.setQueueCapacity(Integer.parseInt(queueCapacity.trim()));
+        }
+        else if (isScheduled)
+        {
+            // Each lane may queue a request per worker
+            asyncComponent.setQueueCapacity(asyncComponent.getWorkerThreads());
+        }
+        if (isScheduled)
+        {
+            asyncComponent.setScheduler(createScheduler());
+            asyncComponent.setCostEstimator(createCostEstimator());
+        }
+        asyncComponent.setExecutorService(
+                Executors.newFixedThreadPool(asyncComponent.getWorkerThreads()));
+        if (!isClientAcknowledge(endpoint))
+        {
+            // In client acknowledge mode the acknowledgement window limits delivery instead
+            asyncComponent.setPausableEndpoint(endpoint);
+        }
+        return asyncComponent;
+    }
+    
+    private static boolean isClientAcknowledge(PausableMessageEndpoint endpoint)
+    {
+        return endpoint instanceof AmqpDirectEndpoint && ((AmqpDirectEndpoint) endpoint).isClientAcknowledge();
+    }
+    
+    /**
+     * Creates the scheduler ordering the local queue by estimated cost
+     * 
+     * @return the scheduler
+     */
+    protected RequestScheduler<Object> createScheduler()
+    {
+        RequestScheduler<Object> scheduler = new RequestScheduler<Object>();
+        String concurrency = properties.getProperty(PROP_COMPONENT_SCHEDULER_CONCURRENCY);
+        if (StringUtils.isNotEmpty(concurrency))
+        {
+            scheduler.setMaxConcurrent(Integer.parseInt(concurrency.trim()));
+        }
+        String heavyConcurrency = properties.getProperty(PROP_COMPONENT_SCHEDULER_HEAVY_CONCURRENCY);
+        if (StringUtils.isNotEmpty(heavyConcurrency))
+        {
+            scheduler.setMaxHeavyConcurrent(Integer.parseInt(heavyConcurrency.trim()));
+        }
+        String heavyCost = properties.getProperty(PROP_COMPONENT_SCHEDULER_HEAVY_COST);
+        if (StringUtils.isNotEmpty(heavyCost))
+        {
+            scheduler.setHeavyCostThreshold(Long.parseLong(heavyCost.trim()));
+        }
+        String lightWeight = properties.getProperty(PROP_COMPONENT_SCHEDULER_LIGHT_WEIGHT);
+        if (StringUtils.isNotEmpty(lightWeight))
+        {
+            scheduler.setLightWeight(Integer.parseInt(lightWeight.trim()));
+        }
+        String heavyWeight = properties.getProperty(PROP_COMPONENT_SCHEDULER_HEAVY_WEIGHT);
+        if (StringUtils.isNotEmpty(heavyWeight))
+        {
+            scheduler.setHeavyWeight(Integer.parseInt(heavyWeight.trim()));
+        }
+        return scheduler;
     }
 
 
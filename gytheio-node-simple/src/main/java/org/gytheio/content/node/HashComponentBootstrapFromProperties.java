@@ -20,6 +20,7 @@ package org.gytheio.content.node;
 
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
 import org.gytheio.content.AbstractComponent;
 import org.gytheio.content.handler.ContentReferenceHandler;
 import org.gytheio.content.hash.AbstractContentHashWorker;
@@ -35,6 +36,8 @@ import org.gytheio.content.hash.BaseContentHashComponent;
 public class HashComponentBootstrapFromProperties<W extends AbstractContentHashWorker> extends 
         AbstractComponentBootstrapFromProperties<W>
 {
+    public static final String PROP_WORKER_PARALLELISM = "gytheio.worker.parallelism";
+    
     public HashComponentBootstrapFromProperties(Properties properties, W worker)
     {
         super(properties, worker);
@@ -52,6 +55,11 @@ public class HashComponentBootstrapFromProperties<W extends AbstractContentHashW
         ContentReferenceHandler sourceHandler = createContentReferenceHandler(
                 PROP_WORKER_CONTENT_REF_HANDLER_SOURCE_PREFIX);
         worker.setSourceContentReferenceHandler(sourceHandler);
+        String parallelism = properties.getProperty(PROP_WORKER_PARALLELISM);
+        if (StringUtils.isNotEmpty(parallelism))
+        {
+            worker.setParallelism(Integer.parseInt(parallelism.trim()));
+        }
         worker.initialize();
     }
 
@@ -20,10 +20,18 @@ package org.gytheio.content.node;
 
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
+
 import org.gytheio.content.AbstractComponent;
+import org.gytheio.content.RequestCostEstimator;
 import org.gytheio.content.handler.ContentReferenceHandler;
 import org.gytheio.content.transform.AbstractContentTransformerWorker;
+import org.gytheio.content.transform.AsyncContentTransformerComponent;
 import org.gytheio.content.transform.BaseContentTransformerComponent;
+import org.gytheio.content.transform.TransformationRequestCostEstimator;
+import org.gytheio.content.transform.cache.FileTransformationResultCache;
+import org.gytheio.content.transform.cache.TransformationCacheKeyGenerator;
+import org.gytheio.messaging.amqp.AmqpNodeBootstrapUtils;
 
 /**
  * Bootstraps a transformer component
@@ -35,8 +43,15 @@ import org.gytheio.content.transform.BaseContentTransformerComponent;
 public class TransformerComponentBootstrapFromProperties<W extends AbstractContentTransformerWorker> extends 
         AbstractComponentBootstrapFromProperties<W>
 {
-    protected static final String PROP_WORKER_CONTENT_REF_HANDLER_TARGET_PREFIX = 
+    public static final String PROP_WORKER_CONTENT_REF_HANDLER_TARGET_PREFIX = 
             "gytheio.worker.contentrefhandler.target";
+    public static final String PROP_COMPONENT_CACHE_FILE_DIR = "gytheio.component.cache.file.dir";
+    public static final String PROP_COMPONENT_CACHE_MAX_BYTES = "gytheio.component.cache.maxbytes";
+    public static final String PROP_COMPONENT_COALESCE = "gytheio.component.coalesce";
+    public static final String PROP_COMPONENT_COALESCE_TIMEOUT_MS = "gytheio.component.coalesce.timeout.ms";
+    
+    protected ContentReferenceHandler sourceHandler;
+    protected ContentReferenceHandler targetHandler;
     
     public TransformerComponentBootstrapFromProperties(Properties properties, W worker)
     {
@@ -47,16 +62,59 @@ public class TransformerComponentBootstrapFromProperties<W extends AbstractConte
     @Override
     protected AbstractComponent createComponent()
     {
-        return new BaseContentTransformerComponent();
+        BaseContentTransformerComponent component = new BaseContentTransformerComponent();
+        String cacheDirectory = properties.getProperty(PROP_COMPONENT_CACHE_FILE_DIR);
+        if (StringUtils.isNotEmpty(cacheDirectory))
+        {
+            FileTransformationResultCache resultCache = new FileTransformationResultCache();
+            resultCache.setDirectoryPath(cacheDirectory.trim());
+            resultCache.setResultContentReferenceHandler(targetHandler);
+            String maxBytes = properties.getProperty(PROP_COMPONENT_CACHE_MAX_BYTES);
+            if (StringUtils.isNotEmpty(maxBytes))
+            {
+                resultCache.setMaxBytes(Long.parseLong(maxBytes.trim()));
+            }
+            resultCache.init();
+            TransformationCacheKeyGenerator cacheKeyGenerator = new TransformationCacheKeyGenerator();
+            cacheKeyGenerator.setSourceContentReferenceHandler(sourceHandler);
+            component.setResultCache(resultCache);
+            component.setCacheKeyGenerator(cacheKeyGenerator);
+        }
+        component.setTargetContentReferenceHandler(targetHandler);
+        component.setCoalesceRequests(Boolean.parseBoolean(
+                properties.getProperty(PROP_COMPONENT_COALESCE, "false").trim()));
+        String coalesceTimeoutMs = properties.getProperty(PROP_COMPONENT_COALESCE_TIMEOUT_MS);
+        if (StringUtils.isNotEmpty(coalesceTimeoutMs))
+        {
+            component.setCoalesceTimeoutMs(Long.parseLong(coalesceTimeoutMs.trim()));
+        }
+        if (Boolean.parseBoolean(properties.getProperty(PROP_COMPONENT_SCHEDULER, "false").trim()))
+        {
+            // Requests can only be reordered while waiting in a local queue
+            AsyncContentTransformerComponent asyncComponent = new AsyncContentTransformerComponent(component);
+            String consumers = properties.getProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_CONSUMERS);
+            if (StringUtils.isNotEmpty(consumers))
+            {
+                asyncComponent.setWorkerThreads(Integer.parseInt(consumers.trim()));
+            }
+            return asyncComponent;
+        }
+        return component;
+    }
+    
+    @Override
+    protected RequestCostEstimator createCostEstimator()
+    {
+        return new TransformationRequestCostEstimator();
     }
     
     protected void initWorker()
     {
-        ContentReferenceHandler sourceHandler = createContentReferenceHandler(
+        sourceHandler = createContentReferenceHandler(
                 PROP_WORKER_CONTENT_REF_HANDLER_SOURCE_PREFIX);
         worker.setSourceContentReferenceHandler(sourceHandler);
         
-        ContentReferenceHandler targetHandler = createContentReferenceHandler(
+        targetHandler = createContentReferenceHandler(
                 PROP_WORKER_CONTENT_REF_HANDLER_TARGET_PREFIX);
         worker.setTargetContentReferenceHandler(targetHandler);
         
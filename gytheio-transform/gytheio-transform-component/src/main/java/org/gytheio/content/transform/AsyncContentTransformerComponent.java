@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform;
+
+import org.gytheio.content.AbstractAsyncComponent;
+import org.gytheio.messaging.MessageProducer;
+
+/**
+ * A transformer component which places received requests on a local queue and transforms
+ * them on worker threads, see {@link AbstractAsyncComponent}, so that they can be reordered
+ * by a {@link org.gytheio.content.RequestScheduler}.
+ * <p>
+ * The transformation itself, including result caching, coalescing and deadline replies,
+ * is done by the given {@link BaseContentTransformerComponent}.
+ */
+public class AsyncContentTransformerComponent extends 
+        AbstractAsyncComponent<ContentTransformerWorker, TransformationRequest, TransformationReply>
+{
+    protected final BaseContentTransformerComponent transformerComponent;
+    
+    public AsyncContentTransformerComponent(BaseContentTransformerComponent transformerComponent)
+    {
+        this.transformerComponent = transformerComponent;
+    }
+    
+    @Override
+    public void setWorker(ContentTransformerWorker worker)
+    {
+        super.setWorker(worker);
+        transformerComponent.setWorker(worker);
+    }
+    
+    @Override
+    public void setMessageProducer(MessageProducer messageProducer)
+    {
+        super.setMessageProducer(messageProducer);
+        transformerComponent.setMessageProducer(messageProducer);
+    }
+    
+    @Override
+    public void setAsyncReplies(boolean isAsyncReplies)
+    {
+        super.setAsyncReplies(isAsyncReplies);
+        transformerComponent.setAsyncReplies(isAsyncReplies);
+    }
+    
+    @Override
+    public void init()
+    {
+        transformerComponent.init();
+        super.init();
+    }
+    
+    @Override
+    protected void processRequest(TransformationRequest request)
+    {
+        transformerComponent.onReceiveImpl(request);
+    }
+    
+    @Override
+    protected void onExpired(Object message)
+    {
+        transformerComponent.onExpired(message);
+    }
+    
+    public Class<?> getConsumingMessageBodyClass()
+    {
+        return TransformationRequest.class;
+    }
+
+}
@@ -18,19 +18,56 @@
  */
 package org.gytheio.content.transform;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.gytheio.content.AbstractComponent;
+import org.gytheio.content.ContentIOException;
+import org.gytheio.content.ContentReference;
 import org.gytheio.content.ContentWorkResult;
+import org.gytheio.content.handler.ContentReferenceHandler;
+import org.gytheio.content.mediatype.FileMediaType;
 import org.gytheio.content.transform.TransformationReply;
 import org.gytheio.content.transform.TransformationRequest;
+import org.gytheio.content.transform.cache.TransformationCacheKeyGenerator;
+import org.gytheio.content.transform.cache.TransformationResultCache;
+import org.gytheio.messaging.AbstractRequest;
 import org.gytheio.messaging.MessageProducer;
 
 /**
  * A base implementation of a transform node which receives messages, uses a {@link ContentTransformerWorker}
  * to perform the transformation, then uses a {@link MessageProducer} to send the reply.
+ * <p>
+ * If a {@link TransformationResultCache} and a target handler are set, requests for a
+ * transformation already cached are answered with a complete reply once the cached results
+ * are copied into their targets, without calling the worker.
+ * <p>
+ * If coalescing is enabled, a request identical to one already being transformed,
+ * by source references, target media type and options, is registered with that
+ * transformation without holding a thread.  Once it completes it's replied to with its
+ * error, or its results copied into the request's own targets with the
+ * {@link #setTargetContentReferenceHandler(ContentReferenceHandler) target handler},
+ * before the original request is replied to.  Without a target handler only requests for
+ * the same target content references are coalesced.  Requests waiting longer than the
+ * coalesce timeout are transformed themselves on the coalesce executor, and those
+ * whose deadline passes while waiting are replied to as expired.
+ * <p>
+ * Requests whose deadline has passed, on receipt or once ready for the worker, are
+ * replied to with an error with the {@link TransformationReply#STATUS_DETAIL_EXPIRED}
+ * status detail rather than transformed.
  * 
  * @author Ray Gauss II
  */
@@ -39,7 +76,114 @@ public class BaseContentTransformerComponent
 {
     private static final Log logger = LogFactory.getLog(BaseContentTransformerComponent.class);
     
-    protected TransformationRequest lastRequest;
+    public static final long DEFAULT_COALESCE_TIMEOUT_MS = 300000;
+    public static final int DEFAULT_MAX_COALESCED_TRANSFORMATIONS = 1000;
+    
+    protected volatile TransformationRequest lastRequest;
+    protected TransformationResultCache resultCache;
+    protected TransformationCacheKeyGenerator cacheKeyGenerator;
+    protected ContentReferenceHandler targetContentReferenceHandler;
+    protected boolean isCoalesceRequests = false;
+    protected long coalesceTimeoutMs = DEFAULT_COALESCE_TIMEOUT_MS;
+    protected int maxCoalescedTransformations = DEFAULT_MAX_COALESCED_TRANSFORMATIONS;
+    protected ScheduledExecutorService coalesceExecutorService;
+    protected final Map<String, InFlightTransformation> inFlightTransformations = 
+            new ConcurrentHashMap<String, InFlightTransformation>();
+    
+    /**
+     * Sets the cache of transformation results, not cached by default, which
+     * also requires a target content reference handler
+     * 
+     * @param resultCache
+     */
+    public void setResultCache(TransformationResultCache resultCache)
+    {
+        this.resultCache = resultCache;
+    }
+    
+    /**
+     * Sets the generator of the keys results are cached by, required if
+     * a result cache is set
+     * 
+     * @param cacheKeyGenerator
+     */
+    public void setCacheKeyGenerator(TransformationCacheKeyGenerator cacheKeyGenerator)
+    {
+        this.cacheKeyGenerator = cacheKeyGenerator;
+    }
+    
+    /**
+     * Sets the handler results shared with other requests are copied into their
+     * targets with, usually the worker's target content reference handler
+     * 
+     * @param targetContentReferenceHandler
+     */
+    public void setTargetContentReferenceHandler(ContentReferenceHandler targetContentReferenceHandler)
+    {
+        this.targetContentReferenceHandler = targetContentReferenceHandler;
+    }
+    
+    /**
+     * Sets whether requests identical to one already being transformed wait for
+     * its results rather than calling the worker, default false
+     * 
+     * @param isCoalesceRequests
+     */
+    public void setCoalesceRequests(boolean isCoalesceRequests)
+    {
+        this.isCoalesceRequests = isCoalesceRequests;
+    }
+    
+    /**
+     * Sets how long a coalesced request waits for the transformation it's identical
+     * to before being transformed itself
+     * 
+     * @param coalesceTimeoutMs
+     */
+    public void setCoalesceTimeoutMs(long coalesceTimeoutMs)
+    {
+        this.coalesceTimeoutMs = coalesceTimeoutMs;
+    }
+    
+    /**
+     * Sets the maximum number of transformations in progress that later requests can
+     * wait for, requests beyond that are transformed without being coalesced
+     * 
+     * @param maxCoalescedTransformations
+     */
+    public void setMaxCoalescedTransformations(int maxCoalescedTransformations)
+    {
+        this.maxCoalescedTransformations = maxCoalescedTransformations;
+    }
+    
+    /**
+     * Sets the executor coalesced requests are timed out on, and transformed on once
+     * the coalesce timeout passes, by default a single daemon thread
+     * 
+     * @param coalesceExecutorService
+     */
+    public void setCoalesceExecutorService(ScheduledExecutorService coalesceExecutorService)
+    {
+        this.coalesceExecutorService = coalesceExecutorService;
+    }
+    
+    protected synchronized ScheduledExecutorService getCoalesceExecutorService()
+    {
+        if (coalesceExecutorService == null)
+        {
+            coalesceExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, 
+                            BaseContentTransformerComponent.class.getSimpleName() + "-coalesce");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return coalesceExecutorService;
+    }
     
     /**
      * Gets the last transformation request received.
@@ -62,9 +206,50 @@ public class BaseContentTransformerComponent
         logger.info("Processing transformation requestId=" + request.getRequestId());
         ContentTransformerWorkerProgressReporterImpl progressReporter =
                 new ContentTransformerWorkerProgressReporterImpl(request);
+        InFlightTransformation inFlightTransformation = null;
+        boolean isStarted = false;
         try
         {
-            progressReporter.onTransformationStarted();
+            String cacheKey = getCacheKey(request);
+            if (cacheKey != null)
+            {
+                List<ContentWorkResult> cachedResults = getCachedResults(cacheKey, request);
+                if (cachedResults != null)
+                {
+                    logger.debug("Using cached results for requestId=" + request.getRequestId());
+                    progressReporter.onTransformationComplete(cachedResults);
+                    return;
+                }
+            }
+            
+            if (isExpired(request))
+            {
+                onExpired(request);
+                return;
+            }
+            
+            String coalesceKey = getCoalesceKey(request);
+            if (coalesceKey != null)
+            {
+                inFlightTransformation = new InFlightTransformation(coalesceKey);
+                InFlightTransformation existing = 
+                        inFlightTransformations.putIfAbsent(coalesceKey, inFlightTransformation);
+                if (existing != null)
+                {
+                    inFlightTransformation = null;
+                    progressReporter.onTransformationStarted();
+                    isStarted = true;
+                    if (coalesce(existing, request, progressReporter))
+                    {
+                        return;
+                    }
+                }
+            }
+            
+            if (!isStarted)
+            {
+                progressReporter.onTransformationStarted();
+            }
             
             List<ContentWorkResult> results = worker.transform(
                     request.getSourceContentReferences(), 
@@ -72,13 +257,398 @@ public class BaseContentTransformerComponent
                     request.getOptions(),
                     progressReporter);
             
+            if (cacheKey != null)
+            {
+                cacheResults(cacheKey, results);
+            }
+            if (inFlightTransformation != null)
+            {
+                // Copied into the coalesced requests' targets before the results are replied with
+                inFlightTransformations.remove(inFlightTransformation.key, inFlightTransformation);
+                replyCoalesced(inFlightTransformation.complete(), results, null);
+            }
             progressReporter.onTransformationComplete(results);
         }
         catch (Exception e)
         {
+            if (inFlightTransformation != null)
+            {
+                inFlightTransformations.remove(inFlightTransformation.key, inFlightTransformation);
+                replyCoalesced(inFlightTransformation.complete(), null, e.getMessage());
+            }
             progressReporter.onTransformationError(e.getMessage());
             logger.error(e.getMessage(), e);
         }
+        finally
+        {
+            if (inFlightTransformation != null)
+            {
+                inFlightTransformations.remove(inFlightTransformation.key, inFlightTransformation);
+            }
+        }
+    }
+    
+    /**
+     * Replies to the expired request with an error rather than transforming it
+     */
+    @Override
+    protected void onExpired(Object message)
+    {
+        super.onExpired(message);
+        TransformationRequest request = (TransformationRequest) message;
+        TransformationReply reply = new TransformationReply(request);
+        reply.setStatus(TransformationReply.STATUS_ERROR);
+        reply.setStatusDetail(TransformationReply.STATUS_DETAIL_EXPIRED);
+        sendReply(reply, request.getReplyTo());
+    }
+    
+    /**
+     * Gets the key identical requests in flight are coalesced by
+     * 
+     * @param request
+     * @return the key, or null if the request shouldn't be coalesced
+     */
+    protected String getCoalesceKey(TransformationRequest request)
+    {
+        if (!isCoalesceRequests || inFlightTransformations.size() >= maxCoalescedTransformations)
+        {
+            return null;
+        }
+        if (cacheKeyGenerator == null)
+        {
+            cacheKeyGenerator = new TransformationCacheKeyGenerator();
+        }
+        String referenceKey = cacheKeyGenerator.generateReferenceKey(request);
+        if (referenceKey == null || targetContentReferenceHandler != null)
+        {
+            return referenceKey;
+        }
+        // Results can't be copied so requests must share the same targets
+        List<ContentReference> targets = request.getTargetContentReferences();
+        if (targets == null || targets.isEmpty())
+        {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(referenceKey);
+        for (ContentReference target : targets)
+        {
+            key.append(' ').append(target.getUri());
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Registers the given request to be replied to once the given transformation completes,
+     * or once the coalesce timeout or the request's deadline passes if that's sooner.
+     * The request is only acknowledged once it has been replied to.
+     * 
+     * @param inFlightTransformation
+     * @param request
+     * @param progressReporter
+     * @return true if registered, false if the transformation has already completed
+     */
+    protected boolean coalesce(final InFlightTransformation inFlightTransformation,
+            TransformationRequest request, ContentTransformerWorkerProgressReporter progressReporter)
+    {
+        long timeoutMs = coalesceTimeoutMs;
+        boolean isDeadlineBound = false;
+        Long deadline = AbstractRequest.getDeadline(request);
+        if (deadline != null && deadline - System.currentTimeMillis() < timeoutMs)
+        {
+            timeoutMs = Math.max(0, deadline - System.currentTimeMillis());
+            isDeadlineBound = true;
+        }
+        final CoalescedRequest coalescedRequest = 
+                new CoalescedRequest(request, progressReporter, isDeadlineBound);
+        if (!inFlightTransformation.add(coalescedRequest))
+        {
+            return false;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Coalescing requestId=" + request.getRequestId() + 
+                    " with transformation in progress");
+        }
+        trackDeferredReply(coalescedRequest.reply);
+        coalescedRequest.timeout = getCoalesceExecutorService().schedule(new Runnable()
+        {
+            public void run()
+            {
+                onCoalesceTimeout(inFlightTransformation, coalescedRequest);
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+    
+    /**
+     * Replies to the coalesced request as expired if its deadline has passed, otherwise
+     * transforms it, unless the transformation it's waiting for has already completed
+     * 
+     * @param inFlightTransformation
+     * @param coalescedRequest
+     */
+    protected void onCoalesceTimeout(InFlightTransformation inFlightTransformation, 
+            final CoalescedRequest coalescedRequest)
+    {
+        if (!inFlightTransformation.remove(coalescedRequest))
+        {
+            return;
+        }
+        try
+        {
+            processDeferred(new Runnable()
+            {
+                public void run()
+                {
+                    if (coalescedRequest.isDeadlineBound)
+                    {
+                        // Deadline passed waiting on the coalesced transformation
+                        onExpired(coalescedRequest.request);
+                        return;
+                    }
+                    logger.warn("Timed out waiting for coalesced transformation, transforming requestId=" 
+                            + coalescedRequest.request.getRequestId());
+                    transformCoalesced(coalescedRequest);
+                }
+            }, coalescedRequest.reply);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error(e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Transforms a coalesced request which timed out waiting
+     * 
+     * @param coalescedRequest
+     */
+    protected void transformCoalesced(CoalescedRequest coalescedRequest)
+    {
+        TransformationRequest request = coalescedRequest.request;
+        try
+        {
+            List<ContentWorkResult> results = worker.transform(
+                    request.getSourceContentReferences(), 
+                    request.getTargetContentReferences(), 
+                    request.getOptions(),
+                    coalescedRequest.progressReporter);
+            coalescedRequest.progressReporter.onTransformationComplete(results);
+        }
+        catch (Exception e)
+        {
+            coalescedRequest.progressReporter.onTransformationError(e.getMessage());
+            logger.error(e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Replies to the given coalesced requests with the outcome of the transformation
+     * they were waiting for
+     * 
+     * @param coalescedRequests
+     * @param results the results, or null if the transformation failed
+     * @param errorMessage the error if the transformation failed
+     */
+    protected void replyCoalesced(List<CoalescedRequest> coalescedRequests, 
+            final List<ContentWorkResult> results, final String errorMessage)
+    {
+        for (final CoalescedRequest coalescedRequest : coalescedRequests)
+        {
+            if (coalescedRequest.timeout != null)
+            {
+                coalescedRequest.timeout.cancel(false);
+            }
+            try
+            {
+                processDeferred(new Runnable()
+                {
+                    public void run()
+                    {
+                        replyCoalesced(coalescedRequest, results, errorMessage);
+                    }
+                }, coalescedRequest.reply);
+            }
+            catch (RuntimeException e)
+            {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+    
+    /**
+     * Replies to the coalesced request with the given error, or the given results
+     * copied into its own targets
+     * 
+     * @param coalescedRequest
+     * @param results
+     * @param errorMessage
+     */
+    protected void replyCoalesced(CoalescedRequest coalescedRequest, 
+            List<ContentWorkResult> results, String errorMessage)
+    {
+        TransformationRequest request = coalescedRequest.request;
+        ContentTransformerWorkerProgressReporter progressReporter = coalescedRequest.progressReporter;
+        if (isExpired(request))
+        {
+            onExpired(request);
+        }
+        else if (errorMessage != null)
+        {
+            progressReporter.onTransformationError(errorMessage);
+        }
+        else if (targetContentReferenceHandler != null)
+        {
+            try
+            {
+                progressReporter.onTransformationComplete(
+                        copyResults(results, request, targetContentReferenceHandler));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                progressReporter.onTransformationError(e.getMessage());
+            }
+            catch (ContentIOException e)
+            {
+                progressReporter.onTransformationError(e.getMessage());
+                logger.error(e.getMessage(), e);
+            }
+        }
+        else
+        {
+            // Coalesced requests have the same targets
+            progressReporter.onTransformationComplete(results);
+        }
+    }
+    
+    /**
+     * Copies the content of the given results into the targets of the given request,
+     * or into new targets created with the target handler if it has none
+     * 
+     * @param results
+     * @param request
+     * @param resultContentReferenceHandler the handler the results are read with
+     * @return the results referencing the copies
+     * @throws ContentIOException
+     * @throws InterruptedException
+     */
+    protected List<ContentWorkResult> copyResults(List<ContentWorkResult> results, 
+            TransformationRequest request, ContentReferenceHandler resultContentReferenceHandler) 
+                    throws ContentIOException, InterruptedException
+    {
+        List<ContentReference> targets = request.getTargetContentReferences();
+        List<ContentWorkResult> copies = new ArrayList<ContentWorkResult>(results.size());
+        for (int i = 0; i < results.size(); i++)
+        {
+            ContentReference result = results.get(i).getContentReference();
+            if (result == null)
+            {
+                copies.add(results.get(i));
+                continue;
+            }
+            ContentReference target = null;
+            if (targets != null && i < targets.size())
+            {
+                target = targets.get(i);
+            }
+            else
+            {
+                String extension = result.getMediaType() == null ? 
+                        null : FileMediaType.SERVICE.getExtension(result.getMediaType());
+                target = targetContentReferenceHandler.createContentReference(
+                        this.getClass().getSimpleName() + "-target-" + UUID.randomUUID().toString() + 
+                        "." + (extension == null || extension.isEmpty() ? "bin" : extension), 
+                        result.getMediaType());
+            }
+            try (InputStream inputStream = resultContentReferenceHandler.getInputStream(result, false))
+            {
+                target.setSize(targetContentReferenceHandler.putInputStream(inputStream, target));
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Could not copy result " + result.getUri(), e);
+            }
+            copies.add(new ContentWorkResult(target, results.get(i).getDetails()));
+        }
+        return copies;
+    }
+    
+    /**
+     * Gets the key the results of the given request are cached by
+     * 
+     * @param request
+     * @return the key, or null if results aren't cached
+     */
+    protected String getCacheKey(TransformationRequest request)
+    {
+        if (resultCache == null || cacheKeyGenerator == null || targetContentReferenceHandler == null)
+        {
+            return null;
+        }
+        try
+        {
+            return cacheKeyGenerator.generateKey(request);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (Exception e)
+        {
+            logger.warn("Could not generate cache key for requestId=" + request.getRequestId() 
+                    + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Copies the results cached for the given key into the targets of the given
+     * request, failures are treated as a miss
+     * 
+     * @param cacheKey
+     * @param request
+     * @return results referencing the copies, or null if not cached
+     * @throws InterruptedException
+     */
+    protected List<ContentWorkResult> getCachedResults(String cacheKey, TransformationRequest request) 
+            throws InterruptedException
+    {
+        try
+        {
+            return resultCache.copy(cacheKey, request.getTargetContentReferences(), 
+                    targetContentReferenceHandler);
+        }
+        catch (ContentIOException e)
+        {
+            logger.warn("Could not copy cached results, transforming requestId=" + 
+                    request.getRequestId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Caches the given results, before they're replied with so that the
+     * requester can't remove them first, failures only lose the cache entry
+     * 
+     * @param cacheKey
+     * @param results
+     */
+    protected void cacheResults(String cacheKey, List<ContentWorkResult> results)
+    {
+        try
+        {
+            resultCache.put(cacheKey, results);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Exception e)
+        {
+            logger.warn("Could not cache results: " + e.getMessage());
+        }
     }
     
     public Class<?> getConsumingMessageBodyClass()
@@ -111,7 +681,7 @@ public class BaseContentTransformerComponent
                     new TransformationReply(request);
             reply.setStatus(TransformationReply.STATUS_IN_PROGRESS);
             
-            messageProducer.send(reply, request.getReplyTo());
+            sendReply(reply, request.getReplyTo());
             
             // We can now allow in-progress messages
             isReportInProgressPermitted = true;
@@ -137,7 +707,7 @@ public class BaseContentTransformerComponent
                 reply.setStatus(TransformationReply.STATUS_IN_PROGRESS);
                 reply.setProgress(progress);
                 
-                messageProducer.send(reply, request.getReplyTo());
+                sendReply(reply, request.getReplyTo());
             }
         }
         
@@ -155,7 +725,7 @@ public class BaseContentTransformerComponent
             reply.setStatus(TransformationReply.STATUS_COMPLETE);
             reply.setResults(results);
             
-            messageProducer.send(reply, request.getReplyTo());
+            sendReply(reply, request.getReplyTo());
         }
 
         @Override
@@ -168,7 +738,75 @@ public class BaseContentTransformerComponent
             reply.setStatus(TransformationReply.STATUS_ERROR);
             reply.setStatusDetail(errorMessage);
             
-            messageProducer.send(reply, request.getReplyTo());
+            sendReply(reply, request.getReplyTo());
+        }
+    }
+    
+    /**
+     * A transformation in progress which identical requests can wait for
+     */
+    protected static class InFlightTransformation
+    {
+        protected final String key;
+        private final List<CoalescedRequest> coalescedRequests = new ArrayList<CoalescedRequest>();
+        private boolean isComplete = false;
+        
+        protected InFlightTransformation(String key)
+        {
+            this.key = key;
+        }
+        
+        /**
+         * @return false if the transformation has already completed
+         */
+        protected synchronized boolean add(CoalescedRequest coalescedRequest)
+        {
+            if (isComplete)
+            {
+                return false;
+            }
+            return coalescedRequests.add(coalescedRequest);
+        }
+        
+        /**
+         * @return false if the request is no longer waiting
+         */
+        protected synchronized boolean remove(CoalescedRequest coalescedRequest)
+        {
+            return coalescedRequests.remove(coalescedRequest);
+        }
+        
+        /**
+         * Marks the transformation complete
+         * 
+         * @return the requests which were waiting for it
+         */
+        protected synchronized List<CoalescedRequest> complete()
+        {
+            isComplete = true;
+            List<CoalescedRequest> waiting = new ArrayList<CoalescedRequest>(coalescedRequests);
+            coalescedRequests.clear();
+            return waiting;
+        }
+    }
+    
+    /**
+     * A request waiting for an identical transformation in progress
+     */
+    protected static class CoalescedRequest
+    {
+        protected final TransformationRequest request;
+        protected final ContentTransformerWorkerProgressReporter progressReporter;
+        protected final boolean isDeadlineBound;
+        protected final CompletableFuture<Void> reply = new CompletableFuture<Void>();
+        protected volatile ScheduledFuture<?> timeout;
+        
+        protected CoalescedRequest(TransformationRequest request, 
+                ContentTransformerWorkerProgressReporter progressReporter, boolean isDeadlineBound)
+        {
+            this.request = request;
+            this.progressReporter = progressReporter;
+            this.isDeadlineBound = isDeadlineBound;
         }
     }
 
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform;
+
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.ContentRequestCostEstimator;
+import org.gytheio.content.transform.options.PagedSourceOptions;
+import org.gytheio.content.transform.options.TemporalSourceOptions;
+import org.gytheio.content.transform.options.TransformationOptions;
+
+/**
+ * Estimates the cost of a transformation request from its source sizes, weighted by
+ * the heavier of each source media type and the target media type, so transcoding
+ * to video costs as much as transcoding from it.
+ * <p>
+ * Options restricting the work to part of the source, a page range or page limit
+ * for paged sources or a duration for temporal sources, scale the cost by the
+ * {@link #setPartialSourceWeight(double) partial source weight}.
+ */
+public class TransformationRequestCostEstimator extends ContentRequestCostEstimator
+{
+    public static final double DEFAULT_PARTIAL_SOURCE_WEIGHT = 0.1;
+    
+    protected double partialSourceWeight = DEFAULT_PARTIAL_SOURCE_WEIGHT;
+    
+    /**
+     * Sets the cost multiplier for requests only transforming part of their sources, default 0.1
+     * 
+     * @param partialSourceWeight
+     */
+    public void setPartialSourceWeight(double partialSourceWeight)
+    {
+        this.partialSourceWeight = partialSourceWeight;
+    }
+    
+    @Override
+    public long estimateCost(Object request)
+    {
+        long cost = super.estimateCost(request);
+        if (request instanceof TransformationRequest && 
+                isPartialSource(((TransformationRequest) request).getOptions()))
+        {
+            cost = (long) (cost * partialSourceWeight);
+        }
+        return cost;
+    }
+    
+    @Override
+    protected double getSourceCost(ContentReference source, Object request)
+    {
+        double cost = super.getSourceCost(source, request);
+        if (request instanceof TransformationRequest)
+        {
+            double sourceWeight = getMediaTypeWeight(source.getMediaType());
+            double targetWeight = getMediaTypeWeight(((TransformationRequest) request).getTargetMediaType());
+            if (targetWeight > sourceWeight)
+            {
+                cost = cost / sourceWeight * targetWeight;
+            }
+        }
+        return cost;
+    }
+    
+    /**
+     * Determines whether the given options restrict the transformation to part of the sources
+     * 
+     * @param options
+     * @return true if only part of the sources are transformed
+     */
+    protected boolean isPartialSource(TransformationOptions options)
+    {
+        if (options == null)
+        {
+            return false;
+        }
+        if (options.getPageLimit() > 0)
+        {
+            return true;
+        }
+        PagedSourceOptions pagedSourceOptions = options.getSourceOptions(PagedSourceOptions.class);
+        if (pagedSourceOptions != null && pagedSourceOptions.getEndPageNumber() != null)
+        {
+            return true;
+        }
+        TemporalSourceOptions temporalSourceOptions = options.getSourceOptions(TemporalSourceOptions.class);
+        return temporalSourceOptions != null && temporalSourceOptions.getDuration() != null;
+    }
+
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gytheio.content.ContentIOException;
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.ContentWorkResult;
+import org.gytheio.content.handler.ContentReferenceHandler;
+import org.gytheio.content.mediatype.FileMediaType;
+
+/**
+ * A {@link TransformationResultCache} which stores copies of results with any
+ * {@link ContentReferenceHandler}, evicting the least recently used results once
+ * their total size exceeds the maximum.
+ * <p>
+ * The index of cached results is held in memory so the cache starts empty.
+ * Content being copied out of the cache is only deleted, if evicted, once copied.
+ */
+public class ContentReferenceHandlerTransformationResultCache implements TransformationResultCache
+{
+    private static final Log logger = LogFactory.getLog(ContentReferenceHandlerTransformationResultCache.class);
+    
+    public static final long DEFAULT_MAX_BYTES = 1024L*1024L*1024L;
+    
+    protected static final String FILE_NAME_SEPARATOR = "-";
+    protected static final String DEFAULT_EXTENSION = "bin";
+    
+    protected ContentReferenceHandler storageContentReferenceHandler;
+    protected ContentReferenceHandler resultContentReferenceHandler;
+    protected long maxBytes = DEFAULT_MAX_BYTES;
+    
+    protected final Map<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+    protected long totalBytes;
+    
+    /**
+     * Sets the handler cached content is stored with
+     * 
+     * @param storageContentReferenceHandler
+     */
+    public void setStorageContentReferenceHandler(ContentReferenceHandler storageContentReferenceHandler)
+    {
+        this.storageContentReferenceHandler = storageContentReferenceHandler;
+    }
+    
+    /**
+     * Sets the handler the content of results is read with, usually the worker's
+     * target content reference handler, defaults to the storage handler
+     * 
+     * @param resultContentReferenceHandler
+     */
+    public void setResultContentReferenceHandler(ContentReferenceHandler resultContentReferenceHandler)
+    {
+        this.resultContentReferenceHandler = resultContentReferenceHandler;
+    }
+    
+    /**
+     * Sets the total size of cached content above which the least recently
+     * used results are evicted
+     * 
+     * @param maxBytes
+     */
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+    
+    public synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+    
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+    
+    @Override
+    public List<ContentWorkResult> get(String key)
+    {
+        CacheEntry entry;
+        synchronized (this)
+        {
+            entry = entries.get(key);
+        }
+        if (entry == null || !isContentExists(key, entry))
+        {
+            return null;
+        }
+        onHit(entry);
+        List<ContentWorkResult> results = new ArrayList<ContentWorkResult>(entry.results.size());
+        for (ContentWorkResult result : entry.results)
+        {
+            ContentReference cached = result.getContentReference();
+            results.add(new ContentWorkResult(
+                    new ContentReference(cached.getUri(), cached.getMediaType(), cached.getSize()), 
+                    result.getDetails()));
+        }
+        return results;
+    }
+    
+    @Override
+    public List<ContentWorkResult> copy(String key, List<ContentReference> targets, 
+            ContentReferenceHandler targetContentReferenceHandler) throws ContentIOException, InterruptedException
+    {
+        CacheEntry entry;
+        synchronized (this)
+        {
+            entry = entries.get(key);
+            if (entry == null)
+            {
+                return null;
+            }
+            entry.readers++;
+        }
+        try
+        {
+            if (!isContentExists(key, entry))
+            {
+                return null;
+            }
+            onHit(entry);
+            List<ContentWorkResult> copies = new ArrayList<ContentWorkResult>(entry.results.size());
+            for (int i = 0; i < entry.results.size(); i++)
+            {
+                ContentReference cached = entry.results.get(i).getContentReference();
+                ContentReference target = null;
+                if (targets != null && i < targets.size())
+                {
+                    target = targets.get(i);
+                }
+                else
+                {
+                    target = targetContentReferenceHandler.createContentReference(
+                            this.getClass().getSimpleName() + "-target-" + UUID.randomUUID().toString() + 
+                            "." + getExtension(cached.getMediaType()), cached.getMediaType());
+                }
+                try (InputStream inputStream = storageContentReferenceHandler.getInputStream(cached, false))
+                {
+                    target.setSize(targetContentReferenceHandler.putInputStream(inputStream, target));
+                }
+                catch (IOException e)
+                {
+                    throw new ContentIOException("Could not copy cached content " + cached.getUri(), e);
+                }
+                copies.add(new ContentWorkResult(target, entry.results.get(i).getDetails()));
+            }
+            return copies;
+        }
+        finally
+        {
+            release(entry);
+        }
+    }
+    
+    /**
+     * Determines whether the content of the given entry still exists, removing
+     * the entry if not
+     * 
+     * @param key
+     * @param entry
+     * @return true if all content exists
+     */
+    protected boolean isContentExists(String key, CacheEntry entry)
+    {
+        for (ContentWorkResult result : entry.results)
+        {
+            if (!storageContentReferenceHandler.isContentReferenceExists(result.getContentReference()))
+            {
+                logger.debug("Cached content for key=" + key + " no longer exists");
+                remove(key, entry);
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Called when the given entry is returned from the cache
+     * 
+     * @param entry
+     */
+    protected void onHit(CacheEntry entry)
+    {
+    }
+    
+    @Override
+    public void put(String key, List<ContentWorkResult> results) throws ContentIOException, InterruptedException
+    {
+        if (results == null || results.isEmpty())
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (entries.containsKey(key))
+            {
+                return;
+            }
+        }
+        ContentReferenceHandler resultHandler = resultContentReferenceHandler != null ?
+                resultContentReferenceHandler : storageContentReferenceHandler;
+        String uniqueId = UUID.randomUUID().toString();
+        List<ContentWorkResult> cachedResults = new ArrayList<ContentWorkResult>(results.size());
+        try
+        {
+            for (int i = 0; i < results.size(); i++)
+            {
+                ContentReference result = results.get(i).getContentReference();
+                if (result == null)
+                {
+                    delete(cachedResults);
+                    return;
+                }
+                ContentReference cached = storageContentReferenceHandler.createContentReference(
+                        getFileName(key, i, uniqueId, result.getMediaType()), result.getMediaType());
+                cachedResults.add(new ContentWorkResult(cached, results.get(i).getDetails()));
+                try (InputStream inputStream = resultHandler.getInputStream(result, true))
+                {
+                    cached.setSize(storageContentReferenceHandler.putInputStream(inputStream, cached));
+                }
+                catch (IOException e)
+                {
+                    throw new ContentIOException("Could not read result for caching", e);
+                }
+            }
+        }
+        catch (InterruptedException | RuntimeException e)
+        {
+            delete(cachedResults);
+            throw e;
+        }
+        add(key, new CacheEntry(cachedResults));
+    }
+    
+    /**
+     * Adds the given entry, evicting the least recently used entries if the cache is full
+     * 
+     * @param key
+     * @param entry
+     */
+    protected void add(String key, CacheEntry entry)
+    {
+        List<CacheEntry> evicted = new ArrayList<CacheEntry>();
+        boolean added = false;
+        synchronized (this)
+        {
+            if (!entries.containsKey(key))
+            {
+                entries.put(key, entry);
+                totalBytes += entry.bytes;
+                added = true;
+                for (Iterator<CacheEntry> iterator = entries.values().iterator(); 
+                        totalBytes > maxBytes && iterator.hasNext();)
+                {
+                    CacheEntry eldest = iterator.next();
+                    iterator.remove();
+                    totalBytes -= eldest.bytes;
+                    evicted.add(eldest);
+                }
+            }
+        }
+        if (!added)
+        {
+            // Another request cached the same transformation first
+            delete(entry.results);
+        }
+        for (CacheEntry eldest : evicted)
+        {
+            discard(eldest);
+        }
+    }
+    
+    protected void remove(String key, CacheEntry entry)
+    {
+        synchronized (this)
+        {
+            if (!entries.remove(key, entry))
+            {
+                return;
+            }
+            totalBytes -= entry.bytes;
+        }
+        discard(entry);
+    }
+    
+    /**
+     * Deletes the content of the given entry, no longer in the cache, once it
+     * isn't being copied
+     * 
+     * @param entry
+     */
+    protected void discard(CacheEntry entry)
+    {
+        synchronized (this)
+        {
+            entry.isDiscarded = true;
+            if (entry.readers > 0)
+            {
+                return;
+            }
+        }
+        delete(entry.results);
+    }
+    
+    private void release(CacheEntry entry)
+    {
+        synchronized (this)
+        {
+            entry.readers--;
+            if (entry.readers > 0 || !entry.isDiscarded)
+            {
+                return;
+            }
+        }
+        delete(entry.results);
+    }
+    
+    protected void delete(List<ContentWorkResult> results)
+    {
+        for (ContentWorkResult result : results)
+        {
+            try
+            {
+                if (storageContentReferenceHandler.isContentReferenceExists(result.getContentReference()))
+                {
+                    storageContentReferenceHandler.delete(result.getContentReference());
+                }
+            }
+            catch (ContentIOException e)
+            {
+                logger.warn("Could not delete cached content " + 
+                        result.getContentReference().getUri() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Gets the name cached content is stored with: the key, the index of the result
+     * and an id unique to the put, separated by {@link #FILE_NAME_SEPARATOR}
+     * 
+     * @param key
+     * @param index
+     * @param uniqueId
+     * @param mediaType
+     * @return the file name
+     */
+    protected String getFileName(String key, int index, String uniqueId, String mediaType)
+    {
+        return key + FILE_NAME_SEPARATOR + index + FILE_NAME_SEPARATOR + uniqueId + "." + getExtension(mediaType);
+    }
+    
+    protected static String getExtension(String mediaType)
+    {
+        String extension = mediaType != null ? FileMediaType.SERVICE.getExtension(mediaType) : null;
+        return extension == null || extension.isEmpty() ? DEFAULT_EXTENSION : extension;
+    }
+    
+    /**
+     * The cached results of a transformation
+     */
+    protected static class CacheEntry
+    {
+        protected final List<ContentWorkResult> results;
+        protected final long bytes;
+        // Guarded by the cache
+        protected int readers;
+        protected boolean isDiscarded;
+        
+        protected CacheEntry(List<ContentWorkResult> results)
+        {
+            this.results = results;
+            long bytes = 0;
+            for (ContentWorkResult result : results)
+            {
+                Long size = result.getContentReference().getSize();
+                bytes += size != null ? size : 0;
+            }
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform.cache;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.ContentWorkResult;
+import org.gytheio.content.handler.FileContentReferenceHandlerImpl;
+import org.gytheio.content.mediatype.FileMediaType;
+
+/**
+ * A {@link TransformationResultCache} on local disk.
+ * <p>
+ * Results already in the directory are indexed on {@link #init()}, least recently
+ * used first by their modification time which is updated on each hit, so the cache
+ * survives restarts.
+ */
+public class FileTransformationResultCache extends ContentReferenceHandlerTransformationResultCache
+{
+    private static final Log logger = LogFactory.getLog(FileTransformationResultCache.class);
+    
+    private String directoryPath;
+    
+    /**
+     * Sets the directory cached content is stored in
+     * 
+     * @param directoryPath
+     */
+    public void setDirectoryPath(String directoryPath)
+    {
+        this.directoryPath = directoryPath;
+    }
+    
+    /**
+     * Creates the storage handler and indexes any results already in the directory
+     */
+    public void init()
+    {
+        File directory = new File(directoryPath);
+        directory.mkdirs();
+        FileContentReferenceHandlerImpl fileHandler = new FileContentReferenceHandlerImpl();
+        fileHandler.setFileProviderDirectoryPath(directory.getAbsolutePath());
+        setStorageContentReferenceHandler(fileHandler);
+        
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        // Group the files of each put by key and unique id, ordered by result index
+        Map<String, TreeMap<Integer, File>> puts = new LinkedHashMap<String, TreeMap<Integer, File>>();
+        Arrays.sort(files, new Comparator<File>()
+        {
+            public int compare(File file1, File file2)
+            {
+                return Long.compare(file1.lastModified(), file2.lastModified());
+            }
+        });
+        for (File file : files)
+        {
+            String[] parts = file.getName().split(FILE_NAME_SEPARATOR, 3);
+            if (!file.isFile() || parts.length != 3 || !parts[1].matches("\\d+"))
+            {
+                continue;
+            }
+            String putId = parts[0] + FILE_NAME_SEPARATOR + parts[2].substring(0, 
+                    Math.max(0, parts[2].lastIndexOf('.')));
+            TreeMap<Integer, File> putFiles = puts.get(putId);
+            if (putFiles == null)
+            {
+                putFiles = new TreeMap<Integer, File>();
+                puts.put(putId, putFiles);
+            }
+            putFiles.put(Integer.valueOf(parts[1]), file);
+        }
+        for (Map.Entry<String, TreeMap<Integer, File>> put : puts.entrySet())
+        {
+            List<ContentWorkResult> results = new ArrayList<ContentWorkResult>();
+            for (File file : put.getValue().values())
+            {
+                results.add(new ContentWorkResult(new ContentReference(file.toURI().toString(), 
+                        FileMediaType.SERVICE.getMediaTypeByName(file), file.length()), null));
+            }
+            String key = put.getKey().substring(0, put.getKey().indexOf(FILE_NAME_SEPARATOR));
+            add(key, new CacheEntry(results));
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Indexed " + size() + " cached results totalling " + getTotalBytes() + 
+                    " bytes in " + directory.getAbsolutePath());
+        }
+    }
+    
+    @Override
+    protected void onHit(CacheEntry entry)
+    {
+        long now = System.currentTimeMillis();
+        for (ContentWorkResult result : entry.results)
+        {
+            new File(URI.create(result.getContentReference().getUri())).setLastModified(now);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gytheio.content.ContentIOException;
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.handler.ContentReferenceHandler;
+import org.gytheio.content.transform.TransformationRequest;
+import org.gytheio.content.transform.options.TransformationOptions;
+import org.gytheio.error.GytheioRuntimeException;
+import org.gytheio.messaging.jackson.ObjectMapperFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Generates content-addressed keys for transformation requests from the hashes
+ * of the source content, the target media type and a canonical encoding of the
+ * options, so that requests for the same transformation of the same content
+ * have the same key regardless of where the content is referenced.
+ */
+public class TransformationCacheKeyGenerator
+{
+    public static final String DEFAULT_HASH_ALGORITHM = "SHA-256";
+    
+    private static final int BUFFER_SIZE = 8*1024;
+    
+    private ContentReferenceHandler sourceContentReferenceHandler;
+    private String hashAlgorithm = DEFAULT_HASH_ALGORITHM;
+    private final ObjectMapper objectMapper = ObjectMapperFactory.createInstance();
+    
+    /**
+     * Sets the handler used to read source content for hashing, usually
+     * the worker's source content reference handler
+     * 
+     * @param sourceContentReferenceHandler
+     */
+    public void setSourceContentReferenceHandler(ContentReferenceHandler sourceContentReferenceHandler)
+    {
+        this.sourceContentReferenceHandler = sourceContentReferenceHandler;
+    }
+    
+    public void setHashAlgorithm(String hashAlgorithm)
+    {
+        this.hashAlgorithm = hashAlgorithm;
+    }
+    
+    /**
+     * Generates the key for the given request from the hashes of its source content
+     * 
+     * @param request
+     * @return the key, or null if the request can't be cached
+     * @throws ContentIOException
+     * @throws InterruptedException
+     */
+    public String generateKey(TransformationRequest request) throws ContentIOException, InterruptedException
+    {
+        return generateKey(request, true);
+    }
+    
+    /**
+     * Generates a key for the given request from the URIs and sizes of its source
+     * content references rather than their content, which is cheaper but only
+     * identifies the same transformation while the referenced content is unchanged,
+     * e.g. for requests in flight at the same time
+     * 
+     * @param request
+     * @return the key, or null if the request has no sources or target media type
+     */
+    public String generateReferenceKey(TransformationRequest request)
+    {
+        try
+        {
+            return generateKey(request, false);
+        }
+        catch (InterruptedException e)
+        {
+            // Content isn't read so won't be interrupted
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+    
+    protected String generateKey(TransformationRequest request, boolean hashContent) 
+            throws ContentIOException, InterruptedException
+    {
+        String targetMediaType = getTargetMediaType(request);
+        if (request.getSourceContentReferences() == null || request.getSourceContentReferences().isEmpty()
+                || targetMediaType == null)
+        {
+            return null;
+        }
+        MessageDigest keyDigest = createMessageDigest();
+        for (ContentReference source : request.getSourceContentReferences())
+        {
+            if (!hashContent)
+            {
+                update(keyDigest, source.getUri());
+                update(keyDigest, String.valueOf(source.getSize()));
+                continue;
+            }
+            if (!sourceContentReferenceHandler.isContentReferenceSupported(source))
+            {
+                return null;
+            }
+            update(keyDigest, generateContentHash(source));
+        }
+        update(keyDigest, targetMediaType);
+        update(keyDigest, getCanonicalOptions(request.getOptions()));
+        return encodeHex(keyDigest.digest());
+    }
+    
+    /**
+     * Gets the target media type of the request, either as given or from its
+     * target content references
+     * 
+     * @param request
+     * @return the target media type or null if not known
+     */
+    protected String getTargetMediaType(TransformationRequest request)
+    {
+        if (request.getTargetMediaType() != null)
+        {
+            return request.getTargetMediaType();
+        }
+        if (request.getTargetContentReferences() == null || request.getTargetContentReferences().isEmpty())
+        {
+            return null;
+        }
+        List<String> mediaTypes = new ArrayList<String>();
+        for (ContentReference target : request.getTargetContentReferences())
+        {
+            if (target.getMediaType() == null)
+            {
+                return null;
+            }
+            mediaTypes.add(target.getMediaType());
+        }
+        return String.join(",", mediaTypes);
+    }
+    
+    /**
+     * Generates the hash of the content of the given reference
+     * 
+     * @param contentReference
+     * @return the hex encoded hash
+     * @throws ContentIOException
+     * @throws InterruptedException
+     */
+    protected String generateContentHash(ContentReference contentReference) 
+            throws ContentIOException, InterruptedException
+    {
+        MessageDigest messageDigest = createMessageDigest();
+        try (InputStream source = sourceContentReferenceHandler.getInputStream(contentReference, true))
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead = 0;
+            while ((bytesRead = source.read(buffer)) > 0)
+            {
+                messageDigest.update(buffer, 0, bytesRead);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Could not read content for hashing", e);
+        }
+        return encodeHex(messageDigest.digest());
+    }
+    
+    /**
+     * Encodes the given options as JSON with object fields sorted by name, so that
+     * equal options have the same encoding regardless of field or map order
+     * 
+     * @param options
+     * @return the canonical encoding, empty if there are no options
+     */
+    protected String getCanonicalOptions(TransformationOptions options)
+    {
+        if (options == null)
+        {
+            return "";
+        }
+        StringBuilder canonical = new StringBuilder();
+        appendCanonical(objectMapper.valueToTree(options), canonical);
+        return canonical.toString();
+    }
+    
+    protected void appendCanonical(JsonNode node, StringBuilder canonical)
+    {
+        if (node.isObject())
+        {
+            List<String> fieldNames = new ArrayList<String>();
+            for (Iterator<String> iterator = node.fieldNames(); iterator.hasNext();)
+            {
+                fieldNames.add(iterator.next());
+            }
+            Collections.sort(fieldNames);
+            canonical.append('{');
+            for (int i = 0; i < fieldNames.size(); i++)
+            {
+                if (i > 0)
+                {
+                    canonical.append(',');
+                }
+                canonical.append(objectMapper.getNodeFactory().textNode(fieldNames.get(i)).toString());
+                canonical.append(':');
+                appendCanonical(node.get(fieldNames.get(i)), canonical);
+            }
+            canonical.append('}');
+        }
+        else if (node.isArray())
+        {
+            canonical.append('[');
+            for (int i = 0; i < node.size(); i++)
+            {
+                if (i > 0)
+                {
+                    canonical.append(',');
+                }
+                appendCanonical(node.get(i), canonical);
+            }
+            canonical.append(']');
+        }
+        else
+        {
+            canonical.append(node.toString());
+        }
+    }
+    
+    protected MessageDigest createMessageDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(hashAlgorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new GytheioRuntimeException("Unsupported hash algorithm: " + hashAlgorithm, e);
+        }
+    }
+    
+    protected static void update(MessageDigest messageDigest, String value)
+    {
+        messageDigest.update(value.getBytes(StandardCharsets.UTF_8));
+        // Separates values so that their boundaries are part of the key
+        messageDigest.update((byte) 0);
+    }
+    
+    protected static String encodeHex(byte[] bytes)
+    {
+        return String.format("%0" + (bytes.length * 2) + "x", new BigInteger(1, bytes));
+    }
+}
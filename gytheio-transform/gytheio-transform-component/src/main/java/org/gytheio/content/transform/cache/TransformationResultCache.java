@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform.cache;
+
+import java.util.List;
+
+import org.gytheio.content.ContentIOException;
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.ContentWorkResult;
+import org.gytheio.content.handler.ContentReferenceHandler;
+
+/**
+ * Stores the results of transformations by a key identifying the transformation,
+ * see {@link TransformationCacheKeyGenerator}.
+ */
+public interface TransformationResultCache
+{
+    
+    /**
+     * Gets the results cached for the given key.
+     * <p>
+     * The cached content may be evicted at any time, use
+     * {@link #copy(String, List, ContentReferenceHandler)} to answer requests.
+     * 
+     * @param key
+     * @return results referencing the cached content, or null if not cached
+     */
+    public List<ContentWorkResult> get(String key);
+    
+    /**
+     * Copies the content cached for the given key into the given targets, or into
+     * targets created with the given handler where none are given
+     * 
+     * @param key
+     * @param targets the targets to copy into, may be null
+     * @param targetContentReferenceHandler the handler targets are written with
+     * @return results referencing the copies, or null if not cached
+     * @throws ContentIOException
+     * @throws InterruptedException
+     */
+    public List<ContentWorkResult> copy(String key, List<ContentReference> targets, 
+            ContentReferenceHandler targetContentReferenceHandler) throws ContentIOException, InterruptedException;
+    
+    /**
+     * Stores copies of the content of the given results under the given key
+     * 
+     * @param key
+     * @param results
+     * @throws ContentIOException
+     * @throws InterruptedException
+     */
+    public void put(String key, List<ContentWorkResult> results) throws ContentIOException, InterruptedException;
+    
+}
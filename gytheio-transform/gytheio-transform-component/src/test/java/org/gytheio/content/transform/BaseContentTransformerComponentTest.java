@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.ContentWorkResult;
+import org.gytheio.content.handler.ContentReferenceHandler;
+import org.gytheio.content.handler.FileContentReferenceHandlerImpl;
+import org.gytheio.content.transform.cache.FileTransformationResultCache;
+import org.gytheio.content.transform.cache.TransformationCacheKeyGenerator;
+import org.gytheio.content.transform.options.TransformationOptions;
+import org.gytheio.content.transform.options.TransformationOptionsImpl;
+import org.gytheio.messaging.MessageAcknowledgement;
+import org.gytheio.messaging.MessageProducer;
+import org.gytheio.messaging.MessagingException;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests result caching, coalescing of identical requests in flight and deadline handling by
+ * {@link BaseContentTransformerComponent}, and its use by {@link AsyncContentTransformerComponent}
+ */
+public class BaseContentTransformerComponentTest
+{
+    private static final long TIMEOUT_MS = 5000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private FileContentReferenceHandlerImpl targetHandler;
+    private BaseContentTransformerComponent component;
+    private TestWorker worker;
+    private TestMessageProducer messageProducer;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        targetHandler = new FileContentReferenceHandlerImpl();
+        targetHandler.setFileProviderDirectoryPath(folder.newFolder("targets").getAbsolutePath());
+        worker = new TestWorker(targetHandler);
+        messageProducer = new TestMessageProducer();
+        component = new BaseContentTransformerComponent();
+        component.setWorker(worker);
+        component.setMessageProducer(messageProducer);
+        component.setTargetContentReferenceHandler(targetHandler);
+        component.setCoalesceRequests(true);
+        component.init();
+    }
+    
+    protected TransformationRequest createRequest(String sourceUri, String replyTo)
+    {
+        TransformationRequest request = new TransformationRequest(
+                Arrays.asList(new ContentReference(sourceUri, "application/pdf", 100L)), 
+                null, new TransformationOptionsImpl());
+        request.setTargetMediaType("image/png");
+        request.setReplyTo(replyTo);
+        return request;
+    }
+    
+    protected TransformationRequest createRequest(String sourceUri, String replyTo, String targetFileName)
+    {
+        TransformationRequest request = createRequest(sourceUri, replyTo);
+        request.setTargetContentReferences(Arrays.asList(
+                targetHandler.createContentReference(targetFileName, "image/png")));
+        return request;
+    }
+    
+    protected TransformationReply getCompletedReply(TransformationRequest request)
+    {
+        for (TransformationReply reply : messageProducer.getReplies(TransformationReply.STATUS_COMPLETE))
+        {
+            if (request.getRequestId().equals(reply.getRequestId()))
+            {
+                return reply;
+            }
+        }
+        throw new AssertionError("No complete reply for requestId=" + request.getRequestId());
+    }
+    
+    protected Thread receive(final TransformationRequest request)
+    {
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                component.onReceive(request);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+    
+    /**
+     * Waits until the given number of requests have been replied to as in progress
+     */
+    protected void waitForInProgress(int count) throws InterruptedException
+    {
+        waitForReplies(TransformationReply.STATUS_IN_PROGRESS, count);
+    }
+    
+    /**
+     * Waits until the given number of replies with the given status have been sent
+     */
+    protected void waitForReplies(String status, int count) throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        while (messageProducer.getReplies(status).size() < count)
+        {
+            assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS);
+            Thread.sleep(10);
+        }
+    }
+    
+    @Test
+    public void testCacheHitCopiedWithoutTransforming() throws Exception
+    {
+        File sourceFile = folder.newFile("source.pdf");
+        FileUtils.writeStringToFile(sourceFile, String.format("%0100d", 0), StandardCharsets.UTF_8);
+        FileContentReferenceHandlerImpl sourceHandler = new FileContentReferenceHandlerImpl();
+        sourceHandler.setFileProviderDirectoryPath(folder.getRoot().getAbsolutePath());
+        TransformationCacheKeyGenerator cacheKeyGenerator = new TransformationCacheKeyGenerator();
+        cacheKeyGenerator.setSourceContentReferenceHandler(sourceHandler);
+        FileTransformationResultCache resultCache = new FileTransformationResultCache();
+        resultCache.setDirectoryPath(folder.newFolder("cache").getAbsolutePath());
+        resultCache.setResultContentReferenceHandler(targetHandler);
+        resultCache.init();
+        component.setCacheKeyGenerator(cacheKeyGenerator);
+        component.setResultCache(resultCache);
+        
+        TransformationRequest request = createRequest(sourceFile.toURI().toString(), "reply1", "target.png");
+        ContentReference cachedTarget = targetHandler.createContentReference("cached.png", "image/png");
+        cachedTarget.setSize(targetHandler.putInputStream(new ByteArrayInputStream(
+                TestWorker.CONTENT.getBytes(StandardCharsets.UTF_8)), cachedTarget));
+        resultCache.put(cacheKeyGenerator.generateKey(request), 
+                Arrays.asList(new ContentWorkResult(cachedTarget, null)));
+        component.onReceive(request);
+        
+        assertEquals(0, worker.transformCount.get());
+        ContentReference target = getCompletedReply(request).getResults().get(0).getContentReference();
+        assertEquals(request.getTargetContentReferences().get(0).getUri(), target.getUri());
+        assertEquals(TestWorker.CONTENT, FileUtils.readFileToString(
+                new File(URI.create(target.getUri())), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void testIdenticalRequestsShareTransformation() throws Exception
+    {
+        TransformationRequest request1 = createRequest("file:/source.pdf", "reply1");
+        TransformationRequest request2 = createRequest("file:/source.pdf", "reply2");
+        TransformationRequest request3 = createRequest("file:/other.pdf", "reply3");
+        
+        Thread thread1 = receive(request1);
+        assertTrue(worker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Thread thread2 = receive(request2);
+        waitForInProgress(2);
+        Thread thread3 = receive(request3);
+        waitForInProgress(3);
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        thread2.join(TIMEOUT_MS);
+        thread3.join(TIMEOUT_MS);
+        
+        assertEquals(2, worker.transformCount.get());
+        List<TransformationReply> completed = messageProducer.getReplies(TransformationReply.STATUS_COMPLETE);
+        assertEquals(3, completed.size());
+        Set<String> requestIds = new HashSet<String>();
+        for (TransformationReply reply : completed)
+        {
+            requestIds.add(reply.getRequestId());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList(
+                request1.getRequestId(), request2.getRequestId(), request3.getRequestId())), requestIds);
+        assertEquals(Arrays.asList("reply1", "reply2", "reply3"), sorted(messageProducer.getQueueNames()));
+        assertEquals(0, component.inFlightTransformations.size());
+    }
+    
+    @Test
+    public void testFollowerResultsCopiedToOwnTargets() throws Exception
+    {
+        TransformationRequest request1 = createRequest("file:/source.pdf", "reply1", "target1.png");
+        TransformationRequest request2 = createRequest("file:/source.pdf", "reply2", "target2.png");
+        
+        Thread thread1 = receive(request1);
+        assertTrue(worker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Thread thread2 = receive(request2);
+        waitForInProgress(2);
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        thread2.join(TIMEOUT_MS);
+        
+        assertEquals(1, worker.transformCount.get());
+        ContentReference target1 = getCompletedReply(request1).getResults().get(0).getContentReference();
+        ContentReference target2 = getCompletedReply(request2).getResults().get(0).getContentReference();
+        assertEquals(request1.getTargetContentReferences().get(0).getUri(), target1.getUri());
+        assertEquals(request2.getTargetContentReferences().get(0).getUri(), target2.getUri());
+        assertEquals(TestWorker.CONTENT, FileUtils.readFileToString(
+                new File(URI.create(target2.getUri())), StandardCharsets.UTF_8));
+        assertEquals(Long.valueOf(TestWorker.CONTENT.length()), target2.getSize());
+    }
+    
+    @Test
+    public void testCoalescedRequestDoesNotHoldThread() throws Exception
+    {
+        Thread thread1 = receive(createRequest("file:/source.pdf", "reply1"));
+        assertTrue(worker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        
+        TestAcknowledgement acknowledgement = new TestAcknowledgement();
+        TransformationRequest request2 = createRequest("file:/source.pdf", "reply2");
+        component.onReceive(request2, acknowledgement);
+        // Returned while the transformation is still running, acknowledged only once replied to
+        assertEquals(0, messageProducer.getReplies(TransformationReply.STATUS_COMPLETE).size());
+        assertEquals(0, acknowledgement.acknowledgeCount.get());
+        
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        assertTrue(acknowledgement.completed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, acknowledgement.acknowledgeCount.get());
+        assertEquals(1, worker.transformCount.get());
+        getCompletedReply(request2);
+    }
+    
+    @Test
+    public void testCoalescedResultsCopiedBeforeReply() throws Exception
+    {
+        final TransformationRequest request1 = createRequest("file:/source.pdf", "reply1", "target1.png");
+        TransformationRequest request2 = createRequest("file:/source.pdf", "reply2", "target2.png");
+        // The requester removes its target as soon as it's replied to
+        messageProducer = new TestMessageProducer()
+        {
+            @Override
+            public synchronized void send(Object message, String queueName) throws MessagingException
+            {
+                TransformationReply reply = (TransformationReply) message;
+                if (TransformationReply.STATUS_COMPLETE.equals(reply.getStatus()) 
+                        && request1.getRequestId().equals(reply.getRequestId()))
+                {
+                    new File(URI.create(reply.getResults().get(0).getContentReference().getUri())).delete();
+                }
+                super.send(message, queueName);
+            }
+        };
+        component.setMessageProducer(messageProducer);
+        
+        Thread thread1 = receive(request1);
+        assertTrue(worker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        component.onReceive(request2);
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        
+        ContentReference target2 = getCompletedReply(request2).getResults().get(0).getContentReference();
+        assertEquals(TestWorker.CONTENT, FileUtils.readFileToString(
+                new File(URI.create(target2.getUri())), StandardCharsets.UTF_8));
+        assertFalse(new File(URI.create(request1.getTargetContentReferences().get(0).getUri())).exists());
+    }
+    
+    @Test
+    public void testDifferentTargetsNotCoalescedWithoutTargetHandler() throws Exception
+    {
+        component.setTargetContentReferenceHandler(null);
+        Thread thread1 = receive(createRequest("file:/source.pdf", "reply1", "target1.png"));
+        Thread thread2 = receive(createRequest("file:/source.pdf", "reply2", "target2.png"));
+        long start = System.currentTimeMillis();
+        while (worker.transformCount.get() < 2)
+        {
+            assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS);
+            Thread.sleep(10);
+        }
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        thread2.join(TIMEOUT_MS);
+        
+        List<TransformationReply> completed = messageProducer.getReplies(TransformationReply.STATUS_COMPLETE);
+        assertEquals(2, completed.size());
+        assertNotEquals(completed.get(0).getResults().get(0).getContentReference().getUri(),
+                completed.get(1).getResults().get(0).getContentReference().getUri());
+    }
+    
+    @Test
+    public void testErrorIsSharedWithIdenticalRequests() throws Exception
+    {
+        worker.isFailing = true;
+        Thread thread1 = receive(createRequest("file:/source.pdf", "reply1"));
+        assertTrue(worker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Thread thread2 = receive(createRequest("file:/source.pdf", "reply2"));
+        waitForInProgress(2);
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        thread2.join(TIMEOUT_MS);
+        
+        assertEquals(1, worker.transformCount.get());
+        assertEquals(2, messageProducer.getReplies(TransformationReply.STATUS_ERROR).size());
+    }
+    
+    @Test
+    public void testTimedOutRequestTransformsItself() throws Exception
+    {
+        component.setCoalesceTimeoutMs(100);
+        Thread thread1 = receive(createRequest("file:/source.pdf", "reply1"));
+        assertTrue(worker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Thread thread2 = receive(createRequest("file:/source.pdf", "reply2"));
+        long start = System.currentTimeMillis();
+        while (worker.transformCount.get() < 2)
+        {
+            assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS);
+            Thread.sleep(10);
+        }
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        thread2.join(TIMEOUT_MS);
+        waitForReplies(TransformationReply.STATUS_COMPLETE, 2);
+        
+        assertEquals(2, messageProducer.getReplies(TransformationReply.STATUS_COMPLETE).size());
+        // The timed out request was only reported in progress once
+        assertEquals(2, messageProducer.getReplies(TransformationReply.STATUS_IN_PROGRESS).size());
+    }
+    
+    @Test
+    public void testExpiredRequestRepliedWithError() throws Exception
+    {
+        TransformationRequest request = createRequest("file:/source.pdf", "reply1");
+        request.setDeadline(System.currentTimeMillis() - 1);
+        component.onReceive(request);
+        
+        assertEquals(0, worker.transformCount.get());
+        List<TransformationReply> errors = messageProducer.getReplies(TransformationReply.STATUS_ERROR);
+        assertEquals(1, errors.size());
+        assertEquals(TransformationReply.STATUS_DETAIL_EXPIRED, errors.get(0).getStatusDetail());
+        assertEquals(request.getRequestId(), errors.get(0).getRequestId());
+    }
+    
+    @Test
+    public void testRequestExpiredWaitingOnCoalescedTransformation() throws Exception
+    {
+        Thread thread1 = receive(createRequest("file:/source.pdf", "reply1"));
+        assertTrue(worker.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        TransformationRequest request2 = createRequest("file:/source.pdf", "reply2");
+        request2.setDeadline(System.currentTimeMillis() + 100);
+        Thread thread2 = receive(request2);
+        // The wait is bounded by the deadline rather than the coalesce timeout
+        waitForReplies(TransformationReply.STATUS_ERROR, 1);
+        thread2.join(TIMEOUT_MS);
+        assertFalse(thread2.isAlive());
+        worker.finish.countDown();
+        thread1.join(TIMEOUT_MS);
+        
+        assertEquals(1, worker.transformCount.get());
+        List<TransformationReply> errors = messageProducer.getReplies(TransformationReply.STATUS_ERROR);
+        assertEquals(1, errors.size());
+        assertEquals(request2.getRequestId(), errors.get(0).getRequestId());
+        assertEquals(TransformationReply.STATUS_DETAIL_EXPIRED, errors.get(0).getStatusDetail());
+        assertEquals(1, messageProducer.getReplies(TransformationReply.STATUS_COMPLETE).size());
+    }
+    
+    @Test
+    public void testAsyncComponentAcknowledgesAfterReply() throws Exception
+    {
+        AsyncContentTransformerComponent asyncComponent = new AsyncContentTransformerComponent(
+                new BaseContentTransformerComponent());
+        asyncComponent.setWorker(worker);
+        asyncComponent.setMessageProducer(messageProducer);
+        asyncComponent.init();
+        worker.finish.countDown();
+        
+        final CountDownLatch acknowledged = new CountDownLatch(1);
+        asyncComponent.onReceive(createRequest("file:/source.pdf", "reply1"), new MessageAcknowledgement()
+        {
+            public void acknowledge()
+            {
+                acknowledged.countDown();
+            }
+            
+            public void reject()
+            {
+            }
+        });
+        assertTrue(acknowledged.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, worker.transformCount.get());
+        assertEquals(1, messageProducer.getReplies(TransformationReply.STATUS_COMPLETE).size());
+    }
+    
+    private static List<String> sorted(List<String> values)
+    {
+        List<String> sorted = new ArrayList<String>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+    
+    /**
+     * Worker which blocks until finished, counting transformations
+     */
+    public static class TestWorker implements ContentTransformerWorker
+    {
+        protected static final String CONTENT = "transformed";
+        
+        protected final ContentReferenceHandler targetHandler;
+        protected final CountDownLatch started = new CountDownLatch(1);
+        protected final CountDownLatch finish = new CountDownLatch(1);
+        protected final AtomicInteger transformCount = new AtomicInteger();
+        protected volatile boolean isFailing = false;
+        
+        public TestWorker(ContentReferenceHandler targetHandler)
+        {
+            this.targetHandler = targetHandler;
+        }
+        
+        public boolean isAvailable()
+        {
+            return true;
+        }
+        
+        public String getVersionString()
+        {
+            return "test";
+        }
+        
+        public String getVersionDetailsString()
+        {
+            return "test";
+        }
+        
+        public List<ContentWorkResult> transform(List<ContentReference> sources, 
+                List<ContentReference> targets, TransformationOptions options,
+                ContentTransformerWorkerProgressReporter progressReporter) throws Exception
+        {
+            transformCount.incrementAndGet();
+            started.countDown();
+            assertTrue(finish.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            if (isFailing)
+            {
+                throw new Exception("Test failure");
+            }
+            ContentReference target = targets == null ? 
+                    targetHandler.createContentReference("target.png", "image/png") : targets.get(0);
+            target.setSize(targetHandler.putInputStream(
+                    new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8)), target));
+            return Arrays.asList(new ContentWorkResult(target, null));
+        }
+        
+        public List<ContentWorkResult> transform(List<ContentReference> sources, String targetMediaType,
+                TransformationOptions options, ContentTransformerWorkerProgressReporter progressReporter) 
+                        throws Exception
+        {
+            return transform(sources, (List<ContentReference>) null, options, progressReporter);
+        }
+        
+        public boolean isTransformable(List<String> sourceMediaTypes, String targetMediaType,
+                TransformationOptions options)
+        {
+            return true;
+        }
+    }
+    
+    /**
+     * Acknowledgement which records how it was completed
+     */
+    public static class TestAcknowledgement implements MessageAcknowledgement
+    {
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final AtomicInteger acknowledgeCount = new AtomicInteger();
+        
+        public void acknowledge()
+        {
+            acknowledgeCount.incrementAndGet();
+            completed.countDown();
+        }
+        
+        public void reject()
+        {
+            completed.countDown();
+        }
+    }
+    
+    /**
+     * Message producer which records the replies sent
+     */
+    public static class TestMessageProducer implements MessageProducer
+    {
+        private final List<TransformationReply> replies = new ArrayList<TransformationReply>();
+        private final List<String> queueNames = new ArrayList<String>();
+        
+        public synchronized List<TransformationReply> getReplies(String status)
+        {
+            List<TransformationReply> matching = new ArrayList<TransformationReply>();
+            for (TransformationReply reply : replies)
+            {
+                if (status.equals(reply.getStatus()))
+                {
+                    matching.add(reply);
+                }
+            }
+            return matching;
+        }
+        
+        /**
+         * Gets the distinct queues replies were sent to
+         */
+        public synchronized List<String> getQueueNames()
+        {
+            return new ArrayList<String>(new HashSet<String>(queueNames));
+        }
+        
+        public void send(Object message) throws MessagingException
+        {
+            send(message, (String) null);
+        }
+        
+        public void send(Object message, Map<String, Object> headers) throws MessagingException
+        {
+            send(message, (String) null);
+        }
+        
+        public synchronized void send(Object message, String queueName) throws MessagingException
+        {
+            replies.add((TransformationReply) message);
+            queueNames.add(queueName);
+        }
+        
+        public void send(Object message, String queueName, Map<String, Object> headers) 
+                throws MessagingException
+        {
+            send(message, queueName);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.transform.options.PagedSourceOptions;
+import org.gytheio.content.transform.options.TransformationOptions;
+import org.gytheio.content.transform.options.TransformationOptionsImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TransformationRequestCostEstimator}
+ */
+public class TransformationRequestCostEstimatorTest
+{
+    private TransformationRequestCostEstimator estimator;
+    
+    @Before
+    public void setUp()
+    {
+        estimator = new TransformationRequestCostEstimator();
+    }
+    
+    protected TransformationRequest createRequest(String targetMediaType, TransformationOptions options,
+            ContentReference... sources)
+    {
+        TransformationRequest request = new TransformationRequest(Arrays.asList(sources), null, options);
+        request.setTargetMediaType(targetMediaType);
+        return request;
+    }
+    
+    @Test
+    public void testSumsSourceSizes()
+    {
+        assertEquals(300, estimator.estimateCost(createRequest("image/png", new TransformationOptionsImpl(),
+                new ContentReference("file:/a.jpg", "image/jpeg", 100L),
+                new ContentReference("file:/b.jpg", "image/jpeg", 200L))));
+        assertEquals(TransformationRequestCostEstimator.DEFAULT_SOURCE_SIZE, 
+                estimator.estimateCost(createRequest("image/png", new TransformationOptionsImpl(),
+                        new ContentReference("file:/a.jpg", "image/jpeg"))));
+    }
+    
+    @Test
+    public void testWeighsHeavierMediaType()
+    {
+        assertEquals(800, estimator.estimateCost(createRequest("image/png", new TransformationOptionsImpl(),
+                new ContentReference("file:/a.mp4", "video/mp4", 100L))));
+        assertEquals(800, estimator.estimateCost(createRequest("video/mp4", new TransformationOptionsImpl(),
+                new ContentReference("file:/a.jpg", "image/jpeg", 100L))));
+        assertEquals(800, estimator.estimateCost(createRequest("video/webm", new TransformationOptionsImpl(),
+                new ContentReference("file:/a.mp4", "video/mp4", 100L))));
+    }
+    
+    @Test
+    public void testPartialSourceOptions()
+    {
+        TransformationOptions options = new TransformationOptionsImpl();
+        options.addSourceOptions(PagedSourceOptions.getPage1Instance());
+        assertEquals(100, estimator.estimateCost(createRequest("image/png", options,
+                new ContentReference("file:/a.pdf", "application/pdf", 1000L))));
+    }
+    
+    @Test
+    public void testNonContentRequest()
+    {
+        assertEquals(0, estimator.estimateCost("not a request"));
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.ContentIOException;
+import org.gytheio.content.ContentWorkResult;
+import org.gytheio.content.handler.FileContentReferenceHandlerImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests storage, lookup, eviction and re-indexing of a {@link FileTransformationResultCache}
+ */
+public class FileTransformationResultCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File cacheDirectory;
+    private FileTransformationResultCache cache;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        cacheDirectory = folder.newFolder("cache");
+        cache = createCache(250);
+    }
+    
+    protected FileTransformationResultCache createCache(long maxBytes)
+    {
+        FileTransformationResultCache cache = new FileTransformationResultCache();
+        cache.setDirectoryPath(cacheDirectory.getAbsolutePath());
+        cache.setMaxBytes(maxBytes);
+        cache.init();
+        return cache;
+    }
+    
+    protected List<ContentWorkResult> createResult(String name, int size) throws Exception
+    {
+        File file = folder.newFile(name);
+        FileUtils.writeStringToFile(file, String.format("%0" + size + "d", 0), StandardCharsets.UTF_8);
+        return Arrays.asList(new ContentWorkResult(
+                new ContentReference(file.toURI().toString(), "image/png", file.length()), null));
+    }
+    
+    protected FileContentReferenceHandlerImpl createTargetHandler() throws Exception
+    {
+        FileContentReferenceHandlerImpl targetHandler = new FileContentReferenceHandlerImpl();
+        targetHandler.setFileProviderDirectoryPath(folder.newFolder("targets").getAbsolutePath());
+        return targetHandler;
+    }
+    
+    protected File getFile(ContentWorkResult result)
+    {
+        return new File(URI.create(result.getContentReference().getUri()));
+    }
+    
+    @Test
+    public void testHitReferencesCopyOfResult() throws Exception
+    {
+        List<ContentWorkResult> result = createResult("target.png", 100);
+        cache.put("key1", result);
+        FileUtils.deleteQuietly(getFile(result.get(0)));
+        
+        List<ContentWorkResult> cached = cache.get("key1");
+        assertNotNull(cached);
+        assertEquals(1, cached.size());
+        assertEquals("image/png", cached.get(0).getContentReference().getMediaType());
+        assertEquals(Long.valueOf(100), cached.get(0).getContentReference().getSize());
+        assertEquals(cacheDirectory, getFile(cached.get(0)).getParentFile());
+        assertEquals(100, getFile(cached.get(0)).length());
+        assertNull(cache.get("key2"));
+    }
+    
+    @Test
+    public void testCopiesIntoTargets() throws Exception
+    {
+        cache.put("key1", createResult("target.png", 100));
+        FileContentReferenceHandlerImpl targetHandler = createTargetHandler();
+        ContentReference target = targetHandler.createContentReference("requested.png", "image/png");
+        
+        List<ContentWorkResult> copied = cache.copy("key1", Arrays.asList(target), targetHandler);
+        assertEquals(target.getUri(), copied.get(0).getContentReference().getUri());
+        assertEquals(Long.valueOf(100), copied.get(0).getContentReference().getSize());
+        assertEquals(100, getFile(copied.get(0)).length());
+        
+        copied = cache.copy("key1", null, targetHandler);
+        assertEquals("image/png", copied.get(0).getContentReference().getMediaType());
+        assertFalse(cacheDirectory.equals(getFile(copied.get(0)).getParentFile()));
+        assertEquals(100, getFile(copied.get(0)).length());
+        assertNull(cache.copy("key2", null, targetHandler));
+    }
+    
+    @Test
+    public void testEvictionDeferredWhileCopying() throws Exception
+    {
+        cache.put("key1", createResult("target1.png", 200));
+        final File cachedFile = getFile(cache.get("key1").get(0));
+        FileContentReferenceHandlerImpl targetHandler = new FileContentReferenceHandlerImpl()
+        {
+            @Override
+            public long putInputStream(InputStream sourceInputStream, ContentReference targetContentReference)
+                    throws ContentIOException
+            {
+                try
+                {
+                    cache.put("key2", createResult("target2.png", 200));
+                }
+                catch (Exception e)
+                {
+                    throw new ContentIOException(e.getMessage(), e);
+                }
+                assertNull(cache.get("key1"));
+                assertTrue(cachedFile.exists());
+                return super.putInputStream(sourceInputStream, targetContentReference);
+            }
+        };
+        targetHandler.setFileProviderDirectoryPath(folder.newFolder("targets").getAbsolutePath());
+        
+        List<ContentWorkResult> copied = cache.copy("key1", null, targetHandler);
+        assertEquals(200, getFile(copied.get(0)).length());
+        assertFalse(cachedFile.exists());
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void testNullResultNotCached() throws Exception
+    {
+        List<ContentWorkResult> results = Arrays.asList(createResult("target.png", 100).get(0), 
+                new ContentWorkResult(null, null));
+        cache.put("key1", results);
+        
+        assertEquals(0, cache.size());
+        assertEquals(0, cacheDirectory.listFiles().length);
+    }
+    
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception
+    {
+        cache.put("key1", createResult("target1.png", 100));
+        cache.put("key2", createResult("target2.png", 100));
+        assertNotNull(cache.get("key1"));
+        cache.put("key3", createResult("target3.png", 100));
+        
+        assertNull(cache.get("key2"));
+        assertNotNull(cache.get("key1"));
+        assertNotNull(cache.get("key3"));
+        assertEquals(200, cache.getTotalBytes());
+        assertEquals(2, cacheDirectory.listFiles().length);
+    }
+    
+    @Test
+    public void testMissingContentIsMiss() throws Exception
+    {
+        cache.put("key1", createResult("target.png", 100));
+        FileUtils.deleteQuietly(getFile(cache.get("key1").get(0)));
+        
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void testIndexesExistingResultsOnInit() throws Exception
+    {
+        cache.put("key1", createResult("target1.png", 100));
+        cache.put("key2", createResult("target2.png", 100));
+        
+        FileTransformationResultCache restarted = createCache(250);
+        assertEquals(2, restarted.size());
+        assertEquals(200, restarted.getTotalBytes());
+        assertTrue(getFile(restarted.get("key1").get(0)).exists());
+        assertNotNull(restarted.get("key2"));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.gytheio.content.ContentReference;
+import org.gytheio.content.handler.FileContentReferenceHandlerImpl;
+import org.gytheio.content.transform.TransformationRequest;
+import org.gytheio.content.transform.options.ImageResizeOptions;
+import org.gytheio.content.transform.options.ImageTransformationOptions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link TransformationCacheKeyGenerator} keys depend only on the
+ * source content, target media type and options
+ */
+public class TransformationCacheKeyGeneratorTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private TransformationCacheKeyGenerator keyGenerator;
+    
+    @Before
+    public void setUp()
+    {
+        FileContentReferenceHandlerImpl sourceHandler = new FileContentReferenceHandlerImpl();
+        sourceHandler.setFileProviderDirectoryPath(folder.getRoot().getAbsolutePath());
+        keyGenerator = new TransformationCacheKeyGenerator();
+        keyGenerator.setSourceContentReferenceHandler(sourceHandler);
+    }
+    
+    protected ContentReference createSource(String name, String content) throws Exception
+    {
+        File file = folder.newFile(name);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        return new ContentReference(file.toURI().toString(), "application/pdf", file.length());
+    }
+    
+    protected ImageTransformationOptions createOptions(int width, String... additionalOptions)
+    {
+        ImageTransformationOptions options = new ImageTransformationOptions();
+        ImageResizeOptions resizeOptions = new ImageResizeOptions();
+        resizeOptions.setWidth(width);
+        resizeOptions.setHeight(100);
+        options.setResizeOptions(resizeOptions);
+        Map<String, Serializable> additional = new LinkedHashMap<String, Serializable>();
+        for (String option : additionalOptions)
+        {
+            additional.put(option, option.length());
+        }
+        options.setAdditionalOptions(additional);
+        return options;
+    }
+    
+    protected TransformationRequest createRequest(ContentReference source, String targetMediaType,
+            ImageTransformationOptions options)
+    {
+        TransformationRequest request = new TransformationRequest(Arrays.asList(source), null, options);
+        request.setTargetMediaType(targetMediaType);
+        return request;
+    }
+    
+    @Test
+    public void testSameContentAtDifferentReferencesHasSameKey() throws Exception
+    {
+        String key1 = keyGenerator.generateKey(createRequest(
+                createSource("a.pdf", "content"), "image/png", createOptions(100)));
+        String key2 = keyGenerator.generateKey(createRequest(
+                createSource("b.pdf", "content"), "image/png", createOptions(100)));
+        assertEquals(key1, key2);
+        
+        String key3 = keyGenerator.generateKey(createRequest(
+                createSource("c.pdf", "other content"), "image/png", createOptions(100)));
+        assertNotEquals(key1, key3);
+    }
+    
+    @Test
+    public void testKeyDependsOnTargetMediaTypeAndOptions() throws Exception
+    {
+        ContentReference source = createSource("a.pdf", "content");
+        String key = keyGenerator.generateKey(createRequest(source, "image/png", createOptions(100)));
+        
+        assertNotEquals(key, keyGenerator.generateKey(createRequest(source, "image/jpeg", createOptions(100))));
+        assertNotEquals(key, keyGenerator.generateKey(createRequest(source, "image/png", createOptions(200))));
+        assertNotEquals(key, keyGenerator.generateKey(createRequest(source, "image/png", null)));
+    }
+    
+    @Test
+    public void testOptionsOrderDoesNotChangeKey() throws Exception
+    {
+        ContentReference source = createSource("a.pdf", "content");
+        assertEquals(
+                keyGenerator.generateKey(createRequest(source, "image/png", createOptions(100, "x", "yy"))),
+                keyGenerator.generateKey(createRequest(source, "image/png", createOptions(100, "yy", "x"))));
+    }
+    
+    @Test
+    public void testReferenceKeyDependsOnReferenceNotContent() throws Exception
+    {
+        ContentReference source1 = createSource("a.pdf", "content");
+        ContentReference source2 = createSource("b.pdf", "content");
+        String key = keyGenerator.generateReferenceKey(createRequest(source1, "image/png", createOptions(100)));
+        
+        assertEquals(key, keyGenerator.generateReferenceKey(
+                createRequest(new ContentReference(source1.getUri(), null, source1.getSize()), 
+                        "image/png", createOptions(100))));
+        assertNotEquals(key, keyGenerator.generateReferenceKey(
+                createRequest(source2, "image/png", createOptions(100))));
+        assertNotEquals(key, keyGenerator.generateReferenceKey(
+                createRequest(new ContentReference(source1.getUri(), null, 1L), "image/png", createOptions(100))));
+    }
+    
+    @Test
+    public void testUnknownTargetIsNotCached() throws Exception
+    {
+        assertNull(keyGenerator.generateKey(createRequest(
+                createSource("a.pdf", "content"), null, createOptions(100))));
+    }
+}
@@ -20,20 +20,26 @@ package org.gytheio.content.transform;
 
 
 import org.gytheio.content.AbstractContentReply;
+import org.gytheio.messaging.ProgressReply;
 import org.gytheio.messaging.Request;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Represents a reply from a content transformer on the status of a transformation request.
  * 
  * @author Ray Gauss II
  */
-public class TransformationReply extends AbstractContentReply
+public class TransformationReply extends AbstractContentReply implements ProgressReply
 {
     public static final String STATUS_PENDING = "pending";
     public static final String STATUS_IN_PROGRESS = "in-progress";
     public static final String STATUS_COMPLETE = "complete";
     public static final String STATUS_ERROR = "error";
     
+    /** The status detail of an error reply to a request whose deadline passed before it was transformed */
+    public static final String STATUS_DETAIL_EXPIRED = "expired";
+    
     private String status;
     private String jobId;
     private Float progress;
@@ -131,4 +137,15 @@ public class TransformationReply extends AbstractContentReply
         this.statusDetail = statusDetail;
     }
 
+    /**
+     * Determines whether the transformation has finished, either complete or in error
+     * 
+     * @return true if no further replies will follow
+     */
+    @JsonIgnore
+    public boolean isFinalReply()
+    {
+        return STATUS_COMPLETE.equals(status) || STATUS_ERROR.equals(status);
+    }
+
 }
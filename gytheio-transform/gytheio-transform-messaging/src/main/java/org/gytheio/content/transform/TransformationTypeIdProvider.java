@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2005-2018 Alfresco Software Limited.
+ *
+ * This file is part of Gytheio
+ *
+ * Gytheio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Gytheio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Gytheio. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.gytheio.content.transform;
+
+import org.gytheio.content.transform.options.AudioTransformationOptions;
+import org.gytheio.content.transform.options.CropSourceOptions;
+import org.gytheio.content.transform.options.ImageResizeOptions;
+import org.gytheio.content.transform.options.ImageTransformationOptions;
+import org.gytheio.content.transform.options.PagedSourceOptions;
+import org.gytheio.content.transform.options.TemporalSourceOptions;
+import org.gytheio.content.transform.options.TransformationOptionLimits;
+import org.gytheio.content.transform.options.TransformationOptionPair;
+import org.gytheio.content.transform.options.TransformationOptionsImpl;
+import org.gytheio.content.transform.options.VideoTransformationOptions;
+import org.gytheio.messaging.jackson.TypeIdProvider;
+import org.gytheio.messaging.jackson.TypeIdRegistry;
+
+/**
+ * Registers type ids for transformation messages and options
+ */
+public class TransformationTypeIdProvider implements TypeIdProvider
+{
+    @Override
+    public void registerTypeIds(TypeIdRegistry registry)
+    {
+        registry.register("TransformationRequest", TransformationRequest.class);
+        registry.register("TransformationReply", TransformationReply.class);
+        
+        registry.register("TransformationOptions", TransformationOptionsImpl.class);
+        registry.register("ImageTransformationOptions", ImageTransformationOptions.class);
+        registry.register("AudioTransformationOptions", AudioTransformationOptions.class);
+        registry.register("VideoTransformationOptions", VideoTransformationOptions.class);
+        registry.register("ImageResizeOptions", ImageResizeOptions.class);
+        registry.register("TransformationOptionLimits", TransformationOptionLimits.class);
+        registry.register("TransformationOptionPair", TransformationOptionPair.class);
+        
+        registry.register("CropSourceOptions", CropSourceOptions.class);
+        registry.register("PagedSourceOptions", PagedSourceOptions.class);
+        registry.register("TemporalSourceOptions", TemporalSourceOptions.class);
+    }
+}
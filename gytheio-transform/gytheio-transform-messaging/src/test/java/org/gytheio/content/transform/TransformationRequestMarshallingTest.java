@@ -101,5 +101,26 @@ public class TransformationRequestMarshallingTest
                 "00:00:00.5", 
                 unmarshalledRequest.getOptions().getSourceOptions(TemporalSourceOptions.class).getDuration());
     }
+    
+    @Test
+    public void testMarshallingWithTypeIds() throws IOException
+    {
+        ObjectMapper typeIdMapper = ObjectMapperFactory.createInstance(
+                ObjectMapperFactory.CONTENT_TYPE_JSON, true);
+        String json = typeIdMapper.writeValueAsString(transformationRequest);
+        
+        assertFalse(json.contains(TransformationRequest.class.getName()));
+        assertFalse(json.contains(TemporalSourceOptions.class.getName()));
+        assertTrue(json.length() < mapper.writeValueAsString(transformationRequest).length());
+        
+        // Readers accept type ids regardless of whether they write them
+        TransformationRequest unmarshalledRequest = (TransformationRequest) mapper.readValue(json, Object.class);
+        
+        assertEquals(
+                "00:00:00.5", 
+                unmarshalledRequest.getOptions().getSourceOptions(TemporalSourceOptions.class).getDuration());
+        assertEquals(56, ((ImageTransformationOptions) unmarshalledRequest.getOptions())
+                .getResizeOptions().getWidth());
+    }
 
 }